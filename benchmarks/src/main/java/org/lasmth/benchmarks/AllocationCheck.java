@@ -0,0 +1,70 @@
+package org.lasmth.benchmarks;
+
+import org.joml.Matrix4f;
+import org.lasmth.graphics.entities.Camera;
+import org.lasmth.graphics.entities.EntityStore;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks the per-frame transform path allocates nothing: rotating entities, reading their transformation
+ * matrices and rebuilding the camera's view matrix. Runs the path until it is compiled, then for a number of
+ * frames more, and fails if the thread allocated anything in between. Unlike -prof gc on
+ * {@link EntityTransformBenchmark} this gives a yes or no answer, so it can be run as a check:
+ * <pre>
+ * java -cp benchmarks.jar org.lasmth.benchmarks.AllocationCheck
+ * </pre>
+ */
+public class AllocationCheck {
+
+    private static final int ENTITY_COUNT = 10_000;
+    private static final int WARMUP_FRAMES = 2_000;
+    private static final int FRAMES = 1_000;
+
+    private final EntityStore store = BenchmarkScenes.createEntities(ENTITY_COUNT,
+            BenchmarkScenes.createModels(1), 500);
+    private final Camera camera = new Camera();
+    // Moved every frame and copied into the camera, as the renderer's snapshot does, so the view matrix is
+    // rebuilt every frame rather than served from the cache.
+    private final Camera simulatedCamera = new Camera();
+    private final Matrix4f matrix = new Matrix4f();
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("This JVM cannot measure thread allocation");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        AllocationCheck check = new AllocationCheck();
+        float result = 0;
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            result += check.frame();
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < FRAMES; i++) {
+            result += check.frame();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        if (allocated != 0) {
+            throw new IllegalStateException("Transform path allocated " + allocated + " bytes over " + FRAMES
+                    + " frames");
+        }
+        // Printed so the frames cannot be optimised away.
+        System.out.println("Transform path allocated nothing over " + FRAMES + " frames (" + result + ")");
+    }
+
+    private float frame() {
+        float sum = 0;
+        for (int i = 0; i < ENTITY_COUNT; i++) {
+            store.increaseRotation(i, 0, 1, 0);
+            sum += store.getTransformationMatrix(i, matrix).m30();
+        }
+        simulatedCamera.getPosition().x += 0.01f;
+        camera.set(simulatedCamera);
+        return sum + camera.getViewMatrix().m30();
+    }
+}
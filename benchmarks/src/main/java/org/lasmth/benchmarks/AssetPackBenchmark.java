@@ -0,0 +1,153 @@
+package org.lasmth.benchmarks;
+
+import org.lasmth.graphics.AssetPack;
+import org.lasmth.graphics.AssetPackWriter;
+import org.lasmth.graphics.Loader;
+import org.lasmth.graphics.TextureFilter;
+import org.lasmth.graphics.models.MeshData;
+import org.lasmth.graphics.models.VertexLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of loading 1000 assets, half textures and half meshes, from their sources through {@link Loader}
+ * compared to from a baked {@link AssetPack}. The GL calls go to a {@link NullRenderDevice}.
+ * <p>
+ * The source path decodes a PNG per texture and interleaves each mesh from float arrays. The pack path maps the
+ * pack and hands the baked data over as it is.
+ * <p>
+ * The cold benchmarks time a single load in a fresh JVM, as on a real launch. The pack file will usually still
+ * be in the OS page cache from baking it; drop the cache between forks to also measure reading it from disk.
+ * The warm benchmarks time repeated loads once everything is JIT compiled and cached. Textures are read from the
+ * source tree, so run from the project root.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class AssetPackBenchmark {
+
+    private static final int TEXTURE_COUNT = 500;
+    private static final int MESH_COUNT = 500;
+    private static final int VERTICES_PER_MESH = 1000;
+    private static final String TEXTURE = "image.png";
+
+    private MeshData[] meshes;
+    private Path packFile;
+
+    @Setup(Level.Trial)
+    public void bake() throws IOException {
+        Random random = new Random(42);
+        meshes = new MeshData[MESH_COUNT];
+        for (int i = 0; i < MESH_COUNT; i++) {
+            float[] positions = new float[VERTICES_PER_MESH * 3];
+            for (int j = 0; j < positions.length; j++) {
+                positions[j] = random.nextFloat() * 10 - 5;
+            }
+            float[] textureUVs = new float[VERTICES_PER_MESH * 2];
+            for (int j = 0; j < textureUVs.length; j++) {
+                textureUVs[j] = random.nextFloat();
+            }
+            int[] indices = new int[VERTICES_PER_MESH * 3];
+            for (int j = 0; j < indices.length; j++) {
+                indices[j] = random.nextInt(VERTICES_PER_MESH);
+            }
+            meshes[i] = new MeshData(VertexLayout.POSITION_UV_COMPACT, indices, positions, textureUVs);
+        }
+
+        packFile = Files.createTempFile("assets", ".pak");
+        Path texture = Path.of("src/main/resources", TEXTURE);
+        try (AssetPackWriter writer = new AssetPackWriter(packFile)) {
+            for (int i = 0; i < TEXTURE_COUNT; i++) {
+                writer.addTexture("texture" + i, texture);
+            }
+            for (int i = 0; i < MESH_COUNT; i++) {
+                writer.addMesh("mesh" + i, meshes[i]);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePack() throws IOException {
+        Files.deleteIfExists(packFile);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public long coldFromSources() {
+        return loadFromSources();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    public long coldFromPack() throws IOException {
+        return loadFromPack();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public long warmFromSources() {
+        return loadFromSources();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public long warmFromPack() throws IOException {
+        return loadFromPack();
+    }
+
+    private long loadFromSources() {
+        NullRenderDevice device = new NullRenderDevice();
+        // The same image stands in for every texture, so the cache would only decode it once.
+        Loader loader = new Loader(device, false);
+        for (int i = 0; i < TEXTURE_COUNT; i++) {
+            loader.loadTexture(TEXTURE);
+        }
+        for (MeshData mesh : meshes) {
+            loader.loadToVAO(mesh);
+        }
+        loader.cleanUp();
+        return device.getChecksum();
+    }
+
+    private long loadFromPack() throws IOException {
+        NullRenderDevice device = new NullRenderDevice();
+        Loader loader = new Loader(device);
+        try (AssetPack pack = AssetPack.open(packFile)) {
+            for (int i = 0; i < TEXTURE_COUNT; i++) {
+                loader.loadTexture(pack, "texture" + i, TextureFilter.NEAREST);
+            }
+            for (int i = 0; i < MESH_COUNT; i++) {
+                loader.loadToVAO(pack, "mesh" + i);
+            }
+        }
+        loader.cleanUp();
+        return device.getChecksum();
+    }
+}
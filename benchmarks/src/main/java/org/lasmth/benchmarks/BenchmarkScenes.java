@@ -0,0 +1,51 @@
+package org.lasmth.benchmarks;
+
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.BoundingBox;
+import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.models.TexturedModel;
+
+import java.util.Random;
+
+/**
+ * Builds the scenes shared by several benchmarks. Everything is seeded so every run sees the same scene.
+ */
+final class BenchmarkScenes {
+
+    private static final long SEED = 42;
+
+    private BenchmarkScenes() {
+    }
+
+    /**
+     * @param count Number of distinct models, each with its own fake VAO and texture ID.
+     * @return Unit cube models which need no OpenGL context.
+     */
+    static TexturedModel[] createModels(int count) {
+        float[] corners = {-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, 0.5f};
+        TexturedModel[] models = new TexturedModel[count];
+        for (int i = 0; i < count; i++) {
+            RawModel rawModel = new RawModel(i + 1, 36, BoundingBox.fromPositions(corners));
+            models[i] = new TexturedModel(rawModel, i + 1);
+        }
+        return models;
+    }
+
+    /**
+     * Scatter entities uniformly through a cube, cycling through the given models.
+     * @param halfSize Half the side length of the cube, centred on the origin.
+     */
+    static EntityStore createEntities(int count, TexturedModel[] models, float halfSize) {
+        Random random = new Random(SEED);
+        EntityStore store = new EntityStore(count);
+        for (int i = 0; i < count; i++) {
+            store.add(models[i % models.length],
+                    (random.nextFloat() * 2 - 1) * halfSize,
+                    (random.nextFloat() * 2 - 1) * halfSize,
+                    (random.nextFloat() * 2 - 1) * halfSize,
+                    random.nextFloat() * 360, random.nextFloat() * 360, random.nextFloat() * 360,
+                    0.5f + random.nextFloat());
+        }
+        return store;
+    }
+}
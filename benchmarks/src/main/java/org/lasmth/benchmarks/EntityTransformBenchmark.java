@@ -0,0 +1,98 @@
+package org.lasmth.benchmarks;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.TexturedModel;
+import org.lwjgl.BufferUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulated frame over many entities: rotate every entity, then write every transformation matrix into a
+ * buffer as the renderers do when submitting. Compares {@link EntityStore} against one heap object per entity.
+ * <p>
+ * Run with -prof gc to check the store's frame does not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Thread)
+public class EntityTransformBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int entityCount;
+
+    private EntityStore store;
+    private LegacyEntity[] legacyEntities;
+
+    private final Matrix4f matrix = new Matrix4f();
+    private FloatBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TexturedModel[] models = BenchmarkScenes.createModels(1);
+        store = BenchmarkScenes.createEntities(entityCount, models, 500);
+
+        // Allocated in shuffled order, so objects end up spread over the heap as they would after a while
+        // of creating and destroying entities.
+        legacyEntities = new LegacyEntity[entityCount];
+        Integer[] order = new Integer[entityCount];
+        for (int i = 0; i < entityCount; i++) {
+            order[i] = i;
+        }
+        Collections.shuffle(Arrays.asList(order), new Random(42));
+        for (int i : order) {
+            legacyEntities[i] = new LegacyEntity(
+                    new Vector3f(store.getPositionX(i), store.getPositionY(i), store.getPositionZ(i)),
+                    store.getRotX(i), store.getRotY(i), store.getRotZ(i), store.getScale(i));
+        }
+
+        buffer = BufferUtils.createFloatBuffer(16);
+    }
+
+    @Benchmark
+    public float entityStore() {
+        float checksum = 0;
+        for (int i = 0; i < entityCount; i++) {
+            store.increaseRotation(i, 0.1f, 0.2f, 0.3f);
+        }
+        for (int i = 0; i < entityCount; i++) {
+            store.getTransformationMatrix(i, matrix).get(buffer);
+            checksum += buffer.get(12);
+        }
+        store.clearMoved();
+        return checksum;
+    }
+
+    @Benchmark
+    public float entityObjects() {
+        float checksum = 0;
+        for (LegacyEntity entity : legacyEntities) {
+            entity.increaseRotation(0.1f, 0.2f, 0.3f);
+        }
+        for (LegacyEntity entity : legacyEntities) {
+            entity.getTransformationMatrix().get(buffer);
+            checksum += buffer.get(12);
+        }
+        return checksum;
+    }
+}
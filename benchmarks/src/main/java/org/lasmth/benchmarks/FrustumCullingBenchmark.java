@@ -0,0 +1,82 @@
+package org.lasmth.benchmarks;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lasmth.graphics.culling.LooseOctree;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.BoundingBox;
+import org.lasmth.graphics.models.TexturedModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the visible entities among a large number of static ones, with the {@link LooseOctree} and by
+ * testing every entity's bounds against the frustum.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Thread)
+public class FrustumCullingBenchmark {
+
+    private static final float WORLD_HALF_SIZE = 1000;
+
+    @Param({"100000", "1000000"})
+    private int entityCount;
+
+    private EntityStore entities;
+    private LooseOctree octree;
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    private final Matrix4f transformationMatrix = new Matrix4f();
+    private final Vector3f boundsMin = new Vector3f();
+    private final Vector3f boundsMax = new Vector3f();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TexturedModel[] models = BenchmarkScenes.createModels(1);
+        entities = BenchmarkScenes.createEntities(entityCount, models, WORLD_HALF_SIZE);
+        octree = new LooseOctree(entities, WORLD_HALF_SIZE);
+
+        // Looking along -z from the centre of the world with the renderer's field of view and view distance.
+        Matrix4f projectionView = new Matrix4f()
+                .perspective((float) Math.toRadians(70), 16f / 9f, 0.1f, 1000)
+                .lookAt(0, 0, 0, 0, 0, -1, 0, 1, 0);
+        frustum.set(projectionView);
+    }
+
+    @Benchmark
+    public int octree() {
+        octree.update();
+        return octree.query(frustum);
+    }
+
+    @Benchmark
+    public int bruteForce() {
+        int visible = 0;
+        for (int i = 0; i < entities.size(); i++) {
+            BoundingBox bounds = entities.getModel(entities.getModelHandle(i)).getRawModel().getBounds();
+            entities.getTransformationMatrix(i, transformationMatrix).transformAab(
+                    bounds.getMinX(), bounds.getMinY(), bounds.getMinZ(),
+                    bounds.getMaxX(), bounds.getMaxY(), bounds.getMaxZ(), boundsMin, boundsMax);
+            if (frustum.testAab(boundsMin, boundsMax)) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+}
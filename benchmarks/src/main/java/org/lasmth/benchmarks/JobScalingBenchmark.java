@@ -0,0 +1,92 @@
+package org.lasmth.benchmarks;
+
+import org.joml.Matrix4f;
+import org.lasmth.engine.jobs.JobSystem;
+import org.lasmth.engine.jobs.RangeJob;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.TexturedModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interpolating the transforms of a million moving entities, as {@link EntityStore#interpolate(float)} does
+ * for every frame, split over 1 to N workers of a {@link JobSystem}. Divide the single threaded time by each
+ * worker count's time for the speed-up. Results past the number of physical cores are expected to flatten.
+ * <p>
+ * Run with -prof gc to check parallelFor only allocates its handful of range tasks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Thread)
+public class JobScalingBenchmark {
+
+    @Param({"1000000"})
+    private int entityCount;
+
+    @Param({"1", "2", "4", "8", "16"})
+    private int workers;
+
+    @Param({"4096"})
+    private int grainSize;
+
+    private EntityStore store;
+    private JobSystem jobs;
+    private RangeJob interpolateRange;
+    private float alpha;
+    private final Matrix4f matrix = new Matrix4f();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TexturedModel[] models = BenchmarkScenes.createModels(1);
+        store = BenchmarkScenes.createEntities(entityCount, models, 500);
+        // Every entity moves between the two states, so every one needs a new matrix each frame.
+        store.storePreviousState();
+        for (int i = 0; i < entityCount; i++) {
+            store.increaseRotation(i, 1, 2, 3);
+        }
+        jobs = new JobSystem(workers);
+        interpolateRange = (start, end) -> store.interpolate(alpha, start, end);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jobs.cleanUp();
+    }
+
+    /**
+     * The same work on the benchmark thread alone, without the job system.
+     */
+    @Benchmark
+    public float serial() {
+        alpha = nextAlpha();
+        store.interpolate(alpha);
+        return store.getTransformationMatrix(entityCount - 1, matrix).m30();
+    }
+
+    @Benchmark
+    public float parallelFor() {
+        alpha = nextAlpha();
+        jobs.parallelFor(entityCount, grainSize, interpolateRange);
+        return store.getTransformationMatrix(entityCount - 1, matrix).m30();
+    }
+
+    private float nextAlpha() {
+        return alpha >= 0.9f ? 0 : alpha + 0.1f;
+    }
+}
@@ -0,0 +1,35 @@
+package org.lasmth.benchmarks;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lasmth.tools.maths;
+
+/**
+ * One heap object per entity, each with its own position vector and a transformation matrix allocated on
+ * every request. This is how entities were stored before {@link org.lasmth.graphics.entities.EntityStore},
+ * kept here as the baseline to compare against.
+ */
+class LegacyEntity {
+
+    private final Vector3f position;
+    private float rotX, rotY, rotZ;
+    private final float scale;
+
+    LegacyEntity(Vector3f position, float rotX, float rotY, float rotZ, float scale) {
+        this.position = position;
+        this.rotX = rotX;
+        this.rotY = rotY;
+        this.rotZ = rotZ;
+        this.scale = scale;
+    }
+
+    void increaseRotation(float dx, float dy, float dz) {
+        rotX += dx;
+        rotY += dy;
+        rotZ += dz;
+    }
+
+    Matrix4f getTransformationMatrix() {
+        return maths.createTransformationMatrix(position, rotX, rotY, rotZ, scale);
+    }
+}
@@ -0,0 +1,85 @@
+package org.lasmth.benchmarks;
+
+import org.lasmth.graphics.Loader;
+import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.models.VertexLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU side of {@link Loader#loadToVAO(VertexLayout, int[], float[]...)}: interleaving the vertex data and
+ * packing the indices into buffers, plus the bookkeeping around them. The GL calls go to a
+ * {@link NullRenderDevice}.
+ * <p>
+ * With 1000 vertices the indices are packed as 16-bit values, with 100000 as 32-bit ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoaderBenchmark {
+
+    @Param({"1000", "100000"})
+    private int vertexCount;
+
+    private NullRenderDevice device;
+    private Loader loader;
+    private float[] positions;
+    private float[] textureUVs;
+    private int[] indices;
+
+    @Setup(Level.Trial)
+    public void createMesh() {
+        Random random = new Random(42);
+        positions = new float[vertexCount * 3];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = random.nextFloat() * 10 - 5;
+        }
+        textureUVs = new float[vertexCount * 2];
+        for (int i = 0; i < textureUVs.length; i++) {
+            textureUVs[i] = random.nextFloat();
+        }
+        indices = new int[vertexCount * 3];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(vertexCount);
+        }
+    }
+
+    // The loader remembers every buffer it creates, so start each iteration with a fresh one.
+    @Setup(Level.Iteration)
+    public void createLoader() {
+        device = new NullRenderDevice();
+        loader = new Loader(device);
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanUp() {
+        loader.cleanUp();
+    }
+
+    @Benchmark
+    public RawModel loadToVAO() {
+        return loader.loadToVAO(VertexLayout.POSITION_UV, indices, positions, textureUVs);
+    }
+
+    @Benchmark
+    public RawModel loadToVAOCompact() {
+        return loader.loadToVAO(VertexLayout.POSITION_UV_COMPACT, indices, positions, textureUVs);
+    }
+}
@@ -0,0 +1,101 @@
+package org.lasmth.benchmarks;
+
+import org.lasmth.graphics.Loader;
+import org.lasmth.graphics.memory.NativeMemory;
+import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.models.VertexLayout;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stress test for native memory: repeatedly loads and unloads a batch of meshes and textures. The GL calls go
+ * to a {@link NullRenderDevice} but the images are really decoded by STB.
+ * <p>
+ * The nativeBytes and nativePeakBytes counters in the results should stay flat however many iterations run.
+ * Textures are read from the source tree, so run from the project root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoaderChurnBenchmark {
+
+    private static final int MESHES_PER_BATCH = 1000;
+    private static final int TEXTURES_PER_BATCH = 100;
+    private static final String TEXTURE = "image.png";
+
+    private Loader loader;
+    private final RawModel[] models = new RawModel[MESHES_PER_BATCH];
+    private final int[] textures = new int[TEXTURES_PER_BATCH];
+    private float[] positions;
+    private float[] textureUVs;
+    private int[] indices;
+
+    /**
+     * Native memory use, sampled after every batch.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class NativeMemoryCounters {
+        public long nativeBytes;
+        public long nativePeakBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Without the texture cache, so every load really decodes the image rather than sharing the first.
+        loader = new Loader(new NullRenderDevice(), false);
+
+        // Big enough to spill out of the staging arena's first block.
+        int vertexCount = 20_000;
+        Random random = new Random(42);
+        positions = new float[vertexCount * 3];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = random.nextFloat();
+        }
+        textureUVs = new float[vertexCount * 2];
+        indices = new int[vertexCount * 3];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(vertexCount);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() {
+        loader.cleanUp();
+    }
+
+    @Benchmark
+    public void loadAndUnload(NativeMemoryCounters counters) {
+        for (int i = 0; i < MESHES_PER_BATCH; i++) {
+            models[i] = loader.loadToVAO(VertexLayout.POSITION_UV_COMPACT, indices, positions, textureUVs);
+        }
+        for (int i = 0; i < TEXTURES_PER_BATCH; i++) {
+            textures[i] = loader.loadTexture(TEXTURE);
+        }
+        for (RawModel model : models) {
+            loader.unloadModel(model);
+        }
+        for (int texture : textures) {
+            loader.unloadTexture(texture);
+        }
+        counters.nativeBytes = NativeMemory.getAllocatedBytes();
+        counters.nativePeakBytes = NativeMemory.getPeakBytes();
+    }
+}
@@ -0,0 +1,139 @@
+package org.lasmth.benchmarks;
+
+import org.joml.Matrix4f;
+import org.lasmth.graphics.entities.Camera;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.lod.LodSelector;
+import org.lasmth.graphics.lod.MeshSimplifier;
+import org.lasmth.graphics.models.BoundingBox;
+import org.lasmth.graphics.models.MeshData;
+import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.models.TexturedModel;
+import org.lasmth.graphics.models.VertexLayout;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Level of detail on a field of 100k spheres of 8192 triangles around the camera, each with the chain the
+ * {@link MeshSimplifier} generates for it on import. Times picking every sphere's level, and reports as the
+ * triangles counter what a frame would submit with selection on and off. The camera sits in the middle of the
+ * field, so most spheres are far away and small.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Thread)
+public class LodBenchmark {
+
+    private static final int ENTITY_COUNT = 100_000;
+    private static final int SPHERE_RINGS = 64;
+    private static final int SPHERE_SEGMENTS = 64;
+    private static final int LOD_LEVELS = 4;
+    // As the Loader gives imported models.
+    private static final float FIRST_LOD_SCREEN_SIZE = 0.25f;
+
+    @Param({"true", "false"})
+    private boolean lod;
+
+    private EntityStore entities;
+    private int[] visible;
+    private final Camera camera = new Camera();
+    private final Matrix4f projectionMatrix = new Matrix4f();
+    private final LodSelector selector = new LodSelector();
+
+    /**
+     * Triangles the last frame would have submitted.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class TriangleCounters {
+        public long triangles;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MeshData sphere = createSphere();
+        List<MeshData> lods = MeshSimplifier.generateLods(sphere, LOD_LEVELS);
+
+        // Fake VAO IDs, nothing is drawn.
+        TexturedModel model = new TexturedModel(fakeModel(1, sphere), 1);
+        float screenSize = FIRST_LOD_SCREEN_SIZE;
+        for (int i = 0; i < lods.size(); i++) {
+            model.addLod(fakeModel(i + 2, lods.get(i)), screenSize);
+            screenSize /= 2;
+        }
+
+        entities = BenchmarkScenes.createEntities(ENTITY_COUNT, new TexturedModel[]{model}, 500);
+        visible = new int[ENTITY_COUNT];
+        for (int i = 0; i < ENTITY_COUNT; i++) {
+            visible[i] = i;
+        }
+        projectionMatrix.identity().perspective((float) Math.toRadians(70), 16 / 9f, 0.1f, 1000);
+        selector.setEnabled(lod);
+    }
+
+    @Benchmark
+    public long select(TriangleCounters counters) {
+        selector.select(entities, visible, visible.length, camera, projectionMatrix);
+        counters.triangles = selector.getSelectedTriangles();
+        return counters.triangles;
+    }
+
+    private static RawModel fakeModel(int vaoId, MeshData mesh) {
+        return new RawModel(vaoId, mesh.getIndices().length,
+                BoundingBox.fromPositions(mesh.getAttributeData()[0]));
+    }
+
+    /**
+     * UV sphere of radius 1, with its seam and poles split into separate vertices as an imported one would be.
+     */
+    private static MeshData createSphere() {
+        int vertexCount = (SPHERE_RINGS + 1) * (SPHERE_SEGMENTS + 1);
+        float[] positions = new float[vertexCount * 3];
+        float[] textureUVs = new float[vertexCount * 2];
+        int vertex = 0;
+        for (int ring = 0; ring <= SPHERE_RINGS; ring++) {
+            double phi = Math.PI * ring / SPHERE_RINGS;
+            for (int segment = 0; segment <= SPHERE_SEGMENTS; segment++) {
+                double theta = 2 * Math.PI * segment / SPHERE_SEGMENTS;
+                positions[vertex * 3] = (float) (Math.sin(phi) * Math.cos(theta));
+                positions[vertex * 3 + 1] = (float) Math.cos(phi);
+                positions[vertex * 3 + 2] = (float) (Math.sin(phi) * Math.sin(theta));
+                textureUVs[vertex * 2] = (float) segment / SPHERE_SEGMENTS;
+                textureUVs[vertex * 2 + 1] = (float) ring / SPHERE_RINGS;
+                vertex++;
+            }
+        }
+        int[] indices = new int[SPHERE_RINGS * SPHERE_SEGMENTS * 6];
+        int index = 0;
+        for (int ring = 0; ring < SPHERE_RINGS; ring++) {
+            for (int segment = 0; segment < SPHERE_SEGMENTS; segment++) {
+                int a = ring * (SPHERE_SEGMENTS + 1) + segment;
+                int b = a + SPHERE_SEGMENTS + 1;
+                indices[index++] = a;
+                indices[index++] = b;
+                indices[index++] = a + 1;
+                indices[index++] = a + 1;
+                indices[index++] = b;
+                indices[index++] = b + 1;
+            }
+        }
+        return new MeshData(VertexLayout.POSITION_UV, indices, positions, textureUVs);
+    }
+}
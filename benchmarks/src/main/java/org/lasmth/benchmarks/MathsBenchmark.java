@@ -0,0 +1,58 @@
+package org.lasmth.benchmarks;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lasmth.tools.maths;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building transformation and view matrices, both the allocating versions and the ones writing into
+ * an existing matrix.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MathsBenchmark {
+
+    private final Vector3f position = new Vector3f(12.5f, -3, 40);
+    private final Matrix4f dest = new Matrix4f();
+    private float rotation = 15;
+
+    @Benchmark
+    public Matrix4f transformationMatrix() {
+        rotation += 0.1f;
+        return maths.createTransformationMatrix(position, rotation, rotation * 0.5f, 3, 1.5f);
+    }
+
+    @Benchmark
+    public Matrix4f transformationMatrixInto() {
+        rotation += 0.1f;
+        return maths.createTransformationMatrix(position.x, position.y, position.z, rotation, rotation * 0.5f, 3,
+                1.5f, dest);
+    }
+
+    @Benchmark
+    public Matrix4f viewMatrix() {
+        rotation += 0.1f;
+        return maths.createViewMatrix(position, rotation, rotation * 0.5f, new Matrix4f());
+    }
+
+    @Benchmark
+    public Matrix4f viewMatrixInto() {
+        rotation += 0.1f;
+        return maths.createViewMatrix(position, rotation, rotation * 0.5f, dest);
+    }
+}
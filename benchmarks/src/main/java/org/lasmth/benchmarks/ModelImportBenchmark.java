@@ -0,0 +1,116 @@
+package org.lasmth.benchmarks;
+
+import org.lasmth.graphics.ImportedModel;
+import org.lasmth.graphics.ModelImporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Wall time of importing a directory of 500 OBJ files with {@link ModelImporter#importAll(List, int)} on one
+ * thread compared to one per core. Each file is a UV sphere of around 2000 triangles with positions, UVs and
+ * normals, written out when the benchmark starts.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelImportBenchmark {
+
+    private static final int MODEL_COUNT = 500;
+    private static final int SPHERE_RINGS = 32;
+    private static final int SPHERE_SEGMENTS = 32;
+
+    /**
+     * Worker threads to import on. 0 means one per available core.
+     */
+    @Param({"1", "0"})
+    private int threads;
+
+    private Path directory;
+    private final List<Path> files = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void writeModels() throws IOException {
+        directory = Files.createTempDirectory("models");
+        for (int i = 0; i < MODEL_COUNT; i++) {
+            Path file = directory.resolve("sphere" + i + ".obj");
+            writeSphere(file, 1 + i * 0.01f);
+            files.add(file);
+        }
+        if (threads == 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteModels() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public int importAll() throws IOException {
+        int meshCount = 0;
+        for (ImportedModel model : ModelImporter.importAll(files, threads)) {
+            meshCount += model.getMeshes().size();
+            model.free();
+        }
+        return meshCount;
+    }
+
+    private static void writeSphere(Path file, float radius) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int ring = 0; ring <= SPHERE_RINGS; ring++) {
+                double phi = Math.PI * ring / SPHERE_RINGS;
+                for (int segment = 0; segment <= SPHERE_SEGMENTS; segment++) {
+                    double theta = 2 * Math.PI * segment / SPHERE_SEGMENTS;
+                    float x = (float) (Math.sin(phi) * Math.cos(theta));
+                    float y = (float) Math.cos(phi);
+                    float z = (float) (Math.sin(phi) * Math.sin(theta));
+                    writer.write(String.format(Locale.ROOT, "v %f %f %f%n", x * radius, y * radius, z * radius));
+                    writer.write(String.format(Locale.ROOT, "vt %f %f%n", (float) segment / SPHERE_SEGMENTS,
+                            (float) ring / SPHERE_RINGS));
+                    writer.write(String.format(Locale.ROOT, "vn %f %f %f%n", x, y, z));
+                }
+            }
+            // OBJ indices start at 1.
+            for (int ring = 0; ring < SPHERE_RINGS; ring++) {
+                for (int segment = 0; segment < SPHERE_SEGMENTS; segment++) {
+                    int a = ring * (SPHERE_SEGMENTS + 1) + segment + 1;
+                    int b = a + SPHERE_SEGMENTS + 1;
+                    writer.write(String.format(Locale.ROOT, "f %d/%d/%d %d/%d/%d %d/%d/%d%n",
+                            a, a, a, b, b, b, a + 1, a + 1, a + 1));
+                    writer.write(String.format(Locale.ROOT, "f %d/%d/%d %d/%d/%d %d/%d/%d%n",
+                            a + 1, a + 1, a + 1, b, b, b, b + 1, b + 1, b + 1));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package org.lasmth.benchmarks;
+
+import org.lasmth.graphics.RenderDevice;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL32;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * {@link RenderDevice} which does nothing, so the CPU side of loading and rendering can be measured without an
+ * OpenGL context. Object creation returns increasing IDs, queries report success and buffer uploads read the
+ * data (so packing it cannot be optimised away) but send it nowhere.
+ */
+public class NullRenderDevice implements RenderDevice {
+
+    private int nextId = 1;
+    // Accumulates the data passed to the device so the JIT cannot drop the work producing it.
+    private long checksum;
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    @Override
+    public boolean supportsOpenGL(int major, int minor) {
+        return true;
+    }
+
+    @Override
+    public String getString(int name) {
+        return "Null";
+    }
+
+    @Override
+    public int getInteger(int name) {
+        return 0;
+    }
+
+    @Override
+    public boolean supportsExtension(String name) {
+        return true;
+    }
+
+    @Override
+    public int genBuffers() {
+        return nextId++;
+    }
+
+    @Override
+    public void deleteBuffers(int bufferId) {
+    }
+
+    @Override
+    public void bindBuffer(int target, int bufferId) {
+        checksum += bufferId;
+    }
+
+    @Override
+    public void bufferData(int target, FloatBuffer data, int usage) {
+        checksum += data.remaining() + Float.floatToRawIntBits(data.get(data.position()));
+    }
+
+    @Override
+    public void bufferData(int target, IntBuffer data, int usage) {
+        checksum += data.remaining() + data.get(data.position());
+    }
+
+    @Override
+    public void bufferData(int target, ByteBuffer data, int usage) {
+        checksum += data.remaining() + data.get(data.limit() - 1);
+    }
+
+    @Override
+    public void bufferData(int target, long size, int usage) {
+        checksum += size;
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, FloatBuffer data) {
+        checksum += data.remaining() + Float.floatToRawIntBits(data.get(data.limit() - 1));
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data) {
+        checksum += data.remaining() + data.get(data.limit() - 1);
+    }
+
+    @Override
+    public void bindBufferBase(int target, int index, int bufferId) {
+    }
+
+    @Override
+    public void copyBufferSubData(int readTarget, int writeTarget, long readOffset, long writeOffset, long size) {
+        checksum += size;
+    }
+
+    @Override
+    public void bindBufferRange(int target, int index, int bufferId, long offset, long size) {
+    }
+
+    @Override
+    public void bufferStorage(int target, long size, int flags) {
+        checksum += size;
+    }
+
+    /**
+     * Hands out ordinary direct memory, so writes to the mapping still have to happen.
+     */
+    @Override
+    public ByteBuffer mapBufferRange(int target, long offset, long length, int access) {
+        return ByteBuffer.allocateDirect((int) length).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public boolean unmapBuffer(int target) {
+        return true;
+    }
+
+    @Override
+    public long fenceSync() {
+        return nextId++;
+    }
+
+    @Override
+    public int clientWaitSync(long sync, int flags, long timeoutNanos) {
+        return GL32.GL_ALREADY_SIGNALED;
+    }
+
+    @Override
+    public void deleteSync(long sync) {
+        checksum += sync;
+    }
+
+    @Override
+    public int genVertexArrays() {
+        return nextId++;
+    }
+
+    @Override
+    public void deleteVertexArrays(int vaoId) {
+    }
+
+    @Override
+    public void bindVertexArray(int vaoId) {
+        checksum += vaoId;
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset) {
+    }
+
+    @Override
+    public void vertexAttribDivisor(int index, int divisor) {
+    }
+
+    @Override
+    public int genTextures() {
+        return nextId++;
+    }
+
+    @Override
+    public void deleteTextures(int textureId) {
+    }
+
+    @Override
+    public void activeTexture(int textureUnit) {
+    }
+
+    @Override
+    public void bindTexture(int target, int textureId) {
+        checksum += textureId;
+    }
+
+    @Override
+    public void texParameteri(int target, int name, int value) {
+    }
+
+    @Override
+    public void texImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                           int format, int type, ByteBuffer pixels) {
+        if (pixels != null && pixels.hasRemaining()) {
+            checksum += pixels.remaining() + pixels.get(pixels.limit() - 1);
+        }
+    }
+
+    @Override
+    public void texImage3D(int target, int level, int internalFormat, int width, int height, int depth, int border,
+                           int format, int type, ByteBuffer pixels) {
+    }
+
+    @Override
+    public void texSubImage3D(int target, int level, int xOffset, int yOffset, int zOffset, int width, int height,
+                              int depth, int format, int type, ByteBuffer pixels) {
+    }
+
+    @Override
+    public void generateMipmap(int target) {
+    }
+
+    @Override
+    public void enable(int capability) {
+    }
+
+    @Override
+    public void disable(int capability) {
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+    }
+
+    @Override
+    public void clear(int mask) {
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, long indicesOffset) {
+        checksum += count;
+    }
+
+    @Override
+    public void drawElementsInstanced(int mode, int count, int type, long indicesOffset, int instanceCount) {
+        checksum += (long) count * instanceCount;
+    }
+
+    @Override
+    public void drawElementsBaseVertex(int mode, int count, int type, long indicesOffset, int baseVertex) {
+        checksum += count + baseVertex;
+    }
+
+    @Override
+    public void multiDrawElementsIndirect(int mode, int type, long indirectOffset, int drawCount, int stride) {
+        checksum += indirectOffset + drawCount;
+    }
+
+    @Override
+    public int createShader(int type) {
+        return nextId++;
+    }
+
+    @Override
+    public void shaderSource(int shaderId, CharSequence source) {
+    }
+
+    @Override
+    public void compileShader(int shaderId) {
+    }
+
+    @Override
+    public int getShaderi(int shaderId, int name) {
+        return GL11.GL_TRUE;
+    }
+
+    @Override
+    public String getShaderInfoLog(int shaderId) {
+        return "";
+    }
+
+    @Override
+    public void deleteShader(int shaderId) {
+    }
+
+    @Override
+    public int createProgram() {
+        return nextId++;
+    }
+
+    @Override
+    public void attachShader(int programId, int shaderId) {
+    }
+
+    @Override
+    public void detachShader(int programId, int shaderId) {
+    }
+
+    @Override
+    public void bindAttribLocation(int programId, int index, CharSequence name) {
+    }
+
+    @Override
+    public void linkProgram(int programId) {
+    }
+
+    @Override
+    public void validateProgram(int programId) {
+    }
+
+    @Override
+    public int getProgrami(int programId, int name) {
+        return GL11.GL_TRUE;
+    }
+
+    @Override
+    public String getProgramInfoLog(int programId) {
+        return "";
+    }
+
+    @Override
+    public void programParameteri(int programId, int name, int value) {
+    }
+
+    @Override
+    public void getProgramBinary(int programId, IntBuffer length, IntBuffer binaryFormat, ByteBuffer binary) {
+        length.put(0, 0);
+    }
+
+    @Override
+    public void programBinary(int programId, int binaryFormat, ByteBuffer binary) {
+    }
+
+    @Override
+    public void deleteProgram(int programId) {
+    }
+
+    @Override
+    public void useProgram(int programId) {
+    }
+
+    @Override
+    public int getUniformLocation(int programId, CharSequence name) {
+        return nextId++;
+    }
+
+    @Override
+    public int getUniformBlockIndex(int programId, CharSequence name) {
+        return 0;
+    }
+
+    @Override
+    public void uniformBlockBinding(int programId, int blockIndex, int bindingPoint) {
+    }
+
+    @Override
+    public void uniform1i(int location, int value) {
+        checksum += value;
+    }
+
+    @Override
+    public void uniform1f(int location, float value) {
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value) {
+        checksum += Float.floatToRawIntBits(value.get(12));
+    }
+}
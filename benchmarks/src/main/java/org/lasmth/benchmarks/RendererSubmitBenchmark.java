@@ -0,0 +1,115 @@
+package org.lasmth.benchmarks;
+
+import org.lasmth.graphics.BatchRenderer;
+import org.lasmth.graphics.InstancedRenderer;
+import org.lasmth.graphics.Loader;
+import org.lasmth.graphics.MultiDrawRenderer;
+import org.lasmth.graphics.RenderDevice;
+import org.lasmth.graphics.Renderer;
+import org.lasmth.graphics.StateCachingRenderDevice;
+import org.lasmth.graphics.entities.Camera;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.TexturedModel;
+import org.lasmth.graphics.shaders.staticshader.InstancedStaticShader;
+import org.lasmth.graphics.shaders.staticshader.MultiDrawStaticShader;
+import org.lasmth.graphics.shaders.staticshader.StaticShader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of submitting a frame with each of the renderers, with every GL call going to a
+ * {@link NullRenderDevice}. Measures the work done around the draw calls: sorting, state change tracking,
+ * building matrices and filling buffers.
+ * <p>
+ * With stateCache the renderers go through a {@link StateCachingRenderDevice} first. The null device makes
+ * every call almost free, so this shows what tracking the state costs rather than what eliding calls saves
+ * with a real driver.
+ * <p>
+ * The shaders are read from the source tree, so run from the project root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RendererSubmitBenchmark {
+
+    private static final float ASPECT_RATIO = 16f / 9f;
+
+    @Param({"10000", "100000"})
+    private int entityCount;
+
+    @Param({"1", "16"})
+    private int modelCount;
+
+    @Param({"false", "true"})
+    private boolean stateCache;
+
+    private NullRenderDevice device;
+    private StaticShader staticShader;
+    private EntityStore entities;
+    private Camera camera;
+
+    private Renderer renderer;
+    private BatchRenderer batchRenderer;
+    private InstancedRenderer instancedRenderer;
+    private MultiDrawRenderer multiDrawRenderer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        device = new NullRenderDevice();
+        TexturedModel[] models = BenchmarkScenes.createModels(modelCount);
+        entities = BenchmarkScenes.createEntities(entityCount, models, 500);
+        camera = new Camera();
+
+        RenderDevice submitDevice = stateCache ? new StateCachingRenderDevice(device) : device;
+        staticShader = new StaticShader(submitDevice);
+        renderer = new Renderer(staticShader, submitDevice, ASPECT_RATIO);
+        batchRenderer = new BatchRenderer(staticShader, submitDevice);
+        instancedRenderer = new InstancedRenderer(new Loader(submitDevice), staticShader,
+                new InstancedStaticShader(submitDevice), submitDevice);
+        multiDrawRenderer = new MultiDrawRenderer(new MultiDrawStaticShader(submitDevice), submitDevice);
+        renderer.loadCamera(camera);
+    }
+
+    @Benchmark
+    public long renderer() {
+        renderer.prepare();
+        renderer.render(entities, staticShader);
+        return device.getChecksum();
+    }
+
+    @Benchmark
+    public long batchRenderer() {
+        batchRenderer.processEntities(entities);
+        batchRenderer.render();
+        return device.getChecksum();
+    }
+
+    @Benchmark
+    public long instancedRenderer() {
+        instancedRenderer.processEntities(entities);
+        instancedRenderer.render();
+        return device.getChecksum();
+    }
+
+    @Benchmark
+    public long multiDrawRenderer() {
+        multiDrawRenderer.processEntities(entities);
+        multiDrawRenderer.render();
+        return device.getChecksum();
+    }
+}
@@ -0,0 +1,109 @@
+package org.lasmth.benchmarks;
+
+import org.joml.Matrix4f;
+import org.lasmth.engine.jobs.JobSystem;
+import org.lasmth.graphics.entities.SceneGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One frame of a {@link SceneGraph}: change the local transform of a share of the nodes, then bring the world
+ * matrices up-to-date, on one thread and level by level on the job system.
+ * <p>
+ * Deep is a hundred chains a thousand nodes long, so a changed node drags on average half a chain along with it
+ * and a level holds too few nodes to split. Wide is a hundred roots with a thousand children each: every level
+ * splits well and only the changed nodes themselves are recomputed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@State(Scope.Thread)
+public class SceneGraphBenchmark {
+
+    private static final int NODE_COUNT = 100_000;
+    private static final int TREES = 100;
+    private static final int GRAIN_SIZE = 1024;
+
+    @Param({"deep", "wide"})
+    private String shape;
+
+    @Param({"1", "100"})
+    private int changedPercent;
+
+    private SceneGraph graph;
+    private int[] changedNodes;
+    private JobSystem jobs;
+    private final Matrix4f matrix = new Matrix4f();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new SceneGraph(NODE_COUNT);
+        int perTree = NODE_COUNT / TREES;
+        for (int tree = 0; tree < TREES; tree++) {
+            int root = graph.createNode(SceneGraph.NO_PARENT);
+            int parent = root;
+            for (int i = 1; i < perTree; i++) {
+                int node = graph.createNode(parent);
+                graph.setPosition(node, 1, 0, 0);
+                if ("deep".equals(shape)) {
+                    parent = node;
+                }
+            }
+        }
+
+        Random random = new Random(42);
+        changedNodes = new int[NODE_COUNT * changedPercent / 100];
+        for (int i = 0; i < changedNodes.length; i++) {
+            changedNodes[i] = changedPercent == 100 ? i : random.nextInt(NODE_COUNT);
+        }
+
+        jobs = new JobSystem(Runtime.getRuntime().availableProcessors());
+        // Sorts the nodes by depth, which is only needed once.
+        graph.update();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jobs.cleanUp();
+    }
+
+    @Benchmark
+    public float update() {
+        change();
+        graph.update();
+        return result();
+    }
+
+    @Benchmark
+    public float updateParallel() {
+        change();
+        graph.update(jobs, GRAIN_SIZE);
+        return result();
+    }
+
+    private void change() {
+        for (int node : changedNodes) {
+            graph.increaseRotation(node, 0.1f, 0.2f, 0.3f);
+        }
+    }
+
+    private float result() {
+        return graph.getLastUpdatedCount() + graph.getWorldMatrix(NODE_COUNT - 1, matrix).m30();
+    }
+}
@@ -0,0 +1,40 @@
+package org.lasmth.engine;
+
+/**
+ * Callbacks driven by a {@link GameLoop}.
+ * <p>
+ * The simulation and rendering may run on different threads, see {@link GameLoop#setPipelineDepth(int)}. They
+ * only meet through snapshots: after each frame's ticks the simulation copies what rendering needs into a
+ * snapshot, and the frame is then rendered from the snapshot alone while the simulation moves on. Snapshots
+ * are created up front and reused, and each is only ever touched by one thread at a time.
+ *
+ * @param <S> Type of the frame snapshot.
+ */
+public interface Game<S> {
+
+    /**
+     * Advance the simulation by one fixed tick. Called zero or more times per rendered frame, on the
+     * simulation thread.
+     * @param tickSeconds Length of a tick in seconds. Always the same value.
+     */
+    void update(float tickSeconds);
+
+    /**
+     * @return A new, empty snapshot. Called on the render thread before the loop starts.
+     */
+    S createSnapshot();
+
+    /**
+     * Copy the state a frame is rendered from into the snapshot. Called on the simulation thread once the
+     * frame's ticks have run.
+     * @param alpha How far between the previous and the current simulation state the frame falls, in the
+     *              range [0, 1). Used to interpolate so motion looks smooth at any frame rate.
+     */
+    void writeSnapshot(S snapshot, float alpha);
+
+    /**
+     * Render a frame from a snapshot. Called on the render thread, which owns the OpenGL context. The snapshot
+     * is handed back to the simulation once this returns, so nothing may keep a reference to its contents.
+     */
+    void render(S snapshot);
+}
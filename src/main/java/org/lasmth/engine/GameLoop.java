@@ -0,0 +1,347 @@
+package org.lasmth.engine;
+
+import org.lasmth.engine.profiling.CpuScope;
+import org.lasmth.engine.profiling.Metric;
+import org.lasmth.engine.profiling.Profiler;
+import org.lasmth.windowmanager.FrameRateMode;
+import org.lasmth.windowmanager.Window;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link Game} with a fixed simulation tick, independent of the frame rate.
+ * <p>
+ * Real time is accumulated every frame and consumed in whole ticks, so the simulation advances at the same
+ * speed whether we render at 30 or 300 frames per second. Whatever is left over (less than one tick) is
+ * passed to {@link Game#render(float)} so the frame can be interpolated between the last two states.
+ * <p>
+ * If a frame takes a long time (e.g. a breakpoint or a slow machine) we could need more ticks to catch up than
+ * we can afford, each making the next frame slower still: the 'spiral of death'. To avoid this the time
+ * counted per frame and the ticks run per frame are both capped, and any backlog beyond that is dropped, i.e.
+ * the simulation slows down instead.
+ * <p>
+ * By default the simulation runs on the calling thread between frames. With a pipeline depth of 1 or more
+ * (see {@link #setPipelineDepth(int)}) it gets a thread of its own, and the calling thread, which must own the
+ * OpenGL context, only renders. The two swap {@link Game} snapshots through a pair of queues, so the
+ * simulation can work on the next frames while the current one is drawn.
+ */
+public class GameLoop<S> {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    // Sleeping is not precise, so we stop sleeping this long before a frame is due and spin the rest.
+    private static final long SPIN_NANOS = 1_000_000;
+    // How often the render thread stops waiting for a snapshot to check whether it should quit.
+    private static final long SNAPSHOT_POLL_MILLIS = 100;
+
+    private final Window window;
+    private final Game<S> game;
+    private final long tickNanos;
+    private final float tickSeconds;
+
+    private int maxTicksPerFrame = 5;
+    private long maxFrameNanos = 250_000_000;
+    private int pipelineDepth;
+
+    private Profiler profiler;
+    private Metric updateMetric;
+    private Metric snapshotMetric;
+    private Metric simulationWaitMetric;
+    private Metric snapshotWaitMetric;
+    private CpuScope renderScope;
+    private CpuScope swapScope;
+
+    // Simulation clock. Only touched by whichever thread runs the simulation.
+    private long accumulator;
+    private long previousTime;
+
+    // Snapshots waiting to be written by the simulation and waiting to be rendered. Null when single threaded.
+    private BlockingQueue<Frame<S>> freeFrames;
+    private BlockingQueue<Frame<S>> readyFrames;
+    private volatile Throwable simulationFailure;
+
+    private volatile long droppedTicks;
+    private volatile boolean running;
+
+    /**
+     * @param ticksPerSecond Rate at which the simulation is updated.
+     */
+    public GameLoop(Window window, Game<S> game, int ticksPerSecond) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("Ticks per second must be positive, got " + ticksPerSecond);
+        }
+        this.window = window;
+        this.game = game;
+        this.tickNanos = (long) (NANOS_PER_SECOND / ticksPerSecond);
+        this.tickSeconds = (float) (tickNanos / NANOS_PER_SECOND);
+    }
+
+    /**
+     * @param maxTicksPerFrame Most ticks to run before rendering a frame. Any further backlog is dropped.
+     */
+    public void setMaxTicksPerFrame(int maxTicksPerFrame) {
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    /**
+     * @param maxFrameSeconds Longest frame time which is accounted for. Longer frames are clamped to this.
+     */
+    public void setMaxFrameTime(float maxFrameSeconds) {
+        this.maxFrameNanos = (long) (maxFrameSeconds * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Choose how many frames the simulation may run ahead of rendering. 0 runs both on the thread calling
+     * {@link #run()}, one after the other. 1 or more runs the simulation on its own thread: with 1 it
+     * simulates frame N + 1 while frame N is rendered, and every extra frame of depth absorbs more variation
+     * in either thread's frame times, at the cost of another frame of input latency. Must be set before
+     * {@link #run()}.
+     */
+    public void setPipelineDepth(int pipelineDepth) {
+        if (pipelineDepth < 0) {
+            throw new IllegalArgumentException("Pipeline depth cannot be negative, got " + pipelineDepth);
+        }
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    /**
+     * Time each frame's update, snapshot, render and buffer swap phases with the given profiler, along with
+     * the time either thread spends waiting for the other. The loop also begins and ends the profiler's frames.
+     * <p>
+     * The profiler is only ever used from the render thread. Simulation timings are carried over in the
+     * snapshot's frame and recorded when it is rendered.
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+        this.updateMetric = profiler.metric("update", "ms");
+        this.snapshotMetric = profiler.metric("snapshot", "ms");
+        this.simulationWaitMetric = profiler.metric("simulation wait", "ms");
+        this.snapshotWaitMetric = profiler.metric("snapshot wait", "ms");
+        this.renderScope = profiler.cpuScope("render");
+        this.swapScope = profiler.cpuScope("swap");
+    }
+
+    /**
+     * @return Number of ticks skipped so far to stop the simulation falling further behind.
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    /**
+     * Ask the loop to exit after the current frame.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Run until the window is closed or {@link #stop()} is called. Rendering happens on the calling thread.
+     *
+     * @throws IllegalStateException If the simulation thread failed. The original exception is the cause.
+     */
+    public void run() {
+        running = true;
+        accumulator = 0;
+        previousTime = System.nanoTime();
+        if (pipelineDepth == 0) {
+            runSingleThreaded();
+        } else {
+            runPipelined();
+        }
+    }
+
+    private void runSingleThreaded() {
+        Frame<S> frame = new Frame<>(game.createSnapshot());
+        while (running && !window.windowShouldClose()) {
+            long frameStart = System.nanoTime();
+            if (profiler != null) {
+                profiler.beginFrame();
+            }
+            simulate(frame);
+            renderFrame(frame, frameStart, 0);
+        }
+    }
+
+    private void runPipelined() {
+        // One snapshot being rendered, and up to pipelineDepth more written or waiting.
+        int frames = pipelineDepth + 1;
+        freeFrames = new ArrayBlockingQueue<>(frames);
+        readyFrames = new ArrayBlockingQueue<>(frames);
+        for (int i = 0; i < frames; i++) {
+            freeFrames.add(new Frame<>(game.createSnapshot()));
+        }
+        simulationFailure = null;
+        Thread simulationThread = new Thread(this::simulationLoop, "simulation");
+        simulationThread.start();
+
+        try {
+            while (running && !window.windowShouldClose()) {
+                long frameStart = System.nanoTime();
+                if (profiler != null) {
+                    profiler.beginFrame();
+                }
+                Frame<S> frame = takeReadyFrame();
+                if (frame == null) {
+                    break;
+                }
+                renderFrame(frame, frameStart, System.nanoTime() - frameStart);
+            }
+        } finally {
+            running = false;
+            simulationThread.interrupt();
+            try {
+                simulationThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            freeFrames = null;
+            readyFrames = null;
+        }
+        if (simulationFailure != null) {
+            throw new IllegalStateException("Simulation thread failed", simulationFailure);
+        }
+    }
+
+    private void simulationLoop() {
+        try {
+            while (running) {
+                long waitStart = System.nanoTime();
+                Frame<S> frame = freeFrames.take();
+                frame.waitNanos = System.nanoTime() - waitStart;
+                simulate(frame);
+                readyFrames.add(frame);
+            }
+        } catch (InterruptedException e) {
+            // Interrupted by the render thread to stop.
+        } catch (RuntimeException | Error e) {
+            simulationFailure = e;
+            running = false;
+        }
+    }
+
+    /**
+     * @return The next snapshot to render, or null if the loop stopped while waiting for one.
+     */
+    private Frame<S> takeReadyFrame() {
+        try {
+            while (running) {
+                Frame<S> frame = readyFrames.poll(SNAPSHOT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (frame != null) {
+                    return frame;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+        return null;
+    }
+
+    /**
+     * Run the ticks due since the last frame and write the frame's snapshot.
+     */
+    private void simulate(Frame<S> frame) {
+        long frameStart = System.nanoTime();
+        long frameTime = Math.min(frameStart - previousTime, maxFrameNanos);
+        previousTime = frameStart;
+        accumulator += frameTime;
+
+        int ticks = 0;
+        while (accumulator >= tickNanos && ticks < maxTicksPerFrame) {
+            window.getInput().poll();
+            game.update(tickSeconds);
+            accumulator -= tickNanos;
+            ticks++;
+        }
+        if (accumulator >= tickNanos) {
+            droppedTicks += accumulator / tickNanos;
+            accumulator %= tickNanos;
+        }
+
+        long snapshotStart = System.nanoTime();
+        game.writeSnapshot(frame.snapshot, (float) accumulator / tickNanos);
+        frame.updateNanos = snapshotStart - frameStart;
+        frame.snapshotNanos = System.nanoTime() - snapshotStart;
+    }
+
+    private void renderFrame(Frame<S> frame, long frameStart, long snapshotWaitNanos) {
+        if (profiler != null && profiler.isEnabled()) {
+            updateMetric.add(frame.updateNanos / NANOS_PER_MILLI);
+            snapshotMetric.add(frame.snapshotNanos / NANOS_PER_MILLI);
+            simulationWaitMetric.add(frame.waitNanos / NANOS_PER_MILLI);
+            snapshotWaitMetric.add(snapshotWaitNanos / NANOS_PER_MILLI);
+        }
+
+        begin(renderScope);
+        game.render(frame.snapshot);
+        end(renderScope);
+        if (freeFrames != null) {
+            // Everything needed from the snapshot has been sent to the GPU, so the simulation can have it back
+            // before we wait on the swap.
+            freeFrames.add(frame);
+        }
+
+        begin(swapScope);
+        window.updateDisplay();
+        end(swapScope);
+
+        if (profiler != null) {
+            profiler.endFrame();
+        }
+
+        if (window.getFrameRateMode() == FrameRateMode.CAPPED) {
+            waitUntil(frameStart + (long) (NANOS_PER_SECOND / window.getTargetFps()));
+        }
+    }
+
+    private static void begin(CpuScope scope) {
+        if (scope != null) {
+            scope.begin();
+        }
+    }
+
+    private static void end(CpuScope scope) {
+        if (scope != null) {
+            scope.end();
+        }
+    }
+
+    private void waitUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > SPIN_NANOS) {
+            try {
+                Thread.sleep((remaining - SPIN_NANOS) / 1_000_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                return;
+            }
+        }
+        while (System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * A snapshot plus how long the simulation took to produce it, passed from thread to thread through the
+     * queues.
+     */
+    private static final class Frame<S> {
+        final S snapshot;
+        long updateNanos;
+        long snapshotNanos;
+        // Time the simulation waited for this frame to be free, i.e. for rendering to catch up.
+        long waitNanos;
+
+        Frame(S snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+}
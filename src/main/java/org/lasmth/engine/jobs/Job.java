@@ -0,0 +1,106 @@
+package org.lasmth.engine.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handle to work scheduled on a {@link JobSystem}. A job starts once every job it depends on has finished,
+ * and can in turn be depended on by later jobs, so systems can be chained into a graph without waiting on
+ * any of them in between.
+ */
+public final class Job {
+
+    private final JobSystem system;
+    private final Runnable work;
+    private final Task task = new Task();
+    // Dependencies still running, plus one held until scheduling is done so the job cannot start early.
+    private final AtomicInteger blockers;
+
+    // Guarded by this.
+    private List<Job> dependents;
+    private boolean finished;
+
+    Job(JobSystem system, Runnable work, Job[] dependencies) {
+        this.system = system;
+        this.work = work;
+        this.blockers = new AtomicInteger(dependencies.length + 1);
+        for (Job dependency : dependencies) {
+            if (!dependency.addDependent(this)) {
+                blockers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Let the job start once its dependencies are done. Called once, after the constructor.
+     */
+    void release() {
+        unblock();
+    }
+
+    /**
+     * @return True once the job has run, successfully or not.
+     */
+    public synchronized boolean isDone() {
+        return finished;
+    }
+
+    /**
+     * Block until the job has run. Called from a job, the worker helps with other work while it waits.
+     *
+     * @throws RuntimeException Whatever the job threw.
+     */
+    public void await() {
+        task.join();
+    }
+
+    private synchronized boolean addDependent(Job dependent) {
+        if (finished) {
+            return false;
+        }
+        if (dependents == null) {
+            dependents = new ArrayList<>(2);
+        }
+        dependents.add(dependent);
+        return true;
+    }
+
+    private void unblock() {
+        if (blockers.decrementAndGet() == 0) {
+            system.execute(task);
+        }
+    }
+
+    private void finish(Throwable failure) {
+        List<Job> toUnblock;
+        synchronized (this) {
+            finished = true;
+            toUnblock = dependents;
+            dependents = null;
+        }
+        // Dependents still run after a failure, so the graph drains. The failure is reported by the frame.
+        if (toUnblock != null) {
+            for (Job dependent : toUnblock) {
+                dependent.unblock();
+            }
+        }
+        system.jobFinished(failure);
+    }
+
+    private final class Task extends RecursiveAction {
+        @Override
+        protected void compute() {
+            Throwable failure = null;
+            try {
+                work.run();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                finish(failure);
+            }
+        }
+    }
+}
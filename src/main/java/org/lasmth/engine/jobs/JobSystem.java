@@ -0,0 +1,206 @@
+package org.lasmth.engine.jobs;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs engine work, e.g. transform updates or culling, in parallel on a fixed set of worker threads.
+ * <p>
+ * Built on a {@link ForkJoinPool}: every worker has its own lock-free deque and idle workers steal from the
+ * others, so uneven work balances itself. {@link #parallelFor(int, int, RangeJob)} splits a range in halves
+ * until the pieces are no bigger than the grain size, costing one small task per piece and nothing per
+ * index. {@link #schedule(Runnable, Job...)} queues work which runs once its dependencies have finished.
+ * <p>
+ * Scheduled jobs are counted per frame: {@link #endFrame()} is the fence which waits for all of them, so no
+ * job is left touching data the next frame is about to change. Run with -Djobs.workers=N to pick the number of
+ * workers of {@link #getInstance()}, one per core by default.
+ */
+public class JobSystem {
+
+    private static JobSystem instance;
+
+    private final ForkJoinPool pool;
+    // Jobs scheduled and not yet finished, and the first of them to fail.
+    private final AtomicInteger pendingJobs = new AtomicInteger();
+    private volatile Throwable failure;
+    private final Object frameLock = new Object();
+
+    /**
+     * @return Singleton instance, created on first use.
+     */
+    public static synchronized JobSystem getInstance() {
+        if (instance == null) {
+            instance = new JobSystem(Integer.getInteger("jobs.workers", Runtime.getRuntime().availableProcessors()));
+        }
+        return instance;
+    }
+
+    /**
+     * @param workers Number of worker threads. Daemon threads, so they do not keep the application alive.
+     */
+    public JobSystem(int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Need at least one worker, got " + workers);
+        }
+        AtomicInteger nextWorker = new AtomicInteger();
+        this.pool = new ForkJoinPool(workers, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("job-worker-" + nextWorker.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    public int getWorkerCount() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Run job over [0, count) in pieces of at most grainSize indices, and return once all of them are done.
+     * Called from within a job, the calling worker takes part rather than blocking.
+     *
+     * @param grainSize Smallest piece worth handing to another thread. Pieces should take a few microseconds
+     *                  at least, or scheduling costs more than it saves.
+     */
+    public void parallelFor(int count, int grainSize, RangeJob job) {
+        if (grainSize <= 0) {
+            throw new IllegalArgumentException("Grain size must be positive, got " + grainSize);
+        }
+        if (count <= 0) {
+            return;
+        }
+        if (count <= grainSize) {
+            // Not worth a hop to another thread.
+            job.run(0, count);
+            return;
+        }
+        RangeTask task = new RangeTask(job, 0, count, grainSize, null);
+        if (ForkJoinTask.getPool() == pool) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * Queue work to run once every one of the dependencies has finished.
+     *
+     * @return Handle to wait on or pass as a dependency of later jobs.
+     */
+    public Job schedule(Runnable work, Job... dependencies) {
+        pendingJobs.incrementAndGet();
+        Job scheduled = new Job(this, work, dependencies);
+        scheduled.release();
+        return scheduled;
+    }
+
+    /**
+     * Queue a {@link #parallelFor(int, int, RangeJob)} to run once every one of the dependencies has finished.
+     */
+    public Job scheduleParallelFor(int count, int grainSize, RangeJob job, Job... dependencies) {
+        return schedule(() -> parallelFor(count, grainSize, job), dependencies);
+    }
+
+    /**
+     * The per-frame fence: wait for every job scheduled so far to finish.
+     *
+     * @throws IllegalStateException If any of them threw. The first exception is the cause.
+     */
+    public void endFrame() {
+        synchronized (frameLock) {
+            while (pendingJobs.get() > 0) {
+                try {
+                    frameLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        Throwable failed = failure;
+        if (failed != null) {
+            failure = null;
+            throw new IllegalStateException("A job failed this frame", failed);
+        }
+    }
+
+    /**
+     * @return Number of scheduled jobs which have not finished yet.
+     */
+    public int getPendingJobs() {
+        return pendingJobs.get();
+    }
+
+    /**
+     * Stop the workers once the jobs already queued are done.
+     */
+    public void cleanUp() {
+        pool.shutdown();
+    }
+
+    void execute(ForkJoinTask<?> task) {
+        if (ForkJoinTask.getPool() == pool) {
+            // Onto this worker's own deque, where it is picked up next or stolen.
+            task.fork();
+        } else {
+            pool.execute(task);
+        }
+    }
+
+    void jobFinished(Throwable jobFailure) {
+        if (jobFailure != null && failure == null) {
+            failure = jobFailure;
+        }
+        if (pendingJobs.decrementAndGet() == 0) {
+            synchronized (frameLock) {
+                frameLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forks off the upper half of its range until what is left is within the grain size, runs that, then joins
+     * the forked halves, running any nobody has stolen itself.
+     */
+    private static final class RangeTask extends RecursiveAction {
+        private final RangeJob job;
+        private final int start;
+        private final int end;
+        private final int grainSize;
+        // Next half forked by the same parent, so they can be joined without a list.
+        private final RangeTask next;
+
+        RangeTask(RangeJob job, int start, int end, int grainSize, RangeTask next) {
+            this.job = job;
+            this.start = start;
+            this.end = end;
+            this.grainSize = grainSize;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute() {
+            int splitEnd = end;
+            RangeTask forked = null;
+            while (splitEnd - start > grainSize) {
+                int middle = (start + splitEnd) >>> 1;
+                forked = new RangeTask(job, middle, splitEnd, grainSize, forked);
+                forked.fork();
+                splitEnd = middle;
+            }
+            job.run(start, splitEnd);
+            // Joined newest first, which is the order they sit on our deque.
+            while (forked != null) {
+                if (forked.tryUnfork()) {
+                    forked.compute();
+                } else {
+                    forked.join();
+                }
+                forked = forked.next;
+            }
+        }
+    }
+}
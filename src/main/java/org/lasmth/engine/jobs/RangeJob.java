@@ -0,0 +1,15 @@
+package org.lasmth.engine.jobs;
+
+/**
+ * Work over a range of indices, e.g. entities, for {@link JobSystem#parallelFor(int, int, RangeJob)}.
+ * Called concurrently for disjoint ranges, so must only write state belonging to its own range.
+ */
+@FunctionalInterface
+public interface RangeJob {
+
+    /**
+     * @param start First index to process.
+     * @param end   One past the last index to process.
+     */
+    void run(int start, int end);
+}
@@ -0,0 +1,35 @@
+package org.lasmth.engine.profiling;
+
+/**
+ * Measures the CPU time spent between {@link #begin()} and {@link #end()}. A scope may be entered several
+ * times a frame; the times are summed into its {@link Metric} in milliseconds.
+ */
+public class CpuScope {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Metric metric;
+    private final Profiler profiler;
+    private long startTime;
+
+    CpuScope(Metric metric, Profiler profiler) {
+        this.metric = metric;
+        this.profiler = profiler;
+    }
+
+    public void begin() {
+        if (profiler.isEnabled()) {
+            startTime = System.nanoTime();
+        }
+    }
+
+    public void end() {
+        if (profiler.isEnabled()) {
+            metric.add((System.nanoTime() - startTime) / NANOS_PER_MILLI);
+        }
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+}
@@ -0,0 +1,15 @@
+package org.lasmth.engine.profiling;
+
+/**
+ * File formats the {@link Profiler} can periodically dump its metrics in.
+ */
+public enum DumpFormat {
+    /**
+     * One row per metric per dump, with a header row at the top of the file.
+     */
+    CSV,
+    /**
+     * One JSON object per dump, one per line (JSON Lines).
+     */
+    JSON
+}
@@ -0,0 +1,82 @@
+package org.lasmth.engine.profiling;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL33;
+
+/**
+ * Measures the GPU time taken by the commands issued between {@link #begin()} and {@link #end()} using
+ * GL_TIME_ELAPSED queries.
+ * <p>
+ * The GPU runs behind the CPU, so a query's result is only available a few frames after it was issued. Rather
+ * than stall waiting for it, each scope cycles through a small ring of queries and collects results once
+ * OpenGL reports them available. If every query is still pending the frame is simply not timed.
+ * <p>
+ * Only one GL_TIME_ELAPSED query may be active at once, so GPU scopes must not be nested or overlap.
+ */
+public class GpuScope {
+
+    private static final int QUERY_COUNT = 4;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Metric metric;
+    private final Profiler profiler;
+    private final int[] queries = new int[QUERY_COUNT];
+    // Queries are issued at head and collected from tail, in order.
+    private int head;
+    private int tail;
+    private int pending;
+    private boolean active;
+
+    GpuScope(Metric metric, Profiler profiler) {
+        this.metric = metric;
+        this.profiler = profiler;
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = GL15.glGenQueries();
+        }
+    }
+
+    public void begin() {
+        if (!profiler.isEnabled() || pending == QUERY_COUNT) {
+            return;
+        }
+        GL15.glBeginQuery(GL33.GL_TIME_ELAPSED, queries[head]);
+        active = true;
+    }
+
+    public void end() {
+        if (!active) {
+            return;
+        }
+        GL15.glEndQuery(GL33.GL_TIME_ELAPSED);
+        head = (head + 1) % QUERY_COUNT;
+        pending++;
+        active = false;
+    }
+
+    /**
+     * Collect the oldest result if the GPU has finished with it. At most one result is taken per frame so the
+     * metric receives one sample per frame.
+     */
+    void poll() {
+        if (pending == 0) {
+            return;
+        }
+        int query = queries[tail];
+        if (GL15.glGetQueryObjecti(query, GL15.GL_QUERY_RESULT_AVAILABLE) == 0) {
+            return;
+        }
+        metric.add(GL33.glGetQueryObjecti64(query, GL15.GL_QUERY_RESULT) / NANOS_PER_MILLI);
+        tail = (tail + 1) % QUERY_COUNT;
+        pending--;
+    }
+
+    void cleanUp() {
+        for (int query : queries) {
+            GL15.glDeleteQueries(query);
+        }
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+}
@@ -0,0 +1,61 @@
+package org.lasmth.engine.profiling;
+
+/**
+ * A named value tracked once per frame, e.g. the time spent in a scope or the number of draw calls. Values
+ * added during a frame are summed and the total is recorded into a {@link RollingHistogram} when the frame
+ * ends. Frames in which nothing was added are not recorded.
+ */
+public class Metric {
+
+    private final String name;
+    private final String unit;
+    private final RollingHistogram histogram;
+
+    private double frameValue;
+    private boolean touched;
+
+    Metric(String name, String unit, int windowSize) {
+        this.name = name;
+        this.unit = unit;
+        this.histogram = new RollingHistogram(windowSize);
+    }
+
+    /**
+     * Add to this frame's value.
+     */
+    public void add(double value) {
+        frameValue += value;
+        touched = true;
+    }
+
+    /**
+     * Replace this frame's value.
+     */
+    public void set(double value) {
+        frameValue = value;
+        touched = true;
+    }
+
+    void commitFrame() {
+        if (touched) {
+            histogram.add(frameValue);
+            frameValue = 0;
+            touched = false;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Unit of the values, e.g. "ms".
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    public RollingHistogram getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,221 @@
+package org.lasmth.engine.profiling;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Collects per-frame timings and counters so we can see where frame time goes.
+ * <p>
+ * Scopes and metrics are created once up front by name and then reused every frame, so profiling itself does
+ * not allocate. Each metric keeps a rolling window of per-frame values which can be read programmatically or
+ * dumped to a CSV or JSON file every N frames to track regressions.
+ * <p>
+ * Usage: {@link #beginFrame()}, time phases with {@link CpuScope}/{@link GpuScope} and report counters
+ * through {@link Metric}s, then {@link #endFrame()}.
+ */
+public class Profiler {
+
+    /**
+     * Name of the built-in metric recording the time between successive calls to {@link #beginFrame()}.
+     */
+    public static final String FRAME_TIME = "frame";
+
+    private static final int DEFAULT_WINDOW_SIZE = 300;
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final int windowSize;
+    private final Map<String, Metric> metrics = new LinkedHashMap<>();
+    private final Map<String, CpuScope> cpuScopes = new LinkedHashMap<>();
+    private final Map<String, GpuScope> gpuScopes = new LinkedHashMap<>();
+    private final Metric frameTime;
+
+    private boolean enabled = true;
+    private long frameStart;
+    private long frameNumber;
+
+    private BufferedWriter dumpWriter;
+    private DumpFormat dumpFormat;
+    private int dumpInterval;
+
+    public Profiler() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize Number of frames the percentiles are computed over.
+     */
+    public Profiler(int windowSize) {
+        this.windowSize = windowSize;
+        this.frameTime = metric(FRAME_TIME, "ms");
+    }
+
+    /**
+     * @return The metric with the given name, created if it does not exist yet.
+     */
+    public Metric metric(String name, String unit) {
+        return metrics.computeIfAbsent(name, key -> new Metric(key, unit, windowSize));
+    }
+
+    /**
+     * @return CPU timing scope with the given name, created if it does not exist yet. Its metric has the
+     * same name.
+     */
+    public CpuScope cpuScope(String name) {
+        return cpuScopes.computeIfAbsent(name, key -> new CpuScope(metric(key, "ms"), this));
+    }
+
+    /**
+     * @return GPU timing scope with the given name, created if it does not exist yet. Its metric is named
+     * "[name] gpu". Requires a current OpenGL context.
+     */
+    public GpuScope gpuScope(String name) {
+        return gpuScopes.computeIfAbsent(name, key -> new GpuScope(metric(key + " gpu", "ms"), this));
+    }
+
+    /**
+     * @return Every metric, in the order they were created.
+     */
+    public List<Metric> getMetrics() {
+        return Collections.unmodifiableList(new ArrayList<>(metrics.values()));
+    }
+
+    public Metric getFrameTime() {
+        return frameTime;
+    }
+
+    /**
+     * Turn timing on or off. While disabled, scopes cost next to nothing and record nothing.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void beginFrame() {
+        long now = System.nanoTime();
+        if (enabled && frameStart != 0) {
+            frameTime.set((now - frameStart) / NANOS_PER_MILLI);
+        }
+        frameStart = now;
+    }
+
+    /**
+     * Record this frame's values into the rolling windows, collect any finished GPU timings and write a dump
+     * if one is due.
+     */
+    public void endFrame() {
+        if (!enabled) {
+            return;
+        }
+
+        for (GpuScope scope : gpuScopes.values()) {
+            scope.poll();
+        }
+        for (Metric metric : metrics.values()) {
+            metric.commitFrame();
+        }
+
+        frameNumber++;
+        if (dumpWriter != null && frameNumber % dumpInterval == 0) {
+            dump();
+        }
+    }
+
+    /**
+     * Start writing the metric percentiles to a file every intervalFrames frames. Replaces any existing file.
+     */
+    public void enableDump(Path file, DumpFormat format, int intervalFrames) throws IOException {
+        closeDump();
+        dumpWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        dumpFormat = format;
+        dumpInterval = Math.max(1, intervalFrames);
+        if (format == DumpFormat.CSV) {
+            dumpWriter.write("frame,metric,unit,p50,p95,p99,mean,max");
+            dumpWriter.newLine();
+        }
+    }
+
+    /**
+     * Flush and close the dump file and free the GPU queries. Should be called on finalization.
+     */
+    public void cleanUp() {
+        closeDump();
+        for (GpuScope scope : gpuScopes.values()) {
+            scope.cleanUp();
+        }
+    }
+
+    private void dump() {
+        try {
+            if (dumpFormat == DumpFormat.CSV) {
+                writeCsv();
+            } else {
+                writeJson();
+            }
+            dumpWriter.flush();
+        } catch (IOException e) {
+            System.err.println("Could not write profiler dump, disabling it.");
+            e.printStackTrace();
+            closeDump();
+        }
+    }
+
+    private void writeCsv() throws IOException {
+        for (Metric metric : metrics.values()) {
+            RollingHistogram histogram = metric.getHistogram();
+            dumpWriter.write(String.format(Locale.ROOT, "%d,%s,%s,%.4f,%.4f,%.4f,%.4f,%.4f", frameNumber,
+                    metric.getName(), metric.getUnit(), histogram.getPercentile(0.5), histogram.getPercentile(0.95),
+                    histogram.getPercentile(0.99), histogram.getMean(), histogram.getMax()));
+            dumpWriter.newLine();
+        }
+    }
+
+    private void writeJson() throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"frame\":").append(frameNumber).append(",\"metrics\":{");
+        boolean first = true;
+        for (Metric metric : metrics.values()) {
+            RollingHistogram histogram = metric.getHistogram();
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append(String.format(Locale.ROOT,
+                    "\"%s\":{\"unit\":\"%s\",\"p50\":%.4f,\"p95\":%.4f,\"p99\":%.4f,\"mean\":%.4f,\"max\":%.4f}",
+                    escapeJson(metric.getName()), escapeJson(metric.getUnit()), histogram.getPercentile(0.5),
+                    histogram.getPercentile(0.95), histogram.getPercentile(0.99), histogram.getMean(),
+                    histogram.getMax()));
+        }
+        json.append("}}");
+        dumpWriter.write(json.toString());
+        dumpWriter.newLine();
+    }
+
+    private static String escapeJson(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void closeDump() {
+        if (dumpWriter == null) {
+            return;
+        }
+        try {
+            dumpWriter.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        dumpWriter = null;
+    }
+}
@@ -0,0 +1,87 @@
+package org.lasmth.engine.profiling;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent N samples of a value so we can report percentiles over a rolling window. Adding a
+ * sample never allocates; the statistics are computed on demand.
+ */
+public class RollingHistogram {
+
+    private final double[] samples;
+    // Scratch space for sorting when computing percentiles, so the sample order is kept.
+    private final double[] sorted;
+    private int next;
+    private int count;
+    private boolean sortedValid;
+
+    /**
+     * @param windowSize Number of most recent samples to keep.
+     */
+    public RollingHistogram(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive, got " + windowSize);
+        }
+        samples = new double[windowSize];
+        sorted = new double[windowSize];
+    }
+
+    public void add(double sample) {
+        samples[next] = sample;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        sortedValid = false;
+    }
+
+    /**
+     * @return Number of samples currently in the window.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The most recently added sample, or 0 if there are none.
+     */
+    public double getLatest() {
+        if (count == 0) {
+            return 0;
+        }
+        return samples[(next - 1 + samples.length) % samples.length];
+    }
+
+    /**
+     * @param percentile In the range [0, 1], e.g. 0.95 for the 95th percentile.
+     * @return The sample at the given percentile (nearest rank), or 0 if there are no samples.
+     */
+    public double getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sortedValid) {
+            System.arraycopy(samples, 0, sorted, 0, count);
+            Arrays.sort(sorted, 0, count);
+            sortedValid = true;
+        }
+        int rank = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+    public double getMean() {
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += samples[i];
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public double getMax() {
+        return count == 0 ? 0 : getPercentile(1);
+    }
+
+    public void clear() {
+        next = 0;
+        count = 0;
+        sortedValid = false;
+    }
+}
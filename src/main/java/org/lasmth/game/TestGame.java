@@ -1,23 +1,115 @@
 package org.lasmth.game;
 
 import org.joml.Vector3f;
+import org.lasmth.engine.Game;
+import org.lasmth.engine.GameLoop;
+import org.lasmth.engine.jobs.JobSystem;
+import org.lasmth.engine.profiling.CpuScope;
+import org.lasmth.engine.profiling.DumpFormat;
+import org.lasmth.engine.profiling.GpuScope;
+import org.lasmth.engine.profiling.Metric;
+import org.lasmth.engine.profiling.Profiler;
+import org.lasmth.graphics.AsyncLoader;
+import org.lasmth.graphics.InstancedRenderer;
 import org.lasmth.graphics.Loader;
+import org.lasmth.graphics.MultiDrawRenderer;
+import org.lasmth.graphics.RenderStats;
+import org.lasmth.graphics.StateCachingRenderDevice;
+import org.lasmth.graphics.StreamingBuffer;
 import org.lasmth.graphics.entities.Camera;
 import org.lasmth.graphics.entities.Entity;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.lod.LodSelector;
+import org.lasmth.graphics.memory.NativeMemory;
+import org.lasmth.graphics.models.MeshData;
 import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.models.VertexLayout;
 import org.lasmth.graphics.Renderer;
+import org.lasmth.graphics.shaders.ShaderProgram;
+import org.lasmth.graphics.shaders.staticshader.InstancedStaticShader;
+import org.lasmth.graphics.shaders.staticshader.MultiDrawStaticShader;
 import org.lasmth.graphics.shaders.staticshader.StaticShader;
 import org.lasmth.graphics.models.TexturedModel;
 import org.lasmth.windowmanager.Window;
+import org.lwjgl.glfw.GLFW;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+public class TestGame implements Game<FrameSnapshot> {
+    private static final int TICKS_PER_SECOND = 60;
+    // Set to a .csv or .json path to periodically dump the profiler's metrics.
+    private static final String PROFILER_DUMP_PROPERTY = "profiler.dump";
+    private static final int PROFILER_DUMP_INTERVAL = 300;
+    // -Dwindow.headless=true renders off-screen for -Dheadless.frames frames, then saves the last one to
+    // -Dheadless.output if set. -Dwindow.width and -Dwindow.height set the resolution in either mode.
+    private static final String HEADLESS_PROPERTY = "window.headless";
+    private static final String HEADLESS_FRAMES_PROPERTY = "headless.frames";
+    private static final String HEADLESS_OUTPUT_PROPERTY = "headless.output";
+    private static final int DEFAULT_HEADLESS_FRAMES = 600;
+    // Time each frame may spend uploading assets which finished loading in the background.
+    private static final long ASSET_UPLOAD_BUDGET_NANOS = 2_000_000;
+    // Models are pooled and drawn with multi-draw indirect wherever the context supports it, unless
+    // -Drender.multidraw=false.
+    private static final String MULTIDRAW_PROPERTY = "render.multidraw";
+    // Frames the simulation thread may run ahead of rendering. 0 runs everything on the main thread.
+    private static final String PIPELINE_DEPTH_PROPERTY = "pipeline.depth";
+    private static final int DEFAULT_PIPELINE_DEPTH = 1;
+    // Entities are drawn at the level of detail their size on screen calls for, unless -Drender.lod=false.
+    private static final String LOD_PROPERTY = "render.lod";
 
-public class TestGame {
     private final Window window = Window.getInstance();
     private final Loader loader = new Loader();
+    private final AsyncLoader asyncLoader = new AsyncLoader(loader);
     private final StaticShader staticShader = new StaticShader();
     private final Renderer renderer = new Renderer(staticShader);
+    private final InstancedStaticShader instancedShader = new InstancedStaticShader();
+    private final InstancedRenderer instancedRenderer = new InstancedRenderer(loader, staticShader, instancedShader);
+    // Null when multi-draw is off or unsupported.
+    private final MultiDrawStaticShader multiDrawShader = createMultiDrawShader();
+    private final MultiDrawRenderer multiDrawRenderer =
+            multiDrawShader != null ? new MultiDrawRenderer(multiDrawShader) : null;
     private final Camera camera = new Camera();
+    private final EntityStore entities = new EntityStore();
+    private final JobSystem jobs = JobSystem.getInstance();
+    private final LodSelector lodSelector = new LodSelector();
+
+    private final Profiler profiler = new Profiler();
+    private final CpuScope prepareScope = profiler.cpuScope("prepare");
+    private final CpuScope submitScope = profiler.cpuScope("submit");
+    private final GpuScope submitGpuScope = profiler.gpuScope("submit");
+    private final Metric drawCalls = profiler.metric("draw calls", "count");
+    private final Metric triangles = profiler.metric("triangles", "count");
+    private final Metric fullDetailTriangles = profiler.metric("triangles without lod", "count");
+    private final Metric visibleEntities = profiler.metric("visible", "count");
+    private final Metric culledEntities = profiler.metric("culled", "count");
+    private final Metric nativeMemory = profiler.metric("native memory", "KiB");
+    private final Metric nativeMemoryPeak = profiler.metric("native memory peak", "KiB");
+    private final Metric uniformUploads = profiler.metric("uniform uploads", "count");
+    private final Metric uniformSkips = profiler.metric("uniform skips", "count");
+    private final Metric stateCallsIssued = profiler.metric("gl state calls", "count");
+    private final Metric stateCallsElided = profiler.metric("gl state calls elided", "count");
+    private final Metric fenceWait = profiler.metric("fence wait", "ms");
+    private final Metric bytesStreamed = profiler.metric("bytes streamed", "KiB");
+    private final Metric assetQueue = profiler.metric("asset queue", "count");
+    private final Metric assetUpload = profiler.metric("asset upload", "ms");
+
+    private Entity entity;
+
+    // Simulation side. Used to toggle instancing once per key press rather than every tick the key is held,
+    // and handed to the render thread in the snapshot.
+    private boolean instancingKeyDown;
+    private boolean lodKeyDown;
+    private boolean instancingEnabled = instancedRenderer.isInstancingEnabled();
+    private final int headlessFrames = Integer.getInteger(HEADLESS_FRAMES_PROPERTY, DEFAULT_HEADLESS_FRAMES);
+    private int framesRendered;
 
     public static void main(String[] args) {
+        Window.configure(Integer.getInteger("window.width", 1280), Integer.getInteger("window.height", 720),
+                Boolean.getBoolean(HEADLESS_PROPERTY));
         new TestGame().run();
     }
 
@@ -101,33 +193,222 @@ public class TestGame {
 
 		};
 
-         RawModel rawModel = loader.loadToVAO(vertices, textureCoords, indices);
-         int textureId = loader.loadTexture("image.png");
+         MeshData cube = new MeshData(VertexLayout.POSITION_UV_COMPACT, indices, vertices, textureCoords);
+         RawModel rawModel = multiDrawRenderer != null ? loader.loadToPool(cube) : loader.loadToVAO(cube);
+         System.out.println(loader.getMemoryReport());
+         printShaderLinkTimes();
+         int textureId = asyncLoader.loadTextureAsync("image.png").getTextureId();
          TexturedModel texturedModel = new TexturedModel(rawModel, textureId);
-         Entity entity = new Entity(texturedModel, new Vector3f(0, 0, -1), 0, 0, 0, 1);
-
-        while (!window.windowShouldClose()) {
-            camera.move();
-            entity.increaseRotation(0.05f, 0.05f, 0.05f);
-            renderer.prepare();
-            staticShader.start();
-            staticShader.loadViewMatrix(camera);
-            renderer.render(entity, staticShader);
-            staticShader.stop();
-            iterateGameLoop();
-        }
+         entity = new Entity(entities, texturedModel, new Vector3f(0, 0, -1), 0, 0, 0, 1);
+
+        lodSelector.setEnabled(!"false".equals(System.getProperty(LOD_PROPERTY)));
+        enableProfilerDump();
+        GameLoop<FrameSnapshot> gameLoop = new GameLoop<>(window, this, TICKS_PER_SECOND);
+        gameLoop.setProfiler(profiler);
+        gameLoop.setPipelineDepth(Integer.getInteger(PIPELINE_DEPTH_PROPERTY, DEFAULT_PIPELINE_DEPTH));
+        gameLoop.run();
 
         finalization();
     }
 
+    private MultiDrawStaticShader createMultiDrawShader() {
+        if ("false".equals(System.getProperty(MULTIDRAW_PROPERTY))
+                || !MultiDrawRenderer.isSupported(StateCachingRenderDevice.getInstance())) {
+            return null;
+        }
+        return new MultiDrawStaticShader();
+    }
+
+    private List<ShaderProgram> shaders() {
+        List<ShaderProgram> shaders = new ArrayList<>(List.of(staticShader, instancedShader));
+        if (multiDrawShader != null) {
+            shaders.add(multiDrawShader);
+        }
+        return shaders;
+    }
+
+    /**
+     * Compare runs with -Dshader.cache=false to see what the program binary cache saves.
+     */
+    private void printShaderLinkTimes() {
+        for (ShaderProgram shader : shaders()) {
+            System.out.printf(Locale.ROOT, "%s linked in %.2f ms%s%n", shader.getClass().getSimpleName(),
+                    shader.getLinkNanos() / 1e6, shader.isLoadedFromCache() ? " (from binary cache)" : "");
+        }
+    }
+
+    @Override
+    public void update(float tickSeconds) {
+        entities.storePreviousState();
+        camera.storePreviousState();
+
+        camera.move();
+        entity.increaseRotation(0.05f, 0.05f, 0.05f);
+        toggleInstancing();
+        toggleLod();
+    }
+
+    @Override
+    public FrameSnapshot createSnapshot() {
+        return new FrameSnapshot();
+    }
+
+    @Override
+    public void writeSnapshot(FrameSnapshot snapshot, float alpha) {
+        snapshot.write(entities, camera, renderer.getProjectionMatrix(), alpha, jobs, lodSelector);
+        snapshot.instancingEnabled = instancingEnabled;
+        // Nothing the frame's jobs were given may change once the snapshot is handed over.
+        jobs.endFrame();
+    }
+
+    /**
+     * Only draws. Everything read here other than OpenGL state comes from the snapshot.
+     */
+    @Override
+    public void render(FrameSnapshot snapshot) {
+        asyncLoader.processUploads(ASSET_UPLOAD_BUDGET_NANOS);
+        assetQueue.set(asyncLoader.getQueueDepth());
+        assetUpload.set(asyncLoader.getLastUploadNanos() / 1_000_000.0);
+
+        prepareScope.begin();
+        renderer.prepare();
+        prepareScope.end();
+
+        submitScope.begin();
+        submitGpuScope.begin();
+        renderer.loadCamera(snapshot.camera);
+        int[] visible = snapshot.octree.getVisible();
+        RenderStats stats;
+        if (multiDrawRenderer != null) {
+            multiDrawRenderer.processEntities(snapshot.entities, visible, snapshot.visibleCount);
+            multiDrawRenderer.render();
+            stats = multiDrawRenderer.getStats();
+        } else {
+            instancedRenderer.setInstancingEnabled(snapshot.instancingEnabled);
+            instancedRenderer.processEntities(snapshot.entities, visible, snapshot.visibleCount);
+            instancedRenderer.render();
+            stats = instancedRenderer.getStats();
+        }
+        submitGpuScope.end();
+        submitScope.end();
+
+        drawCalls.set(stats.getDrawCalls());
+        triangles.set(stats.getTriangles());
+        fullDetailTriangles.set(snapshot.fullDetailTriangles);
+        visibleEntities.set(snapshot.octree.getVisibleCount());
+        culledEntities.set(snapshot.octree.getCulledCount());
+        nativeMemory.set(NativeMemory.getAllocatedBytes() / 1024.0);
+        nativeMemoryPeak.set(NativeMemory.getPeakBytes() / 1024.0);
+        recordUniformStats();
+        recordStateCacheStats();
+        recordStreamingStats();
+
+        framesRendered++;
+        if (window.isHeadless()) {
+            finishHeadlessRun();
+        }
+    }
+
+    private void recordUniformStats() {
+        long uploads = 0;
+        long skips = 0;
+        for (ShaderProgram shader : shaders()) {
+            uploads += shader.getUniformUploads();
+            skips += shader.getUniformSkips();
+            shader.resetUniformStats();
+        }
+        uniformUploads.set(uploads);
+        uniformSkips.set(skips);
+    }
+
+    /**
+     * Run with -Dgl.state.cache=false to compare against sending every call to the driver.
+     */
+    private void recordStateCacheStats() {
+        StateCachingRenderDevice device = StateCachingRenderDevice.getInstance();
+        stateCallsIssued.set(device.getIssuedCalls());
+        stateCallsElided.set(device.getElidedCalls());
+        device.resetStats();
+    }
+
+    /**
+     * Run with -Dstreaming.persistent=false to compare against uploading with glBufferSubData.
+     */
+    private void recordStreamingStats() {
+        if (multiDrawRenderer == null) {
+            return;
+        }
+        StreamingBuffer stream = multiDrawRenderer.getStreamingBuffer();
+        fenceWait.set(stream.getFenceWaitNanos() / 1_000_000.0);
+        bytesStreamed.set(stream.getBytesStreamed() / 1024.0);
+    }
+
+    /**
+     * Nobody can close a headless window, so stop after a fixed number of frames.
+     */
+    private void finishHeadlessRun() {
+        if (framesRendered < headlessFrames) {
+            return;
+        }
+        String output = System.getProperty(HEADLESS_OUTPUT_PROPERTY);
+        if (output != null) {
+            window.saveFrame(Path.of(output));
+        }
+        window.close();
+    }
+
+    private void enableProfilerDump() {
+        String dumpFile = System.getProperty(PROFILER_DUMP_PROPERTY);
+        if (dumpFile == null) {
+            return;
+        }
+        DumpFormat format = dumpFile.endsWith(".json") ? DumpFormat.JSON : DumpFormat.CSV;
+        try {
+            profiler.enableDump(Path.of(dumpFile), format, PROFILER_DUMP_INTERVAL);
+        } catch (IOException e) {
+            System.err.println("Could not open profiler dump file " + dumpFile);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Pressing I switches between instanced and batched rendering so the two can be compared. Runs on the
+     * simulation thread, so the renderer picks the change up from the next snapshot.
+     */
+    private void toggleInstancing() {
+        boolean keyDown = window.isKeyPressed(GLFW.GLFW_KEY_I);
+        if (keyDown && !instancingKeyDown) {
+            instancingEnabled = !instancingEnabled;
+        }
+        instancingKeyDown = keyDown;
+    }
+
+    /**
+     * Pressing L switches level of detail selection on and off, to compare the triangles drawn with and without
+     * it. Runs on the simulation thread, which owns the selector.
+     */
+    private void toggleLod() {
+        boolean keyDown = window.isKeyPressed(GLFW.GLFW_KEY_L);
+        if (keyDown && !lodKeyDown) {
+            lodSelector.setEnabled(!lodSelector.isEnabled());
+        }
+        lodKeyDown = keyDown;
+    }
+
     private void finalization() {
+        profiler.cleanUp();
+        instancedRenderer.cleanUp();
         staticShader.cleanUp();
+        instancedShader.cleanUp();
+        if (multiDrawRenderer != null) {
+            multiDrawRenderer.cleanUp();
+            multiDrawShader.cleanUp();
+        }
+        renderer.cleanUp();
+        asyncLoader.cleanUp();
+        jobs.cleanUp();
         window.destroyWindow();
         loader.cleanUp();
         window.stopGLFW();
     }
-
-    private void iterateGameLoop() {
-        window.updateDisplay();
-    }
 }
@@ -0,0 +1,95 @@
+package org.lasmth.graphics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Bakes every image in a directory into an {@link AssetPack}, each named by its path relative to the directory
+ * (e.g. "image.png"), so a game can load its textures from the pack instead of decoding them on every launch.
+ * <p>
+ * Run offline with {@code AssetBaker [source directory] [pack file]}, or call {@link #bakeIfStale} on startup to
+ * bake on the first run and whenever a source image changes.
+ */
+public class AssetBaker {
+
+    private static final String DEFAULT_SOURCE_DIRECTORY = "src/main/resources";
+    private static final String DEFAULT_PACK_FILE = "assets.pak";
+    private static final List<String> IMAGE_EXTENSIONS = List.of(".png", ".jpg", ".jpeg", ".bmp", ".tga");
+
+    public static void main(String[] args) throws IOException {
+        Path sourceDirectory = Path.of(args.length > 0 ? args[0] : DEFAULT_SOURCE_DIRECTORY);
+        Path packFile = Path.of(args.length > 1 ? args[1] : DEFAULT_PACK_FILE);
+        long start = System.nanoTime();
+        int assetCount = bake(sourceDirectory, packFile);
+        System.out.printf(Locale.ROOT, "Baked %d assets into %s in %.1f ms%n", assetCount, packFile,
+                (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Bake the images in a directory into a pack, replacing it.
+     * @return Number of assets baked.
+     * @throws IOException If an image could not be decoded or the pack could not be written.
+     */
+    public static int bake(Path sourceDirectory, Path packFile) throws IOException {
+        List<Path> images = findImages(sourceDirectory);
+        try (AssetPackWriter writer = new AssetPackWriter(packFile)) {
+            for (Path image : images) {
+                writer.addTexture(nameOf(sourceDirectory, image), image);
+            }
+            return writer.getAssetCount();
+        }
+    }
+
+    /**
+     * Bake the pack only if it does not exist yet or an image in the source directory is newer than it.
+     * @return True if the pack was baked.
+     */
+    public static boolean bakeIfStale(Path sourceDirectory, Path packFile) throws IOException {
+        if (Files.exists(packFile)) {
+            FileTime packTime = Files.getLastModifiedTime(packFile);
+            boolean stale = false;
+            for (Path image : findImages(sourceDirectory)) {
+                if (Files.getLastModifiedTime(image).compareTo(packTime) > 0) {
+                    stale = true;
+                    break;
+                }
+            }
+            if (!stale) {
+                return false;
+            }
+        }
+        bake(sourceDirectory, packFile);
+        return true;
+    }
+
+    private static List<Path> findImages(Path sourceDirectory) throws IOException {
+        try (Stream<Path> files = Files.walk(sourceDirectory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(AssetBaker::isImage)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static boolean isImage(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (fileName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Path of the file relative to the source directory, with '/' separators on every platform.
+     */
+    private static String nameOf(Path sourceDirectory, Path file) {
+        return sourceDirectory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+}
@@ -0,0 +1,255 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.models.BoundingBox;
+import org.lasmth.graphics.models.VertexAttribute;
+import org.lasmth.graphics.models.VertexFormat;
+import org.lasmth.graphics.models.VertexLayout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file of textures and meshes baked by {@link AssetPackWriter}, memory mapped so they can be handed to OpenGL
+ * straight from the file. Textures are stored as raw RGBA pixels and meshes as interleaved vertex data and
+ * indices, exactly as they are uploaded, so loading does no decoding and makes no copies. Load the assets with
+ * {@link Loader#loadTexture(AssetPack, String, TextureFilter)} and {@link Loader#loadToVAO(AssetPack, String)}.
+ * <p>
+ * File layout, all in the byte order of the machine which baked it:
+ * <pre>
+ * header:  int magic, int version, int entry count, int unused, long table offset, long table length
+ * data:    each texture's pixels and each mesh's vertex then index data, 16-byte aligned
+ * table:   one entry per asset, see {@link #readEntry}
+ * </pre>
+ */
+public class AssetPack implements AutoCloseable {
+
+    // "LPAK" when read in the byte order the pack was written in.
+    static final int MAGIC = 0x4B41504C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int ALIGNMENT = 16;
+    static final byte KIND_TEXTURE = 0;
+    static final byte KIND_MESH = 1;
+
+    private final Path path;
+    private MappedByteBuffer data;
+    private final Map<String, Texture> textures = new HashMap<>();
+    private final Map<String, Mesh> meshes = new HashMap<>();
+
+    private AssetPack(Path path, MappedByteBuffer data) {
+        this.path = path;
+        this.data = data;
+    }
+
+    /**
+     * Map a pack into memory and read its table of contents. The assets themselves are only read from disk
+     * once they are loaded.
+     * @throws IOException If the file could not be read, or is not a pack this version can load.
+     */
+    public static AssetPack open(Path path) throws IOException {
+        MappedByteBuffer data;
+        // The mapping stays valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Asset pack " + path + " is larger than 2 GiB");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.nativeOrder());
+
+        AssetPack pack = new AssetPack(path, data);
+        pack.readTable();
+        return pack;
+    }
+
+    public Set<String> getTextureNames() {
+        return Collections.unmodifiableSet(textures.keySet());
+    }
+
+    public Set<String> getMeshNames() {
+        return Collections.unmodifiableSet(meshes.keySet());
+    }
+
+    public boolean hasTexture(String name) {
+        return textures.containsKey(name);
+    }
+
+    public boolean hasMesh(String name) {
+        return meshes.containsKey(name);
+    }
+
+    /**
+     * @return Size of the pack file in bytes.
+     */
+    public long getSize() {
+        return mapped().capacity();
+    }
+
+    /**
+     * Stop using the pack. Assets already loaded from it are unaffected. The memory mapping itself is released
+     * once it is garbage collected.
+     */
+    @Override
+    public void close() {
+        data = null;
+    }
+
+    Texture getTexture(String name) {
+        Texture texture = textures.get(name);
+        if (texture == null) {
+            throw new IllegalArgumentException("No texture " + name + " in asset pack " + path);
+        }
+        return texture;
+    }
+
+    Mesh getMesh(String name) {
+        Mesh mesh = meshes.get(name);
+        if (mesh == null) {
+            throw new IllegalArgumentException("No mesh " + name + " in asset pack " + path);
+        }
+        return mesh;
+    }
+
+    /**
+     * @return View of part of the mapped file, backed directly by the mapping.
+     */
+    ByteBuffer slice(long offset, long length) {
+        return mapped().slice((int) offset, (int) length).order(ByteOrder.nativeOrder());
+    }
+
+    private MappedByteBuffer mapped() {
+        if (data == null) {
+            throw new IllegalStateException("Asset pack " + path + " has been closed");
+        }
+        return data;
+    }
+
+    private void readTable() throws IOException {
+        if (data.capacity() < HEADER_SIZE) {
+            throw new IOException(path + " is not an asset pack");
+        }
+        int magic = data.getInt(0);
+        if (magic == Integer.reverseBytes(MAGIC)) {
+            throw new IOException("Asset pack " + path + " was baked on a machine with a different byte order, "
+                    + "it needs baking again");
+        }
+        if (magic != MAGIC) {
+            throw new IOException(path + " is not an asset pack");
+        }
+        int version = data.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Asset pack " + path + " is version " + version + ", expected " + VERSION
+                    + ". It needs baking again");
+        }
+        int entryCount = data.getInt(8);
+        long tableOffset = data.getLong(16);
+        long tableLength = data.getLong(24);
+        if (tableOffset < HEADER_SIZE || tableOffset + tableLength > data.capacity()) {
+            throw new IOException("Asset pack " + path + " is truncated");
+        }
+
+        ByteBuffer table = slice(tableOffset, tableLength);
+        try {
+            for (int i = 0; i < entryCount; i++) {
+                readEntry(table);
+            }
+        } catch (RuntimeException e) {
+            // Buffer underflows, unknown vertex formats and the like all mean the table is corrupt.
+            throw new IOException("Asset pack " + path + " has a corrupt table of contents", e);
+        }
+    }
+
+    /**
+     * Each entry starts with a short name length, the UTF-8 name and a byte giving the kind of asset.
+     * <p>
+     * Textures follow with int width, int height, long pixel offset and long pixel length.
+     * <p>
+     * Meshes follow with int vertex count, int index count, int index type, six floats of bounds (min then
+     * max), a byte attribute count and a byte each of index, size and {@link VertexFormat} ordinal per attribute,
+     * then long vertex offset, long vertex length, long index offset and long index length.
+     */
+    private void readEntry(ByteBuffer table) throws IOException {
+        byte[] nameBytes = new byte[table.getShort() & 0xFFFF];
+        table.get(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+        byte kind = table.get();
+        if (kind == KIND_TEXTURE) {
+            Texture texture = new Texture(table.getInt(), table.getInt(), table.getLong(), table.getLong());
+            checkRange(name, texture.offset, texture.length);
+            textures.put(name, texture);
+        } else if (kind == KIND_MESH) {
+            int vertexCount = table.getInt();
+            int indexCount = table.getInt();
+            int indexType = table.getInt();
+            BoundingBox bounds = new BoundingBox(table.getFloat(), table.getFloat(), table.getFloat(),
+                    table.getFloat(), table.getFloat(), table.getFloat());
+            VertexAttribute[] attributes = new VertexAttribute[table.get()];
+            for (int i = 0; i < attributes.length; i++) {
+                attributes[i] = new VertexAttribute(table.get(), table.get(), VertexFormat.values()[table.get()]);
+            }
+            Mesh mesh = new Mesh(new VertexLayout(attributes), vertexCount, indexCount, indexType, bounds,
+                    table.getLong(), table.getLong(), table.getLong(), table.getLong());
+            checkRange(name, mesh.vertexOffset, mesh.vertexLength);
+            checkRange(name, mesh.indexOffset, mesh.indexLength);
+            meshes.put(name, mesh);
+        } else {
+            throw new IOException("Asset " + name + " in asset pack " + path + " is of unknown kind " + kind);
+        }
+    }
+
+    private void checkRange(String name, long offset, long length) throws IOException {
+        if (offset < HEADER_SIZE || length < 0 || offset + length > data.capacity()) {
+            throw new IOException("Asset " + name + " lies outside of asset pack " + path);
+        }
+    }
+
+    static class Texture {
+        final int width;
+        final int height;
+        final long offset;
+        final long length;
+
+        Texture(int width, int height, long offset, long length) {
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    static class Mesh {
+        final VertexLayout layout;
+        final int vertexCount;
+        final int indexCount;
+        final int indexType;
+        final BoundingBox bounds;
+        final long vertexOffset;
+        final long vertexLength;
+        final long indexOffset;
+        final long indexLength;
+
+        Mesh(VertexLayout layout, int vertexCount, int indexCount, int indexType, BoundingBox bounds,
+             long vertexOffset, long vertexLength, long indexOffset, long indexLength) {
+            this.layout = layout;
+            this.vertexCount = vertexCount;
+            this.indexCount = indexCount;
+            this.indexType = indexType;
+            this.bounds = bounds;
+            this.vertexOffset = vertexOffset;
+            this.vertexLength = vertexLength;
+            this.indexOffset = indexOffset;
+            this.indexLength = indexLength;
+        }
+    }
+}
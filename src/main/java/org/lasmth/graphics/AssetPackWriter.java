@@ -0,0 +1,273 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.models.BoundingBox;
+import org.lasmth.graphics.models.MeshData;
+import org.lasmth.graphics.models.VertexAttribute;
+import org.lasmth.graphics.models.VertexLayout;
+import org.lwjgl.opengl.GL11;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bakes textures and meshes into an {@link AssetPack}. Each asset is converted to the form it is uploaded in and
+ * written out as soon as it is added, so baking a large pack does not need it all in memory at once. The table
+ * of contents is written when the writer is closed, and the pack cannot be opened until then.
+ * <p>
+ * Needs no OpenGL context.
+ */
+public class AssetPackWriter implements AutoCloseable {
+
+    private final FileChannel channel;
+    private long position = AssetPack.HEADER_SIZE;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Set<String> textureNames = new HashSet<>();
+    private final Set<String> meshNames = new HashSet<>();
+
+    /**
+     * @param path File to write the pack to. Replaced if it already exists.
+     */
+    public AssetPackWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Decode an image and add its pixels to the pack.
+     * @param name Name to load the texture by.
+     * @param imageFile PNG, JPEG or other image format STB understands.
+     * @throws IOException If the image could not be decoded or the pack could not be written to.
+     */
+    public void addTexture(String name, Path imageFile) throws IOException {
+        DecodedImage image = DecodedImage.decode(imageFile.toString());
+        try {
+            addTexture(name, image.width, image.height, image.pixels);
+        } finally {
+            image.free();
+        }
+    }
+
+    /**
+     * @param pixels Tightly packed RGBA pixels, from the buffer's position to its limit.
+     */
+    public void addTexture(String name, int width, int height, ByteBuffer pixels) throws IOException {
+        if (pixels.remaining() != width * height * 4) {
+            throw new IllegalArgumentException("Texture " + name + " should have " + width * height * 4
+                    + " bytes of pixels, got " + pixels.remaining());
+        }
+        if (!textureNames.add(name)) {
+            throw new IllegalArgumentException("Texture " + name + " was already added");
+        }
+        long length = pixels.remaining();
+        long offset = write(pixels);
+        entries.add(new TextureEntry(name, width, height, offset, length));
+    }
+
+    /**
+     * Interleave a mesh in its layout and add it to the pack. Indices are stored as 16-bit values when they all
+     * fit, as {@link Loader} would.
+     * @param name Name to load the mesh by.
+     */
+    public void addMesh(String name, MeshData mesh) throws IOException {
+        if (!meshNames.add(name)) {
+            throw new IllegalArgumentException("Mesh " + name + " was already added");
+        }
+        VertexLayout layout = mesh.getLayout();
+        float[][] attributeData = mesh.getAttributeData();
+        int[] indices = mesh.getIndices();
+        int vertexCount = attributeData[0].length / layout.getAttributes().get(0).getSize();
+
+        ByteBuffer vertexData = ByteBuffer.allocate(vertexCount * layout.getStride()).order(ByteOrder.nativeOrder());
+        layout.interleave(attributeData, vertexCount, vertexData);
+        vertexData.flip();
+        long vertexLength = vertexData.remaining();
+        long vertexOffset = write(vertexData);
+
+        int indexType = Loader.indexTypeFor(indices);
+        ByteBuffer indexData = ByteBuffer.allocate(indices.length * Loader.indexSize(indexType))
+                .order(ByteOrder.nativeOrder());
+        for (int index : indices) {
+            if (indexType == GL11.GL_UNSIGNED_SHORT) {
+                indexData.putShort((short) index);
+            } else {
+                indexData.putInt(index);
+            }
+        }
+        indexData.flip();
+        long indexLength = indexData.remaining();
+        long indexOffset = write(indexData);
+
+        entries.add(new MeshEntry(name, layout, vertexCount, indices.length, indexType,
+                BoundingBox.fromPositions(attributeData[0]), vertexOffset, vertexLength, indexOffset, indexLength));
+    }
+
+    /**
+     * @return Number of textures and meshes added so far.
+     */
+    public int getAssetCount() {
+        return entries.size();
+    }
+
+    /**
+     * Write the table of contents and header, finishing the pack.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            int tableLength = 0;
+            for (Entry entry : entries) {
+                tableLength += entry.size();
+            }
+            ByteBuffer table = ByteBuffer.allocate(tableLength).order(ByteOrder.nativeOrder());
+            for (Entry entry : entries) {
+                entry.write(table);
+            }
+            table.flip();
+            long tableOffset = write(table);
+
+            ByteBuffer header = ByteBuffer.allocate(AssetPack.HEADER_SIZE).order(ByteOrder.nativeOrder());
+            header.putInt(AssetPack.MAGIC)
+                    .putInt(AssetPack.VERSION)
+                    .putInt(entries.size())
+                    .putInt(0)
+                    .putLong(tableOffset)
+                    .putLong(tableLength)
+                    .flip();
+            writeFully(header, 0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Append data to the pack at the next aligned position.
+     * @return Offset the data was written at.
+     */
+    private long write(ByteBuffer data) throws IOException {
+        long offset = (position + AssetPack.ALIGNMENT - 1) & -AssetPack.ALIGNMENT;
+        position = offset + data.remaining();
+        writeFully(data, offset);
+        return offset;
+    }
+
+    private void writeFully(ByteBuffer data, long offset) throws IOException {
+        while (data.hasRemaining()) {
+            offset += channel.write(data, offset);
+        }
+    }
+
+    private abstract static class Entry {
+        final byte[] name;
+
+        Entry(String name) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            if (this.name.length > 0xFFFF) {
+                throw new IllegalArgumentException("Asset name is too long: " + name);
+            }
+        }
+
+        /**
+         * @return Bytes the entry takes up in the table.
+         */
+        int size() {
+            return Short.BYTES + name.length + 1;
+        }
+
+        void write(ByteBuffer table) {
+            table.putShort((short) name.length).put(name);
+        }
+    }
+
+    private static class TextureEntry extends Entry {
+        final int width;
+        final int height;
+        final long offset;
+        final long length;
+
+        TextureEntry(String name, int width, int height, long offset, long length) {
+            super(name);
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        int size() {
+            return super.size() + 2 * Integer.BYTES + 2 * Long.BYTES;
+        }
+
+        @Override
+        void write(ByteBuffer table) {
+            super.write(table);
+            table.put(AssetPack.KIND_TEXTURE)
+                    .putInt(width)
+                    .putInt(height)
+                    .putLong(offset)
+                    .putLong(length);
+        }
+    }
+
+    private static class MeshEntry extends Entry {
+        final VertexLayout layout;
+        final int vertexCount;
+        final int indexCount;
+        final int indexType;
+        final BoundingBox bounds;
+        final long vertexOffset;
+        final long vertexLength;
+        final long indexOffset;
+        final long indexLength;
+
+        MeshEntry(String name, VertexLayout layout, int vertexCount, int indexCount, int indexType,
+                  BoundingBox bounds, long vertexOffset, long vertexLength, long indexOffset, long indexLength) {
+            super(name);
+            this.layout = layout;
+            this.vertexCount = vertexCount;
+            this.indexCount = indexCount;
+            this.indexType = indexType;
+            this.bounds = bounds;
+            this.vertexOffset = vertexOffset;
+            this.vertexLength = vertexLength;
+            this.indexOffset = indexOffset;
+            this.indexLength = indexLength;
+        }
+
+        @Override
+        int size() {
+            return super.size() + 3 * Integer.BYTES + 6 * Float.BYTES + 1 + 3 * layout.getAttributes().size()
+                    + 4 * Long.BYTES;
+        }
+
+        @Override
+        void write(ByteBuffer table) {
+            super.write(table);
+            table.put(AssetPack.KIND_MESH)
+                    .putInt(vertexCount)
+                    .putInt(indexCount)
+                    .putInt(indexType)
+                    .putFloat(bounds.getMinX()).putFloat(bounds.getMinY()).putFloat(bounds.getMinZ())
+                    .putFloat(bounds.getMaxX()).putFloat(bounds.getMaxY()).putFloat(bounds.getMaxZ());
+            List<VertexAttribute> attributes = layout.getAttributes();
+            table.put((byte) attributes.size());
+            for (VertexAttribute attribute : attributes) {
+                table.put((byte) attribute.getIndex())
+                        .put((byte) attribute.getSize())
+                        .put((byte) attribute.getFormat().ordinal());
+            }
+            table.putLong(vertexOffset)
+                    .putLong(vertexLength)
+                    .putLong(indexOffset)
+                    .putLong(indexLength);
+        }
+    }
+}
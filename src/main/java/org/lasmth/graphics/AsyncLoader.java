@@ -0,0 +1,322 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.models.MeshData;
+import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.models.TexturedModel;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads assets in the background so the render thread is never blocked reading files or decoding images.
+ * <p>
+ * Requests return straight away. Reading and decoding happen on virtual threads, and the results wait in a
+ * bounded queue until the GL thread uploads them in {@link #processUploads(long)}, which should be called once
+ * per frame with a time budget so a burst of finished assets cannot stall a frame. When the queue is full the
+ * background threads wait, which also caps how much decoded data sits in memory at once.
+ * <p>
+ * Requests and {@link #processUploads(long)} must be made on the thread owning the OpenGL context.
+ */
+public class AsyncLoader {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 16;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final Loader loader;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final BlockingQueue<Upload> uploads;
+
+    // Requests not yet uploaded, whether still decoding or waiting in the queue.
+    private final AtomicInteger pending = new AtomicInteger();
+    // Last texture requested for each file, handed out again while the loader's texture cache holds it.
+    private final Map<String, AsyncTexture> textures = new HashMap<>();
+    // Placeholders whose image has not been uploaded yet and which have not been deleted in the meantime. Only
+    // touched on the GL thread.
+    private final Set<Integer> awaitingUpload = new HashSet<>();
+
+    // Stats for the last call to processUploads.
+    private long lastUploadNanos;
+    private int lastUploadCount;
+
+    public AsyncLoader(Loader loader) {
+        this(loader, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param queueCapacity Most decoded assets which can wait for upload at once.
+     */
+    public AsyncLoader(Loader loader, int queueCapacity) {
+        this.loader = loader;
+        this.uploads = new ArrayBlockingQueue<>(queueCapacity);
+        // A deleted texture's ID may be handed out again, so its upload must never reach it.
+        loader.addTextureDeletionListener(awaitingUpload::remove);
+    }
+
+    /**
+     * Start loading a texture. Until it is ready the texture shows a placeholder. Goes through the loader's
+     * {@link TextureCache} like {@link Loader#loadTexture(String, TextureFilter)}, so a file which is already
+     * loaded, or being loaded, is not read again and shares its texture. Release it with
+     * {@link Loader#unloadTexture(int)}. If the texture is deleted before its image arrives, the image is dropped
+     * and the future cancelled.
+     * @param fileName Texture image file of format [file_name].[extension], in the resources directory.
+     */
+    public AsyncTexture loadTextureAsync(String fileName) {
+        TextureCache cache = loader.getTextureCache();
+        boolean cached = cache.contains(fileName, TextureFilter.NEAREST);
+        int textureId = cache.acquire(fileName, TextureFilter.NEAREST, loader::createPlaceholderTexture);
+        if (cached) {
+            AsyncTexture texture = textures.get(fileName);
+            if (texture == null || texture.getTextureId() != textureId) {
+                // Loaded by the loader itself, so already complete.
+                texture = new AsyncTexture(textureId);
+                texture.getFuture().complete(textureId);
+                textures.put(fileName, texture);
+            }
+            return texture;
+        }
+
+        AsyncTexture texture = new AsyncTexture(textureId);
+        if (cache.isEnabled()) {
+            textures.put(fileName, texture);
+        }
+        awaitingUpload.add(textureId);
+        String filePath = Loader.resourcePath(fileName);
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            DecodedImage image;
+            try {
+                image = DecodedImage.decode(filePath);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                fail(texture.getFuture(), e);
+                return;
+            }
+            enqueue(new TextureUpload(texture, image));
+        });
+        return texture;
+    }
+
+    /**
+     * Start loading a mesh.
+     * @param source Reads or generates the mesh data. Called on a background thread.
+     * @return Future completed on the GL thread with the uploaded model.
+     */
+    public CompletableFuture<RawModel> loadModelAsync(Callable<MeshData> source) {
+        CompletableFuture<RawModel> future = new CompletableFuture<>();
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            MeshData mesh;
+            try {
+                mesh = source.call();
+            } catch (Exception e) {
+                System.err.println("Could not load mesh: " + e.getMessage());
+                fail(future, e);
+                return;
+            }
+            enqueue(new MeshUpload(mesh, future));
+        });
+        return future;
+    }
+
+    /**
+     * Start importing a model file with {@link ModelImporter}. Its meshes and textures are uploaded together.
+     * @return Future completed on the GL thread with one textured model per mesh of the file.
+     */
+    public CompletableFuture<List<TexturedModel>> importModelAsync(Path file) {
+        CompletableFuture<List<TexturedModel>> future = new CompletableFuture<>();
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            ImportedModel model;
+            try {
+                model = ModelImporter.importModel(file);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                fail(future, e);
+                return;
+            }
+            enqueue(new ModelUpload(model, future));
+        });
+        return future;
+    }
+
+    /**
+     * Upload finished assets until the queue is empty or the budget is used up. At least one asset is uploaded
+     * if any are waiting, so loading always makes progress. Futures are completed from here, so anything chained
+     * onto them runs on the GL thread.
+     * @param budgetNanos Time to spend uploading.
+     * @return Number of assets uploaded.
+     */
+    public int processUploads(long budgetNanos) {
+        long start = System.nanoTime();
+        int count = 0;
+        Upload upload;
+        while ((count == 0 || System.nanoTime() - start < budgetNanos) && (upload = uploads.poll()) != null) {
+            upload.upload(loader);
+            pending.decrementAndGet();
+            count++;
+        }
+        lastUploadNanos = System.nanoTime() - start;
+        lastUploadCount = count;
+        return count;
+    }
+
+    /**
+     * @return Decoded assets waiting to be uploaded.
+     */
+    public int getQueueDepth() {
+        return uploads.size();
+    }
+
+    /**
+     * @return Requested assets not yet uploaded, including those still being decoded.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * @return Time spent in the last call to {@link #processUploads(long)}, in nanoseconds.
+     */
+    public long getLastUploadNanos() {
+        return lastUploadNanos;
+    }
+
+    /**
+     * @return Assets uploaded by the last call to {@link #processUploads(long)}.
+     */
+    public int getLastUploadCount() {
+        return lastUploadCount;
+    }
+
+    /**
+     * Stop the background threads and throw away anything not yet uploaded. Should be called on finalization,
+     * before the {@link Loader} is cleaned up.
+     */
+    public void cleanUp() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Asset loading threads did not stop in time.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Upload upload;
+        while ((upload = uploads.poll()) != null) {
+            upload.discard();
+        }
+    }
+
+    private void enqueue(Upload upload) {
+        try {
+            uploads.put(upload);
+        } catch (InterruptedException e) {
+            // Shutting down.
+            upload.discard();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fail(CompletableFuture<?> future, Exception cause) {
+        pending.decrementAndGet();
+        future.completeExceptionally(cause);
+    }
+
+    /**
+     * A decoded asset waiting for the GL thread.
+     */
+    private interface Upload {
+        void upload(Loader loader);
+
+        /**
+         * Free the asset's data without uploading it.
+         */
+        void discard();
+    }
+
+    private class TextureUpload implements Upload {
+        private final AsyncTexture texture;
+        private final DecodedImage image;
+
+        TextureUpload(AsyncTexture texture, DecodedImage image) {
+            this.texture = texture;
+            this.image = image;
+        }
+
+        @Override
+        public void upload(Loader loader) {
+            if (!awaitingUpload.remove(texture.getTextureId())) {
+                // Unloaded while decoding.
+                discard();
+                return;
+            }
+            try {
+                loader.uploadTexture(texture.getTextureId(), image.width, image.height, image.pixels,
+                        TextureFilter.NEAREST);
+            } finally {
+                image.free();
+            }
+            texture.getFuture().complete(texture.getTextureId());
+        }
+
+        @Override
+        public void discard() {
+            image.free();
+            texture.getFuture().cancel(false);
+        }
+    }
+
+    private static class MeshUpload implements Upload {
+        private final MeshData mesh;
+        private final CompletableFuture<RawModel> future;
+
+        MeshUpload(MeshData mesh, CompletableFuture<RawModel> future) {
+            this.mesh = mesh;
+            this.future = future;
+        }
+
+        @Override
+        public void upload(Loader loader) {
+            future.complete(loader.loadToVAO(mesh));
+        }
+
+        @Override
+        public void discard() {
+            future.cancel(false);
+        }
+    }
+
+    private static class ModelUpload implements Upload {
+        private final ImportedModel model;
+        private final CompletableFuture<List<TexturedModel>> future;
+
+        ModelUpload(ImportedModel model, CompletableFuture<List<TexturedModel>> future) {
+            this.model = model;
+            this.future = future;
+        }
+
+        @Override
+        public void upload(Loader loader) {
+            future.complete(loader.loadModel(model));
+        }
+
+        @Override
+        public void discard() {
+            model.free();
+            future.cancel(false);
+        }
+    }
+}
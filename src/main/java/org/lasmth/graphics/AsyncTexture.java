@@ -0,0 +1,36 @@
+package org.lasmth.graphics;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handle to a texture being loaded by an {@link AsyncLoader}. The texture ID is valid straight away and can be
+ * used for rendering; until loading finishes the texture holds a placeholder image.
+ */
+public class AsyncTexture {
+
+    private final int textureId;
+    private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+    AsyncTexture(int textureId) {
+        this.textureId = textureId;
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    /**
+     * @return True once the real image has been uploaded.
+     */
+    public boolean isLoaded() {
+        return future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    /**
+     * @return Future completed with the texture ID on the GL thread once the real image has been uploaded, or
+     * exceptionally if it could not be loaded, in which case the placeholder stays.
+     */
+    public CompletableFuture<Integer> getFuture() {
+        return future;
+    }
+}
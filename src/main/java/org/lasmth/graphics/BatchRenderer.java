@@ -0,0 +1,113 @@
+package org.lasmth.graphics;
+
+import org.joml.Matrix4f;
+import org.lasmth.graphics.entities.Entity;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.models.TexturedModel;
+import org.lasmth.graphics.shaders.staticshader.StaticShader;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Renders a whole frame's worth of entities at once. Entities are collected into batches by their
+ * {@link TexturedModel} and the batches are sorted by VAO and then texture, so each VAO and texture is bound
+ * once per frame rather than once per entity.
+ * <p>
+ * Usage: call {@link #processEntity(Entity)} / {@link #processEntities(EntityStore)} for everything to be
+ * drawn, then {@link #render()} once with the shader started.
+ */
+public class BatchRenderer {
+
+    private final StaticShader shader;
+    private final RenderDevice device;
+    private final RenderStats stats = new RenderStats();
+    private final EntityBatches batches = new EntityBatches();
+    private final TextureBinder textureBinder;
+
+    private final Matrix4f transformationMatrix = new Matrix4f();
+
+    public BatchRenderer(StaticShader shader) {
+        this(shader, StateCachingRenderDevice.getInstance());
+    }
+
+    /**
+     * @param device Device all of the renderer's OpenGL calls are made through.
+     */
+    public BatchRenderer(StaticShader shader, RenderDevice device) {
+        this.shader = shader;
+        this.device = device;
+        this.textureBinder = new TextureBinder(device);
+    }
+
+    /**
+     * Queue a single entity to be drawn this frame.
+     */
+    public void processEntity(Entity entity) {
+        batches.add(entity);
+    }
+
+    /**
+     * Queue every entity in the store to be drawn this frame.
+     */
+    public void processEntities(EntityStore entities) {
+        batches.addAll(entities);
+    }
+
+    /**
+     * Queue a subset of the entities in the store, e.g. those which survived culling.
+     * @param indices Indices of the entities to draw. Only the first count values are used.
+     */
+    public void processEntities(EntityStore entities, int[] indices, int count) {
+        batches.addAll(entities, indices, count);
+    }
+
+    /**
+     * Draw everything queued since the last call and empty the queue. The shader must already be started.
+     */
+    public void render() {
+        stats.reset();
+
+        int boundVao = 0;
+        textureBinder.reset();
+        for (EntityBatches.Batch batch : batches.sorted()) {
+            int vaoId = batch.model.getRawModel().getVaoID();
+            if (vaoId != boundVao) {
+                device.bindVertexArray(vaoId);
+                device.enableVertexAttribArray(0);
+                device.enableVertexAttribArray(1);
+                boundVao = vaoId;
+                stats.recordStateChange();
+            }
+
+            if (textureBinder.bind(batch.model, shader)) {
+                stats.recordStateChange();
+            }
+
+            RawModel rawModel = batch.model.getRawModel();
+            int vertexCount = rawModel.getVertexCount();
+            int indexType = rawModel.getIndexType();
+            // Offsets are only non-zero for models sharing their buffers, see PooledMesh.
+            long indexOffset = (long) rawModel.getFirstIndex() * Loader.indexSize(indexType);
+            int baseVertex = rawModel.getBaseVertex();
+            for (int i = 0; i < batch.size; i++) {
+                batch.stores[i].getTransformationMatrix(batch.indices[i], transformationMatrix);
+                shader.loadTransformationMatrix(transformationMatrix);
+                device.drawElementsBaseVertex(GL11.GL_TRIANGLES, vertexCount, indexType, indexOffset, baseVertex);
+                stats.recordDrawCall(vertexCount / 3);
+            }
+        }
+
+        // Attribute arrays are left enabled, as the state belongs to each VAO and they are used again next frame.
+        if (boundVao != 0) {
+            device.bindVertexArray(0);
+        }
+        batches.clear();
+    }
+
+    /**
+     * @return Counters for the most recent call to {@link #render()}.
+     */
+    public RenderStats getStats() {
+        return stats;
+    }
+}
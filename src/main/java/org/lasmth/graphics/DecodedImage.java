@@ -0,0 +1,58 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.memory.NativeMemory;
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * RGBA pixels decoded from an image file by STB, waiting to be uploaded to a texture. The pixels live in
+ * native memory owned by STB until {@link #free()} is called. Decoding needs no OpenGL context, so can be done
+ * on any thread.
+ */
+final class DecodedImage {
+
+    final int width;
+    final int height;
+    final ByteBuffer pixels;
+
+    private DecodedImage(int width, int height, ByteBuffer pixels) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    /**
+     * @param filePath Path of a PNG, JPEG or other image format STB understands.
+     * @throws IOException If the file could not be read or decoded.
+     */
+    static DecodedImage decode(String filePath) throws IOException {
+        // Buffers for holding the named values after being extracted in the decoding process. These live on
+        // LWJGL's thread local stack and are popped when the try block exits.
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer width = stack.mallocInt(1);
+            IntBuffer height = stack.mallocInt(1);
+            IntBuffer channels_in_file = stack.mallocInt(1);
+
+            // Notice the output into the given buffer arguments also.
+            // Desired channels in 4. We are expecting RGBA.
+            ByteBuffer pixels = STBImage.stbi_load(filePath, width, height, channels_in_file, 4);
+            if (pixels == null) {
+                throw new IOException("Loading of " + filePath + " failed. Reason: " + STBImage.stbi_failure_reason());
+            }
+            NativeMemory.recordAllocation(pixels.capacity());
+            return new DecodedImage(width.get(0), height.get(0), pixels);
+        }
+    }
+
+    /**
+     * Release the pixels. STB allocated them itself, so they have to be freed by it too.
+     */
+    void free() {
+        NativeMemory.recordFree(pixels.capacity());
+        STBImage.stbi_image_free(pixels);
+    }
+}
@@ -0,0 +1,110 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.entities.Entity;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.TexturedModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects a frame's entities into one batch per {@link TexturedModel}, ready for the renderers to draw.
+ * Entities are batched under the level of detail their store says to draw them at.
+ * Batches are kept between frames and just emptied, so steady state use does not allocate.
+ */
+class EntityBatches {
+
+    // Orders batches so that batches sharing a VAO, and then a texture and texture array layer, are drawn back
+    // to back.
+    private static final Comparator<Batch> STATE_ORDER = Comparator
+            .comparingInt((Batch batch) -> batch.model.getRawModel().getVaoID())
+            .thenComparingInt(batch -> batch.model.getTextureId())
+            .thenComparingInt(batch -> batch.model.getLayer());
+
+    private final Map<TexturedModel, Batch> batches = new IdentityHashMap<>();
+    private final List<Batch> activeBatches = new ArrayList<>();
+
+    void add(Entity entity) {
+        add(entity.getStore(), entity.getIndex());
+    }
+
+    void addAll(EntityStore entities) {
+        for (int i = 0; i < entities.size(); i++) {
+            add(entities, i);
+        }
+    }
+
+    void addAll(EntityStore entities, int[] indices, int count) {
+        for (int i = 0; i < count; i++) {
+            add(entities, indices[i]);
+        }
+    }
+
+    /**
+     * @return The non-empty batches, sorted by VAO and then texture.
+     */
+    List<Batch> sorted() {
+        activeBatches.sort(STATE_ORDER);
+        return activeBatches;
+    }
+
+    /**
+     * Empty every batch, ready for the next frame.
+     */
+    void clear() {
+        for (Batch batch : activeBatches) {
+            batch.clear();
+        }
+        activeBatches.clear();
+    }
+
+    /**
+     * Queue the entity under the level of detail it is to be drawn with, so each level is a batch of its own.
+     */
+    private void add(EntityStore entities, int index) {
+        TexturedModel model = entities.getModel(entities.getModelHandle(index));
+        batchFor(model.getLod(entities.getLodLevel(index))).add(entities, index);
+    }
+
+    private Batch batchFor(TexturedModel model) {
+        Batch batch = batches.computeIfAbsent(model, Batch::new);
+        if (batch.size == 0) {
+            activeBatches.add(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * All entities sharing one model, stored as (store, index) pairs so no Entity views need creating.
+     */
+    static class Batch {
+        final TexturedModel model;
+        EntityStore[] stores = new EntityStore[16];
+        int[] indices = new int[16];
+        int size;
+
+        private Batch(TexturedModel model) {
+            this.model = model;
+        }
+
+        private void add(EntityStore store, int index) {
+            if (size == indices.length) {
+                stores = Arrays.copyOf(stores, size * 2);
+                indices = Arrays.copyOf(indices, size * 2);
+            }
+            stores[size] = store;
+            indices[size] = index;
+            size++;
+        }
+
+        private void clear() {
+            // Drop store references so removed stores can be collected.
+            Arrays.fill(stores, 0, size, null);
+            size = 0;
+        }
+    }
+}
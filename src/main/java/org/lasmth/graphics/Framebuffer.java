@@ -0,0 +1,90 @@
+package org.lasmth.graphics;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Off-screen render target: an RGBA colour buffer and a depth buffer which can be drawn into instead of the
+ * window, and read back afterwards.
+ */
+public class Framebuffer {
+
+    private final int width;
+    private final int height;
+    private final int framebufferId;
+    private final int colourBufferId;
+    private final int depthBufferId;
+
+    /**
+     * Creates the framebuffer. Requires a current OpenGL context.
+     */
+    public Framebuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        framebufferId = GL30.glGenFramebuffers();
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebufferId);
+
+        colourBufferId = createRenderbuffer(GL11.GL_RGBA8, GL30.GL_COLOR_ATTACHMENT0);
+        depthBufferId = createRenderbuffer(GL30.GL_DEPTH24_STENCIL8, GL30.GL_DEPTH_STENCIL_ATTACHMENT);
+
+        int status = GL30.glCheckFramebufferStatus(GL30.GL_FRAMEBUFFER);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+        if (status != GL30.GL_FRAMEBUFFER_COMPLETE) {
+            cleanUp();
+            throw new IllegalStateException("Framebuffer is incomplete, status 0x" + Integer.toHexString(status));
+        }
+    }
+
+    /**
+     * Direct all drawing into this framebuffer until {@link #unbind()} is called.
+     */
+    public void bind() {
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebufferId);
+        GL11.glViewport(0, 0, width, height);
+    }
+
+    /**
+     * Go back to drawing into the window.
+     */
+    public void unbind() {
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+    }
+
+    /**
+     * Copy the colour buffer into dest as tightly packed RGBA bytes, bottom row first.
+     * @param dest Buffer with room for at least width * height * 4 bytes.
+     */
+    public void readPixels(ByteBuffer dest) {
+        if (dest.remaining() < width * height * 4) {
+            throw new IllegalArgumentException("Buffer too small for a " + width + "x" + height + " frame");
+        }
+        GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, framebufferId);
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+        GL11.glReadPixels(0, 0, width, height, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, dest);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void cleanUp() {
+        GL30.glDeleteRenderbuffers(colourBufferId);
+        GL30.glDeleteRenderbuffers(depthBufferId);
+        GL30.glDeleteFramebuffers(framebufferId);
+    }
+
+    private int createRenderbuffer(int internalFormat, int attachment) {
+        int renderbufferId = GL30.glGenRenderbuffers();
+        GL30.glBindRenderbuffer(GL30.GL_RENDERBUFFER, renderbufferId);
+        GL30.glRenderbufferStorage(GL30.GL_RENDERBUFFER, internalFormat, width, height);
+        GL30.glFramebufferRenderbuffer(GL30.GL_FRAMEBUFFER, attachment, GL30.GL_RENDERBUFFER, renderbufferId);
+        return renderbufferId;
+    }
+}
@@ -0,0 +1,92 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.models.MeshData;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A model file read into main memory by {@link ModelImporter}, waiting to be uploaded with
+ * {@link Loader#loadModel(ImportedModel)}. Holds one mesh per part of the model, along with the diffuse
+ * texture of each part's material, already decoded, and the levels of detail generated for the mesh.
+ * <p>
+ * The decoded textures live in native memory until the model is uploaded or {@link #free()} is called.
+ */
+public class ImportedModel {
+
+    private final Path file;
+    private final List<MeshData> meshes;
+    // Per mesh, its coarser levels of detail, finest first.
+    private final List<List<MeshData>> lods;
+    // Per mesh, index into textures of the mesh's texture, or -1 if it has none.
+    private final int[] textureIndices;
+    // Decoded textures, shared between meshes using the same image. Null where an image could not be decoded.
+    private final List<DecodedImage> textures;
+    private boolean freed;
+
+    ImportedModel(Path file, List<MeshData> meshes, List<List<MeshData>> lods, int[] textureIndices,
+                  List<DecodedImage> textures) {
+        this.file = file;
+        this.meshes = meshes;
+        this.lods = lods;
+        this.textureIndices = textureIndices;
+        this.textures = textures;
+    }
+
+    /**
+     * @return File the model was imported from.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    public List<MeshData> getMeshes() {
+        return meshes;
+    }
+
+    /**
+     * @return Coarser levels of detail of the mesh, finest first. Empty if none were generated.
+     */
+    public List<MeshData> getLods(int mesh) {
+        return lods.get(mesh);
+    }
+
+    /**
+     * @return Number of distinct textures the model's materials use.
+     */
+    public int getTextureCount() {
+        return textures.size();
+    }
+
+    /**
+     * Release the decoded textures without uploading them, e.g. if the model is no longer wanted.
+     */
+    public void free() {
+        if (freed) {
+            return;
+        }
+        freed = true;
+        for (DecodedImage texture : textures) {
+            if (texture != null) {
+                texture.free();
+            }
+        }
+    }
+
+    /**
+     * @return Index of the mesh's texture in {@link #getTexture(int)}, or -1 if it has none.
+     */
+    int getTextureIndex(int mesh) {
+        return textureIndices[mesh];
+    }
+
+    /**
+     * @return Decoded texture, or null if it could not be decoded.
+     */
+    DecodedImage getTexture(int index) {
+        if (freed) {
+            throw new IllegalStateException("Imported model " + file + " has already been freed");
+        }
+        return textures.get(index);
+    }
+}
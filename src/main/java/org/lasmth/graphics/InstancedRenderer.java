@@ -0,0 +1,245 @@
+package org.lasmth.graphics;
+
+import org.joml.Matrix4f;
+import org.lasmth.graphics.entities.Entity;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.memory.NativeMemory;
+import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.shaders.staticshader.InstancedStaticShader;
+import org.lasmth.graphics.shaders.staticshader.StaticShader;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Draws every copy of a model with a single instanced draw call. The transformation matrices of a batch are
+ * streamed into a per-model instance VBO and read by the {@link InstancedStaticShader} as a vertex attribute,
+ * replacing one uniform upload and one draw call per entity.
+ * <p>
+ * Instancing can be switched on and off at runtime to compare against the {@link BatchRenderer}, which is
+ * also used whenever the context does not support instancing (OpenGL 3.3 is needed for attribute divisors).
+ * Unlike the other renderers this one starts its shaders itself, as the shader depends on the path. The shader
+ * is left in use afterwards, so starting it again next frame costs nothing on a state caching device.
+ */
+public class InstancedRenderer {
+
+    private static final int MATRIX_SIZE = 16;
+    private static final int INITIAL_INSTANCE_CAPACITY = 256;
+    // Position and texture coordinates, followed by the four columns of the instance matrix.
+    private static final int ATTRIBUTE_COUNT = InstancedStaticShader.TRANSFORMATION_MATRIX_ATTRIBUTE + 4;
+
+    private final Loader loader;
+    private final RenderDevice device;
+    private final StaticShader staticShader;
+    private final InstancedStaticShader instancedShader;
+    private final BatchRenderer fallback;
+    private final boolean supported;
+
+    private final RenderStats stats = new RenderStats();
+    private RenderStats lastFrameStats = stats;
+    private final EntityBatches batches = new EntityBatches();
+    private final TextureBinder textureBinder;
+
+    // Instance VBO of each model, created the first time the model is drawn instanced.
+    private final Map<RawModel, Integer> instanceVbos = new IdentityHashMap<>();
+    private final Map<RawModel, Integer> instanceVboCapacities = new IdentityHashMap<>();
+
+    // Staging buffer for a batch's matrices, and the native memory backing it. Grows to fit the largest batch
+    // seen.
+    private ByteBuffer instanceStorage = NativeMemory.allocate(INITIAL_INSTANCE_CAPACITY * MATRIX_SIZE * Float.BYTES);
+    private FloatBuffer instanceData = instanceStorage.asFloatBuffer();
+    private final Matrix4f transformationMatrix = new Matrix4f();
+
+    private boolean instancingEnabled;
+    // Applied at the end of a frame so entities are never split between the two paths.
+    private boolean instancingRequested;
+
+    /**
+     * Both shaders read the camera from the per-frame uniform buffer, see {@link Renderer#loadCamera}.
+     */
+    public InstancedRenderer(Loader loader, StaticShader staticShader, InstancedStaticShader instancedShader) {
+        this(loader, staticShader, instancedShader, StateCachingRenderDevice.getInstance());
+    }
+
+    /**
+     * @param device Device all of the renderer's OpenGL calls are made through.
+     */
+    public InstancedRenderer(Loader loader, StaticShader staticShader, InstancedStaticShader instancedShader,
+                             RenderDevice device) {
+        this.loader = loader;
+        this.device = device;
+        this.staticShader = staticShader;
+        this.instancedShader = instancedShader;
+        this.fallback = new BatchRenderer(staticShader, device);
+        this.textureBinder = new TextureBinder(device);
+        this.supported = device.supportsOpenGL(3, 3);
+        this.instancingEnabled = supported;
+        this.instancingRequested = supported;
+
+        instancedShader.start();
+        instancedShader.connectTextureUnits();
+        instancedShader.stop();
+    }
+
+    /**
+     * @return True if the current OpenGL context can render instanced.
+     */
+    public boolean isInstancingSupported() {
+        return supported;
+    }
+
+    /**
+     * Request instanced rendering on or off. Takes effect from the next frame, and requests to enable it are
+     * ignored if it is not supported.
+     */
+    public void setInstancingEnabled(boolean enabled) {
+        instancingRequested = enabled && supported;
+    }
+
+    /**
+     * @return True if the current frame is being rendered instanced.
+     */
+    public boolean isInstancingEnabled() {
+        return instancingEnabled;
+    }
+
+    public void processEntity(Entity entity) {
+        if (instancingEnabled) {
+            batches.add(entity);
+        } else {
+            fallback.processEntity(entity);
+        }
+    }
+
+    public void processEntities(EntityStore entities) {
+        if (instancingEnabled) {
+            batches.addAll(entities);
+        } else {
+            fallback.processEntities(entities);
+        }
+    }
+
+    /**
+     * Queue a subset of the entities in the store, e.g. those which survived culling.
+     * @param indices Indices of the entities to draw. Only the first count values are used.
+     */
+    public void processEntities(EntityStore entities, int[] indices, int count) {
+        if (instancingEnabled) {
+            batches.addAll(entities, indices, count);
+        } else {
+            fallback.processEntities(entities, indices, count);
+        }
+    }
+
+    /**
+     * Draw everything queued since the last call and empty the queue.
+     */
+    public void render() {
+        if (instancingEnabled) {
+            instancedShader.start();
+            renderInstanced();
+            lastFrameStats = stats;
+        } else {
+            staticShader.start();
+            fallback.render();
+            lastFrameStats = fallback.getStats();
+        }
+        instancingEnabled = instancingRequested;
+    }
+
+    /**
+     * @return Counters for the most recent call to {@link #render()}, whichever path it took.
+     */
+    public RenderStats getStats() {
+        return lastFrameStats;
+    }
+
+    /**
+     * Free the instance staging buffer. The instance VBOs belong to the {@link Loader} and are deleted with it.
+     */
+    public void cleanUp() {
+        NativeMemory.free(instanceStorage);
+        instanceStorage = null;
+        instanceData = null;
+    }
+
+    private void renderInstanced() {
+        stats.reset();
+
+        textureBinder.reset();
+        for (EntityBatches.Batch batch : batches.sorted()) {
+            RawModel rawModel = batch.model.getRawModel();
+            int vboId = prepareInstanceVbo(rawModel, batch.size);
+            uploadInstanceData(batch, vboId);
+
+            device.bindVertexArray(rawModel.getVaoID());
+            for (int attribute = 0; attribute < ATTRIBUTE_COUNT; attribute++) {
+                device.enableVertexAttribArray(attribute);
+            }
+            stats.recordStateChange();
+
+            if (textureBinder.bind(batch.model, instancedShader)) {
+                stats.recordStateChange();
+            }
+
+            device.drawElementsInstanced(GL11.GL_TRIANGLES, rawModel.getVertexCount(), rawModel.getIndexType(), 0,
+                    batch.size);
+            stats.recordDrawCall((long) rawModel.getVertexCount() / 3 * batch.size);
+        }
+        // Attribute arrays are left enabled on each VAO, so next frame's enables are dropped by a state caching
+        // device. Leaving the instance matrix enabled is harmless to the static shader, which does not read it.
+        device.bindVertexArray(0);
+        batches.clear();
+    }
+
+    /**
+     * Make sure the model has an instance VBO big enough for the given number of instances.
+     * @return ID of the model's instance VBO.
+     */
+    private int prepareInstanceVbo(RawModel rawModel, int instanceCount) {
+        Integer vboId = instanceVbos.get(rawModel);
+        if (vboId == null) {
+            if (rawModel instanceof PooledMesh) {
+                // Its VAO is shared, so has no room for a per-model instance attribute.
+                throw new IllegalArgumentException("Pooled meshes cannot be drawn instanced, use MultiDrawRenderer");
+            }
+            int capacity = Math.max(INITIAL_INSTANCE_CAPACITY, instanceCount);
+            vboId = loader.createStreamingVbo(capacity * MATRIX_SIZE);
+            loader.addInstancedMatrixAttribute(rawModel, vboId,
+                    InstancedStaticShader.TRANSFORMATION_MATRIX_ATTRIBUTE);
+            instanceVbos.put(rawModel, vboId);
+            instanceVboCapacities.put(rawModel, capacity);
+        } else if (instanceVboCapacities.get(rawModel) < instanceCount) {
+            // Growing is done by the orphaning upload below, just remember the new size.
+            instanceVboCapacities.put(rawModel, instanceCount);
+        }
+        return vboId;
+    }
+
+    private void uploadInstanceData(EntityBatches.Batch batch, int vboId) {
+        int floatCount = batch.size * MATRIX_SIZE;
+        if (instanceData.capacity() < floatCount) {
+            instanceStorage = NativeMemory.reallocate(instanceStorage, floatCount * Float.BYTES);
+            instanceData = instanceStorage.asFloatBuffer();
+        }
+
+        instanceData.clear();
+        for (int i = 0; i < batch.size; i++) {
+            batch.stores[i].getTransformationMatrix(batch.indices[i], transformationMatrix);
+            transformationMatrix.get(i * MATRIX_SIZE, instanceData);
+        }
+        instanceData.limit(floatCount);
+
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+        // Orphan the old storage so we never wait on the GPU still reading last frame's matrices.
+        device.bufferData(GL15.GL_ARRAY_BUFFER,
+                (long) instanceVboCapacities.get(batch.model.getRawModel()) * MATRIX_SIZE * Float.BYTES,
+                GL15.GL_STREAM_DRAW);
+        device.bufferSubData(GL15.GL_ARRAY_BUFFER, 0, instanceData);
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+}
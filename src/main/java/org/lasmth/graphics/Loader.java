@@ -1,15 +1,27 @@
 package org.lasmth.graphics;
 
+import org.lasmth.graphics.memory.StagingArena;
+import org.lasmth.graphics.models.BoundingBox;
+import org.lasmth.graphics.models.MeshData;
 import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.models.TextureArray;
+import org.lasmth.graphics.models.TexturedModel;
+import org.lasmth.graphics.models.VertexAttribute;
+import org.lasmth.graphics.models.VertexLayout;
 import org.lwjgl.opengl.*;
-import org.lwjgl.BufferUtils;
-import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryStack;
 
-import java.nio.FloatBuffer;
+import java.io.IOException;
 import java.nio.IntBuffer;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
 
 /**
  * Loads raw vertex data into memory as vertex objects (VAOs and VBOs), preparing it
@@ -17,13 +29,61 @@ import java.util.List;
  */
 public class Loader {
 
+    private final RenderDevice device;
+
+    // Image files' textures, shared between everything loading the same file.
+    private final TextureCache textureCache;
+
     // Keep track of the pointers for our vertex objects. These must be manually deleted
     // when application ends.
-    private List<Integer> vaos = new ArrayList<>();
-    private List<Integer> vbos = new ArrayList<>();
-    private List<Integer> textures = new ArrayList<>();
+    private Set<Integer> vaos = new LinkedHashSet<>();
+    private Set<Integer> vbos = new LinkedHashSet<>();
+    // Texture IDs, with the bytes of GPU memory each takes up.
+    private Map<Integer, Long> textures = new LinkedHashMap<>();
+    // Told the ID of every texture deleted, e.g. so an upload still on its way to it can be dropped.
+    private final List<IntConsumer> textureDeletionListeners = new ArrayList<>();
+    // Models currently loaded, by VAO ID. Used to unload them and for the memory report.
+    private final Map<Integer, LoadedModel> models = new LinkedHashMap<>();
+    // Shared buffers for models loaded with loadToPool, one pool per vertex layout.
+    private final Map<VertexLayout, MeshPool> meshPools = new LinkedHashMap<>();
+
+    // Vertex and index data is packed here before being sent to OpenGL, then thrown away.
+    private final StagingArena stagingArena = new StagingArena(STAGING_ARENA_CAPACITY);
 
     private static final String RESOURCES_DIRECTORY_PATH = "src/main/resources/";
+    private static final int STAGING_ARENA_CAPACITY = 256 * 1024;
+    private static final int POOL_VERTEX_CAPACITY = 64 * 1024;
+    private static final int POOL_INDEX_CAPACITY = 3 * POOL_VERTEX_CAPACITY;
+    // Screen size below which a model switches to its first level of detail. Each further level halves it.
+    private static final float FIRST_LOD_SCREEN_SIZE = 0.25f;
+    private static final String TEXTURE_CACHE_PROPERTY = "texture.cache";
+    private static final long TEXTURE_CACHE_BUDGET = Integer.getInteger("texture.cache.mb", 256) * 1024L * 1024;
+    // 2x2 magenta and black checkerboard, hard to miss in a scene.
+    private static final byte[] PLACEHOLDER_PIXELS = {
+            (byte) 255, 0, (byte) 255, (byte) 255, 0, 0, 0, (byte) 255,
+            0, 0, 0, (byte) 255, (byte) 255, 0, (byte) 255, (byte) 255
+    };
+
+    public Loader() {
+        this(StateCachingRenderDevice.getInstance());
+    }
+
+    /**
+     * @param device Device all of the loader's OpenGL calls are made through.
+     */
+    public Loader(RenderDevice device) {
+        this(device, !"false".equals(System.getProperty(TEXTURE_CACHE_PROPERTY)));
+    }
+
+    /**
+     * @param cacheTextures False to decode and upload an image file every time it is loaded, rather than share
+     *                      one texture, see {@link #getTextureCache()}. -Dtexture.cache=false does the same for
+     *                      the other constructors.
+     */
+    public Loader(RenderDevice device, boolean cacheTextures) {
+        this.device = device;
+        this.textureCache = new TextureCache(this, TEXTURE_CACHE_BUDGET, cacheTextures);
+    }
 
     /**
      * Store an array of vertex positions in an openGL Vertex Array Object (VAO).
@@ -33,12 +93,145 @@ public class Loader {
      * @return RawModel which stores the VAO information for the model.
      */
     public RawModel loadToVAO(float[] positions, float[] textureUVs, int[] indices) {
+        return loadToVAO(VertexLayout.POSITION_UV, indices, positions, textureUVs);
+    }
+
+    /**
+     * Store a mesh in a VAO. See {@link #loadToVAO(VertexLayout, int[], float[]...)}.
+     */
+    public RawModel loadToVAO(MeshData mesh) {
+        return loadToVAO(mesh.getLayout(), mesh.getIndices(), mesh.getAttributeData());
+    }
+
+    /**
+     * Store vertex data in a VAO, interleaved into a single VBO in the given layout. Indices are stored as
+     * 16-bit values when they all fit, halving the size of the index buffer.
+     * @param layout How to store the vertex attributes.
+     * @param indices Rendering indices - the order in which to render the vertices.
+     * @param attributeData One array per attribute of the layout, in the same order. The first must hold
+     *                      3D positions, which the model's bounds are computed from.
+     * @return RawModel which stores the VAO information for the model.
+     */
+    public RawModel loadToVAO(VertexLayout layout, int[] indices, float[]... attributeData) {
+        int vertexCount = attributeData[0].length / layout.getAttributes().get(0).getSize();
         int vaoID = createVAO();
-        bindIndicesBuffer(indices);
-        storeDataInBoundVAO(0, 3, positions);
-        storeDataInBoundVAO(1, 2, textureUVs);
+        int indexType = indexTypeFor(indices);
+        int indexVboId;
+        int vertexVboId;
+        try {
+            indexVboId = bindIndicesBuffer(indices, indexType);
+            vertexVboId = storeInterleavedDataInBoundVAO(layout, attributeData, vertexCount);
+        } finally {
+            // OpenGL has its own copy of the data by now.
+            stagingArena.reset();
+        }
+        unbindVAO();
+
+        return registerModel(vaoID, layout, vertexCount, indices.length, indexType,
+                BoundingBox.fromPositions(attributeData[0]), vertexVboId, indexVboId);
+    }
+
+    /**
+     * Store a mesh baked into an asset pack in a VAO. The vertex and index data is uploaded straight from the
+     * mapped file, with no decoding or repacking.
+     * @param pack Open pack holding the mesh.
+     * @param name Name the mesh was baked under.
+     * @return RawModel which stores the VAO information for the model.
+     */
+    public RawModel loadToVAO(AssetPack pack, String name) {
+        AssetPack.Mesh mesh = pack.getMesh(name);
+        int vaoID = createVAO();
+        int indexVboId = storeIndicesInBoundVAO(pack.slice(mesh.indexOffset, mesh.indexLength));
+        int vertexVboId = storeVertexDataInBoundVAO(mesh.layout, pack.slice(mesh.vertexOffset, mesh.vertexLength));
+        unbindVAO();
+        return registerModel(vaoID, mesh.layout, mesh.vertexCount, mesh.indexCount, mesh.indexType, mesh.bounds,
+                vertexVboId, indexVboId);
+    }
+
+    /**
+     * Store a mesh in the shared buffers of the {@link MeshPool} for its layout, rather than in a VAO of its own.
+     * Pooled meshes can be drawn together by the {@link MultiDrawRenderer}.
+     * @return The mesh, which can be used anywhere a RawModel can except the {@link InstancedRenderer}.
+     */
+    public PooledMesh loadToPool(MeshData mesh) {
+        return getMeshPool(mesh.getLayout()).add(mesh);
+    }
+
+    /**
+     * @return The pool meshes of the given layout are loaded into, created if there is none yet.
+     */
+    public MeshPool getMeshPool(VertexLayout layout) {
+        return meshPools.computeIfAbsent(layout,
+                key -> new MeshPool(device, key, POOL_VERTEX_CAPACITY, POOL_INDEX_CAPACITY));
+    }
+
+    private RawModel registerModel(int vaoID, VertexLayout layout, int vertexCount, int indexCount, int indexType,
+                                   BoundingBox bounds, int vertexVboId, int indexVboId) {
+        long indexDataSize = (long) indexCount * indexSize(indexType);
+        long vertexDataSize = (long) vertexCount * layout.getStride();
+        RawModel model = new RawModel(vaoID, indexCount, bounds, indexType, vertexDataSize, indexDataSize);
+        models.put(vaoID, new LoadedModel(model, layout, vertexCount, vertexVboId, indexVboId));
+        return model;
+    }
+
+    /**
+     * Delete a model's VAO and vertex and index buffers, or free its space if it is pooled. The model must not
+     * be rendered afterwards.
+     * @param model Model returned by one of the loadToVAO methods or {@link #loadToPool(MeshData)}.
+     */
+    public void unloadModel(RawModel model) {
+        if (model instanceof PooledMesh pooled) {
+            pooled.getPool().remove(pooled);
+            return;
+        }
+        LoadedModel loaded = models.remove(model.getVaoID());
+        if (loaded == null) {
+            throw new IllegalArgumentException("Model with VAO " + model.getVaoID() + " was not loaded by this loader");
+        }
+        device.deleteBuffers(loaded.vertexVboId);
+        device.deleteBuffers(loaded.indexVboId);
+        vbos.remove(loaded.vertexVboId);
+        vbos.remove(loaded.indexVboId);
+        device.deleteVertexArrays(model.getVaoID());
+        vaos.remove(model.getVaoID());
+    }
+
+    /**
+     * Creates an empty VBO intended to be refilled with new data every frame, e.g. per-instance data.
+     * @param floatCount Initial capacity of the buffer in floats.
+     * @return ID of the new VBO.
+     */
+    public int createStreamingVbo(int floatCount) {
+        int vboId = device.genBuffers();
+        vbos.add(vboId);
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+        device.bufferData(GL15.GL_ARRAY_BUFFER, (long) floatCount * Float.BYTES, GL15.GL_STREAM_DRAW);
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        return vboId;
+    }
+
+    /**
+     * Attaches a per-instance 4x4 matrix attribute to a model's VAO. A matrix is too big for a single
+     * attribute slot, so it takes up four consecutive slots, one per column.
+     * <p>
+     * The divisor of 1 tells OpenGL to advance to the next matrix once per instance rather than once per vertex.
+     *
+     * @param model Model whose VAO the attribute is added to.
+     * @param vboId VBO holding tightly packed column-major matrices, see {@link #createStreamingVbo(int)}.
+     * @param firstAttribute Attribute slot of the first column.
+     */
+    public void addInstancedMatrixAttribute(RawModel model, int vboId, int firstAttribute) {
+        int matrixBytes = 16 * Float.BYTES;
+        device.bindVertexArray(model.getVaoID());
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+        for (int column = 0; column < 4; column++) {
+            int attribute = firstAttribute + column;
+            device.vertexAttribPointer(attribute, 4, GL11.GL_FLOAT, false, matrixBytes,
+                    (long) column * 4 * Float.BYTES);
+            device.vertexAttribDivisor(attribute, 1);
+        }
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
         unbindVAO();
-        return new RawModel(vaoID, indices.length);
     }
 
     /**
@@ -47,60 +240,338 @@ public class Loader {
      * @return ID for texture loaded in memory.
      */
     public int loadTexture(String fileName) {
-        String filePath = RESOURCES_DIRECTORY_PATH + fileName;
-        // Buffers for holding the named values after being extracted in the decoding process.
-		IntBuffer width = BufferUtils.createIntBuffer(1);
-		IntBuffer height = BufferUtils.createIntBuffer(1);
-		IntBuffer channels_in_file = BufferUtils.createIntBuffer(1);
+        return loadTexture(fileName, TextureFilter.NEAREST);
+    }
+
+    /**
+     * Load a texture from an image file into memory, registering it with OpenGL. Textures are shared: loading a
+     * file which is already loaded with the same filter gives the same ID without reading it again. Each call
+     * should be matched by a call to {@link #unloadTexture(int)} once the texture is no longer needed.
+     * @param fileName Texture image file of format [file_name].[extension]
+     * @param filter How the texture is sampled.
+     * @return ID for texture loaded in memory.
+     */
+    public int loadTexture(String fileName, TextureFilter filter) {
+        return textureCache.acquire(fileName, filter);
+    }
+
+    /**
+     * @return Cache shared by every texture loaded from a file with this loader. Unused textures stay loaded
+     * until the cache is over its budget, 256 MB unless set with -Dtexture.cache.mb.
+     */
+    public TextureCache getTextureCache() {
+        return textureCache;
+    }
+
+    /**
+     * Decode an image file and upload it as a new texture, bypassing the cache.
+     */
+    int loadTextureFile(String fileName, TextureFilter filter) {
+        DecodedImage image;
+        try {
+            image = DecodedImage.decode(resourcePath(fileName));
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return createTexture(0, 0, null, filter);
+        }
+        try {
+            return createTexture(image.width, image.height, image.pixels, filter);
+        } finally {
+            // OpenGL has its own copy of the pixels by now.
+            image.free();
+        }
+    }
+
+    /**
+     * Load several images into the layers of one texture array, so models textured with any of them can be
+     * drawn without binding another texture in between. Mipmaps are generated if the filter uses them.
+     * @param filter How the texture array is sampled.
+     * @param fileNames Image files of format [file_name].[extension], all the same size. Layer i holds image i.
+     * @return The loaded texture array. Images which fail to load leave their layer's contents undefined.
+     */
+    public TextureArray loadTextureArray(TextureFilter filter, String... fileNames) {
+        if (fileNames.length == 0) {
+            throw new IllegalArgumentException("A texture array needs at least one image");
+        }
+
+        DecodedImage[] images = new DecodedImage[fileNames.length];
+        try {
+            int width = -1;
+            int height = -1;
+            for (int i = 0; i < fileNames.length; i++) {
+                try {
+                    images[i] = DecodedImage.decode(resourcePath(fileNames[i]));
+                } catch (IOException e) {
+                    System.out.println(e.getMessage());
+                    continue;
+                }
+                if (width < 0) {
+                    width = images[i].width;
+                    height = images[i].height;
+                } else if (images[i].width != width || images[i].height != height) {
+                    throw new IllegalArgumentException("Texture array images must all be the same size, but "
+                            + fileNames[i] + " is " + images[i].width + "x" + images[i].height + " rather than "
+                            + width + "x" + height);
+                }
+            }
+            if (width < 0) {
+                // Nothing loaded, so there is no size to give the layers.
+                width = 0;
+                height = 0;
+            }
 
-		// Notice the output into the given buffer arguments also.
-		// Desired channels in 4. We are expecting RGBA.
-        ByteBuffer decodedImageData = STBImage.stbi_load(filePath, width, height, channels_in_file, 4);
+            int textureId = device.genTextures();
+            device.activeTexture(GL13.GL_TEXTURE0);
+            device.bindTexture(GL30.GL_TEXTURE_2D_ARRAY, textureId);
+            device.texParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MIN_FILTER, filter.getMinFilter());
+            device.texParameteri(GL30.GL_TEXTURE_2D_ARRAY, GL11.GL_TEXTURE_MAG_FILTER, filter.getMagFilter());
 
-        if (decodedImageData == null) {
-            System.out.println("Loading of " + filePath + " failed.\nReason: " + STBImage.stbi_failure_reason());
+            // Allocate every layer up front, then fill them in one at a time.
+            device.texImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, GL11.GL_RGBA8, width, height, fileNames.length, 0,
+                    GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, null);
+            for (int layer = 0; layer < images.length; layer++) {
+                if (images[layer] != null) {
+                    device.texSubImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, width, height, 1,
+                            GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, images[layer].pixels);
+                }
+            }
+
+            long bytes = (long) width * height * 4 * fileNames.length;
+            if (filter.isMipmapped() && width > 0) {
+                device.generateMipmap(GL30.GL_TEXTURE_2D_ARRAY);
+                bytes = withMipmaps(bytes);
+            }
+            device.bindTexture(GL30.GL_TEXTURE_2D_ARRAY, 0);
+
+            textures.put(textureId, bytes);
+            return new TextureArray(textureId, fileNames.length, width, height);
+        } finally {
+            for (DecodedImage image : images) {
+                if (image != null) {
+                    image.free();
+                }
+            }
         }
+    }
+
+    /**
+     * Load a texture baked into an asset pack. The pixels are uploaded straight from the mapped file, with no
+     * decoding.
+     * @param pack Open pack holding the texture.
+     * @param name Name the texture was baked under.
+     * @param filter How the texture is sampled.
+     * @return ID for texture loaded in memory.
+     */
+    public int loadTexture(AssetPack pack, String name, TextureFilter filter) {
+        AssetPack.Texture texture = pack.getTexture(name);
+        return createTexture(texture.width, texture.height, pack.slice(texture.offset, texture.length), filter);
+    }
 
+    /**
+     * Upload a model imported by {@link ModelImporter}, freeing its decoded textures. Textures are sampled with
+     * {@link TextureFilter#LINEAR_MIPMAP}. Parts without a texture, or whose texture could not be decoded, show
+     * the placeholder texture. Levels of detail generated on import are loaded along with each mesh, see
+     * {@link #loadLods(TexturedModel, List)}.
+     * @return One textured model per mesh of the imported model.
+     */
+    public List<TexturedModel> loadModel(ImportedModel model) {
+        try {
+            List<MeshData> meshes = model.getMeshes();
+            List<TexturedModel> texturedModels = new ArrayList<>(meshes.size());
+            int[] textureIds = new int[model.getTextureCount()];
+            int placeholderId = 0;
+            for (int i = 0; i < meshes.size(); i++) {
+                RawModel rawModel = loadToVAO(meshes.get(i));
+
+                int textureIndex = model.getTextureIndex(i);
+                DecodedImage image = textureIndex < 0 ? null : model.getTexture(textureIndex);
+                int textureId;
+                if (image == null) {
+                    if (placeholderId == 0) {
+                        placeholderId = createPlaceholderTexture();
+                    }
+                    textureId = placeholderId;
+                } else {
+                    // Meshes sharing a material share the texture.
+                    if (textureIds[textureIndex] == 0) {
+                        textureIds[textureIndex] = createTexture(image.width, image.height, image.pixels,
+                                TextureFilter.LINEAR_MIPMAP);
+                    }
+                    textureId = textureIds[textureIndex];
+                }
+                TexturedModel texturedModel = new TexturedModel(rawModel, textureId);
+                loadLods(texturedModel, model.getLods(i));
+                texturedModels.add(texturedModel);
+            }
+            return texturedModels;
+        } finally {
+            // OpenGL has its own copy of the pixels by now.
+            model.free();
+        }
+    }
+
+    /**
+     * Upload coarser versions of a model's mesh as its levels of detail, the first used once the model covers
+     * less than a quarter of the screen height and each after that at half the size of the one before. Levels
+     * of a pooled model go in the same pool, so they can still be drawn in the same multi-draw call.
+     * @param lods Meshes of the levels, finest first, e.g. from
+     *             {@link org.lasmth.graphics.lod.MeshSimplifier#generateLods(MeshData, int)}.
+     */
+    public void loadLods(TexturedModel model, List<MeshData> lods) {
+        float screenSize = FIRST_LOD_SCREEN_SIZE;
+        for (MeshData lod : lods) {
+            RawModel rawModel = model.getRawModel() instanceof PooledMesh ? loadToPool(lod) : loadToVAO(lod);
+            model.addLod(rawModel, screenSize);
+            screenSize /= 2;
+        }
+    }
+
+    /**
+     * Create a tiny checkerboard texture to show in place of one which has not finished loading. The same ID
+     * can later be given its real contents with {@link #uploadTexture}.
+     * @return ID of the new texture.
+     */
+    public int createPlaceholderTexture() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            ByteBuffer pixels = stack.malloc(PLACEHOLDER_PIXELS.length);
+            pixels.put(PLACEHOLDER_PIXELS).flip();
+            return createTexture(2, 2, pixels, TextureFilter.NEAREST);
+        }
+    }
+
+    /**
+     * Delete a texture. It must not be used afterwards. Textures loaded from a file are only deleted once
+     * nothing else uses them and the cache needs the room.
+     * @param textureId ID returned by {@link #loadTexture(String)}, or of a {@link TextureArray}.
+     */
+    public void unloadTexture(int textureId) {
+        if (textureCache.holds(textureId)) {
+            textureCache.release(textureId);
+        } else {
+            deleteTexture(textureId);
+        }
+    }
+
+    /**
+     * Delete a texture straight away, whoever else uses it.
+     */
+    void deleteTexture(int textureId) {
+        if (textures.remove(textureId) == null) {
+            throw new IllegalArgumentException("Texture " + textureId + " was not loaded by this loader");
+        }
+        device.deleteTextures(textureId);
+        for (IntConsumer listener : textureDeletionListeners) {
+            listener.accept(textureId);
+        }
+    }
+
+    /**
+     * Have the listener called with the ID of each texture this loader deletes, whichever way it is unloaded.
+     * Called on the GL thread, as soon as the texture is deleted.
+     */
+    void addTextureDeletionListener(IntConsumer listener) {
+        textureDeletionListeners.add(listener);
+    }
+
+    /**
+     * @return Bytes of GPU memory taken up by a texture created by this loader, or 0 if it is unknown.
+     */
+    public long getTextureSize(int textureId) {
+        return textures.getOrDefault(textureId, 0L);
+    }
+
+    /**
+     * @return Path of a file in the resources directory.
+     */
+    static String resourcePath(String fileName) {
+        return RESOURCES_DIRECTORY_PATH + fileName;
+    }
+
+    /**
+     * @return Bytes of native memory held for staging uploads.
+     */
+    public long getStagingCapacity() {
+        return stagingArena.getCapacity();
+    }
+
+    /**
+     * @param pixels RGBA pixel data, or null to leave the texture's contents undefined.
+     */
+    private int createTexture(int width, int height, ByteBuffer pixels, TextureFilter filter) {
         // Reserve an ID for the texture.
-        int textureId = GL11.glGenTextures();
+        int textureId = device.genTextures();
+        uploadTexture(textureId, width, height, pixels, filter);
+        return textureId;
+    }
 
+    /**
+     * Replace the contents of a texture.
+     * @param textureId Texture created by this loader.
+     * @param pixels Tightly packed RGBA pixel data, or null to leave the texture's contents undefined.
+     * @param filter How the texture is sampled.
+     */
+    void uploadTexture(int textureId, int width, int height, ByteBuffer pixels, TextureFilter filter) {
         // Activate a texture unit.
-		GL13.glActiveTexture(GL13.GL_TEXTURE0);
+		device.activeTexture(GL13.GL_TEXTURE0);
         // Bind the texture ID to the texture unit.
-		GL11.glBindTexture(GL13.GL_TEXTURE_2D, textureId);
+		device.bindTexture(GL13.GL_TEXTURE_2D, textureId);
 
         // Minifying and magnification functions for when the texture is of a different size than
         // the shape they are mapping to. These have to be set otherwise the loaded texture was displaying
         // as fully black. Seems like these should have just been set to a default?
-        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
-        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        device.texParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, filter.getMinFilter());
+        device.texParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, filter.getMagFilter());
 
         // Change the state of the bound texture unit to contain our texture data (along with
         // how to interpret that data).
-		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width.get(),
-				height.get(), 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, decodedImageData);
+		device.texImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width,
+				height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+
+        long bytes = (long) width * height * 4;
+        if (filter.isMipmapped() && pixels != null) {
+            device.generateMipmap(GL11.GL_TEXTURE_2D);
+            bytes = withMipmaps(bytes);
+        }
 
         // Again track our textures in use so we can clean up when we are finished.
-		textures.add(textureId);
-		return textureId;
+        textures.put(textureId, bytes);
+        textureCache.updateSize(textureId);
 	}
 
     /**
-     * Clears allocated memory which will otherwise not be garbage collected.
+     * @return Size of a texture once all of its mipmap levels are added, each a quarter of the one before.
+     */
+    private static long withMipmaps(long bytes) {
+        return bytes * 4 / 3;
+    }
+
+    /**
+     * Clears allocated memory which will otherwise not be garbage collected. The loader must not be used
+     * afterwards.
      */
     public void cleanUp() {
         for (int vaoId:vaos) {
-            GL30.glDeleteVertexArrays(vaoId);
+            device.deleteVertexArrays(vaoId);
         }
 
         for (int vboId:vbos) {
-            GL15.glDeleteBuffers(vboId);
+            device.deleteBuffers(vboId);
+        }
+
+        for (int textureId:textures.keySet()) {
+            device.deleteTextures(textureId);
         }
 
-        for (int textureId:textures) {
-            GL11.glDeleteTextures(textureId);
+        for (MeshPool pool : meshPools.values()) {
+            pool.cleanUp();
         }
 
+        vaos.clear();
+        vbos.clear();
+        textures.clear();
+        models.clear();
+        meshPools.clear();
+        stagingArena.free();
     }
 
     /**
@@ -109,37 +580,54 @@ public class Loader {
      * @return Pointer to VAO memory location.
      */
     private int createVAO() {
-        int vaoId = GL30.glGenVertexArrays();
+        int vaoId = device.genVertexArrays();
         vaos.add(vaoId);
-        GL30.glBindVertexArray(vaoId);
+        device.bindVertexArray(vaoId);
         return vaoId;
     }
 
     /**
-     * A VAO comprises multiple slots which can hold different information for each vertex. The data in each
-     * slot is stored as a Vertex Buffer Object (VBO).
+     * A VAO comprises multiple slots which can hold different information for each vertex. Here every slot
+     * reads from the same Vertex Buffer Object (VBO), each at its own offset within a vertex.
      *
-     * @param attributeNumber The 'slot' for our vertex data.
-     * @param size The dimensions used to represent each vertex (e.g. 3 for 3D position, 2 for UV coordinates).
-     * @param data vertex data to be stored as a VBO.
+     * @param layout Which slots to fill and how their data is stored.
+     * @param attributeData Vertex data for each slot of the layout.
+     * @return ID of the VBO.
+     */
+    private int storeInterleavedDataInBoundVAO(VertexLayout layout, float[][] attributeData, int vertexCount) {
+        ByteBuffer buffer = stagingArena.allocate(vertexCount * layout.getStride());
+        layout.interleave(attributeData, vertexCount, buffer);
+        buffer.flip();
+        return storeVertexDataInBoundVAO(layout, buffer);
+    }
+
+    /**
+     * Like {@link #storeInterleavedDataInBoundVAO}, for vertex data which is already interleaved.
+     * @param vertexData Vertex data in the layout, uploaded from its position to its limit.
+     * @return ID of the VBO.
      */
-    private void storeDataInBoundVAO(int attributeNumber, int size, float[] data) {
+    private int storeVertexDataInBoundVAO(VertexLayout layout, ByteBuffer vertexData) {
         // Create a VBO.
-        int vboId = GL15.glGenBuffers();
+        int vboId = device.genBuffers();
         vbos.add(vboId);
         // OpenGL requires that we 'bind' buffers we wish to interact with. Here we bind the VBO.
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
         // Loading the data into the currently bound VBO.
-        FloatBuffer buffer = storeDataInFloatBuffer(data);
-        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
-        // Loading
-        GL30.glVertexAttribPointer(attributeNumber, size, GL11.GL_FLOAT, false, 0, 0);
+        device.bufferData(GL15.GL_ARRAY_BUFFER, vertexData, GL15.GL_STATIC_DRAW);
+        // Tell each slot where in the VBO to find its data.
+        List<VertexAttribute> attributes = layout.getAttributes();
+        for (int i = 0; i < attributes.size(); i++) {
+            VertexAttribute attribute = attributes.get(i);
+            device.vertexAttribPointer(attribute.getIndex(), attribute.getSize(), attribute.getFormat().getGlType(),
+                    attribute.getFormat().isNormalized(), layout.getStride(), layout.getOffset(i));
+        }
         // Unbind the VBO.
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        return vboId;
     }
 
     private void unbindVAO() {
-        GL30.glBindVertexArray(0);
+        device.bindVertexArray(0);
     }
 
     /**
@@ -147,27 +635,114 @@ public class Loader {
      * As opposed to repeating the entire vertex information to define the render order, using just an index
      * for this can greatly improve memory usage.
      * @param indices Rendering order.
+     * @param indexType Type to store the indices as, see {@link #indexTypeFor(int[])}.
+     * @return ID of the index buffer.
      */
-    private void bindIndicesBuffer(int[] indices) {
-        int vboId = GL15.glGenBuffers();
+    private int bindIndicesBuffer(int[] indices, int indexType) {
+        int vboId = device.genBuffers();
         vbos.add(vboId);
-        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboId);
-        IntBuffer buffer = storeDataInIntBuffer(indices);
-        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+        device.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboId);
+
+        if (indexType == GL11.GL_UNSIGNED_SHORT) {
+            ByteBuffer buffer = stagingArena.allocate(indices.length * Short.BYTES);
+            for (int index : indices) {
+                buffer.putShort((short) index);
+            }
+            buffer.flip();
+            device.bufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+        } else {
+            IntBuffer buffer = stagingArena.allocateInts(indices.length);
+            buffer.put(indices);
+            buffer.flip();
+            device.bufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
+        }
+        return vboId;
     }
 
-    private IntBuffer storeDataInIntBuffer(int[] data) {
-        IntBuffer buffer = BufferUtils.createIntBuffer(data.length);
-        buffer.put(data);
-        buffer.flip();
-        return buffer;
+    /**
+     * Binds indices which are already stored as the type the model will be drawn with.
+     * @return ID of the index buffer.
+     */
+    private int storeIndicesInBoundVAO(ByteBuffer indexData) {
+        int vboId = device.genBuffers();
+        vbos.add(vboId);
+        device.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboId);
+        device.bufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indexData, GL15.GL_STATIC_DRAW);
+        return vboId;
     }
 
-    private FloatBuffer storeDataInFloatBuffer(float[] data) {
-        FloatBuffer buffer = BufferUtils.createFloatBuffer(data.length);
-        buffer.put(data);
-        // Flip the buffer from write to read.
-        buffer.flip();
-        return buffer;
+    /**
+     * @return GL_UNSIGNED_SHORT if the indices are small enough to be stored as 16-bit values, otherwise
+     * GL_UNSIGNED_INT.
+     */
+    static int indexTypeFor(int[] indices) {
+        int maxIndex = 0;
+        for (int index : indices) {
+            maxIndex = Math.max(maxIndex, index);
+        }
+        return maxIndex <= 0xFFFF ? GL11.GL_UNSIGNED_SHORT : GL11.GL_UNSIGNED_INT;
+    }
+
+    /**
+     * @return Bytes taken up by one index of the given type.
+     */
+    static int indexSize(int indexType) {
+        return indexType == GL11.GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+    }
+
+    /**
+     * How much GPU memory each loaded model's vertex and index buffers take up, compared to storing every
+     * attribute as a separate float buffer with 32-bit indices.
+     * @return One line per model followed by the totals.
+     */
+    public String getMemoryReport() {
+        StringBuilder report = new StringBuilder("Model memory:\n");
+        long total = 0;
+        long totalUncompacted = 0;
+        for (LoadedModel loaded : models.values()) {
+            RawModel model = loaded.model;
+            long size = model.getVertexDataSize() + model.getIndexDataSize();
+            long uncompacted = loaded.uncompactedSize();
+            report.append(String.format(Locale.ROOT,
+                    "  VAO %d: %d vertices x %d B = %d B, %d %s indices = %d B, total %d B (uncompacted %d B)%n",
+                    model.getVaoID(), loaded.vertexCount, loaded.layout.getStride(), model.getVertexDataSize(),
+                    model.getVertexCount(), model.getIndexType() == GL11.GL_UNSIGNED_SHORT ? "16-bit" : "32-bit",
+                    model.getIndexDataSize(), size, uncompacted));
+            total += size;
+            totalUncompacted += uncompacted;
+        }
+        report.append(String.format(Locale.ROOT, "  %d models, total %d B (uncompacted %d B)", models.size(), total,
+                totalUncompacted));
+        for (MeshPool pool : meshPools.values()) {
+            report.append("\n  ").append(pool.getReport());
+        }
+        return report.toString();
+    }
+
+    private static class LoadedModel {
+        final RawModel model;
+        final VertexLayout layout;
+        final int vertexCount;
+        final int vertexVboId;
+        final int indexVboId;
+
+        LoadedModel(RawModel model, VertexLayout layout, int vertexCount, int vertexVboId, int indexVboId) {
+            this.model = model;
+            this.layout = layout;
+            this.vertexCount = vertexCount;
+            this.vertexVboId = vertexVboId;
+            this.indexVboId = indexVboId;
+        }
+
+        /**
+         * @return Bytes the model would take up with one float VBO per attribute and 32-bit indices.
+         */
+        long uncompactedSize() {
+            long floatsPerVertex = 0;
+            for (VertexAttribute attribute : layout.getAttributes()) {
+                floatsPerVertex += attribute.getSize();
+            }
+            return (long) vertexCount * floatsPerVertex * Float.BYTES + (long) model.getVertexCount() * Integer.BYTES;
+        }
     }
 }
@@ -0,0 +1,284 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.memory.FreeListAllocator;
+import org.lasmth.graphics.memory.StagingArena;
+import org.lasmth.graphics.models.BoundingBox;
+import org.lasmth.graphics.models.MeshData;
+import org.lasmth.graphics.models.VertexAttribute;
+import org.lasmth.graphics.models.VertexLayout;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Stores many meshes of one {@link VertexLayout} in a single vertex buffer and a single index buffer, behind a
+ * single VAO. Drawing any of them needs no VAO or buffer change, which is what lets the
+ * {@link MultiDrawRenderer} draw a whole pool with one glMultiDrawElementsIndirect call per texture.
+ * <p>
+ * Space in each buffer is handed out by a {@link FreeListAllocator}, so meshes can be removed and their space
+ * reused. When a mesh does not fit the pool first tries {@link #defragment()}, if that would free a big enough
+ * range, and otherwise grows the buffers by copying them into bigger ones on the GPU.
+ * <p>
+ * Indices are always 32-bit, as one index type has to serve every mesh in a multi-draw call.
+ */
+public class MeshPool {
+
+    private static final int INDEX_SIZE = Integer.BYTES;
+    // Orders meshes by where their data starts, so compacting keeps them in the same order.
+    private static final Comparator<PooledMesh> VERTEX_ORDER = Comparator.comparingInt(PooledMesh::getBaseVertex);
+    private static final Comparator<PooledMesh> INDEX_ORDER = Comparator.comparingInt(PooledMesh::getFirstIndex);
+
+    private final RenderDevice device;
+    private final VertexLayout layout;
+    private final int vaoId;
+    private int vertexVboId;
+    private int indexVboId;
+    private final FreeListAllocator vertexAllocator;
+    private final FreeListAllocator indexAllocator;
+    private final Set<PooledMesh> meshes = new LinkedHashSet<>();
+    private final StagingArena stagingArena = new StagingArena(64 * 1024);
+
+    private int growCount;
+    private int defragmentCount;
+
+    /**
+     * @param vertexCapacity Vertices to make room for up front.
+     * @param indexCapacity Indices to make room for up front.
+     */
+    public MeshPool(RenderDevice device, VertexLayout layout, int vertexCapacity, int indexCapacity) {
+        this.device = device;
+        this.layout = layout;
+        this.vertexAllocator = new FreeListAllocator(vertexCapacity);
+        this.indexAllocator = new FreeListAllocator(indexCapacity);
+
+        vaoId = device.genVertexArrays();
+        vertexVboId = createBuffer((long) vertexCapacity * layout.getStride());
+        indexVboId = createBuffer((long) indexCapacity * INDEX_SIZE);
+        attachBuffers();
+    }
+
+    public VertexLayout getLayout() {
+        return layout;
+    }
+
+    public int getVaoId() {
+        return vaoId;
+    }
+
+    /**
+     * Copy a mesh into the pool. Its layout must be the pool's.
+     */
+    public PooledMesh add(MeshData mesh) {
+        if (mesh.getLayout() != layout) {
+            throw new IllegalArgumentException("Mesh layout does not match the pool's");
+        }
+        float[][] attributeData = mesh.getAttributeData();
+        int[] indices = mesh.getIndices();
+        int vertexCount = attributeData[0].length / layout.getAttributes().get(0).getSize();
+
+        // Make room in both buffers before taking either range, as defragmenting only keeps the ranges of meshes
+        // already in the pool.
+        makeRoom(vertexAllocator, vertexCount);
+        makeRoom(indexAllocator, indices.length);
+        int baseVertex = vertexAllocator.allocate(vertexCount);
+        int firstIndex = indexAllocator.allocate(indices.length);
+
+        try {
+            ByteBuffer vertexData = stagingArena.allocate(vertexCount * layout.getStride());
+            layout.interleave(attributeData, vertexCount, vertexData);
+            vertexData.flip();
+            device.bindBuffer(GL15.GL_ARRAY_BUFFER, vertexVboId);
+            device.bufferSubData(GL15.GL_ARRAY_BUFFER, (long) baseVertex * layout.getStride(), vertexData);
+            device.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+            ByteBuffer indexData = stagingArena.allocate(indices.length * INDEX_SIZE);
+            IntBuffer indexInts = indexData.asIntBuffer();
+            indexInts.put(indices);
+            // The element array binding belongs to the VAO, so upload through a binding which does not.
+            device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, indexVboId);
+            device.bufferSubData(GL31.GL_COPY_WRITE_BUFFER, (long) firstIndex * INDEX_SIZE, indexData);
+            device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+        } finally {
+            stagingArena.reset();
+        }
+
+        PooledMesh pooled = new PooledMesh(this, vertexCount, indices.length,
+                BoundingBox.fromPositions(attributeData[0]), firstIndex, baseVertex);
+        meshes.add(pooled);
+        return pooled;
+    }
+
+    /**
+     * Free the mesh's space for reuse. The mesh must not be drawn afterwards.
+     */
+    public void remove(PooledMesh mesh) {
+        if (mesh.getPool() != this || mesh.isRemoved()) {
+            throw new IllegalArgumentException("Mesh is not in this pool");
+        }
+        vertexAllocator.free(mesh.getBaseVertex(), mesh.getPoolVertexCount());
+        indexAllocator.free(mesh.getFirstIndex(), mesh.getVertexCount());
+        meshes.remove(mesh);
+        mesh.markRemoved();
+    }
+
+    /**
+     * Move every mesh to the start of the buffers, leaving all the free space in one range at the end. The data
+     * is copied on the GPU into new buffers of the same size.
+     */
+    public void defragment() {
+        List<PooledMesh> ordered = new ArrayList<>(meshes);
+        int stride = layout.getStride();
+
+        int newVertexVboId = createBuffer((long) vertexAllocator.getCapacity() * stride);
+        device.bindBuffer(GL31.GL_COPY_READ_BUFFER, vertexVboId);
+        device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, newVertexVboId);
+        ordered.sort(VERTEX_ORDER);
+        int[] baseVertices = new int[ordered.size()];
+        int nextVertex = 0;
+        for (int i = 0; i < ordered.size(); i++) {
+            PooledMesh mesh = ordered.get(i);
+            device.copyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER,
+                    (long) mesh.getBaseVertex() * stride, (long) nextVertex * stride,
+                    (long) mesh.getPoolVertexCount() * stride);
+            baseVertices[i] = nextVertex;
+            nextVertex += mesh.getPoolVertexCount();
+        }
+        // Indices are relative to the base vertex, so move unchanged.
+        for (int i = 0; i < ordered.size(); i++) {
+            PooledMesh mesh = ordered.get(i);
+            mesh.move(mesh.getFirstIndex(), baseVertices[i]);
+        }
+
+        int newIndexVboId = createBuffer((long) indexAllocator.getCapacity() * INDEX_SIZE);
+        device.bindBuffer(GL31.GL_COPY_READ_BUFFER, indexVboId);
+        device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, newIndexVboId);
+        ordered.sort(INDEX_ORDER);
+        int nextIndex = 0;
+        for (PooledMesh mesh : ordered) {
+            device.copyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER,
+                    (long) mesh.getFirstIndex() * INDEX_SIZE, (long) nextIndex * INDEX_SIZE,
+                    (long) mesh.getVertexCount() * INDEX_SIZE);
+            mesh.move(nextIndex, mesh.getBaseVertex());
+            nextIndex += mesh.getVertexCount();
+        }
+        device.bindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+
+        device.deleteBuffers(vertexVboId);
+        device.deleteBuffers(indexVboId);
+        vertexVboId = newVertexVboId;
+        indexVboId = newIndexVboId;
+        attachBuffers();
+
+        vertexAllocator.reset();
+        indexAllocator.reset();
+        if (nextVertex > 0) {
+            vertexAllocator.allocate(nextVertex);
+            indexAllocator.allocate(nextIndex);
+        }
+        defragmentCount++;
+    }
+
+    public int getMeshCount() {
+        return meshes.size();
+    }
+
+    /**
+     * @return One line describing how full and fragmented the buffers are.
+     */
+    public String getReport() {
+        return String.format(Locale.ROOT,
+                "Mesh pool VAO %d: %d meshes, vertices %d/%d free in %d ranges, indices %d/%d free in %d ranges, "
+                        + "grown %d times, defragmented %d times",
+                vaoId, meshes.size(), vertexAllocator.getFreeSize(), vertexAllocator.getCapacity(),
+                vertexAllocator.getFreeRangeCount(), indexAllocator.getFreeSize(), indexAllocator.getCapacity(),
+                indexAllocator.getFreeRangeCount(), growCount, defragmentCount);
+    }
+
+    /**
+     * Delete the VAO and buffers. None of the pool's meshes may be drawn afterwards.
+     */
+    public void cleanUp() {
+        device.deleteVertexArrays(vaoId);
+        device.deleteBuffers(vertexVboId);
+        device.deleteBuffers(indexVboId);
+        for (PooledMesh mesh : meshes) {
+            mesh.markRemoved();
+        }
+        meshes.clear();
+        stagingArena.free();
+    }
+
+    /**
+     * Make sure one of the buffers has a free range of the given size, defragmenting or growing the pool if not.
+     */
+    private void makeRoom(FreeListAllocator allocator, int size) {
+        if (allocator.getLargestFreeRange() >= size) {
+            return;
+        }
+        if (allocator.getFreeSize() >= size) {
+            // Enough space, just in too many pieces.
+            defragment();
+        } else {
+            grow(allocator, Math.max(allocator.getCapacity() * 2, allocator.getCapacity() + size));
+        }
+    }
+
+    private void grow(FreeListAllocator allocator, int newCapacity) {
+        boolean vertices = allocator == vertexAllocator;
+        int unitSize = vertices ? layout.getStride() : INDEX_SIZE;
+        int oldVboId = vertices ? vertexVboId : indexVboId;
+
+        int newVboId = createBuffer((long) newCapacity * unitSize);
+        device.bindBuffer(GL31.GL_COPY_READ_BUFFER, oldVboId);
+        device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, newVboId);
+        device.copyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, 0,
+                (long) allocator.getCapacity() * unitSize);
+        device.bindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+        device.deleteBuffers(oldVboId);
+
+        if (vertices) {
+            vertexVboId = newVboId;
+        } else {
+            indexVboId = newVboId;
+        }
+        attachBuffers();
+        allocator.grow(newCapacity);
+        growCount++;
+    }
+
+    private int createBuffer(long size) {
+        int vboId = device.genBuffers();
+        device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, vboId);
+        device.bufferData(GL31.GL_COPY_WRITE_BUFFER, size, GL15.GL_STATIC_DRAW);
+        device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+        return vboId;
+    }
+
+    /**
+     * Point the VAO at the current buffers. Attribute offsets are from the start of the vertex buffer, each
+     * mesh's base vertex takes it the rest of the way.
+     */
+    private void attachBuffers() {
+        device.bindVertexArray(vaoId);
+        device.bindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexVboId);
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, vertexVboId);
+        List<VertexAttribute> attributes = layout.getAttributes();
+        for (int i = 0; i < attributes.size(); i++) {
+            VertexAttribute attribute = attributes.get(i);
+            device.vertexAttribPointer(attribute.getIndex(), attribute.getSize(), attribute.getFormat().getGlType(),
+                    attribute.getFormat().isNormalized(), layout.getStride(), layout.getOffset(i));
+        }
+        device.bindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        device.bindVertexArray(0);
+    }
+}
@@ -0,0 +1,254 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.lod.MeshSimplifier;
+import org.lasmth.graphics.models.MeshData;
+import org.lasmth.graphics.models.VertexLayout;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.AIFace;
+import org.lwjgl.assimp.AIMaterial;
+import org.lwjgl.assimp.AIMesh;
+import org.lwjgl.assimp.AIScene;
+import org.lwjgl.assimp.AIString;
+import org.lwjgl.assimp.AIVector3D;
+import org.lwjgl.assimp.Assimp;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads OBJ, glTF, FBX and the other formats Assimp supports into {@link ImportedModel}s. Importing needs no
+ * OpenGL context, so any number of files can be imported at once on worker threads (see
+ * {@link #importAll(List, int)} and {@link AsyncLoader#importModelAsync(Path)}), leaving only the upload for
+ * the GL thread.
+ * <p>
+ * Node transforms are baked into the vertices, so each model comes out as a flat list of meshes in the model's
+ * space, stored as {@link VertexLayout#POSITION_UV_NORMAL_COMPACT}. Each mesh's material contributes its
+ * diffuse (or glTF base colour) texture, found relative to the model file.
+ * <p>
+ * Each mesh is also given a chain of levels of detail by the {@link MeshSimplifier}, as that is slow enough to
+ * want doing on the import threads too. -Dimport.lods sets how many, 0 for none.
+ */
+public class ModelImporter {
+
+    private static final int IMPORT_FLAGS = Assimp.aiProcess_Triangulate
+            | Assimp.aiProcess_JoinIdenticalVertices
+            | Assimp.aiProcess_GenSmoothNormals
+            | Assimp.aiProcess_PreTransformVertices
+            | Assimp.aiProcess_ImproveCacheLocality
+            | Assimp.aiProcess_SortByPType
+            // STB loads images top row first, the opposite of what OpenGL expects.
+            | Assimp.aiProcess_FlipUVs;
+    private static final int LOD_LEVELS = Integer.getInteger("import.lods", 3);
+
+    private ModelImporter() {
+    }
+
+    /**
+     * Import one model file. Safe to call from several threads at once.
+     * @throws IOException If Assimp could not read the file.
+     */
+    public static ImportedModel importModel(Path file) throws IOException {
+        AIScene scene = Assimp.aiImportFile(file.toString(), IMPORT_FLAGS);
+        if (scene == null) {
+            throw new IOException("Import of " + file + " failed. Reason: " + Assimp.aiGetErrorString());
+        }
+        try {
+            return convertScene(file, scene);
+        } finally {
+            Assimp.aiReleaseImport(scene);
+        }
+    }
+
+    /**
+     * Import many model files at once.
+     * @param threadCount Number of worker threads to import on.
+     * @return The imported models, in the same order as the files.
+     * @throws IOException If any file could not be imported. Models already imported are freed.
+     */
+    public static List<ImportedModel> importAll(List<Path> files, int threadCount) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<ImportedModel>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                futures.add(executor.submit(() -> importModel(file)));
+            }
+
+            List<ImportedModel> models = new ArrayList<>(files.size());
+            IOException failure = null;
+            for (Future<ImportedModel> future : futures) {
+                try {
+                    models.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (failure == null) {
+                        failure = new IOException("Interrupted while importing models", e);
+                    }
+                }
+            }
+            if (failure != null) {
+                for (ImportedModel model : models) {
+                    model.free();
+                }
+                throw failure;
+            }
+            return models;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ImportedModel convertScene(Path file, AIScene scene) {
+        List<DecodedImage> textures = new ArrayList<>();
+        int[] materialTextures = decodeMaterialTextures(file, scene, textures);
+
+        ImportedModel model;
+        try {
+            List<MeshData> meshes = new ArrayList<>(scene.mNumMeshes());
+            List<List<MeshData>> lods = new ArrayList<>(scene.mNumMeshes());
+            int[] textureIndices = new int[scene.mNumMeshes()];
+            PointerBuffer meshPointers = scene.mMeshes();
+            for (int i = 0; i < scene.mNumMeshes(); i++) {
+                AIMesh mesh = AIMesh.create(meshPointers.get(i));
+                MeshData meshData = convertMesh(mesh);
+                if (meshData == null) {
+                    continue;
+                }
+                textureIndices[meshes.size()] = materialTextures[mesh.mMaterialIndex()];
+                meshes.add(meshData);
+                lods.add(LOD_LEVELS > 0 ? MeshSimplifier.generateLods(meshData, LOD_LEVELS) : List.of());
+            }
+            model = new ImportedModel(file, meshes, lods, Arrays.copyOf(textureIndices, meshes.size()),
+                    textures);
+        } catch (RuntimeException e) {
+            for (DecodedImage texture : textures) {
+                if (texture != null) {
+                    texture.free();
+                }
+            }
+            throw e;
+        }
+        return model;
+    }
+
+    /**
+     * Decode the texture of every material. Materials sharing an image share the decoded texture.
+     * @param textures Filled with the decoded textures, null where an image could not be decoded.
+     * @return Per material, the index of its texture in textures, or -1 if it has none.
+     */
+    private static int[] decodeMaterialTextures(Path file, AIScene scene, List<DecodedImage> textures) {
+        int[] materialTextures = new int[scene.mNumMaterials()];
+        Map<Path, Integer> texturesByPath = new HashMap<>();
+        PointerBuffer materialPointers = scene.mMaterials();
+        for (int i = 0; i < scene.mNumMaterials(); i++) {
+            Path texturePath = texturePath(file, AIMaterial.create(materialPointers.get(i)));
+            if (texturePath == null) {
+                materialTextures[i] = -1;
+                continue;
+            }
+            Integer index = texturesByPath.get(texturePath);
+            if (index == null) {
+                index = textures.size();
+                texturesByPath.put(texturePath, index);
+                DecodedImage image = null;
+                try {
+                    image = DecodedImage.decode(texturePath.toString());
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                }
+                textures.add(image);
+            }
+            materialTextures[i] = index;
+        }
+        return materialTextures;
+    }
+
+    /**
+     * @return Path of the material's diffuse texture, or null if it has none.
+     */
+    private static Path texturePath(Path file, AIMaterial material) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            AIString path = AIString.calloc(stack);
+            int result = Assimp.aiGetMaterialTexture(material, Assimp.aiTextureType_DIFFUSE, 0, path, null, null,
+                    null, null, null, null);
+            if (result != Assimp.aiReturn_SUCCESS) {
+                result = Assimp.aiGetMaterialTexture(material, Assimp.aiTextureType_BASE_COLOR, 0, path, null,
+                        null, null, null, null, null);
+            }
+            if (result != Assimp.aiReturn_SUCCESS) {
+                return null;
+            }
+            String texture = path.dataString();
+            if (texture.startsWith("*")) {
+                System.err.println("Embedded texture " + texture + " in " + file + " is not supported.");
+                return null;
+            }
+            Path directory = file.toAbsolutePath().getParent();
+            return directory.resolve(texture.replace('\\', '/')).normalize();
+        }
+    }
+
+    /**
+     * @return The mesh's triangles, or null if it has none (e.g. it is made of lines or points).
+     */
+    private static MeshData convertMesh(AIMesh mesh) {
+        int vertexCount = mesh.mNumVertices();
+
+        // The Assimp vectors are tightly packed x, y, z floats, so can be copied in bulk.
+        float[] positions = new float[vertexCount * 3];
+        MemoryUtil.memFloatBuffer(mesh.mVertices().address(), positions.length).get(positions);
+
+        float[] normals = new float[vertexCount * 3];
+        AIVector3D.Buffer meshNormals = mesh.mNormals();
+        if (meshNormals != null) {
+            MemoryUtil.memFloatBuffer(meshNormals.address(), normals.length).get(normals);
+        }
+
+        float[] textureUVs = new float[vertexCount * 2];
+        AIVector3D.Buffer meshUVs = mesh.mTextureCoords(0);
+        if (meshUVs != null) {
+            FloatBuffer uvw = MemoryUtil.memFloatBuffer(meshUVs.address(), vertexCount * 3);
+            for (int i = 0; i < vertexCount; i++) {
+                textureUVs[i * 2] = uvw.get(i * 3);
+                textureUVs[i * 2 + 1] = uvw.get(i * 3 + 1);
+            }
+        }
+
+        AIFace.Buffer faces = mesh.mFaces();
+        int[] indices = new int[mesh.mNumFaces() * 3];
+        int indexCount = 0;
+        for (int i = 0; i < mesh.mNumFaces(); i++) {
+            AIFace face = faces.get(i);
+            // Everything is triangulated, but a mesh can still hold stray lines and points.
+            if (face.mNumIndices() != 3) {
+                continue;
+            }
+            IntBuffer faceIndices = face.mIndices();
+            indices[indexCount++] = faceIndices.get(0);
+            indices[indexCount++] = faceIndices.get(1);
+            indices[indexCount++] = faceIndices.get(2);
+        }
+        if (indexCount == 0) {
+            return null;
+        }
+
+        return new MeshData(VertexLayout.POSITION_UV_NORMAL_COMPACT, Arrays.copyOf(indices, indexCount),
+                positions, textureUVs, normals);
+    }
+}
@@ -0,0 +1,218 @@
+package org.lasmth.graphics;
+
+import org.joml.Matrix4f;
+import org.lasmth.graphics.entities.Entity;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.RawModel;
+import org.lasmth.graphics.models.TexturedModel;
+import org.lasmth.graphics.shaders.staticshader.MultiDrawStaticShader;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL43;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+
+/**
+ * Draws a frame with one glMultiDrawElementsIndirect call per bucket of entities sharing a VAO and texture.
+ * Every entity gets a DrawElementsIndirectCommand and its transformation matrix written to a
+ * {@link StreamingBuffer}, which is read as the indirect buffer and, through a shader storage binding, by the
+ * {@link MultiDrawStaticShader}, which finds the matrix by gl_DrawIDARB.
+ * <p>
+ * Works with any model, but is meant for {@link PooledMesh}es: a {@link MeshPool} puts many models behind
+ * one VAO, so a whole pool sharing a texture is a single call. Models with VAOs of their own get a call each.
+ * <p>
+ * Needs OpenGL 4.5 and GL_ARB_shader_draw_parameters, see {@link #isSupported(RenderDevice)}. Like the
+ * {@link InstancedRenderer} this starts its shader itself and leaves it in use.
+ */
+public class MultiDrawRenderer {
+
+    private static final int MATRIX_SIZE = 16;
+    // count, instanceCount, firstIndex, baseVertex, baseInstance.
+    private static final int COMMAND_SIZE = 5;
+    private static final int INITIAL_DRAW_CAPACITY = 1024;
+
+    private final RenderDevice device;
+    private final MultiDrawStaticShader shader;
+    private final RenderStats stats = new RenderStats();
+    private final EntityBatches batches = new EntityBatches();
+    private final TextureBinder textureBinder;
+
+    private final StreamingBuffer stream;
+    private final int transformAlignment;
+    // Where this frame's matrices and commands were written in the stream.
+    private int transformOffset;
+    private int commandOffset;
+    private final Matrix4f transformationMatrix = new Matrix4f();
+
+    /**
+     * @return True if the context can render with multi-draw indirect and gl_DrawIDARB. The shader cannot be
+     * compiled otherwise, so check before creating it. The shader is GLSL 4.50 and requires the ARB extension by
+     * name, so both are needed even on 4.6, where the feature is core but the extension may not be advertised.
+     */
+    public static boolean isSupported(RenderDevice device) {
+        return device.supportsOpenGL(4, 5) && device.supportsExtension("GL_ARB_shader_draw_parameters");
+    }
+
+    public MultiDrawRenderer(MultiDrawStaticShader shader) {
+        this(shader, StateCachingRenderDevice.getInstance());
+    }
+
+    /**
+     * @param device Device all of the renderer's OpenGL calls are made through.
+     */
+    public MultiDrawRenderer(MultiDrawStaticShader shader, RenderDevice device) {
+        this.device = device;
+        this.shader = shader;
+        this.textureBinder = new TextureBinder(device);
+        this.transformAlignment = Math.max(Integer.BYTES,
+                device.getInteger(GL43.GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT));
+        this.stream = new StreamingBuffer(frameBytes(INITIAL_DRAW_CAPACITY), device);
+
+        shader.start();
+        shader.connectTextureUnits();
+    }
+
+    public void processEntity(Entity entity) {
+        batches.add(entity);
+    }
+
+    public void processEntities(EntityStore entities) {
+        batches.addAll(entities);
+    }
+
+    /**
+     * Queue a subset of the entities in the store, e.g. those which survived culling.
+     * @param indices Indices of the entities to draw. Only the first count values are used.
+     */
+    public void processEntities(EntityStore entities, int[] indices, int count) {
+        batches.addAll(entities, indices, count);
+    }
+
+    /**
+     * Draw everything queued since the last call and empty the queue.
+     */
+    public void render() {
+        stats.reset();
+        List<EntityBatches.Batch> sorted = batches.sorted();
+        int drawCount = 0;
+        for (EntityBatches.Batch batch : sorted) {
+            drawCount += batch.size;
+        }
+        if (drawCount == 0) {
+            return;
+        }
+
+        stream.beginFrame(frameBytes(drawCount));
+        fillBuffers(sorted, drawCount);
+        bindBuffers(drawCount);
+
+        shader.start();
+        textureBinder.reset();
+        int firstDraw = 0;
+        int batchIndex = 0;
+        while (batchIndex < sorted.size()) {
+            TexturedModel model = sorted.get(batchIndex).model;
+            RawModel rawModel = model.getRawModel();
+
+            // Batches are sorted by VAO, texture and layer, so a bucket is a run of batches agreeing on all three.
+            int bucketDraws = 0;
+            long triangles = 0;
+            int end = batchIndex;
+            while (end < sorted.size() && sameBucket(model, sorted.get(end).model)) {
+                EntityBatches.Batch batch = sorted.get(end);
+                bucketDraws += batch.size;
+                triangles += (long) batch.model.getRawModel().getVertexCount() / 3 * batch.size;
+                end++;
+            }
+
+            device.bindVertexArray(rawModel.getVaoID());
+            device.enableVertexAttribArray(0);
+            device.enableVertexAttribArray(1);
+            stats.recordStateChange();
+            if (textureBinder.bind(model, shader)) {
+                stats.recordStateChange();
+            }
+            shader.loadDrawOffset(firstDraw);
+
+            device.multiDrawElementsIndirect(GL11.GL_TRIANGLES, rawModel.getIndexType(),
+                    commandOffset + (long) firstDraw * COMMAND_SIZE * Integer.BYTES, bucketDraws, 0);
+            stats.recordDrawCall(triangles);
+
+            firstDraw += bucketDraws;
+            batchIndex = end;
+        }
+        device.bindVertexArray(0);
+        stream.endFrame();
+        batches.clear();
+    }
+
+    /**
+     * @return Counters for the most recent call to {@link #render()}.
+     */
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return The buffer matrices and commands are streamed through, e.g. for its fence wait and byte counts.
+     */
+    public StreamingBuffer getStreamingBuffer() {
+        return stream;
+    }
+
+    public void cleanUp() {
+        stream.cleanUp();
+    }
+
+    private static boolean sameBucket(TexturedModel a, TexturedModel b) {
+        RawModel rawA = a.getRawModel();
+        RawModel rawB = b.getRawModel();
+        return rawA.getVaoID() == rawB.getVaoID() && rawA.getIndexType() == rawB.getIndexType()
+                && a.getTextureId() == b.getTextureId() && a.getLayer() == b.getLayer();
+    }
+
+    /**
+     * Write one command and one matrix per entity straight into the stream, in the order the buckets will be
+     * drawn.
+     */
+    private void fillBuffers(List<EntityBatches.Batch> sorted, int drawCount) {
+        int transformBytes = drawCount * MATRIX_SIZE * Float.BYTES;
+        int commandBytes = drawCount * COMMAND_SIZE * Integer.BYTES;
+        transformOffset = stream.allocate(transformBytes, transformAlignment);
+        commandOffset = stream.allocate(commandBytes, Integer.BYTES);
+        FloatBuffer transformData = stream.getRange(transformOffset, transformBytes).asFloatBuffer();
+        IntBuffer commandData = stream.getRange(commandOffset, commandBytes).asIntBuffer();
+
+        int draw = 0;
+        for (EntityBatches.Batch batch : sorted) {
+            RawModel rawModel = batch.model.getRawModel();
+            for (int i = 0; i < batch.size; i++) {
+                batch.stores[i].getTransformationMatrix(batch.indices[i], transformationMatrix);
+                transformationMatrix.get(draw * MATRIX_SIZE, transformData);
+                commandData.put(rawModel.getVertexCount())
+                        .put(1)
+                        .put(rawModel.getFirstIndex())
+                        .put(rawModel.getBaseVertex())
+                        .put(0);
+                draw++;
+            }
+        }
+        stream.flush();
+    }
+
+    private void bindBuffers(int drawCount) {
+        device.bindBufferRange(GL43.GL_SHADER_STORAGE_BUFFER, MultiDrawStaticShader.TRANSFORMS_BINDING,
+                stream.getBufferId(), transformOffset, (long) drawCount * MATRIX_SIZE * Float.BYTES);
+        // Left bound, the draw calls read their commands from it.
+        device.bindBuffer(GL43.GL_DRAW_INDIRECT_BUFFER, stream.getBufferId());
+    }
+
+    /**
+     * @return Stream space a frame of the given number of draws may take, including alignment padding.
+     */
+    private int frameBytes(int draws) {
+        return draws * (MATRIX_SIZE * Float.BYTES + COMMAND_SIZE * Integer.BYTES) + transformAlignment
+                + Integer.BYTES;
+    }
+}
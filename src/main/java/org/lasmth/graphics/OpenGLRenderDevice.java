@@ -0,0 +1,418 @@
+package org.lasmth.graphics;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GL44;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link RenderDevice} which passes every call straight through to OpenGL. Requires a current context.
+ */
+public class OpenGLRenderDevice implements RenderDevice {
+
+    private static OpenGLRenderDevice instance = null;
+
+    // Context version, looked up the first time it is needed.
+    private int majorVersion = -1;
+    private int minorVersion;
+    // Extensions the context supports, looked up the first time one is asked about.
+    private Set<String> extensions;
+
+    /**
+     * @return Shared instance, used wherever no other device is given.
+     */
+    public static OpenGLRenderDevice getInstance() {
+        if (instance == null) {
+            instance = new OpenGLRenderDevice();
+        }
+        return instance;
+    }
+
+    @Override
+    public boolean supportsOpenGL(int major, int minor) {
+        if (majorVersion < 0) {
+            majorVersion = GL11.glGetInteger(GL30.GL_MAJOR_VERSION);
+            minorVersion = GL11.glGetInteger(GL30.GL_MINOR_VERSION);
+        }
+        return majorVersion > major || (majorVersion == major && minorVersion >= minor);
+    }
+
+    @Override
+    public String getString(int name) {
+        return GL11.glGetString(name);
+    }
+
+    @Override
+    public int getInteger(int name) {
+        return GL11.glGetInteger(name);
+    }
+
+    @Override
+    public boolean supportsExtension(String name) {
+        if (extensions == null) {
+            extensions = new HashSet<>();
+            int count = GL11.glGetInteger(GL30.GL_NUM_EXTENSIONS);
+            for (int i = 0; i < count; i++) {
+                extensions.add(GL30.glGetStringi(GL11.GL_EXTENSIONS, i));
+            }
+        }
+        return extensions.contains(name);
+    }
+
+    @Override
+    public int genBuffers() {
+        return GL15.glGenBuffers();
+    }
+
+    @Override
+    public void deleteBuffers(int bufferId) {
+        GL15.glDeleteBuffers(bufferId);
+    }
+
+    @Override
+    public void bindBuffer(int target, int bufferId) {
+        GL15.glBindBuffer(target, bufferId);
+    }
+
+    @Override
+    public void bufferData(int target, FloatBuffer data, int usage) {
+        GL15.glBufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferData(int target, IntBuffer data, int usage) {
+        GL15.glBufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferData(int target, ByteBuffer data, int usage) {
+        GL15.glBufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferData(int target, long size, int usage) {
+        GL15.glBufferData(target, size, usage);
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, FloatBuffer data) {
+        GL15.glBufferSubData(target, offset, data);
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data) {
+        GL15.glBufferSubData(target, offset, data);
+    }
+
+    @Override
+    public void bindBufferBase(int target, int index, int bufferId) {
+        GL30.glBindBufferBase(target, index, bufferId);
+    }
+
+    @Override
+    public void copyBufferSubData(int readTarget, int writeTarget, long readOffset, long writeOffset, long size) {
+        GL31.glCopyBufferSubData(readTarget, writeTarget, readOffset, writeOffset, size);
+    }
+
+    @Override
+    public void bindBufferRange(int target, int index, int bufferId, long offset, long size) {
+        GL30.glBindBufferRange(target, index, bufferId, offset, size);
+    }
+
+    @Override
+    public void bufferStorage(int target, long size, int flags) {
+        GL44.glBufferStorage(target, size, flags);
+    }
+
+    @Override
+    public ByteBuffer mapBufferRange(int target, long offset, long length, int access) {
+        return GL30.glMapBufferRange(target, offset, length, access);
+    }
+
+    @Override
+    public boolean unmapBuffer(int target) {
+        return GL15.glUnmapBuffer(target);
+    }
+
+    @Override
+    public long fenceSync() {
+        return GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+    }
+
+    @Override
+    public int clientWaitSync(long sync, int flags, long timeoutNanos) {
+        return GL32.glClientWaitSync(sync, flags, timeoutNanos);
+    }
+
+    @Override
+    public void deleteSync(long sync) {
+        GL32.glDeleteSync(sync);
+    }
+
+    @Override
+    public int genVertexArrays() {
+        return GL30.glGenVertexArrays();
+    }
+
+    @Override
+    public void deleteVertexArrays(int vaoId) {
+        GL30.glDeleteVertexArrays(vaoId);
+    }
+
+    @Override
+    public void bindVertexArray(int vaoId) {
+        GL30.glBindVertexArray(vaoId);
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        GL20.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+        GL20.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset) {
+        GL20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void vertexAttribDivisor(int index, int divisor) {
+        GL33.glVertexAttribDivisor(index, divisor);
+    }
+
+    @Override
+    public int genTextures() {
+        return GL11.glGenTextures();
+    }
+
+    @Override
+    public void deleteTextures(int textureId) {
+        GL11.glDeleteTextures(textureId);
+    }
+
+    @Override
+    public void activeTexture(int textureUnit) {
+        GL13.glActiveTexture(textureUnit);
+    }
+
+    @Override
+    public void bindTexture(int target, int textureId) {
+        GL11.glBindTexture(target, textureId);
+    }
+
+    @Override
+    public void texParameteri(int target, int name, int value) {
+        GL11.glTexParameteri(target, name, value);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, int internalFormat, int width, int height, int border,
+                           int format, int type, ByteBuffer pixels) {
+        GL11.glTexImage2D(target, level, internalFormat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void texImage3D(int target, int level, int internalFormat, int width, int height, int depth, int border,
+                           int format, int type, ByteBuffer pixels) {
+        GL12.glTexImage3D(target, level, internalFormat, width, height, depth, border, format, type, pixels);
+    }
+
+    @Override
+    public void texSubImage3D(int target, int level, int xOffset, int yOffset, int zOffset, int width, int height,
+                              int depth, int format, int type, ByteBuffer pixels) {
+        GL12.glTexSubImage3D(target, level, xOffset, yOffset, zOffset, width, height, depth, format, type, pixels);
+    }
+
+    @Override
+    public void generateMipmap(int target) {
+        GL30.glGenerateMipmap(target);
+    }
+
+    @Override
+    public void enable(int capability) {
+        GL11.glEnable(capability);
+    }
+
+    @Override
+    public void disable(int capability) {
+        GL11.glDisable(capability);
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+        GL11.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void clear(int mask) {
+        GL11.glClear(mask);
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, long indicesOffset) {
+        GL11.glDrawElements(mode, count, type, indicesOffset);
+    }
+
+    @Override
+    public void drawElementsInstanced(int mode, int count, int type, long indicesOffset, int instanceCount) {
+        GL31.glDrawElementsInstanced(mode, count, type, indicesOffset, instanceCount);
+    }
+
+    @Override
+    public void drawElementsBaseVertex(int mode, int count, int type, long indicesOffset, int baseVertex) {
+        GL32.glDrawElementsBaseVertex(mode, count, type, indicesOffset, baseVertex);
+    }
+
+    @Override
+    public void multiDrawElementsIndirect(int mode, int type, long indirectOffset, int drawCount, int stride) {
+        GL43.glMultiDrawElementsIndirect(mode, type, indirectOffset, drawCount, stride);
+    }
+
+    @Override
+    public int createShader(int type) {
+        return GL20.glCreateShader(type);
+    }
+
+    @Override
+    public void shaderSource(int shaderId, CharSequence source) {
+        GL20.glShaderSource(shaderId, source);
+    }
+
+    @Override
+    public void compileShader(int shaderId) {
+        GL20.glCompileShader(shaderId);
+    }
+
+    @Override
+    public int getShaderi(int shaderId, int name) {
+        return GL20.glGetShaderi(shaderId, name);
+    }
+
+    @Override
+    public String getShaderInfoLog(int shaderId) {
+        return GL20.glGetShaderInfoLog(shaderId);
+    }
+
+    @Override
+    public void deleteShader(int shaderId) {
+        GL20.glDeleteShader(shaderId);
+    }
+
+    @Override
+    public int createProgram() {
+        return GL20.glCreateProgram();
+    }
+
+    @Override
+    public void attachShader(int programId, int shaderId) {
+        GL20.glAttachShader(programId, shaderId);
+    }
+
+    @Override
+    public void detachShader(int programId, int shaderId) {
+        GL20.glDetachShader(programId, shaderId);
+    }
+
+    @Override
+    public void bindAttribLocation(int programId, int index, CharSequence name) {
+        GL20.glBindAttribLocation(programId, index, name);
+    }
+
+    @Override
+    public void linkProgram(int programId) {
+        GL20.glLinkProgram(programId);
+    }
+
+    @Override
+    public void validateProgram(int programId) {
+        GL20.glValidateProgram(programId);
+    }
+
+    @Override
+    public int getProgrami(int programId, int name) {
+        return GL20.glGetProgrami(programId, name);
+    }
+
+    @Override
+    public String getProgramInfoLog(int programId) {
+        return GL20.glGetProgramInfoLog(programId);
+    }
+
+    @Override
+    public void programParameteri(int programId, int name, int value) {
+        GL41.glProgramParameteri(programId, name, value);
+    }
+
+    @Override
+    public void getProgramBinary(int programId, IntBuffer length, IntBuffer binaryFormat, ByteBuffer binary) {
+        GL41.glGetProgramBinary(programId, length, binaryFormat, binary);
+    }
+
+    @Override
+    public void programBinary(int programId, int binaryFormat, ByteBuffer binary) {
+        GL41.glProgramBinary(programId, binaryFormat, binary);
+    }
+
+    @Override
+    public void deleteProgram(int programId) {
+        GL20.glDeleteProgram(programId);
+    }
+
+    @Override
+    public void useProgram(int programId) {
+        GL20.glUseProgram(programId);
+    }
+
+    @Override
+    public int getUniformLocation(int programId, CharSequence name) {
+        return GL20.glGetUniformLocation(programId, name);
+    }
+
+    @Override
+    public int getUniformBlockIndex(int programId, CharSequence name) {
+        return GL31.glGetUniformBlockIndex(programId, name);
+    }
+
+    @Override
+    public void uniformBlockBinding(int programId, int blockIndex, int bindingPoint) {
+        GL31.glUniformBlockBinding(programId, blockIndex, bindingPoint);
+    }
+
+    @Override
+    public void uniform1i(int location, int value) {
+        GL20.glUniform1i(location, value);
+    }
+
+    @Override
+    public void uniform1f(int location, float value) {
+        GL20.glUniform1f(location, value);
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+        GL20.glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value) {
+        GL20.glUniformMatrix4fv(location, transpose, value);
+    }
+}
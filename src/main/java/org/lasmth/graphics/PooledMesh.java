@@ -0,0 +1,66 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.models.BoundingBox;
+import org.lasmth.graphics.models.RawModel;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * A model stored in the shared buffers of a {@link MeshPool}, rather than in buffers of its own. Its VAO is the
+ * pool's, and it is drawn by offsetting into the pool's buffers with {@link #getFirstIndex()} and
+ * {@link #getBaseVertex()}. The offsets change when the pool is defragmented, so read them when drawing.
+ * <p>
+ * Drawn by the {@link MultiDrawRenderer}, {@link Renderer} and {@link BatchRenderer}. The
+ * {@link InstancedRenderer} attaches instance data to a model's VAO, so it needs models with VAOs of their own.
+ */
+public class PooledMesh extends RawModel {
+
+    private final MeshPool pool;
+    private final int poolVertexCount;
+    private int firstIndex;
+    private int baseVertex;
+    private boolean removed;
+
+    PooledMesh(MeshPool pool, int vertexCount, int indexCount, BoundingBox bounds, int firstIndex, int baseVertex) {
+        super(pool.getVaoId(), indexCount, bounds, GL11.GL_UNSIGNED_INT,
+                (long) vertexCount * pool.getLayout().getStride(), (long) indexCount * Integer.BYTES);
+        this.pool = pool;
+        this.poolVertexCount = vertexCount;
+        this.firstIndex = firstIndex;
+        this.baseVertex = baseVertex;
+    }
+
+    public MeshPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    @Override
+    public int getBaseVertex() {
+        return baseVertex;
+    }
+
+    /**
+     * @return Number of vertices the mesh takes up in the pool. {@link #getVertexCount()} is the number of
+     * indices, as for every model.
+     */
+    int getPoolVertexCount() {
+        return poolVertexCount;
+    }
+
+    void move(int firstIndex, int baseVertex) {
+        this.firstIndex = firstIndex;
+        this.baseVertex = baseVertex;
+    }
+
+    boolean isRemoved() {
+        return removed;
+    }
+
+    void markRemoved() {
+        removed = true;
+    }
+}
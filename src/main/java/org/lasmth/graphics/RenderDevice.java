@@ -0,0 +1,191 @@
+package org.lasmth.graphics;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * The OpenGL calls made by the engine's loading, shader and rendering code. Routing them through an interface
+ * rather than calling LWJGL's static GL classes directly lets us swap the implementation, e.g. for a stub
+ * which needs no OpenGL context when benchmarking the CPU side of rendering.
+ * <p>
+ * Methods mirror the OpenGL function of the same name (minus the gl prefix) and take the usual GL constants.
+ *
+ * @see OpenGLRenderDevice
+ */
+public interface RenderDevice {
+
+    /**
+     * @return True if the current context supports at least the given OpenGL version.
+     */
+    boolean supportsOpenGL(int major, int minor);
+
+    String getString(int name);
+
+    int getInteger(int name);
+
+    /**
+     * @return True if the context supports the named extension, e.g. GL_ARB_shader_draw_parameters.
+     */
+    boolean supportsExtension(String name);
+
+    // Buffers
+
+    int genBuffers();
+
+    void deleteBuffers(int bufferId);
+
+    void bindBuffer(int target, int bufferId);
+
+    void bufferData(int target, FloatBuffer data, int usage);
+
+    void bufferData(int target, IntBuffer data, int usage);
+
+    void bufferData(int target, ByteBuffer data, int usage);
+
+    void bufferData(int target, long size, int usage);
+
+    void bufferSubData(int target, long offset, FloatBuffer data);
+
+    void bufferSubData(int target, long offset, ByteBuffer data);
+
+    void bindBufferBase(int target, int index, int bufferId);
+
+    void copyBufferSubData(int readTarget, int writeTarget, long readOffset, long writeOffset, long size);
+
+    void bindBufferRange(int target, int index, int bufferId, long offset, long size);
+
+    void bufferStorage(int target, long size, int flags);
+
+    /**
+     * @return The mapped range. Only valid until the buffer is unmapped or deleted.
+     */
+    ByteBuffer mapBufferRange(int target, long offset, long length, int access);
+
+    boolean unmapBuffer(int target);
+
+    // Synchronisation
+
+    /**
+     * @return A fence which is signalled once the GPU has finished every command issued before it.
+     */
+    long fenceSync();
+
+    /**
+     * @return GL_ALREADY_SIGNALED, GL_CONDITION_SATISFIED, GL_TIMEOUT_EXPIRED or GL_WAIT_FAILED.
+     */
+    int clientWaitSync(long sync, int flags, long timeoutNanos);
+
+    void deleteSync(long sync);
+
+    // Vertex arrays
+
+    int genVertexArrays();
+
+    void deleteVertexArrays(int vaoId);
+
+    void bindVertexArray(int vaoId);
+
+    void enableVertexAttribArray(int index);
+
+    void disableVertexAttribArray(int index);
+
+    void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset);
+
+    void vertexAttribDivisor(int index, int divisor);
+
+    // Textures
+
+    int genTextures();
+
+    void deleteTextures(int textureId);
+
+    void activeTexture(int textureUnit);
+
+    void bindTexture(int target, int textureId);
+
+    void texParameteri(int target, int name, int value);
+
+    void texImage2D(int target, int level, int internalFormat, int width, int height, int border, int format,
+                    int type, ByteBuffer pixels);
+
+    void texImage3D(int target, int level, int internalFormat, int width, int height, int depth, int border,
+                    int format, int type, ByteBuffer pixels);
+
+    void texSubImage3D(int target, int level, int xOffset, int yOffset, int zOffset, int width, int height,
+                       int depth, int format, int type, ByteBuffer pixels);
+
+    void generateMipmap(int target);
+
+    // Drawing and framebuffer state
+
+    void enable(int capability);
+
+    void disable(int capability);
+
+    void clearColor(float red, float green, float blue, float alpha);
+
+    void clear(int mask);
+
+    void drawElements(int mode, int count, int type, long indicesOffset);
+
+    void drawElementsInstanced(int mode, int count, int type, long indicesOffset, int instanceCount);
+
+    void drawElementsBaseVertex(int mode, int count, int type, long indicesOffset, int baseVertex);
+
+    void multiDrawElementsIndirect(int mode, int type, long indirectOffset, int drawCount, int stride);
+
+    // Shaders
+
+    int createShader(int type);
+
+    void shaderSource(int shaderId, CharSequence source);
+
+    void compileShader(int shaderId);
+
+    int getShaderi(int shaderId, int name);
+
+    String getShaderInfoLog(int shaderId);
+
+    void deleteShader(int shaderId);
+
+    int createProgram();
+
+    void attachShader(int programId, int shaderId);
+
+    void detachShader(int programId, int shaderId);
+
+    void bindAttribLocation(int programId, int index, CharSequence name);
+
+    void linkProgram(int programId);
+
+    void validateProgram(int programId);
+
+    int getProgrami(int programId, int name);
+
+    String getProgramInfoLog(int programId);
+
+    void programParameteri(int programId, int name, int value);
+
+    void getProgramBinary(int programId, IntBuffer length, IntBuffer binaryFormat, ByteBuffer binary);
+
+    void programBinary(int programId, int binaryFormat, ByteBuffer binary);
+
+    void deleteProgram(int programId);
+
+    void useProgram(int programId);
+
+    int getUniformLocation(int programId, CharSequence name);
+
+    int getUniformBlockIndex(int programId, CharSequence name);
+
+    void uniformBlockBinding(int programId, int blockIndex, int bindingPoint);
+
+    void uniform1i(int location, int value);
+
+    void uniform1f(int location, float value);
+
+    void uniform3f(int location, float x, float y, float z);
+
+    void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value);
+}
@@ -0,0 +1,59 @@
+package org.lasmth.graphics;
+
+/**
+ * Per-frame counters describing how much work a renderer handed to OpenGL. Reset at the start of each frame
+ * so the values always describe the most recent one.
+ */
+public class RenderStats {
+
+    private int drawCalls;
+    private int stateChanges;
+    private long triangles;
+
+    /**
+     * Zero all counters. Should be called once per frame before rendering.
+     */
+    public void reset() {
+        drawCalls = 0;
+        stateChanges = 0;
+        triangles = 0;
+    }
+
+    /**
+     * @param triangleCount Number of triangles drawn by the call, over all instances.
+     */
+    void recordDrawCall(long triangleCount) {
+        drawCalls++;
+        triangles += triangleCount;
+    }
+
+    void recordStateChange() {
+        stateChanges++;
+    }
+
+    /**
+     * @return Number of draw calls issued this frame.
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    /**
+     * @return Number of VAO and texture binds issued this frame.
+     */
+    public int getStateChanges() {
+        return stateChanges;
+    }
+
+    /**
+     * @return Number of triangles submitted this frame.
+     */
+    public long getTriangles() {
+        return triangles;
+    }
+
+    @Override
+    public String toString() {
+        return "draw calls: " + drawCalls + ", state changes: " + stateChanges + ", triangles: " + triangles;
+    }
+}
@@ -1,13 +1,16 @@
 package org.lasmth.graphics;
 
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
+import org.lasmth.graphics.entities.Camera;
 import org.lasmth.graphics.entities.Entity;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.RawModel;
 import org.lasmth.graphics.models.TexturedModel;
+import org.lasmth.graphics.shaders.FrameUniforms;
 import org.lasmth.graphics.shaders.staticshader.StaticShader;
+import org.lasmth.windowmanager.Window;
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL30;
 
 public class Renderer {
 
@@ -15,14 +18,42 @@ public class Renderer {
     private static final float NEAR_PLANE = 0.1f;
     private static final float FAR_PLANE = 1000;
 
+    private final RenderDevice device;
     private Matrix4f projectionMatrix;
+    // Reused between draws so iterating an EntityStore does not allocate.
+    private final Matrix4f transformationMatrix = new Matrix4f();
+    private final RenderStats stats = new RenderStats();
+    private final TextureBinder textureBinder;
+    // Projection, view and camera position, shared by every shader.
+    private final FrameUniforms frameUniforms;
+
+    // Combined projection and view matrix, and the frustum planes extracted from it.
+    private final Matrix4f projectionViewMatrix = new Matrix4f();
+    private final FrustumIntersection frustum = new FrustumIntersection();
 
     public Renderer(StaticShader shader) {
+        this(shader, StateCachingRenderDevice.getInstance());
+    }
+
+    /**
+     * @param device Device all of the renderer's OpenGL calls are made through.
+     */
+    public Renderer(StaticShader shader, RenderDevice device) {
+        this(shader, device, Window.getInstance().getAspectRatio());
+    }
+
+    /**
+     * @param aspectRatio Width over height of the image being rendered.
+     */
+    public Renderer(StaticShader shader, RenderDevice device, float aspectRatio) {
+        this.device = device;
+        this.textureBinder = new TextureBinder(device);
+        this.frameUniforms = new FrameUniforms(device);
         // Projection matrix will never change unless we decide to allow for window resizing
         // or want to change the view frustrum.
-        createProjectionMatrix();
+        createProjectionMatrix(aspectRatio);
         shader.start();
-        shader.loadProjectionMatrix(projectionMatrix);
+        shader.connectTextureUnits();
         shader.stop();
     }
 
@@ -30,10 +61,10 @@ public class Renderer {
      * Clear the screen OpenGL canvas.
      */
     public void prepare() {
-        GL11.glEnable(GL11.GL_DEPTH_TEST);
-        GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
-        // Instructs OpenGL to clear the depth buffer every frame.
-        GL11.glClear(GL11.GL_DEPTH_BUFFER_BIT);
+        stats.reset();
+        device.enable(GL11.GL_DEPTH_TEST);
+        // Clears the colour and depth buffers in one go, which drivers can do faster than one after the other.
+        device.clear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
     }
 
     /**
@@ -41,30 +72,87 @@ public class Renderer {
      * @param entity to render.
      */
     public void render(Entity entity, StaticShader shader) {
-        TexturedModel texturedModel = entity.getTexturedModel();
+        TexturedModel texturedModel = entity.getTexturedModel()
+                .getLod(entity.getStore().getLodLevel(entity.getIndex()));
+        render(texturedModel, entity.getTransformationMatrix(), shader);
+    }
+
+    /**
+     * Render every entity in the store. Entities are visited in index order so the transform arrays are
+     * read linearly.
+     * @param entities Store holding the entities to render.
+     */
+    public void render(EntityStore entities, StaticShader shader) {
+        for (int i = 0; i < entities.size(); i++) {
+            TexturedModel texturedModel = entities.getModel(entities.getModelHandle(i))
+                    .getLod(entities.getLodLevel(i));
+            render(texturedModel, entities.getTransformationMatrix(i, transformationMatrix), shader);
+        }
+    }
 
-        GL30.glBindVertexArray(texturedModel.getRawModel().getVaoID());
-        GL20.glEnableVertexAttribArray(0);
-        GL20.glEnableVertexAttribArray(1);
+    private void render(TexturedModel texturedModel, Matrix4f transformationMatrix, StaticShader shader) {
+        // The VAO is left bound with its attribute arrays enabled afterwards, so drawing the same model again
+        // binds nothing when the device caches state.
+        device.bindVertexArray(texturedModel.getRawModel().getVaoID());
+        device.enableVertexAttribArray(0);
+        device.enableVertexAttribArray(1);
+        stats.recordStateChange();
 
-        Matrix4f transformationMatrix = entity.getTransformationMatrix();
         shader.loadTransformationMatrix(transformationMatrix);
 
-        // Bind our the texture we wish to use.
-        // Sampler 2D uniform variable is located in GL_TEXTURE0 by default.
-        // So we use this texture bank.
-        GL13.glActiveTexture(GL13.GL_TEXTURE0);
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, texturedModel.getTextureId());
+        // Bind our the texture we wish to use. Each entity is drawn on its own, so bind it every time.
+        textureBinder.reset();
+        textureBinder.bind(texturedModel, shader);
+        stats.recordStateChange();
+
+
+        RawModel rawModel = texturedModel.getRawModel();
+        // Offsets are only non-zero for models sharing their buffers, see PooledMesh.
+        device.drawElementsBaseVertex(GL11.GL_TRIANGLES, rawModel.getVertexCount(), rawModel.getIndexType(),
+                (long) rawModel.getFirstIndex() * Loader.indexSize(rawModel.getIndexType()), rawModel.getBaseVertex());
+        stats.recordDrawCall(rawModel.getVertexCount() / 3);
+    }
+
+    /**
+     * Upload the camera's view to the per-frame uniform buffer, where every shader reads it from. Call once per
+     * frame before drawing anything.
+     */
+    public void loadCamera(Camera camera) {
+        frameUniforms.update(projectionMatrix, camera.getViewMatrix(), camera.getPosition());
+    }
 
+    /**
+     * @return The projection matrix used by this renderer.
+     */
+    public Matrix4f getProjectionMatrix() {
+        return projectionMatrix;
+    }
 
-        GL11.glDrawElements(GL11.GL_TRIANGLES, texturedModel.getRawModel().getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
-        GL20.glDisableVertexAttribArray(0);
-        GL20.glDisableVertexAttribArray(1);
-        GL30.glBindVertexArray(0);
+    /**
+     * Extracts the view frustum for the camera's current view. Anything outside it cannot be seen this frame.
+     * @return The frustum. The same instance is reused between calls.
+     */
+    public FrustumIntersection updateFrustum(Camera camera) {
+        projectionMatrix.mul(camera.getViewMatrix(), projectionViewMatrix);
+        // Extracts the six clip planes from the rows of the combined matrix.
+        return frustum.set(projectionViewMatrix);
+    }
+
+    /**
+     * @return Counters for the frame since the last call to {@link #prepare()}.
+     */
+    public RenderStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Delete the per-frame uniform buffer.
+     */
+    public void cleanUp() {
+        frameUniforms.cleanUp();
     }
 
-    private void createProjectionMatrix() {
-		float aspectRatio = 1280f / 720f;
+    private void createProjectionMatrix(float aspectRatio) {
 		float y_scale = (float) (1f / Math.tan(Math.toRadians((FOV / 2f))) * aspectRatio);
 		float x_scale = y_scale / aspectRatio;
 		float frustrum_length = FAR_PLANE - NEAR_PLANE;
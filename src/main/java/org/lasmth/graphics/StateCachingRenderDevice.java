@@ -0,0 +1,691 @@
+package org.lasmth.graphics;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL43;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * {@link RenderDevice} which remembers the OpenGL state set through it and drops calls that would not change
+ * anything, before they reach the driver. Tracks the program in use, the bound VAO and the vertex attribute
+ * arrays enabled on each VAO, buffer bindings, the active texture unit and the textures bound on each unit,
+ * enabled capabilities and the clear colour. Everything else is passed straight to the wrapped device.
+ * <p>
+ * The cache only knows about calls made through it, so code which changes the same state directly must call
+ * {@link #invalidate()} afterwards. The element array buffer binding is part of the VAO and is never elided.
+ * <p>
+ * -Dgl.state.cache=false passes every call through, for comparison.
+ */
+public class StateCachingRenderDevice implements RenderDevice {
+
+    private static final String ENABLED_PROPERTY = "gl.state.cache";
+
+    // State the cache does not know, so the next call setting it always goes through.
+    private static final int UNKNOWN = -1;
+    private static final int[] BUFFER_TARGETS = {GL15.GL_ARRAY_BUFFER, GL31.GL_UNIFORM_BUFFER,
+            GL43.GL_SHADER_STORAGE_BUFFER, GL43.GL_DRAW_INDIRECT_BUFFER};
+    private static final int[] TEXTURE_TARGETS = {GL11.GL_TEXTURE_2D, GL30.GL_TEXTURE_2D_ARRAY};
+    private static final int TEXTURE_UNITS = 16;
+    // Attribute arrays past this are not tracked, as the enabled ones of a VAO are kept as bits of a long.
+    private static final int TRACKED_ATTRIBUTES = Long.SIZE;
+
+    private static StateCachingRenderDevice instance = null;
+
+    private final RenderDevice device;
+    private boolean enabled;
+
+    private int program;
+    private int vertexArray;
+    private final int[] buffers = new int[BUFFER_TARGETS.length];
+    private int activeTextureUnit;
+    // Texture bound to each target of each unit, indexed by unit * TEXTURE_TARGETS.length + target.
+    private final int[] textures = new int[TEXTURE_UNITS * TEXTURE_TARGETS.length];
+    // Per VAO, indexed by ID. Which attribute arrays are known about, and which of those are enabled.
+    private long[] knownAttributes = new long[64];
+    private long[] enabledAttributes = new long[64];
+    private int[] enabledCapabilities = new int[8];
+    private int enabledCapabilityCount;
+    private int[] disabledCapabilities = new int[8];
+    private int disabledCapabilityCount;
+    // NaN while unknown, as it never equals the colour asked for.
+    private float clearRed;
+    private float clearGreen;
+    private float clearBlue;
+    private float clearAlpha;
+
+    private long issuedCalls;
+    private long elidedCalls;
+
+    /**
+     * @return Shared instance wrapping {@link OpenGLRenderDevice}, used wherever no other device is given.
+     */
+    public static StateCachingRenderDevice getInstance() {
+        if (instance == null) {
+            instance = new StateCachingRenderDevice(OpenGLRenderDevice.getInstance(),
+                    !"false".equals(System.getProperty(ENABLED_PROPERTY)));
+        }
+        return instance;
+    }
+
+    public StateCachingRenderDevice(RenderDevice device) {
+        this(device, true);
+    }
+
+    /**
+     * @param device Device the calls which change something are passed on to.
+     * @param enabled False to pass on every call.
+     */
+    public StateCachingRenderDevice(RenderDevice device, boolean enabled) {
+        this.device = device;
+        this.enabled = enabled;
+        invalidate();
+    }
+
+    /**
+     * Forget all state, e.g. after code outside this device has changed some of it.
+     */
+    public void invalidate() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        Arrays.fill(buffers, UNKNOWN);
+        activeTextureUnit = UNKNOWN;
+        Arrays.fill(textures, UNKNOWN);
+        Arrays.fill(knownAttributes, 0);
+        enabledCapabilityCount = 0;
+        disabledCapabilityCount = 0;
+        clearRed = Float.NaN;
+        clearGreen = Float.NaN;
+        clearBlue = Float.NaN;
+        clearAlpha = Float.NaN;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turn eliding calls on or off. The state is forgotten when turned back on, to start from a clean slate.
+     */
+    public void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) {
+            invalidate();
+        }
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return State changing calls passed on since the last {@link #resetStats()}.
+     */
+    public long getIssuedCalls() {
+        return issuedCalls;
+    }
+
+    /**
+     * @return State changing calls dropped since the last {@link #resetStats()}, as they would have changed
+     * nothing.
+     */
+    public long getElidedCalls() {
+        return elidedCalls;
+    }
+
+    public void resetStats() {
+        issuedCalls = 0;
+        elidedCalls = 0;
+    }
+
+    /**
+     * Counts a state change as issued or elided.
+     * @return True if the call should be passed on.
+     */
+    private boolean issue(boolean redundant) {
+        if (enabled && redundant) {
+            elidedCalls++;
+            return false;
+        }
+        issuedCalls++;
+        return true;
+    }
+
+    @Override
+    public boolean supportsOpenGL(int major, int minor) {
+        return device.supportsOpenGL(major, minor);
+    }
+
+    @Override
+    public String getString(int name) {
+        return device.getString(name);
+    }
+
+    @Override
+    public int getInteger(int name) {
+        return device.getInteger(name);
+    }
+
+    @Override
+    public boolean supportsExtension(String name) {
+        return device.supportsExtension(name);
+    }
+
+    // Buffers
+
+    @Override
+    public int genBuffers() {
+        return device.genBuffers();
+    }
+
+    @Override
+    public void deleteBuffers(int bufferId) {
+        device.deleteBuffers(bufferId);
+        // Deleting a bound buffer unbinds it.
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] == bufferId) {
+                buffers[i] = 0;
+            }
+        }
+    }
+
+    @Override
+    public void bindBuffer(int target, int bufferId) {
+        int slot = bufferSlot(target);
+        if (issue(slot >= 0 && buffers[slot] == bufferId)) {
+            device.bindBuffer(target, bufferId);
+            if (slot >= 0) {
+                buffers[slot] = bufferId;
+            }
+        }
+    }
+
+    @Override
+    public void bufferData(int target, FloatBuffer data, int usage) {
+        device.bufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferData(int target, IntBuffer data, int usage) {
+        device.bufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferData(int target, ByteBuffer data, int usage) {
+        device.bufferData(target, data, usage);
+    }
+
+    @Override
+    public void bufferData(int target, long size, int usage) {
+        device.bufferData(target, size, usage);
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, FloatBuffer data) {
+        device.bufferSubData(target, offset, data);
+    }
+
+    @Override
+    public void bufferSubData(int target, long offset, ByteBuffer data) {
+        device.bufferSubData(target, offset, data);
+    }
+
+    @Override
+    public void bindBufferBase(int target, int index, int bufferId) {
+        device.bindBufferBase(target, index, bufferId);
+        // Also binds the buffer to the target itself.
+        int slot = bufferSlot(target);
+        if (slot >= 0) {
+            buffers[slot] = bufferId;
+        }
+    }
+
+    @Override
+    public void copyBufferSubData(int readTarget, int writeTarget, long readOffset, long writeOffset, long size) {
+        device.copyBufferSubData(readTarget, writeTarget, readOffset, writeOffset, size);
+    }
+
+    @Override
+    public void bindBufferRange(int target, int index, int bufferId, long offset, long size) {
+        device.bindBufferRange(target, index, bufferId, offset, size);
+        // Like bindBufferBase, also binds the buffer to the target itself.
+        int slot = bufferSlot(target);
+        if (slot >= 0) {
+            buffers[slot] = bufferId;
+        }
+    }
+
+    @Override
+    public void bufferStorage(int target, long size, int flags) {
+        device.bufferStorage(target, size, flags);
+    }
+
+    @Override
+    public ByteBuffer mapBufferRange(int target, long offset, long length, int access) {
+        return device.mapBufferRange(target, offset, length, access);
+    }
+
+    @Override
+    public boolean unmapBuffer(int target) {
+        return device.unmapBuffer(target);
+    }
+
+    // Synchronisation
+
+    @Override
+    public long fenceSync() {
+        return device.fenceSync();
+    }
+
+    @Override
+    public int clientWaitSync(long sync, int flags, long timeoutNanos) {
+        return device.clientWaitSync(sync, flags, timeoutNanos);
+    }
+
+    @Override
+    public void deleteSync(long sync) {
+        device.deleteSync(sync);
+    }
+
+    private static int bufferSlot(int target) {
+        for (int i = 0; i < BUFFER_TARGETS.length; i++) {
+            if (BUFFER_TARGETS[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Vertex arrays
+
+    @Override
+    public int genVertexArrays() {
+        return device.genVertexArrays();
+    }
+
+    @Override
+    public void deleteVertexArrays(int vaoId) {
+        device.deleteVertexArrays(vaoId);
+        if (vaoId < knownAttributes.length) {
+            knownAttributes[vaoId] = 0;
+        }
+        if (vertexArray == vaoId) {
+            vertexArray = 0;
+        }
+    }
+
+    @Override
+    public void bindVertexArray(int vaoId) {
+        if (issue(vertexArray == vaoId)) {
+            device.bindVertexArray(vaoId);
+            vertexArray = vaoId;
+        }
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        setVertexAttribArray(index, true);
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+        setVertexAttribArray(index, false);
+    }
+
+    /**
+     * Attribute arrays are enabled per VAO, so are tracked against whichever one is bound.
+     */
+    private void setVertexAttribArray(int index, boolean enable) {
+        boolean tracked = vertexArray != UNKNOWN && index < TRACKED_ATTRIBUTES;
+        long bit = 1L << index;
+        if (tracked && vertexArray >= knownAttributes.length) {
+            int length = Math.max(knownAttributes.length * 2, vertexArray + 1);
+            knownAttributes = Arrays.copyOf(knownAttributes, length);
+            enabledAttributes = Arrays.copyOf(enabledAttributes, length);
+        }
+        boolean redundant = tracked && (knownAttributes[vertexArray] & bit) != 0
+                && ((enabledAttributes[vertexArray] & bit) != 0) == enable;
+        if (!issue(redundant)) {
+            return;
+        }
+        if (enable) {
+            device.enableVertexAttribArray(index);
+        } else {
+            device.disableVertexAttribArray(index);
+        }
+        if (tracked) {
+            knownAttributes[vertexArray] |= bit;
+            if (enable) {
+                enabledAttributes[vertexArray] |= bit;
+            } else {
+                enabledAttributes[vertexArray] &= ~bit;
+            }
+        }
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, long offset) {
+        device.vertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void vertexAttribDivisor(int index, int divisor) {
+        device.vertexAttribDivisor(index, divisor);
+    }
+
+    // Textures
+
+    @Override
+    public int genTextures() {
+        return device.genTextures();
+    }
+
+    @Override
+    public void deleteTextures(int textureId) {
+        device.deleteTextures(textureId);
+        // Deleting a bound texture unbinds it from every unit.
+        for (int i = 0; i < textures.length; i++) {
+            if (textures[i] == textureId) {
+                textures[i] = 0;
+            }
+        }
+    }
+
+    @Override
+    public void activeTexture(int textureUnit) {
+        if (issue(activeTextureUnit == textureUnit)) {
+            device.activeTexture(textureUnit);
+            activeTextureUnit = textureUnit;
+        }
+    }
+
+    @Override
+    public void bindTexture(int target, int textureId) {
+        int slot = textureSlot(target);
+        if (issue(slot >= 0 && textures[slot] == textureId)) {
+            device.bindTexture(target, textureId);
+            if (slot >= 0) {
+                textures[slot] = textureId;
+            }
+        }
+    }
+
+    /**
+     * @return Index in textures of the target on the active unit, or -1 if it is not tracked.
+     */
+    private int textureSlot(int target) {
+        int unit = activeTextureUnit - GL13.GL_TEXTURE0;
+        if (activeTextureUnit == UNKNOWN || unit < 0 || unit >= TEXTURE_UNITS) {
+            return -1;
+        }
+        for (int i = 0; i < TEXTURE_TARGETS.length; i++) {
+            if (TEXTURE_TARGETS[i] == target) {
+                return unit * TEXTURE_TARGETS.length + i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void texParameteri(int target, int name, int value) {
+        device.texParameteri(target, name, value);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, int internalFormat, int width, int height, int border, int format,
+                           int type, ByteBuffer pixels) {
+        device.texImage2D(target, level, internalFormat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void texImage3D(int target, int level, int internalFormat, int width, int height, int depth, int border,
+                           int format, int type, ByteBuffer pixels) {
+        device.texImage3D(target, level, internalFormat, width, height, depth, border, format, type, pixels);
+    }
+
+    @Override
+    public void texSubImage3D(int target, int level, int xOffset, int yOffset, int zOffset, int width, int height,
+                              int depth, int format, int type, ByteBuffer pixels) {
+        device.texSubImage3D(target, level, xOffset, yOffset, zOffset, width, height, depth, format, type, pixels);
+    }
+
+    @Override
+    public void generateMipmap(int target) {
+        device.generateMipmap(target);
+    }
+
+    // Drawing and framebuffer state
+
+    @Override
+    public void enable(int capability) {
+        boolean known = contains(enabledCapabilities, enabledCapabilityCount, capability);
+        if (issue(known)) {
+            device.enable(capability);
+            if (!known) {
+                disabledCapabilityCount = remove(disabledCapabilities, disabledCapabilityCount, capability);
+                enabledCapabilities = add(enabledCapabilities, enabledCapabilityCount, capability);
+                enabledCapabilityCount++;
+            }
+        }
+    }
+
+    @Override
+    public void disable(int capability) {
+        boolean known = contains(disabledCapabilities, disabledCapabilityCount, capability);
+        if (issue(known)) {
+            device.disable(capability);
+            if (!known) {
+                enabledCapabilityCount = remove(enabledCapabilities, enabledCapabilityCount, capability);
+                disabledCapabilities = add(disabledCapabilities, disabledCapabilityCount, capability);
+                disabledCapabilityCount++;
+            }
+        }
+    }
+
+    private static boolean contains(int[] capabilities, int count, int capability) {
+        for (int i = 0; i < count; i++) {
+            if (capabilities[i] == capability) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] add(int[] capabilities, int count, int capability) {
+        if (count == capabilities.length) {
+            capabilities = Arrays.copyOf(capabilities, count * 2);
+        }
+        capabilities[count] = capability;
+        return capabilities;
+    }
+
+    /**
+     * @return The new count.
+     */
+    private static int remove(int[] capabilities, int count, int capability) {
+        for (int i = 0; i < count; i++) {
+            if (capabilities[i] == capability) {
+                capabilities[i] = capabilities[count - 1];
+                return count - 1;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+        if (issue(clearRed == red && clearGreen == green && clearBlue == blue && clearAlpha == alpha)) {
+            device.clearColor(red, green, blue, alpha);
+            clearRed = red;
+            clearGreen = green;
+            clearBlue = blue;
+            clearAlpha = alpha;
+        }
+    }
+
+    @Override
+    public void clear(int mask) {
+        device.clear(mask);
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, long indicesOffset) {
+        device.drawElements(mode, count, type, indicesOffset);
+    }
+
+    @Override
+    public void drawElementsInstanced(int mode, int count, int type, long indicesOffset, int instanceCount) {
+        device.drawElementsInstanced(mode, count, type, indicesOffset, instanceCount);
+    }
+
+    @Override
+    public void drawElementsBaseVertex(int mode, int count, int type, long indicesOffset, int baseVertex) {
+        device.drawElementsBaseVertex(mode, count, type, indicesOffset, baseVertex);
+    }
+
+    @Override
+    public void multiDrawElementsIndirect(int mode, int type, long indirectOffset, int drawCount, int stride) {
+        device.multiDrawElementsIndirect(mode, type, indirectOffset, drawCount, stride);
+    }
+
+    // Shaders
+
+    @Override
+    public int createShader(int type) {
+        return device.createShader(type);
+    }
+
+    @Override
+    public void shaderSource(int shaderId, CharSequence source) {
+        device.shaderSource(shaderId, source);
+    }
+
+    @Override
+    public void compileShader(int shaderId) {
+        device.compileShader(shaderId);
+    }
+
+    @Override
+    public int getShaderi(int shaderId, int name) {
+        return device.getShaderi(shaderId, name);
+    }
+
+    @Override
+    public String getShaderInfoLog(int shaderId) {
+        return device.getShaderInfoLog(shaderId);
+    }
+
+    @Override
+    public void deleteShader(int shaderId) {
+        device.deleteShader(shaderId);
+    }
+
+    @Override
+    public int createProgram() {
+        return device.createProgram();
+    }
+
+    @Override
+    public void attachShader(int programId, int shaderId) {
+        device.attachShader(programId, shaderId);
+    }
+
+    @Override
+    public void detachShader(int programId, int shaderId) {
+        device.detachShader(programId, shaderId);
+    }
+
+    @Override
+    public void bindAttribLocation(int programId, int index, CharSequence name) {
+        device.bindAttribLocation(programId, index, name);
+    }
+
+    @Override
+    public void linkProgram(int programId) {
+        device.linkProgram(programId);
+    }
+
+    @Override
+    public void validateProgram(int programId) {
+        device.validateProgram(programId);
+    }
+
+    @Override
+    public int getProgrami(int programId, int name) {
+        return device.getProgrami(programId, name);
+    }
+
+    @Override
+    public String getProgramInfoLog(int programId) {
+        return device.getProgramInfoLog(programId);
+    }
+
+    @Override
+    public void programParameteri(int programId, int name, int value) {
+        device.programParameteri(programId, name, value);
+    }
+
+    @Override
+    public void getProgramBinary(int programId, IntBuffer length, IntBuffer binaryFormat, ByteBuffer binary) {
+        device.getProgramBinary(programId, length, binaryFormat, binary);
+    }
+
+    @Override
+    public void programBinary(int programId, int binaryFormat, ByteBuffer binary) {
+        device.programBinary(programId, binaryFormat, binary);
+    }
+
+    @Override
+    public void deleteProgram(int programId) {
+        device.deleteProgram(programId);
+        // A program deleted while in use stays in use until replaced, but its ID may be handed out again.
+        if (program == programId) {
+            program = UNKNOWN;
+        }
+    }
+
+    @Override
+    public void useProgram(int programId) {
+        if (issue(program == programId)) {
+            device.useProgram(programId);
+            program = programId;
+        }
+    }
+
+    @Override
+    public int getUniformLocation(int programId, CharSequence name) {
+        return device.getUniformLocation(programId, name);
+    }
+
+    @Override
+    public int getUniformBlockIndex(int programId, CharSequence name) {
+        return device.getUniformBlockIndex(programId, name);
+    }
+
+    @Override
+    public void uniformBlockBinding(int programId, int blockIndex, int bindingPoint) {
+        device.uniformBlockBinding(programId, blockIndex, bindingPoint);
+    }
+
+    @Override
+    public void uniform1i(int location, int value) {
+        device.uniform1i(location, value);
+    }
+
+    @Override
+    public void uniform1f(int location, float value) {
+        device.uniform1f(location, value);
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+        device.uniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, boolean transpose, FloatBuffer value) {
+        device.uniformMatrix4fv(location, transpose, value);
+    }
+}
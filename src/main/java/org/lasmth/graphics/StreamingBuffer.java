@@ -0,0 +1,246 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.memory.NativeMemory;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A GPU buffer for data which is written anew every frame, e.g. transforms, particles or debug geometry.
+ * <p>
+ * The buffer is split into {@link #FRAMES} regions used in turn, one per frame. A fence placed after a frame's
+ * draw calls guards its region, and {@link #beginFrame(int)} only hands the region out again once that fence
+ * has signalled, so the CPU never overwrites data the GPU is still reading. With a couple of frames in
+ * between this rarely has to wait, and how long it does wait is reported by {@link #getFenceWaitNanos()}.
+ * <p>
+ * With OpenGL 4.4 or GL_ARB_buffer_storage the buffer is mapped once, persistently and coherently, and data is
+ * written straight into memory the GPU reads from. Otherwise it is written to a staging buffer and uploaded
+ * with glBufferSubData by {@link #flush()}. Run with -Dstreaming.persistent=false to force the latter.
+ * <p>
+ * A frame goes: {@link #beginFrame(int)}, {@link #allocate(int, int)} and write to {@link #getRange(int, int)}
+ * for each piece of data, {@link #flush()}, draw from {@link #getBufferId()} at the allocated offsets, then
+ * {@link #endFrame()}. Must only be used on the thread owning the OpenGL context.
+ */
+public class StreamingBuffer {
+
+    public static final int FRAMES = 3;
+    // Regions start on this boundary, which satisfies any binding offset alignment seen in practice.
+    private static final int REGION_ALIGNMENT = 256;
+    // Fence waits are made in slices this long, so a wait is timed even if the driver never returns early.
+    private static final long WAIT_SLICE_NANOS = 1_000_000L;
+
+    private final RenderDevice device;
+    private final boolean persistent;
+
+    private int bufferId;
+    private int regionSize;
+    // The whole buffer when persistently mapped, otherwise the staging for one region.
+    private ByteBuffer mapping;
+    private ByteBuffer staging;
+    private final long[] fences = new long[FRAMES];
+
+    private int region;
+    private boolean inFrame;
+    // Bytes of the current region allocated, and how many of those have been uploaded by flush().
+    private int cursor;
+    private int flushed;
+
+    private long fenceWaitNanos;
+    private long bytesStreamed;
+
+    public StreamingBuffer(int bytesPerFrame) {
+        this(bytesPerFrame, StateCachingRenderDevice.getInstance());
+    }
+
+    /**
+     * @param bytesPerFrame Initial size of a frame's region. Grows if {@link #beginFrame(int)} asks for more.
+     * @param device        Device all of the buffer's OpenGL calls are made through.
+     */
+    public StreamingBuffer(int bytesPerFrame, RenderDevice device) {
+        this.device = device;
+        this.persistent = Boolean.parseBoolean(System.getProperty("streaming.persistent", "true"))
+                && (device.supportsOpenGL(4, 4) || device.supportsExtension("GL_ARB_buffer_storage"));
+        createBuffer(alignUp(Math.max(bytesPerFrame, REGION_ALIGNMENT), REGION_ALIGNMENT));
+    }
+
+    /**
+     * @return True if data is written straight into persistently mapped memory, false if it is staged and
+     * uploaded.
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    /**
+     * Move on to the next region, waiting for the GPU to finish with it if necessary.
+     *
+     * @param bytes The most the frame will allocate, including padding for alignment. The buffer is recreated
+     *              bigger if this does not fit.
+     */
+    public void beginFrame(int bytes) {
+        if (inFrame) {
+            throw new IllegalStateException("beginFrame called twice without endFrame");
+        }
+        if (bytes > regionSize) {
+            // Other regions may still be read, so let the GPU finish with all of them before replacing the buffer.
+            long start = System.nanoTime();
+            for (int i = 0; i < FRAMES; i++) {
+                waitForFence(i);
+            }
+            fenceWaitNanos = System.nanoTime() - start;
+            deleteBuffer();
+            createBuffer(alignUp(Math.max(bytes, regionSize * 2), REGION_ALIGNMENT));
+        } else {
+            long start = System.nanoTime();
+            waitForFence(region);
+            fenceWaitNanos = System.nanoTime() - start;
+        }
+        inFrame = true;
+        cursor = 0;
+        flushed = 0;
+    }
+
+    /**
+     * Reserve part of the current frame's region.
+     *
+     * @param alignment Required alignment of the offset, e.g. GL_SHADER_STORAGE_BUFFER_OFFSET_ALIGNMENT. Must be a
+     *                  power of two no bigger than 256.
+     * @return Offset into the buffer of the reserved bytes, for binding or drawing from them.
+     */
+    public int allocate(int bytes, int alignment) {
+        if (!inFrame) {
+            throw new IllegalStateException("allocate called outside beginFrame and endFrame");
+        }
+        int start = alignUp(cursor, alignment);
+        if (start + bytes > regionSize) {
+            throw new IllegalStateException("Frame needs more than the " + regionSize + " bytes passed to beginFrame");
+        }
+        cursor = start + bytes;
+        return region * regionSize + start;
+    }
+
+    /**
+     * @param offset Offset returned by {@link #allocate(int, int)}.
+     * @return View of the allocated bytes to write the data to, in native byte order. Only valid until
+     * {@link #endFrame()}.
+     */
+    public ByteBuffer getRange(int offset, int bytes) {
+        ByteBuffer target = persistent ? mapping : staging;
+        int index = persistent ? offset : offset - region * regionSize;
+        return target.slice(index, bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Make everything written since the last flush visible to draw calls. Nothing to do when persistently
+     * mapped, as the mapping is coherent.
+     */
+    public void flush() {
+        if (persistent || flushed == cursor) {
+            return;
+        }
+        device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, bufferId);
+        device.bufferSubData(GL31.GL_COPY_WRITE_BUFFER, (long) region * regionSize + flushed,
+                staging.slice(flushed, cursor - flushed));
+        flushed = cursor;
+    }
+
+    /**
+     * Fence off the current region. Call once the frame's draw calls reading from it have been issued.
+     */
+    public void endFrame() {
+        if (!inFrame) {
+            throw new IllegalStateException("endFrame called without beginFrame");
+        }
+        flush();
+        fences[region] = device.fenceSync();
+        bytesStreamed = cursor;
+        region = (region + 1) % FRAMES;
+        inFrame = false;
+    }
+
+    /**
+     * @return Time the last {@link #beginFrame(int)} spent waiting for the GPU to release its region.
+     */
+    public long getFenceWaitNanos() {
+        return fenceWaitNanos;
+    }
+
+    /**
+     * @return Bytes allocated in the last frame to end, including alignment padding.
+     */
+    public long getBytesStreamed() {
+        return bytesStreamed;
+    }
+
+    /**
+     * @return Size of the buffer, all regions included.
+     */
+    public long getSize() {
+        return (long) regionSize * FRAMES;
+    }
+
+    public void cleanUp() {
+        deleteBuffer();
+    }
+
+    private void createBuffer(int regionSize) {
+        this.regionSize = regionSize;
+        long size = (long) regionSize * FRAMES;
+        bufferId = device.genBuffers();
+        device.bindBuffer(GL31.GL_COPY_WRITE_BUFFER, bufferId);
+        if (persistent) {
+            int flags = GL30.GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+            device.bufferStorage(GL31.GL_COPY_WRITE_BUFFER, size, flags);
+            mapping = device.mapBufferRange(GL31.GL_COPY_WRITE_BUFFER, 0, size, flags);
+            if (mapping == null) {
+                throw new IllegalStateException("Could not map streaming buffer of " + size + " bytes");
+            }
+        } else {
+            device.bufferData(GL31.GL_COPY_WRITE_BUFFER, size, GL15.GL_STREAM_DRAW);
+            staging = NativeMemory.allocate(regionSize);
+        }
+    }
+
+    private void deleteBuffer() {
+        for (int i = 0; i < FRAMES; i++) {
+            if (fences[i] != 0) {
+                device.deleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        // Deleting the buffer also unmaps it.
+        device.deleteBuffers(bufferId);
+        mapping = null;
+        NativeMemory.free(staging);
+        staging = null;
+    }
+
+    private void waitForFence(int index) {
+        long fence = fences[index];
+        if (fence == 0) {
+            return;
+        }
+        int status;
+        do {
+            status = device.clientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_SLICE_NANOS);
+        } while (status == GL32.GL_TIMEOUT_EXPIRED);
+        if (status == GL32.GL_WAIT_FAILED) {
+            System.err.println("Waiting for a streaming buffer fence failed");
+        }
+        device.deleteSync(fence);
+        fences[index] = 0;
+    }
+
+    private static int alignUp(int value, int alignment) {
+        return (value + alignment - 1) & -alignment;
+    }
+}
@@ -0,0 +1,65 @@
+package org.lasmth.graphics;
+
+import org.lasmth.graphics.models.TexturedModel;
+import org.lasmth.graphics.shaders.staticshader.StaticShader;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL30;
+
+/**
+ * Binds the textures of the models being drawn, skipping anything already bound. Plain 2D textures and texture
+ * arrays go to separate units, so switching between the layers of one array only changes a uniform.
+ */
+class TextureBinder {
+
+    private final RenderDevice device;
+
+    private int boundTexture;
+    private int boundTextureArray;
+    private int loadedLayer;
+
+    TextureBinder(RenderDevice device) {
+        this.device = device;
+        reset();
+    }
+
+    /**
+     * Forget what is bound, e.g. at the start of a frame since the loader may have bound other textures since.
+     */
+    void reset() {
+        boundTexture = 0;
+        boundTextureArray = 0;
+        // Matches no layer, so the uniform is always loaded the first time.
+        loadedLayer = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Bind the texture of a model, and tell the shader which one to sample. The shader must be started.
+     * @return True if anything had to be changed.
+     */
+    boolean bind(TexturedModel model, StaticShader shader) {
+        boolean changed = false;
+        int textureId = model.getTextureId();
+        if (model.isArrayTexture()) {
+            if (textureId != boundTextureArray) {
+                device.activeTexture(GL13.GL_TEXTURE0 + StaticShader.TEXTURE_ARRAY_UNIT);
+                device.bindTexture(GL30.GL_TEXTURE_2D_ARRAY, textureId);
+                boundTextureArray = textureId;
+                changed = true;
+            }
+        } else if (textureId != boundTexture) {
+            device.activeTexture(GL13.GL_TEXTURE0 + StaticShader.TEXTURE_UNIT);
+            device.bindTexture(GL11.GL_TEXTURE_2D, textureId);
+            boundTexture = textureId;
+            changed = true;
+        }
+
+        int layer = model.getLayer();
+        if (layer != loadedLayer) {
+            shader.loadTextureLayer(layer);
+            loadedLayer = layer;
+            changed = true;
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,234 @@
+package org.lasmth.graphics;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * Shares textures between everything using the same image, so each file is only decoded and uploaded once.
+ * <p>
+ * Textures are reference counted: {@link #acquire} one for as long as it is needed and {@link #release} it
+ * afterwards. A texture nobody references stays loaded in case it is wanted again, until the textures held
+ * take up more GPU memory than the budget, at which point the least recently released are unloaded first.
+ * Textures still in use are never unloaded, so the budget can be exceeded if they alone need more.
+ * <p>
+ * Every {@link Loader} owns one, which {@link Loader#loadTexture(String, TextureFilter)} and
+ * {@link AsyncLoader#loadTextureAsync(String)} go through, see {@link Loader#getTextureCache()}.
+ * <p>
+ * Must only be used on the thread owning the OpenGL context.
+ */
+public class TextureCache {
+
+    private final Loader loader;
+    private final boolean enabled;
+    private long budgetBytes;
+
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private final Map<Integer, Entry> entriesById = new HashMap<>();
+    // Entries with no references, least recently released first.
+    private final LinkedHashMap<Key, Entry> unused = new LinkedHashMap<>();
+    private long residentBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param budgetBytes GPU memory the cached textures may take up before unused ones are unloaded.
+     */
+    public TextureCache(Loader loader, long budgetBytes) {
+        this(loader, budgetBytes, true);
+    }
+
+    /**
+     * @param enabled False to load a new texture on every {@link #acquire}, and hold none, for comparison.
+     */
+    public TextureCache(Loader loader, long budgetBytes, boolean enabled) {
+        this.loader = loader;
+        this.budgetBytes = budgetBytes;
+        this.enabled = enabled;
+    }
+
+    public int acquire(String fileName) {
+        return acquire(fileName, TextureFilter.NEAREST);
+    }
+
+    /**
+     * Get a texture, loading it if it is not already cached. Each call must be matched by a call to
+     * {@link #release(int)}.
+     * @param fileName Texture image file of format [file_name].[extension], in the resources directory.
+     * @param filter How the texture is sampled. The same image with different filters is cached separately.
+     * @return ID of the texture.
+     */
+    public int acquire(String fileName, TextureFilter filter) {
+        return acquire(fileName, filter, () -> loader.loadTextureFile(fileName, filter));
+    }
+
+    /**
+     * {@link #acquire(String, TextureFilter)}, but a texture which is not cached is created by the given
+     * function, e.g. as a placeholder to be filled in later with {@link Loader#uploadTexture}.
+     */
+    int acquire(String fileName, TextureFilter filter, IntSupplier create) {
+        if (!enabled) {
+            return create.getAsInt();
+        }
+        Key key = new Key(fileName, filter);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+            int textureId = create.getAsInt();
+            entry = new Entry(key, textureId, loader.getTextureSize(textureId));
+            entries.put(key, entry);
+            entriesById.put(textureId, entry);
+            residentBytes += entry.bytes;
+        }
+
+        if (entry.references++ == 0) {
+            unused.remove(key);
+        }
+        evictOverBudget();
+        return entry.textureId;
+    }
+
+    /**
+     * Give up a reference to a texture. Once it has none it may be unloaded at any time.
+     * @param textureId ID returned by {@link #acquire}.
+     */
+    public void release(int textureId) {
+        Entry entry = entriesById.get(textureId);
+        if (entry == null || entry.references == 0) {
+            throw new IllegalArgumentException("Texture " + textureId + " is not held from this cache");
+        }
+        if (--entry.references == 0) {
+            unused.put(entry.key, entry);
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * @return True if the image is loaded with the given filter, in use or not.
+     */
+    public boolean contains(String fileName, TextureFilter filter) {
+        return entries.containsKey(new Key(fileName, filter));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return True if the texture was loaded through this cache and has not been unloaded since.
+     */
+    boolean holds(int textureId) {
+        return entriesById.containsKey(textureId);
+    }
+
+    /**
+     * Pick up the new size of a texture whose contents were replaced, e.g. a placeholder which has been given
+     * its image. Does nothing for textures not held by the cache.
+     */
+    void updateSize(int textureId) {
+        Entry entry = entriesById.get(textureId);
+        if (entry != null) {
+            residentBytes += loader.getTextureSize(textureId) - entry.bytes;
+            entry.bytes = loader.getTextureSize(textureId);
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * Unload every texture nobody references, regardless of the budget. E.g. for when changing level.
+     */
+    public void evictUnused() {
+        // Below any possible total, so even textures which failed to load and take up no memory go.
+        evict(-1);
+    }
+
+    /**
+     * Change the budget, unloading unused textures straight away if the cache is now over it.
+     */
+    public void setBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evictOverBudget();
+    }
+
+    public long getBudget() {
+        return budgetBytes;
+    }
+
+    /**
+     * @return GPU memory taken up by the textures currently loaded, in bytes.
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return Number of textures currently loaded, in use or not.
+     */
+    public int getTextureCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return Calls to {@link #acquire} which found the texture already loaded.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Calls to {@link #acquire} which had to load the texture.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Textures unloaded to stay within the budget or by {@link #evictUnused()}.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    private void evictOverBudget() {
+        evict(budgetBytes);
+    }
+
+    /**
+     * Unload unused textures, least recently released first, until no more than targetBytes are loaded or
+     * there are no unused textures left.
+     */
+    private void evict(long targetBytes) {
+        Iterator<Entry> iterator = unused.values().iterator();
+        while (residentBytes > targetBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            entries.remove(entry.key);
+            entriesById.remove(entry.textureId);
+            residentBytes -= entry.bytes;
+            loader.deleteTexture(entry.textureId);
+            evictions++;
+        }
+    }
+
+    private record Key(String fileName, TextureFilter filter) {
+    }
+
+    private static class Entry {
+        final Key key;
+        final int textureId;
+        long bytes;
+        int references;
+
+        Entry(Key key, int textureId, long bytes) {
+            this.key = key;
+            this.textureId = textureId;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.lasmth.graphics;
+
+import org.lwjgl.opengl.GL11;
+
+/**
+ * How a texture is sampled when it is drawn larger or smaller than its actual size.
+ */
+public enum TextureFilter {
+
+    /**
+     * Use the closest texel. Gives a blocky, pixel art look.
+     */
+    NEAREST(GL11.GL_NEAREST, GL11.GL_NEAREST),
+    /**
+     * Blend the four closest texels.
+     */
+    LINEAR(GL11.GL_LINEAR, GL11.GL_LINEAR),
+    /**
+     * Use the closest texel when magnified, and blend between the two closest mipmap levels when minified.
+     * Keeps the pixel art look up close without shimmering in the distance.
+     */
+    NEAREST_MIPMAP(GL11.GL_NEAREST_MIPMAP_LINEAR, GL11.GL_NEAREST),
+    /**
+     * Trilinear filtering: blend the closest texels of the two closest mipmap levels.
+     */
+    LINEAR_MIPMAP(GL11.GL_LINEAR_MIPMAP_LINEAR, GL11.GL_LINEAR);
+
+    private final int minFilter;
+    private final int magFilter;
+
+    TextureFilter(int minFilter, int magFilter) {
+        this.minFilter = minFilter;
+        this.magFilter = magFilter;
+    }
+
+    public int getMinFilter() {
+        return minFilter;
+    }
+
+    public int getMagFilter() {
+        return magFilter;
+    }
+
+    /**
+     * @return True if textures sampled this way need mipmaps generating.
+     */
+    public boolean isMipmapped() {
+        return minFilter != GL11.GL_NEAREST && minFilter != GL11.GL_LINEAR;
+    }
+}
@@ -0,0 +1,331 @@
+package org.lasmth.graphics.culling;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.BoundingBox;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index over the entities of an {@link EntityStore}, used to find the entities inside the view
+ * frustum without testing every one of them.
+ * <p>
+ * Each node's bounds are 'loose', i.e. twice the size of the cell it covers. An entity is placed in the cell
+ * containing its centre at the deepest level where it still fits inside the loose bounds. This means an
+ * entity only ever lives in one node and moving it rarely changes which node that is, so the tree can be
+ * updated incrementally from the store's moved list every frame.
+ * <p>
+ * Entities outside the root cell are kept in the root, which is never culled as a whole.
+ */
+public class LooseOctree {
+
+    private static final int DEFAULT_MAX_DEPTH = 8;
+
+    private final EntityStore entities;
+    private final Node root;
+    private final int maxDepth;
+    private int storeGeneration;
+
+    // Per entity: node holding it, position within that node's item list and world space bounds.
+    private Node[] entityNodes = new Node[0];
+    private int[] entitySlots = new int[0];
+    private float[] entityBounds = new float[0];
+
+    // Results of the last query.
+    private int[] visible = new int[64];
+    private int visibleCount;
+    private int culledCount;
+
+    private final Matrix4f transformationMatrix = new Matrix4f();
+    private final Vector3f boundsMin = new Vector3f();
+    private final Vector3f boundsMax = new Vector3f();
+
+    public LooseOctree(EntityStore entities, float halfSize) {
+        this(entities, 0, 0, 0, halfSize, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * @param entities Store to index. Entities already in it are inserted straight away.
+     * @param centreX Centre of the indexed world region.
+     * @param halfSize Half the side length of the indexed world region.
+     * @param maxDepth Maximum depth of the tree. The root is depth 0.
+     */
+    public LooseOctree(EntityStore entities, float centreX, float centreY, float centreZ, float halfSize,
+                       int maxDepth) {
+        this.entities = entities;
+        this.maxDepth = maxDepth;
+        this.root = new Node(null, centreX, centreY, centreZ, halfSize, 0);
+        rebuild();
+    }
+
+    /**
+     * Bring the tree up-to-date with entities added or moved since the last update. Only moved entities are
+     * visited, so this is cheap for mostly static scenes. Consumes the store's moved list.
+     */
+    public void update() {
+        if (entities.getGeneration() != storeGeneration) {
+            rebuild();
+            return;
+        }
+
+        ensureCapacity(entities.size());
+        for (int i = 0; i < entities.getMovedCount(); i++) {
+            place(entities.getMovedIndex(i));
+        }
+        entities.clearMoved();
+    }
+
+    /**
+     * Find every entity whose bounds intersect the frustum. Entities with models of unknown bounds are always
+     * treated as visible.
+     * @return Number of visible entities. Their indices are in {@link #getVisible()}.
+     */
+    public int query(FrustumIntersection frustum) {
+        visibleCount = 0;
+        queryNode(root, frustum, false);
+        culledCount = entities.size() - visibleCount;
+        return visibleCount;
+    }
+
+    /**
+     * @return Indices of the entities found by the last query. Only the first {@link #getVisibleCount()}
+     * values are valid.
+     */
+    public int[] getVisible() {
+        return visible;
+    }
+
+    /**
+     * @return Number of entities found to be visible by the last query.
+     */
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * @return Number of entities rejected by the last query.
+     */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    private void rebuild() {
+        root.clear();
+        Arrays.fill(entityNodes, null);
+        storeGeneration = entities.getGeneration();
+        ensureCapacity(entities.size());
+        for (int i = 0; i < entities.size(); i++) {
+            place(i);
+        }
+        entities.clearMoved();
+    }
+
+    /**
+     * Recompute an entity's world bounds and move it to the node it now belongs in, if that has changed.
+     */
+    private void place(int index) {
+        computeWorldBounds(index);
+        int offset = index * 6;
+        float minX = entityBounds[offset], minY = entityBounds[offset + 1], minZ = entityBounds[offset + 2];
+        float maxX = entityBounds[offset + 3], maxY = entityBounds[offset + 4], maxZ = entityBounds[offset + 5];
+        float centreX = (minX + maxX) * 0.5f;
+        float centreY = (minY + maxY) * 0.5f;
+        float centreZ = (minZ + maxZ) * 0.5f;
+        float extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) * 0.5f;
+
+        Node target = root;
+        if (root.contains(centreX, centreY, centreZ)) {
+            // The loose bounds of a child are twice its cell, so anything no larger than half the child's cell
+            // size fits as long as its centre is inside the cell.
+            while (target.depth < maxDepth && extent <= target.halfSize * 0.5f) {
+                target = target.childContaining(centreX, centreY, centreZ);
+            }
+        }
+
+        Node current = entityNodes[index];
+        if (current == target) {
+            return;
+        }
+        if (current != null) {
+            int movedEntity = current.remove(entitySlots[index]);
+            if (movedEntity >= 0) {
+                entitySlots[movedEntity] = entitySlots[index];
+            }
+        }
+        entitySlots[index] = target.add(index);
+        entityNodes[index] = target;
+    }
+
+    private void computeWorldBounds(int index) {
+        int offset = index * 6;
+        BoundingBox bounds = entities.getModel(entities.getModelHandle(index)).getRawModel().getBounds();
+        if (bounds == null) {
+            // Unknown bounds. Make them infinite so the entity is never culled.
+            entityBounds[offset] = entityBounds[offset + 1] = entityBounds[offset + 2] = Float.NEGATIVE_INFINITY;
+            entityBounds[offset + 3] = entityBounds[offset + 4] = entityBounds[offset + 5] = Float.POSITIVE_INFINITY;
+            return;
+        }
+
+        entities.getTransformationMatrix(index, transformationMatrix);
+        transformationMatrix.transformAab(bounds.getMinX(), bounds.getMinY(), bounds.getMinZ(),
+                bounds.getMaxX(), bounds.getMaxY(), bounds.getMaxZ(), boundsMin, boundsMax);
+        entityBounds[offset] = boundsMin.x;
+        entityBounds[offset + 1] = boundsMin.y;
+        entityBounds[offset + 2] = boundsMin.z;
+        entityBounds[offset + 3] = boundsMax.x;
+        entityBounds[offset + 4] = boundsMax.y;
+        entityBounds[offset + 5] = boundsMax.z;
+    }
+
+    private void queryNode(Node node, FrustumIntersection frustum, boolean test) {
+        if (node.subtreeCount == 0) {
+            return;
+        }
+
+        if (test) {
+            float looseSize = node.halfSize * 2;
+            int result = frustum.intersectAab(node.centreX - looseSize, node.centreY - looseSize,
+                    node.centreZ - looseSize, node.centreX + looseSize, node.centreY + looseSize,
+                    node.centreZ + looseSize);
+            if (result == FrustumIntersection.INSIDE) {
+                addSubtree(node);
+                return;
+            }
+            if (result != FrustumIntersection.INTERSECT) {
+                return;
+            }
+        }
+
+        for (int i = 0; i < node.count; i++) {
+            int index = node.items[i];
+            int offset = index * 6;
+            if (Float.isInfinite(entityBounds[offset]) || frustum.testAab(entityBounds[offset],
+                    entityBounds[offset + 1], entityBounds[offset + 2], entityBounds[offset + 3],
+                    entityBounds[offset + 4], entityBounds[offset + 5])) {
+                addVisible(index);
+            }
+        }
+
+        if (node.children != null) {
+            for (Node child : node.children) {
+                if (child != null) {
+                    queryNode(child, frustum, true);
+                }
+            }
+        }
+    }
+
+    private void addSubtree(Node node) {
+        for (int i = 0; i < node.count; i++) {
+            addVisible(node.items[i]);
+        }
+        if (node.children != null) {
+            for (Node child : node.children) {
+                if (child != null && child.subtreeCount > 0) {
+                    addSubtree(child);
+                }
+            }
+        }
+    }
+
+    private void addVisible(int index) {
+        if (visibleCount == visible.length) {
+            visible = Arrays.copyOf(visible, visibleCount * 2);
+        }
+        visible[visibleCount++] = index;
+    }
+
+    private void ensureCapacity(int entityCount) {
+        if (entityNodes.length < entityCount) {
+            int capacity = Math.max(entityCount, entityNodes.length * 2);
+            entityNodes = Arrays.copyOf(entityNodes, capacity);
+            entitySlots = Arrays.copyOf(entitySlots, capacity);
+            entityBounds = Arrays.copyOf(entityBounds, capacity * 6);
+        }
+    }
+
+    private static final class Node {
+        private final Node parent;
+        private final float centreX, centreY, centreZ;
+        // Half the side length of the cell. The loose bounds extend twice this far from the centre.
+        private final float halfSize;
+        private final int depth;
+
+        // Created lazily, indexed by octant. See childContaining().
+        private Node[] children;
+        private int[] items = new int[4];
+        private int count;
+        // Number of entities in this node and all of its descendants, used to skip empty branches.
+        private int subtreeCount;
+
+        private Node(Node parent, float centreX, float centreY, float centreZ, float halfSize, int depth) {
+            this.parent = parent;
+            this.centreX = centreX;
+            this.centreY = centreY;
+            this.centreZ = centreZ;
+            this.halfSize = halfSize;
+            this.depth = depth;
+        }
+
+        private boolean contains(float x, float y, float z) {
+            return Math.abs(x - centreX) <= halfSize && Math.abs(y - centreY) <= halfSize
+                    && Math.abs(z - centreZ) <= halfSize;
+        }
+
+        private Node childContaining(float x, float y, float z) {
+            int octant = (x >= centreX ? 1 : 0) | (y >= centreY ? 2 : 0) | (z >= centreZ ? 4 : 0);
+            if (children == null) {
+                children = new Node[8];
+            }
+            Node child = children[octant];
+            if (child == null) {
+                float quarter = halfSize * 0.5f;
+                child = new Node(this,
+                        centreX + ((octant & 1) != 0 ? quarter : -quarter),
+                        centreY + ((octant & 2) != 0 ? quarter : -quarter),
+                        centreZ + ((octant & 4) != 0 ? quarter : -quarter),
+                        quarter, depth + 1);
+                children[octant] = child;
+            }
+            return child;
+        }
+
+        /**
+         * @return Slot the entity was stored in.
+         */
+        private int add(int entityIndex) {
+            if (count == items.length) {
+                items = Arrays.copyOf(items, count * 2);
+            }
+            items[count] = entityIndex;
+            for (Node node = this; node != null; node = node.parent) {
+                node.subtreeCount++;
+            }
+            return count++;
+        }
+
+        /**
+         * Removes the entity in the given slot by swapping the last entity into its place.
+         * @return Index of the entity which was moved into the slot, or -1 if none was.
+         */
+        private int remove(int slot) {
+            count--;
+            for (Node node = this; node != null; node = node.parent) {
+                node.subtreeCount--;
+            }
+            if (slot == count) {
+                return -1;
+            }
+            items[slot] = items[count];
+            return items[slot];
+        }
+
+        private void clear() {
+            children = null;
+            count = 0;
+            subtreeCount = 0;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package org.lasmth.graphics.entities;
 
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+import org.lasmth.tools.maths;
 import org.lasmth.windowmanager.Window;
 import org.lwjgl.glfw.GLFW;
 
@@ -14,23 +16,97 @@ public class Camera {
 
     private float moveSpeed = 0.02f;
 
-    Window window = Window.getInstance();
+    // Cached view matrix, rebuilt only when the camera has moved since it was last requested.
+    private final Matrix4f viewMatrix = new Matrix4f();
+    private boolean viewMatrixDirty = true;
+
+    // Position at the start of the current simulation tick, and the in-between position last rendered at.
+    private final Vector3f previousPosition = new Vector3f();
+    private final Vector3f renderPosition = new Vector3f();
+    private boolean viewMatrixInterpolated;
 
     public void move() {
+        // Looked up here rather than on construction so a camera can exist without a window, e.g. in benchmarks.
+        Window window = Window.getInstance();
         if (window.isKeyPressed(GLFW.GLFW_KEY_W)) {
             position.z -= moveSpeed;
+            viewMatrixDirty = true;
         } else if (window.isKeyPressed(GLFW.GLFW_KEY_S)) {
             position.z += moveSpeed;
+            viewMatrixDirty = true;
         }
 
         if (window.isKeyPressed(GLFW.GLFW_KEY_A)) {
             position.x -= moveSpeed;
+            viewMatrixDirty = true;
         } else if (window.isKeyPressed(GLFW.GLFW_KEY_D)) {
             position.x += moveSpeed;
+            viewMatrixDirty = true;
         }
 
     }
 
+    /**
+     * Make this camera a copy of another, previous position included, e.g. to render a snapshot of the
+     * simulation on another thread.
+     */
+    public void set(Camera source) {
+        if (!position.equals(source.position) || pitch != source.pitch || yaw != source.yaw
+                || roll != source.roll) {
+            position.set(source.position);
+            pitch = source.pitch;
+            yaw = source.yaw;
+            roll = source.roll;
+            viewMatrixDirty = true;
+        }
+        previousPosition.set(source.previousPosition);
+        moveSpeed = source.moveSpeed;
+    }
+
+    /**
+     * Remember the current position as the previous one. Should be called at the start of each simulation tick.
+     */
+    public void storePreviousState() {
+        previousPosition.set(position);
+    }
+
+    /**
+     * Build the view matrix at a point between the previous and current positions. {@link #getViewMatrix()}
+     * returns it until the camera next moves.
+     * @param alpha Interpolation factor. 0 gives the previous position and 1 the current one.
+     */
+    public void interpolate(float alpha) {
+        if (position.equals(previousPosition)) {
+            if (viewMatrixInterpolated) {
+                // Come to rest, so settle on the exact current position.
+                viewMatrixDirty = true;
+                viewMatrixInterpolated = false;
+            }
+            return;
+        }
+
+        previousPosition.lerp(position, alpha, renderPosition);
+        maths.createViewMatrix(renderPosition, pitch, yaw, viewMatrix);
+        viewMatrixDirty = false;
+        viewMatrixInterpolated = true;
+    }
+
+    /**
+     * @return The view matrix for the camera's current position and orientation. The same matrix instance is
+     * reused between calls and only rebuilt once the camera has moved.
+     */
+    public Matrix4f getViewMatrix() {
+        if (viewMatrixDirty) {
+            maths.createViewMatrix(this, viewMatrix);
+            viewMatrixDirty = false;
+        }
+        return viewMatrix;
+    }
+
+    /**
+     * @return The camera position. Treat it as read-only, changes made through it are not picked up by
+     * {@link #getViewMatrix()}.
+     */
     public Vector3f getPosition() {
         return position;
     }
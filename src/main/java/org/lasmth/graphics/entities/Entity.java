@@ -4,96 +4,119 @@ import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.lasmth.graphics.models.TexturedModel;
 
-import static org.lasmth.tools.maths.createTransformationMatrix;
-
 /**
  * An instance of a textured model with position, rotation etc. Allows us to
  * render the same model with different transformations.
+ * <p>
+ * The transform data itself lives in an {@link EntityStore}; an Entity is only a view onto one slot of it.
+ * Entities created without a store get a private single-entity store of their own.
  */
 public class Entity {
 
-    private TexturedModel texturedModel;
-    private Vector3f position;
-    private float rotX, rotY, rotZ;
-    private float scale;
+    private final EntityStore store;
+    private final int index;
+    // Returned from getTransformationMatrix() so repeated calls do not allocate.
+    private final Matrix4f transformationMatrix = new Matrix4f();
 
     public Entity(TexturedModel texturedModel, Vector3f position, float rotX, float rotY, float rotZ, float scale) {
-        this.texturedModel = texturedModel;
-        this.position = position;
-        this.rotX = rotX;
-        this.rotY = rotY;
-        this.rotZ = rotZ;
-        this.scale = scale;
+        this(new EntityStore(1), texturedModel, position, rotX, rotY, rotZ, scale);
     }
 
-    public void increasePosition(float dx, float dy, float dz) {
-        this.position.x += dx;
-        this.position.y += dy;
-        this.position.z += dz;
+    /**
+     * Creates a new entity inside the given store.
+     */
+    public Entity(EntityStore store, TexturedModel texturedModel, Vector3f position,
+                  float rotX, float rotY, float rotZ, float scale) {
+        this(store, store.add(texturedModel, position.x, position.y, position.z, rotX, rotY, rotZ, scale));
+    }
+
+    /**
+     * View onto an entity which already exists in the store. See {@link EntityStore#getEntity(int)}.
+     */
+    Entity(EntityStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
 
+    public void increasePosition(float dx, float dy, float dz) {
+        store.increasePosition(index, dx, dy, dz);
     }
 
     public void increaseRotation(float dx, float dy, float dz) {
-        this.rotX += dx;
-        this.rotY += dy;
-        this.rotZ += dz;
+        store.increaseRotation(index, dx, dy, dz);
     }
 
+    /**
+     * @return The entity's transformation matrix. The same matrix instance is reused by every call, so copy
+     * it if it needs to outlive the next change to this entity.
+     */
     public Matrix4f getTransformationMatrix() {
-        return createTransformationMatrix(
-                this.position,
-                this.rotX,
-                this.rotY,
-                this.rotZ,
-                this.scale
-        );
+        return store.getTransformationMatrix(index, transformationMatrix);
     }
 
     public TexturedModel getTexturedModel() {
-        return texturedModel;
+        return store.getModel(store.getModelHandle(index));
     }
 
     public void setModel(TexturedModel texturedModel) {
-        this.texturedModel = texturedModel;
+        store.setModel(index, texturedModel);
     }
 
+    /**
+     * @return A copy of the entity position. Changes to it are not reflected in the entity, use
+     * {@link #setPosition(Vector3f)} or {@link #increasePosition(float, float, float)} instead.
+     */
     public Vector3f getPosition() {
-        return position;
+        return new Vector3f(store.getPositionX(index), store.getPositionY(index), store.getPositionZ(index));
     }
 
     public void setPosition(Vector3f position) {
-        this.position = position;
+        store.setPosition(index, position.x, position.y, position.z);
     }
 
     public float getRotX() {
-        return rotX;
+        return store.getRotX(index);
     }
 
     public void setRotX(float rotX) {
-        this.rotX = rotX;
+        store.setRotation(index, rotX, getRotY(), getRotZ());
     }
 
     public float getRotY() {
-        return rotY;
+        return store.getRotY(index);
     }
 
     public void setRotY(float rotY) {
-        this.rotY = rotY;
+        store.setRotation(index, getRotX(), rotY, getRotZ());
     }
 
     public float getRotZ() {
-        return rotZ;
+        return store.getRotZ(index);
     }
 
     public void setRotZ(float rotZ) {
-        this.rotZ = rotZ;
+        store.setRotation(index, getRotX(), getRotY(), rotZ);
     }
 
     public float getScale() {
-        return scale;
+        return store.getScale(index);
     }
 
     public void setScale(float scale) {
-        this.scale = scale;
+        store.setScale(index, scale);
+    }
+
+    /**
+     * @return The store holding this entity's data.
+     */
+    public EntityStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return Index of this entity within its store.
+     */
+    public int getIndex() {
+        return index;
     }
 }
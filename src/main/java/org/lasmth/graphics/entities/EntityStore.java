@@ -0,0 +1,667 @@
+package org.lasmth.graphics.entities;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.lasmth.graphics.models.TexturedModel;
+import org.lasmth.tools.maths;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the transforms of many entities as parallel primitive arrays (struct-of-arrays) rather than as one
+ * heap object per entity. Walking an index range then reads memory linearly, which keeps the CPU cache happy
+ * once a scene holds hundreds of thousands of entities.
+ * <p>
+ * Entities are addressed by their integer index. Models are referenced through an integer handle so that the
+ * per-entity data stays primitive. {@link Entity} is kept as a thin view over a single index for code which
+ * prefers the object API.
+ * <p>
+ * Transformation matrices are cached per entity and only rebuilt after the entity's transform changes, so
+ * static entities cost a 16 float copy per frame rather than a matrix rebuild.
+ * <p>
+ * The store also records which entities have moved since {@link #clearMoved()} was last called, so spatial
+ * structures built over it can be updated incrementally instead of rescanning every entity.
+ * <p>
+ * For fixed timestep simulations the store can keep the previous tick's transforms as well, see
+ * {@link #storePreviousState()} and {@link #interpolate(float)}, which covers matrices given with
+ * {@link #setTransformationMatrix(int, Matrix4f)} too. A store can also be kept as a copy of another with
+ * {@link #copyFrom(EntityStore)}, e.g. to render a snapshot of the simulation on another thread.
+ */
+public class EntityStore {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int MATRIX_SIZE = 16;
+    // Scratch matrix for interpolate() and updateTransformationMatrices(). One per thread, as disjoint ranges of
+    // the store may be processed in parallel.
+    private static final ThreadLocal<Matrix4f> SCRATCH_MATRIX = ThreadLocal.withInitial(Matrix4f::new);
+    private static final ThreadLocal<MatrixBlend> SCRATCH_BLEND = ThreadLocal.withInitial(MatrixBlend::new);
+
+    private int size;
+
+    private float[] positionsX;
+    private float[] positionsY;
+    private float[] positionsZ;
+    private float[] rotationsX;
+    private float[] rotationsY;
+    private float[] rotationsZ;
+    private float[] scales;
+    private int[] modelHandles;
+
+    // Transforms as they were at the start of the current simulation tick.
+    private float[] previousPositionsX;
+    private float[] previousPositionsY;
+    private float[] previousPositionsZ;
+    private float[] previousRotationsX;
+    private float[] previousRotationsY;
+    private float[] previousRotationsZ;
+    private float[] previousScales;
+    // Set for entities whose cached matrix holds an interpolated transform rather than the current one.
+    private boolean[] interpolated;
+
+    // Cached transformation matrices, MATRIX_SIZE floats per entity in column-major order.
+    private float[] matrices;
+    // Set when an entity's transform changes and its cached matrix needs rebuilding.
+    private boolean[] dirty;
+    // Set for entities whose matrix was given with setTransformationMatrix() rather than built here.
+    private boolean[] pinned;
+    // Matrices given with setTransformationMatrix(), now and at the start of the current tick. Only meaningful
+    // for pinned entities, whose cached matrix is built from these instead of from the transform.
+    private float[] pinnedMatrices;
+    private float[] previousPinnedMatrices;
+    // Level of detail of each entity's model to draw, see TexturedModel#getLod(int).
+    private byte[] lodLevels;
+
+    // Entities whose transform or model changed since clearMoved(). Each index is listed at most once.
+    private boolean[] moved;
+    private int[] movedIndices;
+    private int movedCount;
+    // Incremented by clear() so anything indexing the store knows to start again.
+    private int generation;
+
+    // Handle -> model and model -> handle lookups. Identity based as TexturedModel has no equals().
+    private final List<TexturedModel> models = new ArrayList<>();
+    private final Map<TexturedModel, Integer> handlesByModel = new IdentityHashMap<>();
+
+    public EntityStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity Number of entities to reserve space for. The store grows as needed beyond this.
+     */
+    public EntityStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        positionsX = new float[capacity];
+        positionsY = new float[capacity];
+        positionsZ = new float[capacity];
+        rotationsX = new float[capacity];
+        rotationsY = new float[capacity];
+        rotationsZ = new float[capacity];
+        scales = new float[capacity];
+        modelHandles = new int[capacity];
+        previousPositionsX = new float[capacity];
+        previousPositionsY = new float[capacity];
+        previousPositionsZ = new float[capacity];
+        previousRotationsX = new float[capacity];
+        previousRotationsY = new float[capacity];
+        previousRotationsZ = new float[capacity];
+        previousScales = new float[capacity];
+        interpolated = new boolean[capacity];
+        matrices = new float[capacity * MATRIX_SIZE];
+        dirty = new boolean[capacity];
+        pinned = new boolean[capacity];
+        pinnedMatrices = new float[capacity * MATRIX_SIZE];
+        previousPinnedMatrices = new float[capacity * MATRIX_SIZE];
+        lodLevels = new byte[capacity];
+        moved = new boolean[capacity];
+        movedIndices = new int[capacity];
+    }
+
+    /**
+     * Add a new entity to the store.
+     * @return Index of the new entity.
+     */
+    public int add(TexturedModel texturedModel, float x, float y, float z,
+                   float rotX, float rotY, float rotZ, float scale) {
+        if (size == positionsX.length) {
+            grow();
+        }
+
+        int index = size++;
+        positionsX[index] = x;
+        positionsY[index] = y;
+        positionsZ[index] = z;
+        rotationsX[index] = rotX;
+        rotationsY[index] = rotY;
+        rotationsZ[index] = rotZ;
+        scales[index] = scale;
+        modelHandles[index] = getOrCreateModelHandle(texturedModel);
+        previousPositionsX[index] = x;
+        previousPositionsY[index] = y;
+        previousPositionsZ[index] = z;
+        previousRotationsX[index] = rotX;
+        previousRotationsY[index] = rotY;
+        previousRotationsZ[index] = rotZ;
+        previousScales[index] = scale;
+        interpolated[index] = false;
+        lodLevels[index] = 0;
+        markChanged(index);
+        return index;
+    }
+
+    /**
+     * @return A lightweight {@link Entity} view onto the entity at the given index.
+     */
+    public Entity getEntity(int index) {
+        checkIndex(index);
+        return new Entity(this, index);
+    }
+
+    /**
+     * @return Number of entities in the store.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entities. Registered models are kept so their handles stay valid.
+     */
+    public void clear() {
+        clearMoved();
+        size = 0;
+        generation++;
+    }
+
+    /**
+     * @return Counter incremented every time the store is cleared.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return Number of entities added, moved or given a new model since {@link #clearMoved()}.
+     */
+    public int getMovedCount() {
+        return movedCount;
+    }
+
+    /**
+     * @param i Position in the moved list, in the range [0, {@link #getMovedCount()}).
+     * @return Index of the moved entity.
+     */
+    public int getMovedIndex(int i) {
+        return movedIndices[i];
+    }
+
+    /**
+     * Empty the moved list. Should be called by whatever consumes it once it is up-to-date.
+     */
+    public void clearMoved() {
+        for (int i = 0; i < movedCount; i++) {
+            moved[movedIndices[i]] = false;
+        }
+        movedCount = 0;
+    }
+
+    public void increasePosition(int index, float dx, float dy, float dz) {
+        positionsX[index] += dx;
+        positionsY[index] += dy;
+        positionsZ[index] += dz;
+        markChanged(index);
+    }
+
+    public void setPosition(int index, float x, float y, float z) {
+        positionsX[index] = x;
+        positionsY[index] = y;
+        positionsZ[index] = z;
+        markChanged(index);
+    }
+
+    public void increaseRotation(int index, float dx, float dy, float dz) {
+        rotationsX[index] += dx;
+        rotationsY[index] += dy;
+        rotationsZ[index] += dz;
+        markChanged(index);
+    }
+
+    public void setRotation(int index, float rotX, float rotY, float rotZ) {
+        rotationsX[index] = rotX;
+        rotationsY[index] = rotY;
+        rotationsZ[index] = rotZ;
+        markChanged(index);
+    }
+
+    public void setScale(int index, float scale) {
+        scales[index] = scale;
+        markChanged(index);
+    }
+
+    public void setModel(int index, TexturedModel texturedModel) {
+        modelHandles[index] = getOrCreateModelHandle(texturedModel);
+        lodLevels[index] = 0;
+        // A new model may have different bounds.
+        markMoved(index);
+    }
+
+    /**
+     * Choose which of the model's levels of detail the entity is drawn with. Does not count as a change to the
+     * entity, as its bounds are always those of the first level.
+     */
+    public void setLodLevel(int index, int level) {
+        lodLevels[index] = (byte) level;
+    }
+
+    /**
+     * @return Level of detail the entity is drawn with, 0 unless set with {@link #setLodLevel(int, int)}.
+     */
+    public int getLodLevel(int index) {
+        return lodLevels[index];
+    }
+
+    public float getPositionX(int index) {
+        return positionsX[index];
+    }
+
+    public float getPositionY(int index) {
+        return positionsY[index];
+    }
+
+    public float getPositionZ(int index) {
+        return positionsZ[index];
+    }
+
+    public float getRotX(int index) {
+        return rotationsX[index];
+    }
+
+    public float getRotY(int index) {
+        return rotationsY[index];
+    }
+
+    public float getRotZ(int index) {
+        return rotationsZ[index];
+    }
+
+    public float getScale(int index) {
+        return scales[index];
+    }
+
+    /**
+     * @return Handle of the model used by the entity at the given index. See {@link #getModel(int)}.
+     */
+    public int getModelHandle(int index) {
+        return modelHandles[index];
+    }
+
+    /**
+     * @param modelHandle Handle as returned by {@link #getModelHandle(int)}.
+     * @return The model registered under the handle.
+     */
+    public TexturedModel getModel(int modelHandle) {
+        return models.get(modelHandle);
+    }
+
+    /**
+     * @return Number of distinct models referenced by the store. Handles are in the range [0, count).
+     */
+    public int getModelCount() {
+        return models.size();
+    }
+
+    /**
+     * Writes the transformation matrix of an entity into the given matrix, avoiding any allocation. The
+     * matrix is only rebuilt if the entity has changed since it was last requested.
+     * @param index Entity index.
+     * @param dest Matrix to store the result in.
+     * @return dest
+     */
+    public Matrix4f getTransformationMatrix(int index, Matrix4f dest) {
+        int offset = index * MATRIX_SIZE;
+        if (dirty[index]) {
+            buildMatrix(index, dest);
+            dest.get(matrices, offset);
+            dirty[index] = false;
+            return dest;
+        }
+        return dest.set(matrices, offset);
+    }
+
+    /**
+     * Set an entity's transformation matrix directly rather than building it from its position, rotation and
+     * scale, e.g. to the world matrix of the {@link SceneGraph} node it is attached to. The matrix is used
+     * until the entity's transform is next changed through the store, and {@link #interpolate(float)} blends
+     * it with the one the entity had at the start of the tick. An entity which was not pinned yet starts at
+     * rest at the given matrix.
+     * <p>
+     * The matrix must be made of a translation, rotation and scale only, as blending takes it apart into those.
+     */
+    public void setTransformationMatrix(int index, Matrix4f matrix) {
+        int offset = index * MATRIX_SIZE;
+        matrix.get(pinnedMatrices, offset);
+        if (!pinned[index]) {
+            matrix.get(previousPinnedMatrices, offset);
+            pinned[index] = true;
+        }
+        dirty[index] = true;
+        markMoved(index);
+    }
+
+    /**
+     * Remember every entity's current transform as its previous one. Should be called at the start of each
+     * simulation tick, before anything moves.
+     */
+    public void storePreviousState() {
+        System.arraycopy(positionsX, 0, previousPositionsX, 0, size);
+        System.arraycopy(positionsY, 0, previousPositionsY, 0, size);
+        System.arraycopy(positionsZ, 0, previousPositionsZ, 0, size);
+        System.arraycopy(rotationsX, 0, previousRotationsX, 0, size);
+        System.arraycopy(rotationsY, 0, previousRotationsY, 0, size);
+        System.arraycopy(rotationsZ, 0, previousRotationsZ, 0, size);
+        System.arraycopy(scales, 0, previousScales, 0, size);
+        for (int i = 0; i < size; i++) {
+            if (pinned[i]) {
+                int offset = i * MATRIX_SIZE;
+                System.arraycopy(pinnedMatrices, offset, previousPinnedMatrices, offset, MATRIX_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Make this store a copy of another: the same entities with the same current and previous transforms,
+     * models and levels of detail. Only entities which differ from what this store held are marked as changed,
+     * so the cached matrices and anything following the moved list are updated incrementally. The source is only
+     * read.
+     * <p>
+     * Model handles are copied as they are, so this store must not have entities added to it any other way.
+     */
+    public void copyFrom(EntityStore source) {
+        if (source.size < size) {
+            // Entities are only ever removed all at once, so the source has been cleared since the last copy.
+            clear();
+        }
+        for (int handle = models.size(); handle < source.models.size(); handle++) {
+            getOrCreateModelHandle(source.models.get(handle));
+        }
+        while (positionsX.length < source.size) {
+            grow();
+        }
+
+        for (int i = 0; i < source.size; i++) {
+            boolean added = i >= size;
+            if (added || modelHandles[i] != source.modelHandles[i]) {
+                modelHandles[i] = source.modelHandles[i];
+                markMoved(i);
+            }
+            if (source.pinned[i]) {
+                copyPinnedMatrix(source, i, added);
+                continue;
+            }
+            if (pinned[i]) {
+                // Unpinned in the source without its fields changing, so the matrix held here is stale.
+                markChanged(i);
+            }
+            if (added || positionsX[i] != source.positionsX[i] || positionsY[i] != source.positionsY[i]
+                    || positionsZ[i] != source.positionsZ[i] || rotationsX[i] != source.rotationsX[i]
+                    || rotationsY[i] != source.rotationsY[i] || rotationsZ[i] != source.rotationsZ[i]
+                    || scales[i] != source.scales[i]) {
+                positionsX[i] = source.positionsX[i];
+                positionsY[i] = source.positionsY[i];
+                positionsZ[i] = source.positionsZ[i];
+                rotationsX[i] = source.rotationsX[i];
+                rotationsY[i] = source.rotationsY[i];
+                rotationsZ[i] = source.rotationsZ[i];
+                scales[i] = source.scales[i];
+                markChanged(i);
+            }
+            if (added) {
+                interpolated[i] = false;
+            }
+        }
+        size = source.size;
+
+        // A change to the previous transform alone still changes the interpolated matrix, so interpolate()
+        // must look at it again.
+        for (int i = 0; i < size; i++) {
+            if (pinned[i]) {
+                continue;
+            }
+            if (previousPositionsX[i] != source.previousPositionsX[i]
+                    || previousPositionsY[i] != source.previousPositionsY[i]
+                    || previousPositionsZ[i] != source.previousPositionsZ[i]
+                    || previousRotationsX[i] != source.previousRotationsX[i]
+                    || previousRotationsY[i] != source.previousRotationsY[i]
+                    || previousRotationsZ[i] != source.previousRotationsZ[i]
+                    || previousScales[i] != source.previousScales[i]) {
+                dirty[i] = true;
+            }
+        }
+        System.arraycopy(source.previousPositionsX, 0, previousPositionsX, 0, size);
+        System.arraycopy(source.previousPositionsY, 0, previousPositionsY, 0, size);
+        System.arraycopy(source.previousPositionsZ, 0, previousPositionsZ, 0, size);
+        System.arraycopy(source.previousRotationsX, 0, previousRotationsX, 0, size);
+        System.arraycopy(source.previousRotationsY, 0, previousRotationsY, 0, size);
+        System.arraycopy(source.previousRotationsZ, 0, previousRotationsZ, 0, size);
+        System.arraycopy(source.previousScales, 0, previousScales, 0, size);
+        System.arraycopy(source.lodLevels, 0, lodLevels, 0, size);
+    }
+
+    /**
+     * Rebuild the cached matrices of moving entities at a point between their previous and current transforms.
+     * Subsequent calls to {@link #getTransformationMatrix(int, Matrix4f)} return the interpolated matrices until
+     * the entity next changes. Entities which did not move in the last tick are left alone.
+     * @param alpha Interpolation factor. 0 gives the previous transform and 1 the current one.
+     */
+    public void interpolate(float alpha) {
+        interpolate(alpha, 0, size);
+    }
+
+    /**
+     * {@link #interpolate(float)} for the entities in [start, end) only, so the work can be split into jobs.
+     * Disjoint ranges may be interpolated at the same time from different threads.
+     */
+    public void interpolate(float alpha, int start, int end) {
+        Matrix4f interpolationMatrix = SCRATCH_MATRIX.get();
+        for (int i = start; i < end; i++) {
+            if (!dirty[i] && !interpolated[i]) {
+                continue;
+            }
+            if (pinned[i]) {
+                interpolatePinned(i, alpha);
+                continue;
+            }
+
+            boolean moving = positionsX[i] != previousPositionsX[i] || positionsY[i] != previousPositionsY[i]
+                    || positionsZ[i] != previousPositionsZ[i] || rotationsX[i] != previousRotationsX[i]
+                    || rotationsY[i] != previousRotationsY[i] || rotationsZ[i] != previousRotationsZ[i]
+                    || scales[i] != previousScales[i];
+            if (moving) {
+                maths.createTransformationMatrix(
+                        lerp(previousPositionsX[i], positionsX[i], alpha),
+                        lerp(previousPositionsY[i], positionsY[i], alpha),
+                        lerp(previousPositionsZ[i], positionsZ[i], alpha),
+                        lerp(previousRotationsX[i], rotationsX[i], alpha),
+                        lerp(previousRotationsY[i], rotationsY[i], alpha),
+                        lerp(previousRotationsZ[i], rotationsZ[i], alpha),
+                        lerp(previousScales[i], scales[i], alpha),
+                        interpolationMatrix);
+                interpolationMatrix.get(matrices, i * MATRIX_SIZE);
+                dirty[i] = false;
+                interpolated[i] = true;
+            } else {
+                // Come to rest, so settle on the exact current transform.
+                dirty[i] = true;
+                interpolated[i] = false;
+            }
+        }
+    }
+
+    /**
+     * Rebuild the cached matrices of changed entities in [start, end), so later calls to
+     * {@link #getTransformationMatrix(int, Matrix4f)} only copy. Disjoint ranges may be updated at the same time
+     * from different threads, which spreads the matrix maths over several cores.
+     */
+    public void updateTransformationMatrices(int start, int end) {
+        Matrix4f matrix = SCRATCH_MATRIX.get();
+        for (int i = start; i < end; i++) {
+            if (dirty[i]) {
+                buildMatrix(i, matrix);
+                matrix.get(matrices, i * MATRIX_SIZE);
+                dirty[i] = false;
+            }
+        }
+    }
+
+    /**
+     * @return True if the entity has changed since its transformation matrix was last requested.
+     */
+    public boolean isDirty(int index) {
+        return dirty[index];
+    }
+
+    private void copyPinnedMatrix(EntityStore source, int i, boolean added) {
+        positionsX[i] = source.positionsX[i];
+        positionsY[i] = source.positionsY[i];
+        positionsZ[i] = source.positionsZ[i];
+        rotationsX[i] = source.rotationsX[i];
+        rotationsY[i] = source.rotationsY[i];
+        rotationsZ[i] = source.rotationsZ[i];
+        scales[i] = source.scales[i];
+        int offset = i * MATRIX_SIZE;
+        if (added || !pinned[i] || !Arrays.equals(pinnedMatrices, offset, offset + MATRIX_SIZE,
+                source.pinnedMatrices, offset, offset + MATRIX_SIZE)) {
+            System.arraycopy(source.pinnedMatrices, offset, pinnedMatrices, offset, MATRIX_SIZE);
+            if (added) {
+                interpolated[i] = false;
+            }
+            dirty[i] = true;
+            pinned[i] = true;
+            markMoved(i);
+        }
+        // As for the transform, a change to the previous matrix alone still changes the interpolated one.
+        if (!Arrays.equals(previousPinnedMatrices, offset, offset + MATRIX_SIZE,
+                source.previousPinnedMatrices, offset, offset + MATRIX_SIZE)) {
+            System.arraycopy(source.previousPinnedMatrices, offset, previousPinnedMatrices, offset, MATRIX_SIZE);
+            dirty[i] = true;
+        }
+    }
+
+    /**
+     * The pinned counterpart of the loop body of {@link #interpolate(float, int, int)}.
+     */
+    private void interpolatePinned(int i, float alpha) {
+        int offset = i * MATRIX_SIZE;
+        if (Arrays.equals(pinnedMatrices, offset, offset + MATRIX_SIZE,
+                previousPinnedMatrices, offset, offset + MATRIX_SIZE)) {
+            dirty[i] = true;
+            interpolated[i] = false;
+            return;
+        }
+        SCRATCH_BLEND.get().blend(previousPinnedMatrices, pinnedMatrices, offset, alpha, matrices);
+        dirty[i] = false;
+        interpolated[i] = true;
+    }
+
+    /**
+     * Build the current, uninterpolated matrix of an entity.
+     */
+    private void buildMatrix(int index, Matrix4f dest) {
+        if (pinned[index]) {
+            dest.set(pinnedMatrices, index * MATRIX_SIZE);
+        } else {
+            maths.createTransformationMatrix(positionsX[index], positionsY[index], positionsZ[index],
+                    rotationsX[index], rotationsY[index], rotationsZ[index], scales[index], dest);
+        }
+    }
+
+    private static float lerp(float from, float to, float alpha) {
+        return from + (to - from) * alpha;
+    }
+
+    private void markChanged(int index) {
+        dirty[index] = true;
+        pinned[index] = false;
+        markMoved(index);
+    }
+
+    private void markMoved(int index) {
+        if (!moved[index]) {
+            moved[index] = true;
+            movedIndices[movedCount++] = index;
+        }
+    }
+
+    private int getOrCreateModelHandle(TexturedModel texturedModel) {
+        Integer handle = handlesByModel.get(texturedModel);
+        if (handle == null) {
+            handle = models.size();
+            models.add(texturedModel);
+            handlesByModel.put(texturedModel, handle);
+        }
+        return handle;
+    }
+
+    private void grow() {
+        int capacity = positionsX.length * 2;
+        positionsX = Arrays.copyOf(positionsX, capacity);
+        positionsY = Arrays.copyOf(positionsY, capacity);
+        positionsZ = Arrays.copyOf(positionsZ, capacity);
+        rotationsX = Arrays.copyOf(rotationsX, capacity);
+        rotationsY = Arrays.copyOf(rotationsY, capacity);
+        rotationsZ = Arrays.copyOf(rotationsZ, capacity);
+        scales = Arrays.copyOf(scales, capacity);
+        modelHandles = Arrays.copyOf(modelHandles, capacity);
+        previousPositionsX = Arrays.copyOf(previousPositionsX, capacity);
+        previousPositionsY = Arrays.copyOf(previousPositionsY, capacity);
+        previousPositionsZ = Arrays.copyOf(previousPositionsZ, capacity);
+        previousRotationsX = Arrays.copyOf(previousRotationsX, capacity);
+        previousRotationsY = Arrays.copyOf(previousRotationsY, capacity);
+        previousRotationsZ = Arrays.copyOf(previousRotationsZ, capacity);
+        previousScales = Arrays.copyOf(previousScales, capacity);
+        interpolated = Arrays.copyOf(interpolated, capacity);
+        matrices = Arrays.copyOf(matrices, capacity * MATRIX_SIZE);
+        dirty = Arrays.copyOf(dirty, capacity);
+        pinned = Arrays.copyOf(pinned, capacity);
+        pinnedMatrices = Arrays.copyOf(pinnedMatrices, capacity * MATRIX_SIZE);
+        previousPinnedMatrices = Arrays.copyOf(previousPinnedMatrices, capacity * MATRIX_SIZE);
+        lodLevels = Arrays.copyOf(lodLevels, capacity);
+        moved = Arrays.copyOf(moved, capacity);
+        movedIndices = Arrays.copyOf(movedIndices, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Entity index " + index + " out of bounds for size " + size);
+        }
+    }
+
+    /**
+     * Blends two matrices by taking them apart into translation, rotation and scale, lerping the translation
+     * and scale and slerping the rotation. Lerping the elements instead would shrink whatever turns.
+     */
+    private static final class MatrixBlend {
+        private final Matrix4f from = new Matrix4f();
+        private final Matrix4f to = new Matrix4f();
+        private final Vector3f fromTranslation = new Vector3f();
+        private final Vector3f toTranslation = new Vector3f();
+        private final Vector3f fromScale = new Vector3f();
+        private final Vector3f toScale = new Vector3f();
+        private final Quaternionf fromRotation = new Quaternionf();
+        private final Quaternionf toRotation = new Quaternionf();
+
+        void blend(float[] fromMatrices, float[] toMatrices, int offset, float alpha, float[] dest) {
+            from.set(fromMatrices, offset);
+            to.set(toMatrices, offset);
+            from.getTranslation(fromTranslation).lerp(to.getTranslation(toTranslation), alpha);
+            from.getScale(fromScale).lerp(to.getScale(toScale), alpha);
+            from.getNormalizedRotation(fromRotation).slerp(to.getNormalizedRotation(toRotation), alpha);
+            from.translationRotateScale(fromTranslation, fromRotation, fromScale).get(dest, offset);
+        }
+    }
+}
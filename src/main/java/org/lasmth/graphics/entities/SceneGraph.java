@@ -0,0 +1,442 @@
+package org.lasmth.graphics.entities;
+
+import org.joml.Matrix4f;
+import org.lasmth.engine.jobs.JobSystem;
+import org.lasmth.engine.jobs.RangeJob;
+import org.lasmth.tools.maths;
+
+import java.util.Arrays;
+
+/**
+ * Parent/child hierarchy of transforms, e.g. a weapon held by a character or the wheels of a car. Every node
+ * has a position, rotation and scale local to its parent, and {@link #update()} derives the world matrices.
+ * <p>
+ * Nodes are stored like an {@link EntityStore}, as parallel primitive arrays, but sorted by depth: roots first,
+ * then their children, and so on. A parent therefore always comes before its children, so one pass front to
+ * back updates everything, and all nodes of a level can be updated in parallel once the level above is done,
+ * see {@link #update(JobSystem, int)}. Nodes are addressed by a handle which stays the same when a change to
+ * the hierarchy re-sorts them.
+ * <p>
+ * Changing a node's local transform marks it dirty. An update recomputes the world matrix of dirty nodes and
+ * of nodes whose parent was recomputed in the same update, i.e. of the changed subtrees only.
+ * <p>
+ * A node can drive an entity with {@link #attach(int, EntityStore, int)}: the entity's transformation matrix is
+ * set to the node's world matrix whenever that changes. The store keeps the matrix from the start of the tick
+ * as well, so such entities are interpolated between ticks like any other (see
+ * {@link EntityStore#setTransformationMatrix(int, Matrix4f)}). Drive both ends of anything that must stay
+ * together through the graph though. If a node merely copies its position from an entity moved through the store
+ * directly, that entity blends its transform while the node's entity blends its matrix, and the two drift apart
+ * between ticks.
+ * <p>
+ * Not thread safe, other than the internal parallelism of {@link #update(JobSystem, int)}.
+ */
+public class SceneGraph {
+
+    public static final int NO_PARENT = -1;
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int MATRIX_SIZE = 16;
+    // Scratch for the local and parent matrices. One per thread, as a level is updated in parallel.
+    private static final ThreadLocal<Matrix4f[]> SCRATCH = ThreadLocal.withInitial(
+            () -> new Matrix4f[]{new Matrix4f(), new Matrix4f()});
+
+    private int size;
+
+    // Per slot, in depth order once sorted. Local transform, then the parent's slot.
+    private float[] positionsX;
+    private float[] positionsY;
+    private float[] positionsZ;
+    private float[] rotationsX;
+    private float[] rotationsY;
+    private float[] rotationsZ;
+    private float[] scales;
+    private int[] parentSlots;
+    // World matrices, MATRIX_SIZE floats per slot in column-major order.
+    private float[] worldMatrices;
+    // Local transform changed since the last update, and world matrix recomputed by the last update.
+    private boolean[] dirty;
+    private boolean[] changed;
+    // Entity driven by each slot, if any.
+    private EntityStore[] attachedStores;
+    private int[] attachedEntities;
+
+    // Handle <-> slot. Handles are assigned in creation order.
+    private int[] slotsByHandle;
+    private int[] handlesBySlot;
+
+    // Slot where each level starts, with the end of the last level at levelStarts[levelCount].
+    private int[] levelStarts = new int[1];
+    private int levelCount;
+    // Set when nodes are added or re-parented, so the slots need sorting again before the next update.
+    private boolean unsorted;
+
+    private int lastUpdatedCount;
+
+    // Level being updated by updateLevel, read by the workers running it.
+    private int levelOffset;
+    private final RangeJob updateLevel = (start, end) -> updateSlots(levelOffset + start, levelOffset + end);
+
+    public SceneGraph() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity Number of nodes to reserve space for. The graph grows as needed beyond this.
+     */
+    public SceneGraph(int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    /**
+     * Add a node with an identity local transform.
+     * @param parent Handle of the parent node, or {@link #NO_PARENT} for a root.
+     * @return Handle of the new node.
+     */
+    public int createNode(int parent) {
+        if (parent != NO_PARENT) {
+            checkHandle(parent);
+        }
+        if (size == positionsX.length) {
+            allocate(size * 2);
+        }
+        int slot = size++;
+        positionsX[slot] = 0;
+        positionsY[slot] = 0;
+        positionsZ[slot] = 0;
+        rotationsX[slot] = 0;
+        rotationsY[slot] = 0;
+        rotationsZ[slot] = 0;
+        scales[slot] = 1;
+        parentSlots[slot] = parent == NO_PARENT ? NO_PARENT : slotsByHandle[parent];
+        dirty[slot] = true;
+        changed[slot] = false;
+        attachedStores[slot] = null;
+        slotsByHandle[slot] = slot;
+        handlesBySlot[slot] = slot;
+        // Appended at the end, which need not be where its level is.
+        unsorted = true;
+        return slot;
+    }
+
+    /**
+     * Move a node, with its subtree, under another parent. Its local transform is kept, so it moves in the
+     * world unless the old and new parents' world transforms are the same.
+     * @param parent Handle of the new parent, or {@link #NO_PARENT} to make the node a root.
+     * @throws IllegalArgumentException If the parent is the node itself or one of its descendants.
+     */
+    public void setParent(int node, int parent) {
+        checkHandle(node);
+        int slot = slotsByHandle[node];
+        int parentSlot = NO_PARENT;
+        if (parent != NO_PARENT) {
+            checkHandle(parent);
+            parentSlot = slotsByHandle[parent];
+            for (int ancestor = parentSlot; ancestor != NO_PARENT; ancestor = parentSlots[ancestor]) {
+                if (ancestor == slot) {
+                    throw new IllegalArgumentException("Node " + parent + " is node " + node + " or a descendant");
+                }
+            }
+        }
+        parentSlots[slot] = parentSlot;
+        dirty[slot] = true;
+        unsorted = true;
+    }
+
+    /**
+     * @return Handle of the node's parent, or {@link #NO_PARENT}.
+     */
+    public int getParent(int node) {
+        checkHandle(node);
+        int parentSlot = parentSlots[slotsByHandle[node]];
+        return parentSlot == NO_PARENT ? NO_PARENT : handlesBySlot[parentSlot];
+    }
+
+    public void setPosition(int node, float x, float y, float z) {
+        int slot = slotOf(node);
+        positionsX[slot] = x;
+        positionsY[slot] = y;
+        positionsZ[slot] = z;
+        dirty[slot] = true;
+    }
+
+    public void increasePosition(int node, float dx, float dy, float dz) {
+        int slot = slotOf(node);
+        positionsX[slot] += dx;
+        positionsY[slot] += dy;
+        positionsZ[slot] += dz;
+        dirty[slot] = true;
+    }
+
+    /**
+     * @param rotX Rotation about the x axis in degrees, as for entities.
+     */
+    public void setRotation(int node, float rotX, float rotY, float rotZ) {
+        int slot = slotOf(node);
+        rotationsX[slot] = rotX;
+        rotationsY[slot] = rotY;
+        rotationsZ[slot] = rotZ;
+        dirty[slot] = true;
+    }
+
+    public void increaseRotation(int node, float dx, float dy, float dz) {
+        int slot = slotOf(node);
+        rotationsX[slot] += dx;
+        rotationsY[slot] += dy;
+        rotationsZ[slot] += dz;
+        dirty[slot] = true;
+    }
+
+    public void setScale(int node, float scale) {
+        int slot = slotOf(node);
+        scales[slot] = scale;
+        dirty[slot] = true;
+    }
+
+    /**
+     * Drive an entity with the node: from the next update the entity's transformation matrix is the node's
+     * world matrix, and its own position, rotation and scale are ignored until set again.
+     */
+    public void attach(int node, EntityStore store, int entity) {
+        int slot = slotOf(node);
+        attachedStores[slot] = store;
+        attachedEntities[slot] = entity;
+        // Make sure the entity gets the matrix even if the node does not change.
+        dirty[slot] = true;
+    }
+
+    public void detach(int node) {
+        attachedStores[slotOf(node)] = null;
+    }
+
+    /**
+     * Bring the world matrices of changed subtrees up-to-date, on the calling thread.
+     */
+    public void update() {
+        sortIfNeeded();
+        updateSlots(0, size);
+        finishUpdate();
+    }
+
+    /**
+     * {@link #update()}, with each level's nodes spread over the job system's workers. Levels are done one after
+     * the other, so wide hierarchies gain the most.
+     * @param grainSize Fewest nodes of a level worth handing to another thread.
+     */
+    public void update(JobSystem jobs, int grainSize) {
+        sortIfNeeded();
+        for (int level = 0; level < levelCount; level++) {
+            levelOffset = levelStarts[level];
+            jobs.parallelFor(levelStarts[level + 1] - levelOffset, grainSize, updateLevel);
+        }
+        finishUpdate();
+    }
+
+    /**
+     * @return The node's world matrix as of the last update.
+     */
+    public Matrix4f getWorldMatrix(int node, Matrix4f dest) {
+        return dest.set(worldMatrices, slotOf(node) * MATRIX_SIZE);
+    }
+
+    /**
+     * @return Number of nodes in the graph.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of levels, i.e. the depth of the deepest node plus one, as of the last update.
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * @return Number of world matrices the last update recomputed.
+     */
+    public int getLastUpdatedCount() {
+        return lastUpdatedCount;
+    }
+
+    /**
+     * Recompute the world matrices of dirty nodes, and of nodes whose parent was recomputed, in [start, end).
+     * Parents must already be up-to-date, which sorting by depth makes sure of.
+     */
+    private void updateSlots(int start, int end) {
+        Matrix4f[] scratch = SCRATCH.get();
+        Matrix4f local = scratch[0];
+        Matrix4f parent = scratch[1];
+        for (int slot = start; slot < end; slot++) {
+            int parentSlot = parentSlots[slot];
+            if (!dirty[slot] && (parentSlot == NO_PARENT || !changed[parentSlot])) {
+                changed[slot] = false;
+                continue;
+            }
+            maths.createTransformationMatrix(positionsX[slot], positionsY[slot], positionsZ[slot],
+                    rotationsX[slot], rotationsY[slot], rotationsZ[slot], scales[slot], local);
+            if (parentSlot != NO_PARENT) {
+                parent.set(worldMatrices, parentSlot * MATRIX_SIZE).mul(local, local);
+            }
+            local.get(worldMatrices, slot * MATRIX_SIZE);
+            dirty[slot] = false;
+            changed[slot] = true;
+        }
+    }
+
+    /**
+     * Hand the new world matrices to attached entities and count them. Done on one thread, as an
+     * {@link EntityStore} is not thread safe.
+     */
+    private void finishUpdate() {
+        Matrix4f world = SCRATCH.get()[0];
+        int updated = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (!changed[slot]) {
+                continue;
+            }
+            updated++;
+            EntityStore store = attachedStores[slot];
+            if (store != null) {
+                store.setTransformationMatrix(attachedEntities[slot], world.set(worldMatrices, slot * MATRIX_SIZE));
+            }
+        }
+        lastUpdatedCount = updated;
+    }
+
+    /**
+     * Sort the slots by depth, keeping the existing order within a level, and work out where each level starts.
+     */
+    private void sortIfNeeded() {
+        if (!unsorted) {
+            return;
+        }
+        int[] depths = new int[size];
+        Arrays.fill(depths, -1);
+        int maxDepth = 0;
+        for (int slot = 0; slot < size; slot++) {
+            maxDepth = Math.max(maxDepth, depthOf(slot, depths));
+        }
+        levelCount = size == 0 ? 0 : maxDepth + 1;
+
+        // Counting sort: level sizes, then level starts, then each slot's new position.
+        levelStarts = new int[levelCount + 1];
+        for (int slot = 0; slot < size; slot++) {
+            levelStarts[depths[slot] + 1]++;
+        }
+        for (int level = 0; level < levelCount; level++) {
+            levelStarts[level + 1] += levelStarts[level];
+        }
+        int[] next = Arrays.copyOf(levelStarts, levelCount);
+        int[] newSlots = new int[size];
+        for (int slot = 0; slot < size; slot++) {
+            newSlots[slot] = next[depths[slot]]++;
+        }
+        permute(newSlots);
+        unsorted = false;
+    }
+
+    /**
+     * @param depths Depth of each slot, or -1 if not known yet. Filled in along the way.
+     */
+    private int depthOf(int slot, int[] depths) {
+        if (depths[slot] >= 0) {
+            return depths[slot];
+        }
+        // Walk up to the first ancestor of known depth, then back down the same path filling in depths.
+        int known = slot;
+        int steps = 0;
+        while (parentSlots[known] != NO_PARENT && depths[known] < 0) {
+            known = parentSlots[known];
+            steps++;
+        }
+        int depth = depths[known] >= 0 ? depths[known] : 0;
+        if (depths[known] < 0) {
+            depths[known] = 0;
+        }
+        int base = depth + steps;
+        for (int walk = slot; walk != known; walk = parentSlots[walk]) {
+            depths[walk] = base--;
+        }
+        return depths[slot];
+    }
+
+    private void permute(int[] newSlots) {
+        int capacity = positionsX.length;
+        positionsX = permute(positionsX, newSlots, capacity);
+        positionsY = permute(positionsY, newSlots, capacity);
+        positionsZ = permute(positionsZ, newSlots, capacity);
+        rotationsX = permute(rotationsX, newSlots, capacity);
+        rotationsY = permute(rotationsY, newSlots, capacity);
+        rotationsZ = permute(rotationsZ, newSlots, capacity);
+        scales = permute(scales, newSlots, capacity);
+
+        int[] oldParents = parentSlots;
+        boolean[] oldDirty = dirty;
+        boolean[] oldChanged = changed;
+        EntityStore[] oldStores = attachedStores;
+        int[] oldEntities = attachedEntities;
+        float[] oldWorlds = worldMatrices;
+        int[] oldHandles = handlesBySlot;
+        parentSlots = new int[capacity];
+        dirty = new boolean[capacity];
+        changed = new boolean[capacity];
+        attachedStores = new EntityStore[capacity];
+        attachedEntities = new int[capacity];
+        worldMatrices = new float[capacity * MATRIX_SIZE];
+        handlesBySlot = new int[capacity];
+        for (int slot = 0; slot < size; slot++) {
+            int newSlot = newSlots[slot];
+            parentSlots[newSlot] = oldParents[slot] == NO_PARENT ? NO_PARENT : newSlots[oldParents[slot]];
+            dirty[newSlot] = oldDirty[slot];
+            changed[newSlot] = oldChanged[slot];
+            attachedStores[newSlot] = oldStores[slot];
+            attachedEntities[newSlot] = oldEntities[slot];
+            System.arraycopy(oldWorlds, slot * MATRIX_SIZE, worldMatrices, newSlot * MATRIX_SIZE, MATRIX_SIZE);
+            int handle = oldHandles[slot];
+            handlesBySlot[newSlot] = handle;
+            slotsByHandle[handle] = newSlot;
+        }
+    }
+
+    private float[] permute(float[] values, int[] newSlots, int capacity) {
+        float[] permuted = new float[capacity];
+        for (int slot = 0; slot < size; slot++) {
+            permuted[newSlots[slot]] = values[slot];
+        }
+        return permuted;
+    }
+
+    private void allocate(int capacity) {
+        positionsX = resize(positionsX, capacity);
+        positionsY = resize(positionsY, capacity);
+        positionsZ = resize(positionsZ, capacity);
+        rotationsX = resize(rotationsX, capacity);
+        rotationsY = resize(rotationsY, capacity);
+        rotationsZ = resize(rotationsZ, capacity);
+        scales = resize(scales, capacity);
+        parentSlots = parentSlots == null ? new int[capacity] : Arrays.copyOf(parentSlots, capacity);
+        worldMatrices = resize(worldMatrices, capacity * MATRIX_SIZE);
+        dirty = dirty == null ? new boolean[capacity] : Arrays.copyOf(dirty, capacity);
+        changed = changed == null ? new boolean[capacity] : Arrays.copyOf(changed, capacity);
+        attachedStores = attachedStores == null ? new EntityStore[capacity] : Arrays.copyOf(attachedStores, capacity);
+        attachedEntities = attachedEntities == null ? new int[capacity] : Arrays.copyOf(attachedEntities, capacity);
+        slotsByHandle = slotsByHandle == null ? new int[capacity] : Arrays.copyOf(slotsByHandle, capacity);
+        handlesBySlot = handlesBySlot == null ? new int[capacity] : Arrays.copyOf(handlesBySlot, capacity);
+    }
+
+    private static float[] resize(float[] values, int capacity) {
+        return values == null ? new float[capacity] : Arrays.copyOf(values, capacity);
+    }
+
+    private int slotOf(int node) {
+        checkHandle(node);
+        return slotsByHandle[node];
+    }
+
+    private void checkHandle(int node) {
+        if (node < 0 || node >= size) {
+            throw new IndexOutOfBoundsException("Node " + node + " out of bounds for size " + size);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.lasmth.graphics.lod;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lasmth.graphics.entities.Camera;
+import org.lasmth.graphics.entities.EntityStore;
+import org.lasmth.graphics.models.BoundingBox;
+import org.lasmth.graphics.models.TexturedModel;
+
+import java.util.Arrays;
+
+/**
+ * Picks the level of detail each visible entity is drawn at from how big it is on screen: the diameter of the
+ * sphere around its bounds, as a fraction of the screen height, compared to the screen sizes of its
+ * model's levels (see {@link TexturedModel#addLod}). Sizes are taken by distance rather than depth, so turning
+ * the camera on the spot never changes a level.
+ * <p>
+ * An entity only changes level once its size is past the switch by the hysteresis margin, so one sitting on
+ * the boundary does not pop back and forth every frame. That takes the level each entity was last drawn at,
+ * which the selector keeps by entity index, so give it the same store, or copies of the same store, every
+ * frame.
+ */
+public class LodSelector {
+
+    /**
+     * Default margin, as a share of the screen size at which levels switch.
+     */
+    public static final float DEFAULT_HYSTERESIS = 0.1f;
+
+    private final float hysteresis;
+    private boolean enabled = true;
+
+    // Level each entity was last given, by index, and the store generation they belong to.
+    private byte[] levels = new byte[64];
+    private int generation = -1;
+
+    private long selectedTriangles;
+    private long fullDetailTriangles;
+
+    private final Matrix4f modelMatrix = new Matrix4f();
+    private final Vector3f centre = new Vector3f();
+
+    public LodSelector() {
+        this(DEFAULT_HYSTERESIS);
+    }
+
+    /**
+     * @param hysteresis How far, as a share of the screen size at which levels switch, an entity's size must
+     *                   be past the switch to change level.
+     */
+    public LodSelector(float hysteresis) {
+        if (hysteresis < 0 || hysteresis >= 1) {
+            throw new IllegalArgumentException("Hysteresis must be in [0, 1), got " + hysteresis);
+        }
+        this.hysteresis = hysteresis;
+    }
+
+    /**
+     * Switch level of detail selection on or off. While off every entity is drawn at full detail, so the two
+     * can be compared.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Choose the level of detail of each of the given entities and store it with
+     * {@link EntityStore#setLodLevel(int, int)}. The entities' transformation matrices must be up-to-date.
+     * @param indices Indices of the entities to draw, e.g. those which survived culling. Only the first count
+     *                values are used.
+     * @param projectionMatrix Projection the frame will be rendered with.
+     */
+    public void select(EntityStore entities, int[] indices, int count, Camera camera, Matrix4f projectionMatrix) {
+        if (generation != entities.getGeneration()) {
+            Arrays.fill(levels, (byte) 0);
+            generation = entities.getGeneration();
+        }
+        if (levels.length < entities.size()) {
+            levels = Arrays.copyOf(levels, Math.max(entities.size(), levels.length * 2));
+        }
+
+        // Scales a view space radius over distance to a fraction of the screen height.
+        float projectionScale = projectionMatrix.m11();
+        Matrix4f viewMatrix = camera.getViewMatrix();
+        selectedTriangles = 0;
+        fullDetailTriangles = 0;
+        for (int i = 0; i < count; i++) {
+            int index = indices[i];
+            TexturedModel model = entities.getModel(entities.getModelHandle(index));
+            int level = 0;
+            if (enabled && model.getLodCount() > 1) {
+                float screenSize = screenSize(entities, index, model, viewMatrix, projectionScale);
+                level = selectLevel(model, levels[index], screenSize);
+            }
+            levels[index] = (byte) level;
+            entities.setLodLevel(index, level);
+
+            selectedTriangles += model.getLod(level).getRawModel().getVertexCount() / 3;
+            fullDetailTriangles += model.getRawModel().getVertexCount() / 3;
+        }
+    }
+
+    /**
+     * @return Triangles the entities given to the last {@link #select} are drawn with.
+     */
+    public long getSelectedTriangles() {
+        return selectedTriangles;
+    }
+
+    /**
+     * @return Triangles the same entities would have been drawn with at full detail.
+     */
+    public long getFullDetailTriangles() {
+        return fullDetailTriangles;
+    }
+
+    /**
+     * @return The level the screen size calls for, but only moving from the current level once the size is
+     * past the switch by the hysteresis margin.
+     */
+    private int selectLevel(TexturedModel model, int current, float screenSize) {
+        // The finest and coarsest levels the size is within the margin of.
+        int finest = levelFor(model, screenSize * (1 + hysteresis));
+        int coarsest = levelFor(model, screenSize * (1 - hysteresis));
+        return Math.clamp(current, finest, coarsest);
+    }
+
+    private static int levelFor(TexturedModel model, float screenSize) {
+        int level = 0;
+        while (level + 1 < model.getLodCount() && screenSize < model.getLodScreenSize(level + 1)) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * @return Diameter of the sphere around the entity's bounds as a fraction of the screen height, or
+     * infinity if the camera is inside it or its bounds are unknown.
+     */
+    private float screenSize(EntityStore entities, int index, TexturedModel model, Matrix4f viewMatrix,
+                             float projectionScale) {
+        BoundingBox bounds = model.getRawModel().getBounds();
+        if (bounds == null) {
+            return Float.POSITIVE_INFINITY;
+        }
+        // Sphere around the local bounds, so its size does not change as the entity turns.
+        float halfX = (bounds.getMaxX() - bounds.getMinX()) / 2;
+        float halfY = (bounds.getMaxY() - bounds.getMinY()) / 2;
+        float halfZ = (bounds.getMaxZ() - bounds.getMinZ()) / 2;
+        entities.getTransformationMatrix(index, modelMatrix);
+        float radius = (float) Math.sqrt(halfX * halfX + halfY * halfY + halfZ * halfZ) * maxScale(modelMatrix);
+        modelMatrix.transformPosition(bounds.getMinX() + halfX, bounds.getMinY() + halfY, bounds.getMinZ() + halfZ,
+                centre);
+        // In view space the centre is where it is relative to the camera.
+        viewMatrix.transformPosition(centre);
+        float distance = centre.length();
+        if (distance <= radius) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return radius * projectionScale / distance;
+    }
+
+    /**
+     * @return Largest scale the matrix applies along any of its axes.
+     */
+    private static float maxScale(Matrix4f matrix) {
+        float x = matrix.m00() * matrix.m00() + matrix.m01() * matrix.m01() + matrix.m02() * matrix.m02();
+        float y = matrix.m10() * matrix.m10() + matrix.m11() * matrix.m11() + matrix.m12() * matrix.m12();
+        float z = matrix.m20() * matrix.m20() + matrix.m21() * matrix.m21() + matrix.m22() * matrix.m22();
+        return (float) Math.sqrt(Math.max(x, Math.max(y, z)));
+    }
+}
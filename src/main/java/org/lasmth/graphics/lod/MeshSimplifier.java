@@ -0,0 +1,514 @@
+package org.lasmth.graphics.lod;
+
+import org.lasmth.graphics.models.MeshData;
+import org.lasmth.graphics.models.VertexLayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reduces the triangle count of a mesh by collapsing edges, cheapest first, where the cost of a collapse is how
+ * far it moves the surface as measured by quadric error metrics (Garland and Heckbert). A vertex is only ever
+ * merged into one of its neighbours, never moved, so every attribute of the vertices kept stays valid and the
+ * result has the layout of the input.
+ * <p>
+ * Vertices on an open border only slide along it, and vertices on a seam (one position split into several
+ * vertices by differing UVs or normals) are kept where they are, so the outline and texturing of the mesh hold
+ * together. Collapses which would flip a triangle or pinch the surface are skipped.
+ * <p>
+ * Needs no OpenGL context, so can run on the import threads, see {@link #generateLods(MeshData, int)}.
+ */
+public final class MeshSimplifier {
+
+    // Triangle count below which another level of detail is not worth generating.
+    private static final int MIN_LOD_TRIANGLES = 16;
+    // A level must have at most this share of the previous level's triangles to be kept.
+    private static final float MIN_LOD_REDUCTION = 0.8f;
+    // Weight of the planes keeping border vertices on the border, relative to the surface's own planes.
+    private static final double BORDER_WEIGHT = 10;
+    // Collapses are made in passes which each touch a vertex at most once. Bounds meshes which stall.
+    private static final int MAX_PASSES = 100;
+
+    // What a vertex may be collapsed along. Any vertex may be collapsed into.
+    private static final byte INTERIOR = 0;
+    private static final byte BORDER = 1;
+    private static final byte LOCKED = 2;
+
+    // Per vertex, the 10 distinct coefficients of a symmetric 4x4 quadric followed by the summed plane weights.
+    private static final int QUADRIC_SIZE = 11;
+
+    private final MeshData mesh;
+    private final float[] positions;
+    private final int vertexCount;
+    private final int[] indices;
+    private int indexCount;
+
+    private final byte[] kinds;
+    private final double[] quadrics;
+    // Vertex each vertex has been merged into, itself if it has not.
+    private final int[] remap;
+    // Set for vertices touched by a collapse in the current pass.
+    private final boolean[] locked;
+    // Triangles around each vertex, rebuilt every pass: those of vertex v are at [offsets[v], offsets[v + 1]).
+    private final int[] triangleOffsets;
+    private final int[] vertexTriangles;
+    // Scratch marks for counting the neighbours two vertices share.
+    private final int[] marks;
+    private int mark;
+
+    // Collapse candidates of a pass, and their order packed as cost bits over candidate index.
+    private final int[] candidateFrom;
+    private final int[] candidateTo;
+    private final long[] candidateOrder;
+
+    private MeshSimplifier(MeshData mesh) {
+        this.mesh = mesh;
+        this.positions = mesh.getAttributeData()[0];
+        this.vertexCount = positions.length / 3;
+        this.indices = mesh.getIndices().clone();
+        this.indexCount = indices.length;
+        this.kinds = new byte[vertexCount];
+        this.quadrics = new double[vertexCount * QUADRIC_SIZE];
+        this.remap = new int[vertexCount];
+        this.locked = new boolean[vertexCount];
+        this.triangleOffsets = new int[vertexCount + 1];
+        this.vertexTriangles = new int[indexCount];
+        this.marks = new int[vertexCount];
+        this.candidateFrom = new int[indexCount];
+        this.candidateTo = new int[indexCount];
+        this.candidateOrder = new long[indexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            remap[i] = i;
+        }
+    }
+
+    /**
+     * Simplify a mesh down to around the given number of triangles. Stops early once no collapse is allowed or
+     * cheap enough, so the result can have more triangles than asked for.
+     * @param targetTriangles Triangle count to stop at.
+     * @param maxError Furthest, in the mesh's units, a collapse may move the surface. Infinite for no limit.
+     * @return A new mesh in the same layout, holding only the vertices still used.
+     */
+    public static MeshData simplify(MeshData mesh, int targetTriangles, float maxError) {
+        MeshSimplifier simplifier = new MeshSimplifier(mesh);
+        simplifier.run(targetTriangles * 3, (double) maxError * maxError);
+        return simplifier.compact();
+    }
+
+    /**
+     * Generate a chain of levels of detail, each aiming for half the triangles of the one before. Every level
+     * is simplified from the original mesh, so errors do not build up along the chain. The chain ends early once
+     * a level would be too small or simplification stops making much progress.
+     * @param maxLevels Most levels to generate, not counting the mesh itself.
+     * @return The levels, coarsest last. Empty if the mesh cannot be simplified.
+     */
+    public static List<MeshData> generateLods(MeshData mesh, int maxLevels) {
+        List<MeshData> lods = new ArrayList<>(maxLevels);
+        int triangles = mesh.getIndices().length / 3;
+        int previousTriangles = triangles;
+        for (int level = 1; level <= maxLevels; level++) {
+            int target = triangles >> level;
+            if (target < MIN_LOD_TRIANGLES) {
+                break;
+            }
+            MeshData lod = simplify(mesh, target, Float.POSITIVE_INFINITY);
+            int lodTriangles = lod.getIndices().length / 3;
+            if (lodTriangles > previousTriangles * MIN_LOD_REDUCTION) {
+                break;
+            }
+            lods.add(lod);
+            previousTriangles = lodTriangles;
+        }
+        return lods;
+    }
+
+    private void run(int targetIndexCount, double maxErrorSquared) {
+        // Drops degenerate triangles, which would confuse the adjacency.
+        applyRemap();
+        buildAdjacency();
+        classifyVertices();
+        addSurfaceQuadrics();
+
+        for (int pass = 0; pass < MAX_PASSES && indexCount > targetIndexCount; pass++) {
+            if (collapsePass((indexCount - targetIndexCount) / 3, maxErrorSquared) == 0) {
+                break;
+            }
+            applyRemap();
+            buildAdjacency();
+        }
+    }
+
+    /**
+     * Lock vertices on seams and non-manifold edges, mark those on open borders, and give each border edge a
+     * plane at right angles to its triangle so collapses along the border are charged for leaving it.
+     */
+    private void classifyVertices() {
+        // Open addressing table of used vertices by position, to find those sharing one.
+        int[] table = new int[Integer.highestOneBit(Math.max(vertexCount, 1)) * 4];
+        int mask = table.length - 1;
+        for (int v = 0; v < vertexCount; v++) {
+            if (triangleCount(v) == 0) {
+                continue;
+            }
+            int slot = hashPosition(v) & mask;
+            while (true) {
+                int other = table[slot] - 1;
+                if (other < 0) {
+                    table[slot] = v + 1;
+                    break;
+                }
+                if (samePosition(other, v)) {
+                    kinds[other] = LOCKED;
+                    kinds[v] = LOCKED;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        for (int i = 0; i < indexCount; i++) {
+            int a = indices[i];
+            int b = indices[i % 3 == 2 ? i - 2 : i + 1];
+            int shared = sharedTriangles(a, b);
+            if (shared > 2) {
+                kinds[a] = LOCKED;
+                kinds[b] = LOCKED;
+            } else if (shared == 1) {
+                if (kinds[a] != LOCKED) {
+                    kinds[a] = BORDER;
+                }
+                if (kinds[b] != LOCKED) {
+                    kinds[b] = BORDER;
+                }
+                addBorderQuadric(i / 3, a, b);
+            }
+        }
+    }
+
+    private void addSurfaceQuadrics() {
+        for (int triangle = 0; triangle < indexCount / 3; triangle++) {
+            int v0 = indices[triangle * 3] * 3;
+            int v1 = indices[triangle * 3 + 1] * 3;
+            int v2 = indices[triangle * 3 + 2] * 3;
+            double ex = positions[v1] - positions[v0], ey = positions[v1 + 1] - positions[v0 + 1];
+            double ez = positions[v1 + 2] - positions[v0 + 2];
+            double fx = positions[v2] - positions[v0], fy = positions[v2 + 1] - positions[v0 + 1];
+            double fz = positions[v2 + 2] - positions[v0 + 2];
+            double nx = ey * fz - ez * fy, ny = ez * fx - ex * fz, nz = ex * fy - ey * fx;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) {
+                continue;
+            }
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            double d = -(nx * positions[v0] + ny * positions[v0 + 1] + nz * positions[v0 + 2]);
+            // Weighted by area, so big triangles count for more than slivers.
+            double weight = length / 2;
+            for (int corner = 0; corner < 3; corner++) {
+                addPlane(indices[triangle * 3 + corner], nx, ny, nz, d, weight);
+            }
+        }
+    }
+
+    private void addBorderQuadric(int triangle, int a, int b) {
+        int v0 = indices[triangle * 3] * 3;
+        int v1 = indices[triangle * 3 + 1] * 3;
+        int v2 = indices[triangle * 3 + 2] * 3;
+        double ex = positions[v1] - positions[v0], ey = positions[v1 + 1] - positions[v0 + 1];
+        double ez = positions[v1 + 2] - positions[v0 + 2];
+        double fx = positions[v2] - positions[v0], fy = positions[v2 + 1] - positions[v0 + 1];
+        double fz = positions[v2 + 2] - positions[v0 + 2];
+        double tx = ey * fz - ez * fy, ty = ez * fx - ex * fz, tz = ex * fy - ey * fx;
+
+        double bx = positions[b * 3] - positions[a * 3], by = positions[b * 3 + 1] - positions[a * 3 + 1];
+        double bz = positions[b * 3 + 2] - positions[a * 3 + 2];
+        // Plane through the edge, at right angles to the triangle.
+        double nx = by * tz - bz * ty, ny = bz * tx - bx * tz, nz = bx * ty - by * tx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return;
+        }
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        double d = -(nx * positions[a * 3] + ny * positions[a * 3 + 1] + nz * positions[a * 3 + 2]);
+        double weight = BORDER_WEIGHT * (bx * bx + by * by + bz * bz);
+        addPlane(a, nx, ny, nz, d, weight);
+        addPlane(b, nx, ny, nz, d, weight);
+    }
+
+    /**
+     * Pick the cheapest collapse of every edge, then make them cheapest first, skipping any touching a vertex
+     * already changed this pass.
+     * @return Number of collapses made.
+     */
+    private int collapsePass(int trianglesToRemove, double maxErrorSquared) {
+        int candidateCount = 0;
+        for (int i = 0; i < indexCount; i++) {
+            int a = indices[i];
+            int b = indices[i % 3 == 2 ? i - 2 : i + 1];
+            int shared = sharedTriangles(a, b);
+            if (shared != 1 && a > b) {
+                // An inner edge is in two triangles, only look at it from one.
+                continue;
+            }
+            boolean borderEdge = shared == 1;
+            double cost = Double.POSITIVE_INFINITY;
+            int from = -1;
+            if (canCollapse(a, borderEdge)) {
+                cost = collapseCost(a, b);
+                from = a;
+            }
+            if (canCollapse(b, borderEdge)) {
+                double reverseCost = collapseCost(b, a);
+                if (reverseCost < cost) {
+                    cost = reverseCost;
+                    from = b;
+                }
+            }
+            if (from < 0 || cost > maxErrorSquared) {
+                continue;
+            }
+            candidateFrom[candidateCount] = from;
+            candidateTo[candidateCount] = from == a ? b : a;
+            // Bits of a non-negative float sort in the same order as its value.
+            candidateOrder[candidateCount] = (long) Float.floatToIntBits((float) cost) << 32 | candidateCount;
+            candidateCount++;
+        }
+        Arrays.sort(candidateOrder, 0, candidateCount);
+
+        Arrays.fill(locked, false);
+        int removed = 0;
+        int collapses = 0;
+        for (int i = 0; i < candidateCount && removed < trianglesToRemove; i++) {
+            int candidate = (int) candidateOrder[i];
+            int from = candidateFrom[candidate];
+            int to = candidateTo[candidate];
+            if (locked[from] || locked[to]) {
+                continue;
+            }
+            int shared = sharedTriangles(from, to);
+            if (sharedNeighbours(from, to) != shared || flipsTriangle(from, to)) {
+                continue;
+            }
+
+            remap[from] = to;
+            for (int q = 0; q < QUADRIC_SIZE; q++) {
+                quadrics[to * QUADRIC_SIZE + q] += quadrics[from * QUADRIC_SIZE + q];
+            }
+            // The triangles around from change shape, so nothing else touching them may move this pass.
+            for (int t = triangleOffsets[from]; t < triangleOffsets[from + 1]; t++) {
+                int triangle = vertexTriangles[t];
+                locked[indices[triangle * 3]] = true;
+                locked[indices[triangle * 3 + 1]] = true;
+                locked[indices[triangle * 3 + 2]] = true;
+            }
+            removed += shared;
+            collapses++;
+        }
+        return collapses;
+    }
+
+    private boolean canCollapse(int vertex, boolean borderEdge) {
+        return switch (kinds[vertex]) {
+            case INTERIOR -> true;
+            // Leaving the border along an inner edge would eat into the outline.
+            case BORDER -> borderEdge;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return Mean squared distance, over the planes of both vertices, of to's position.
+     */
+    private double collapseCost(int from, int to) {
+        double x = positions[to * 3], y = positions[to * 3 + 1], z = positions[to * 3 + 2];
+        double error = evaluate(from, x, y, z) + evaluate(to, x, y, z);
+        double weight = quadrics[from * QUADRIC_SIZE + 10] + quadrics[to * QUADRIC_SIZE + 10];
+        return weight > 0 ? Math.max(0, error / weight) : 0;
+    }
+
+    /**
+     * @return True if moving from onto to would turn any of from's remaining triangles over.
+     */
+    private boolean flipsTriangle(int from, int to) {
+        for (int t = triangleOffsets[from]; t < triangleOffsets[from + 1]; t++) {
+            int triangle = vertexTriangles[t];
+            int v0 = indices[triangle * 3];
+            int v1 = indices[triangle * 3 + 1];
+            int v2 = indices[triangle * 3 + 2];
+            if (v0 == to || v1 == to || v2 == to) {
+                // Collapses to nothing.
+                continue;
+            }
+            // Rotate so from is first, keeping the winding.
+            int b = from == v0 ? v1 : from == v1 ? v2 : v0;
+            int c = from == v0 ? v2 : from == v1 ? v0 : v1;
+            double bx = positions[b * 3], by = positions[b * 3 + 1], bz = positions[b * 3 + 2];
+            double ex = positions[c * 3] - bx, ey = positions[c * 3 + 1] - by, ez = positions[c * 3 + 2] - bz;
+            double fx = positions[from * 3] - bx, fy = positions[from * 3 + 1] - by;
+            double fz = positions[from * 3 + 2] - bz;
+            double gx = positions[to * 3] - bx, gy = positions[to * 3 + 1] - by, gz = positions[to * 3 + 2] - bz;
+            // Normals before and after, both of the triangle b, c, from-or-to.
+            double nx = ey * fz - ez * fy, ny = ez * fx - ex * fz, nz = ex * fy - ey * fx;
+            double mx = ey * gz - ez * gy, my = ez * gx - ex * gz, mz = ex * gy - ey * gx;
+            if (nx * mx + ny * my + nz * mz <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of distinct vertices, other than the two, which are neighbours of both. A collapse is only
+     * safe if this is the number of triangles along the edge, else the surface folds into a non-manifold fin.
+     */
+    private int sharedNeighbours(int a, int b) {
+        mark += 2;
+        for (int t = triangleOffsets[b]; t < triangleOffsets[b + 1]; t++) {
+            int triangle = vertexTriangles[t];
+            for (int corner = 0; corner < 3; corner++) {
+                marks[indices[triangle * 3 + corner]] = mark;
+            }
+        }
+        int count = 0;
+        for (int t = triangleOffsets[a]; t < triangleOffsets[a + 1]; t++) {
+            int triangle = vertexTriangles[t];
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = indices[triangle * 3 + corner];
+                if (vertex != a && vertex != b && marks[vertex] == mark) {
+                    // Counted once, however many of a's triangles it is in.
+                    marks[vertex] = mark + 1;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Number of triangles with both vertices. 1 for a border edge, 2 for an inner one.
+     */
+    private int sharedTriangles(int a, int b) {
+        int count = 0;
+        for (int t = triangleOffsets[a]; t < triangleOffsets[a + 1]; t++) {
+            int triangle = vertexTriangles[t];
+            if (indices[triangle * 3] == b || indices[triangle * 3 + 1] == b || indices[triangle * 3 + 2] == b) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int triangleCount(int vertex) {
+        return triangleOffsets[vertex + 1] - triangleOffsets[vertex];
+    }
+
+    private int hashPosition(int vertex) {
+        // Adding 0 turns -0 into 0, which has different bits but is the same position.
+        int hash = Float.floatToIntBits(positions[vertex * 3] + 0f) * 73856093
+                ^ Float.floatToIntBits(positions[vertex * 3 + 1] + 0f) * 19349663
+                ^ Float.floatToIntBits(positions[vertex * 3 + 2] + 0f) * 83492791;
+        return hash ^ hash >>> 16;
+    }
+
+    private boolean samePosition(int a, int b) {
+        return positions[a * 3] == positions[b * 3] && positions[a * 3 + 1] == positions[b * 3 + 1]
+                && positions[a * 3 + 2] == positions[b * 3 + 2];
+    }
+
+    private void addPlane(int vertex, double a, double b, double c, double d, double weight) {
+        int offset = vertex * QUADRIC_SIZE;
+        quadrics[offset] += weight * a * a;
+        quadrics[offset + 1] += weight * b * b;
+        quadrics[offset + 2] += weight * c * c;
+        quadrics[offset + 3] += weight * a * b;
+        quadrics[offset + 4] += weight * a * c;
+        quadrics[offset + 5] += weight * b * c;
+        quadrics[offset + 6] += weight * a * d;
+        quadrics[offset + 7] += weight * b * d;
+        quadrics[offset + 8] += weight * c * d;
+        quadrics[offset + 9] += weight * d * d;
+        quadrics[offset + 10] += weight;
+    }
+
+    /**
+     * @return Weighted sum of the squared distances from the vertex's planes to the point.
+     */
+    private double evaluate(int vertex, double x, double y, double z) {
+        int offset = vertex * QUADRIC_SIZE;
+        return quadrics[offset] * x * x + quadrics[offset + 1] * y * y + quadrics[offset + 2] * z * z
+                + 2 * (quadrics[offset + 3] * x * y + quadrics[offset + 4] * x * z + quadrics[offset + 5] * y * z)
+                + 2 * (quadrics[offset + 6] * x + quadrics[offset + 7] * y + quadrics[offset + 8] * z)
+                + quadrics[offset + 9];
+    }
+
+    /**
+     * Point every index at the vertex it was merged into, dropping the triangles which collapsed.
+     */
+    private void applyRemap() {
+        int count = 0;
+        for (int i = 0; i < indexCount; i += 3) {
+            int v0 = remap[indices[i]];
+            int v1 = remap[indices[i + 1]];
+            int v2 = remap[indices[i + 2]];
+            if (v0 == v1 || v1 == v2 || v0 == v2) {
+                continue;
+            }
+            indices[count++] = v0;
+            indices[count++] = v1;
+            indices[count++] = v2;
+        }
+        indexCount = count;
+    }
+
+    private void buildAdjacency() {
+        Arrays.fill(triangleOffsets, 0);
+        for (int i = 0; i < indexCount; i++) {
+            triangleOffsets[indices[i]]++;
+        }
+        // Running totals give the end of each vertex's range, which is then filled backwards to its start.
+        for (int v = 1; v < vertexCount; v++) {
+            triangleOffsets[v] += triangleOffsets[v - 1];
+        }
+        triangleOffsets[vertexCount] = indexCount;
+        for (int i = indexCount - 1; i >= 0; i--) {
+            vertexTriangles[--triangleOffsets[indices[i]]] = i / 3;
+        }
+    }
+
+    /**
+     * @return The remaining triangles as a new mesh. Vertices are renumbered in the order the indices first use
+     * them, which suits the GPU's vertex cache.
+     */
+    private MeshData compact() {
+        int[] newIndices = new int[vertexCount];
+        Arrays.fill(newIndices, -1);
+        int[] kept = new int[vertexCount];
+        int keptCount = 0;
+        int[] outIndices = new int[indexCount];
+        for (int i = 0; i < indexCount; i++) {
+            int vertex = indices[i];
+            if (newIndices[vertex] < 0) {
+                newIndices[vertex] = keptCount;
+                kept[keptCount++] = vertex;
+            }
+            outIndices[i] = newIndices[vertex];
+        }
+
+        VertexLayout layout = mesh.getLayout();
+        float[][] attributeData = mesh.getAttributeData();
+        float[][] outData = new float[attributeData.length][];
+        for (int a = 0; a < attributeData.length; a++) {
+            int size = layout.getAttributes().get(a).getSize();
+            float[] data = new float[keptCount * size];
+            for (int v = 0; v < keptCount; v++) {
+                System.arraycopy(attributeData[a], kept[v] * size, data, v * size, size);
+            }
+            outData[a] = data;
+        }
+        return new MeshData(layout, outIndices, outData);
+    }
+}
@@ -0,0 +1,132 @@
+package org.lasmth.graphics.memory;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hands out ranges of a fixed size space, e.g. the vertices of a shared GPU buffer. Free ranges are kept in
+ * order of their offset, and a freed range is merged with any free neighbours so the space does not splinter.
+ * Allocation takes the first free range big enough.
+ * <p>
+ * Only offsets and sizes are managed, in whatever unit the caller likes, so it works the same for bytes,
+ * vertices or indices. Not thread safe.
+ */
+public class FreeListAllocator {
+
+    // Free ranges, size by offset.
+    private final TreeMap<Integer, Integer> freeRanges = new TreeMap<>();
+    private int capacity;
+    private int freeSize;
+
+    public FreeListAllocator(int capacity) {
+        this.capacity = capacity;
+        reset();
+    }
+
+    /**
+     * @return Offset of the new range, or -1 if no free range is big enough.
+     */
+    public int allocate(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Cannot allocate " + size + " units");
+        }
+        for (Map.Entry<Integer, Integer> range : freeRanges.entrySet()) {
+            int rangeSize = range.getValue();
+            if (rangeSize < size) {
+                continue;
+            }
+            int offset = range.getKey();
+            freeRanges.remove(offset);
+            if (rangeSize > size) {
+                freeRanges.put(offset + size, rangeSize - size);
+            }
+            freeSize -= size;
+            return offset;
+        }
+        return -1;
+    }
+
+    /**
+     * Give back a range returned by {@link #allocate(int)}.
+     */
+    public void free(int offset, int size) {
+        if (offset < 0 || size <= 0 || offset + size > capacity) {
+            throw new IllegalArgumentException("Range " + offset + "+" + size + " is outside 0+" + capacity);
+        }
+        int start = offset;
+        int end = offset + size;
+
+        Map.Entry<Integer, Integer> before = freeRanges.floorEntry(offset);
+        if (before != null) {
+            int beforeEnd = before.getKey() + before.getValue();
+            if (beforeEnd > offset) {
+                throw new IllegalArgumentException("Range " + offset + "+" + size + " is already free");
+            }
+            if (beforeEnd == offset) {
+                start = before.getKey();
+                freeRanges.remove(start);
+            }
+        }
+        Map.Entry<Integer, Integer> after = freeRanges.ceilingEntry(offset);
+        if (after != null) {
+            if (after.getKey() < end) {
+                throw new IllegalArgumentException("Range " + offset + "+" + size + " is already free");
+            }
+            if (after.getKey() == end) {
+                end += after.getValue();
+                freeRanges.remove(after.getKey());
+            }
+        }
+        freeRanges.put(start, end - start);
+        freeSize += size;
+    }
+
+    /**
+     * Make the space bigger. The new space is added at the end, so existing ranges keep their offsets.
+     */
+    public void grow(int newCapacity) {
+        if (newCapacity <= capacity) {
+            return;
+        }
+        int oldCapacity = capacity;
+        capacity = newCapacity;
+        free(oldCapacity, newCapacity - oldCapacity);
+    }
+
+    /**
+     * Free everything.
+     */
+    public void reset() {
+        freeRanges.clear();
+        if (capacity > 0) {
+            freeRanges.put(0, capacity);
+        }
+        freeSize = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getFreeSize() {
+        return freeSize;
+    }
+
+    /**
+     * @return Size of the largest range which could be allocated right now.
+     */
+    public int getLargestFreeRange() {
+        int largest = 0;
+        for (int size : freeRanges.values()) {
+            largest = Math.max(largest, size);
+        }
+        return largest;
+    }
+
+    /**
+     * @return Number of separate free ranges. 1 or 0 when nothing is fragmented.
+     */
+    public int getFreeRangeCount() {
+        return freeRanges.size();
+    }
+}
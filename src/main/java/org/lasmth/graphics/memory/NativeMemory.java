@@ -0,0 +1,90 @@
+package org.lasmth.graphics.memory;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Explicitly managed off-heap memory, with a running count of how much is in use.
+ * <p>
+ * Unlike direct buffers from {@link org.lwjgl.BufferUtils}, which are only released once the garbage collector
+ * gets round to them, memory from here is freed as soon as {@link #free(Buffer)} is called. Every
+ * {@link #allocate(int)} must be paired with a free. Memory allocated elsewhere, e.g. images decoded by STB,
+ * can be included in the count with {@link #recordAllocation(long)} and {@link #recordFree(long)}.
+ * <p>
+ * Thread safe.
+ */
+public final class NativeMemory {
+
+    private static final AtomicLong allocatedBytes = new AtomicLong();
+    private static final AtomicLong peakBytes = new AtomicLong();
+    private static final AtomicLong allocationCount = new AtomicLong();
+
+    private NativeMemory() {
+    }
+
+    /**
+     * @return Uninitialised buffer of the given size. Must be released with {@link #free(Buffer)}.
+     */
+    public static ByteBuffer allocate(int bytes) {
+        ByteBuffer buffer = MemoryUtil.memAlloc(bytes);
+        recordAllocation(bytes);
+        return buffer;
+    }
+
+    /**
+     * Grow or shrink a buffer from {@link #allocate(int)}, keeping its contents up to the smaller of the two
+     * sizes. The old buffer must not be used afterwards.
+     */
+    public static ByteBuffer reallocate(ByteBuffer buffer, int bytes) {
+        int oldBytes = buffer.capacity();
+        ByteBuffer resized = MemoryUtil.memRealloc(buffer, bytes);
+        recordFree(oldBytes);
+        recordAllocation(bytes);
+        return resized;
+    }
+
+    /**
+     * Release a buffer from {@link #allocate(int)}. Its full capacity is taken off the count.
+     */
+    public static void free(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        recordFree(buffer.capacity());
+        MemoryUtil.memFree(buffer);
+    }
+
+    public static void recordAllocation(long bytes) {
+        long allocated = allocatedBytes.addAndGet(bytes);
+        allocationCount.incrementAndGet();
+        peakBytes.accumulateAndGet(allocated, Math::max);
+    }
+
+    public static void recordFree(long bytes) {
+        allocatedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * @return Bytes currently allocated.
+     */
+    public static long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * @return Most bytes allocated at any one time.
+     */
+    public static long getPeakBytes() {
+        return peakBytes.get();
+    }
+
+    /**
+     * @return Number of allocations made so far, including reallocations.
+     */
+    public static long getAllocationCount() {
+        return allocationCount.get();
+    }
+}
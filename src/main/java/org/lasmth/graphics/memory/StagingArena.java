@@ -0,0 +1,125 @@
+package org.lasmth.graphics.memory;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Scratch memory for data on its way to the GPU, e.g. vertex data which only has to live until it has been
+ * passed to glBufferData.
+ * <p>
+ * Allocations are carved out of a block of native memory one after another and are all released together by
+ * {@link #reset()}, so they cost next to nothing. If a block fills up another is chained on. On reset the
+ * chain is replaced by a single block big enough for all of it, so after a few uploads the arena settles at
+ * one block and stops allocating.
+ * <p>
+ * Buffers handed out are only valid until the next reset. Not thread safe.
+ */
+public class StagingArena {
+
+    private static final int ALIGNMENT = 16;
+
+    private ByteBuffer[] blocks = new ByteBuffer[4];
+    private int blockCount;
+    // Bytes used in the last block of the chain.
+    private int used;
+    // Bytes used across the whole chain since the last reset.
+    private long totalUsed;
+
+    /**
+     * @param initialCapacity Size in bytes of the first block.
+     */
+    public StagingArena(int initialCapacity) {
+        blocks[0] = NativeMemory.allocate(Math.max(ALIGNMENT, initialCapacity));
+        blockCount = 1;
+    }
+
+    /**
+     * @return Uninitialised buffer of exactly the given size, valid until the next {@link #reset()}.
+     */
+    public ByteBuffer allocate(int bytes) {
+        ByteBuffer block = blocks[blockCount - 1];
+        int offset = align(used);
+        if (offset + bytes > block.capacity()) {
+            block = addBlock(Math.max(bytes, block.capacity() * 2));
+            offset = 0;
+        }
+        used = offset + bytes;
+        totalUsed += bytes;
+        return MemoryUtil.memByteBuffer(MemoryUtil.memAddress(block) + offset, bytes);
+    }
+
+    public FloatBuffer allocateFloats(int count) {
+        return allocate(count * Float.BYTES).asFloatBuffer();
+    }
+
+    public IntBuffer allocateInts(int count) {
+        return allocate(count * Integer.BYTES).asIntBuffer();
+    }
+
+    /**
+     * Release every allocation made since the last reset.
+     */
+    public void reset() {
+        if (blockCount > 1) {
+            // Merge the chain into one block big enough for everything this round needed.
+            int capacity = 0;
+            for (int i = 0; i < blockCount; i++) {
+                capacity += blocks[i].capacity();
+                NativeMemory.free(blocks[i]);
+                blocks[i] = null;
+            }
+            blocks[0] = NativeMemory.allocate(capacity);
+            blockCount = 1;
+        }
+        used = 0;
+        totalUsed = 0;
+    }
+
+    /**
+     * @return Bytes handed out since the last reset.
+     */
+    public long getUsed() {
+        return totalUsed;
+    }
+
+    /**
+     * @return Bytes of native memory held by the arena.
+     */
+    public long getCapacity() {
+        long capacity = 0;
+        for (int i = 0; i < blockCount; i++) {
+            capacity += blocks[i].capacity();
+        }
+        return capacity;
+    }
+
+    /**
+     * Release the arena's memory. It must not be used afterwards.
+     */
+    public void free() {
+        for (int i = 0; i < blockCount; i++) {
+            NativeMemory.free(blocks[i]);
+            blocks[i] = null;
+        }
+        blockCount = 0;
+    }
+
+    private ByteBuffer addBlock(int capacity) {
+        if (blockCount == blocks.length) {
+            ByteBuffer[] grown = new ByteBuffer[blocks.length * 2];
+            System.arraycopy(blocks, 0, grown, 0, blockCount);
+            blocks = grown;
+        }
+        ByteBuffer block = NativeMemory.allocate(capacity);
+        blocks[blockCount++] = block;
+        used = 0;
+        return block;
+    }
+
+    private static int align(int offset) {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
@@ -0,0 +1,40 @@
+package org.lasmth.graphics.models;
+
+/**
+ * Vertex and index data of a mesh in main memory, ready to be uploaded with
+ * {@link org.lasmth.graphics.Loader#loadToVAO(MeshData)}.
+ */
+public class MeshData {
+
+    private final VertexLayout layout;
+    private final int[] indices;
+    private final float[][] attributeData;
+
+    /**
+     * @param layout How to store the vertex attributes on the GPU.
+     * @param indices Rendering indices - the order in which to render the vertices.
+     * @param attributeData One array per attribute of the layout, in the same order. The first must hold
+     *                      3D positions.
+     */
+    public MeshData(VertexLayout layout, int[] indices, float[]... attributeData) {
+        if (attributeData.length != layout.getAttributes().size()) {
+            throw new IllegalArgumentException("Expected data for " + layout.getAttributes().size()
+                    + " attributes, got " + attributeData.length);
+        }
+        this.layout = layout;
+        this.indices = indices;
+        this.attributeData = attributeData;
+    }
+
+    public VertexLayout getLayout() {
+        return layout;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public float[][] getAttributeData() {
+        return attributeData;
+    }
+}
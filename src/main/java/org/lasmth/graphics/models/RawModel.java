@@ -1,5 +1,7 @@
 package org.lasmth.graphics.models;
 
+import org.lwjgl.opengl.GL11;
+
 /**
  * Representation of a 3D model as vertex data stored in memory. Note that the
  * vertex data itself isn't stored here as a Java object - just a pointer to
@@ -11,10 +13,35 @@ public class RawModel {
     // Pointer to the VAO in memory.
 	private final int vaoID;
 	private final int vertexCount;
+	// Local space bounds of the model. May be null if unknown, in which case the model is never culled.
+	private final BoundingBox bounds;
+	// GL_UNSIGNED_SHORT or GL_UNSIGNED_INT, whichever the index buffer was stored as.
+	private final int indexType;
+	// Size of the model's vertex and index buffers in bytes, 0 if unknown.
+	private final long vertexDataSize;
+	private final long indexDataSize;
 
 	public RawModel(int vaoID, int vertexCount) {
+		this(vaoID, vertexCount, null);
+	}
+
+	public RawModel(int vaoID, int vertexCount, BoundingBox bounds) {
+		this(vaoID, vertexCount, bounds, GL11.GL_UNSIGNED_INT, 0, 0);
+	}
+
+	/**
+	 * @param indexType OpenGL type of the indices in the index buffer.
+	 * @param vertexDataSize Size of the vertex buffer in bytes.
+	 * @param indexDataSize Size of the index buffer in bytes.
+	 */
+	public RawModel(int vaoID, int vertexCount, BoundingBox bounds, int indexType, long vertexDataSize,
+					long indexDataSize) {
 		this.vaoID = vaoID;
 		this.vertexCount = vertexCount;
+		this.bounds = bounds;
+		this.indexType = indexType;
+		this.vertexDataSize = vertexDataSize;
+		this.indexDataSize = indexDataSize;
 	}
 
 	public int getVaoID() {
@@ -25,4 +52,42 @@ public class RawModel {
 		return vertexCount;
 	}
 
+	/**
+	 * @return Local space bounding box of the model, or null if it is not known.
+	 */
+	public BoundingBox getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * @return Type to pass to glDrawElements for this model's indices.
+	 */
+	public int getIndexType() {
+		return indexType;
+	}
+
+	/**
+	 * @return Index in the model's index buffer of its first index. 0 unless the buffer is shared with other
+	 * models.
+	 */
+	public int getFirstIndex() {
+		return 0;
+	}
+
+	/**
+	 * @return Value added to each index before reading the vertex. 0 unless the vertex buffer is shared with
+	 * other models.
+	 */
+	public int getBaseVertex() {
+		return 0;
+	}
+
+	public long getVertexDataSize() {
+		return vertexDataSize;
+	}
+
+	public long getIndexDataSize() {
+		return indexDataSize;
+	}
+
 }
\ No newline at end of file
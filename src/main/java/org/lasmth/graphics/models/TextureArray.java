@@ -0,0 +1,42 @@
+package org.lasmth.graphics.models;
+
+/**
+ * A GL_TEXTURE_2D_ARRAY holding several same-size images as layers. Models using different layers of the same
+ * array can be drawn one after another without binding another texture.
+ */
+public class TextureArray {
+
+    private final int textureId;
+    private final int layerCount;
+    private final int width;
+    private final int height;
+
+    public TextureArray(int textureId, int layerCount, int width, int height) {
+        this.textureId = textureId;
+        this.layerCount = layerCount;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    public int getLayerCount() {
+        return layerCount;
+    }
+
+    /**
+     * @return Width of every layer, in pixels.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Height of every layer, in pixels.
+     */
+    public int getHeight() {
+        return height;
+    }
+}
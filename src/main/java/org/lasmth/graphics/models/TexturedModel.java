@@ -1,13 +1,46 @@
 package org.lasmth.graphics.models;
 
+import java.util.Arrays;
+
+/**
+ * A {@link RawModel} with the texture it is drawn with. A model can also carry a chain of coarser levels of
+ * detail, added with {@link #addLod(RawModel, float)}, which are swapped in as it gets smaller on screen. Each
+ * level is a textured model of its own sharing the texture, so renderers batch a level like any other model.
+ */
 public class TexturedModel {
 
+    /**
+     * Layer of a model textured with a plain 2D texture rather than a {@link TextureArray}.
+     */
+    public static final int NO_LAYER = -1;
+
     private RawModel rawModel;
     private int textureId;
+    private int layer;
+
+    // This model followed by its coarser levels of detail, and per level the screen size below which it is
+    // used. Only ever set on the first level.
+    private TexturedModel[] lods = {this};
+    private float[] lodScreenSizes = {Float.POSITIVE_INFINITY};
 
     public TexturedModel(RawModel model, int textureId) {
         this.rawModel = model;
         this.textureId = textureId;
+        this.layer = NO_LAYER;
+    }
+
+    /**
+     * Texture a model with one layer of a texture array.
+     * @param layer Index of the layer, in the order the images were given when loading the array.
+     */
+    public TexturedModel(RawModel model, TextureArray textureArray, int layer) {
+        if (layer < 0 || layer >= textureArray.getLayerCount()) {
+            throw new IllegalArgumentException("Layer " + layer + " is out of range for a texture array with "
+                    + textureArray.getLayerCount() + " layers");
+        }
+        this.rawModel = model;
+        this.textureId = textureArray.getTextureId();
+        this.layer = layer;
     }
 
     public RawModel getRawModel() {
@@ -17,4 +50,61 @@ public class TexturedModel {
     public int getTextureId() {
         return textureId;
     }
+
+    /**
+     * @return Layer of the texture array to sample, or {@link #NO_LAYER} if the texture is a plain 2D one.
+     */
+    public int getLayer() {
+        return layer;
+    }
+
+    public boolean isArrayTexture() {
+        return layer != NO_LAYER;
+    }
+
+    /**
+     * Add a coarser level of detail after the existing ones, textured the same way as this model.
+     * @param model Mesh of the level, usually with fewer triangles than the level before.
+     * @param screenSize Fraction of the screen height the model's bounds must cover less of for this level to
+     *                   be used. Must be smaller than the previous level's.
+     * @return The textured model of the new level.
+     */
+    public TexturedModel addLod(RawModel model, float screenSize) {
+        if (lods[0] != this) {
+            throw new IllegalStateException("Levels of detail can only be added to the first level");
+        }
+        if (!(screenSize > 0 && screenSize < lodScreenSizes[lodScreenSizes.length - 1])) {
+            throw new IllegalArgumentException("Screen size " + screenSize + " must be positive and below the "
+                    + "previous level's " + lodScreenSizes[lodScreenSizes.length - 1]);
+        }
+        TexturedModel lod = new TexturedModel(model, textureId);
+        lod.layer = layer;
+        lods = Arrays.copyOf(lods, lods.length + 1);
+        lods[lods.length - 1] = lod;
+        lodScreenSizes = Arrays.copyOf(lodScreenSizes, lodScreenSizes.length + 1);
+        lodScreenSizes[lodScreenSizes.length - 1] = screenSize;
+        return lod;
+    }
+
+    /**
+     * @return Number of levels of detail, including this model as level 0.
+     */
+    public int getLodCount() {
+        return lods.length;
+    }
+
+    /**
+     * @param level Level of detail, 0 being this model. Levels past the last give the last.
+     * @return The textured model to draw at that level.
+     */
+    public TexturedModel getLod(int level) {
+        return lods[Math.min(level, lods.length - 1)];
+    }
+
+    /**
+     * @return Fraction of the screen height below which the level is used. Infinite for level 0.
+     */
+    public float getLodScreenSize(int level) {
+        return lodScreenSizes[level];
+    }
 }
@@ -0,0 +1,37 @@
+package org.lasmth.graphics.models;
+
+/**
+ * One attribute of a {@link VertexLayout}, e.g. position or UV coordinates.
+ */
+public class VertexAttribute {
+
+    private final int index;
+    private final int size;
+    private final VertexFormat format;
+
+    /**
+     * @param index Attribute slot the shader reads it from.
+     * @param size Number of components, 1 to 4.
+     * @param format How the components are stored.
+     */
+    public VertexAttribute(int index, int size, VertexFormat format) {
+        if (size < 1 || size > 4) {
+            throw new IllegalArgumentException("Attribute size must be between 1 and 4, got " + size);
+        }
+        this.index = index;
+        this.size = size;
+        this.format = format;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+}
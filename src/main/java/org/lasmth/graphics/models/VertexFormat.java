@@ -0,0 +1,72 @@
+package org.lasmth.graphics.models;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+import java.nio.ByteBuffer;
+
+/**
+ * How each component of a vertex attribute is stored in the vertex buffer. The smaller formats trade
+ * precision or range for memory and bandwidth.
+ */
+public enum VertexFormat {
+
+    /**
+     * 32-bit float. Full precision.
+     */
+    FLOAT(GL11.GL_FLOAT, false, 4),
+    /**
+     * 16-bit float. Around 3 significant digits, fine for e.g. UVs of textures up to 2048 pixels wide.
+     */
+    HALF_FLOAT(GL30.GL_HALF_FLOAT, false, 2),
+    /**
+     * 16-bit signed integer mapping [-1, 1] to [-32767, 32767]. Values outside [-1, 1] are clamped. Suits
+     * unit length vectors such as normals.
+     */
+    NORMALIZED_SHORT(GL11.GL_SHORT, true, 2),
+    /**
+     * 16-bit unsigned integer mapping [0, 1] to [0, 65535]. Values outside [0, 1] are clamped. Suits UVs
+     * which do not repeat.
+     */
+    NORMALIZED_UNSIGNED_SHORT(GL11.GL_UNSIGNED_SHORT, true, 2);
+
+    private final int glType;
+    private final boolean normalized;
+    private final int componentBytes;
+
+    VertexFormat(int glType, boolean normalized, int componentBytes) {
+        this.glType = glType;
+        this.normalized = normalized;
+        this.componentBytes = componentBytes;
+    }
+
+    /**
+     * @return Type passed to glVertexAttribPointer.
+     */
+    public int getGlType() {
+        return glType;
+    }
+
+    /**
+     * @return Whether OpenGL should map integer values to [-1, 1] or [0, 1] when reading them.
+     */
+    public boolean isNormalized() {
+        return normalized;
+    }
+
+    public int getComponentBytes() {
+        return componentBytes;
+    }
+
+    /**
+     * Write one component in this format at the buffer's position, advancing it.
+     */
+    void put(ByteBuffer buffer, float value) {
+        switch (this) {
+            case FLOAT -> buffer.putFloat(value);
+            case HALF_FLOAT -> buffer.putShort(Float.floatToFloat16(value));
+            case NORMALIZED_SHORT -> buffer.putShort((short) Math.round(Math.clamp(value, -1f, 1f) * Short.MAX_VALUE));
+            case NORMALIZED_UNSIGNED_SHORT -> buffer.putShort((short) Math.round(Math.clamp(value, 0f, 1f) * 0xFFFF));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.lasmth.graphics.models;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Describes how a mesh's vertices are laid out in a single interleaved vertex buffer: which attributes each
+ * vertex has, in what format, and at what offset. Storing all of a vertex's attributes next to each other
+ * means the GPU fetches them in one go rather than from a separate buffer per attribute.
+ * <p>
+ * Each attribute starts on a 4 byte boundary, as some drivers are slow with unaligned attributes.
+ */
+public class VertexLayout {
+
+    /**
+     * Full precision float positions (slot 0) and UVs (slot 1).
+     */
+    public static final VertexLayout POSITION_UV = new VertexLayout(
+            new VertexAttribute(0, 3, VertexFormat.FLOAT),
+            new VertexAttribute(1, 2, VertexFormat.FLOAT));
+
+    /**
+     * Float positions (slot 0) and half float UVs (slot 1). 16 bytes per vertex rather than 20.
+     */
+    public static final VertexLayout POSITION_UV_COMPACT = new VertexLayout(
+            new VertexAttribute(0, 3, VertexFormat.FLOAT),
+            new VertexAttribute(1, 2, VertexFormat.HALF_FLOAT));
+
+    /**
+     * Slot normals are stored in. Slots 2 to 5 are taken by the per-instance transformation matrix when a model
+     * is drawn instanced.
+     */
+    public static final int NORMAL_ATTRIBUTE = 6;
+
+    /**
+     * Float positions (slot 0), half float UVs (slot 1) and normalized short normals ({@link #NORMAL_ATTRIBUTE}).
+     * 24 bytes per vertex rather than 32.
+     */
+    public static final VertexLayout POSITION_UV_NORMAL_COMPACT = new VertexLayout(
+            new VertexAttribute(0, 3, VertexFormat.FLOAT),
+            new VertexAttribute(1, 2, VertexFormat.HALF_FLOAT),
+            new VertexAttribute(NORMAL_ATTRIBUTE, 3, VertexFormat.NORMALIZED_SHORT));
+
+    private final List<VertexAttribute> attributes;
+    private final int[] offsets;
+    private final int stride;
+
+    public VertexLayout(VertexAttribute... attributes) {
+        if (attributes.length == 0) {
+            throw new IllegalArgumentException("A vertex layout needs at least one attribute");
+        }
+        this.attributes = List.of(attributes);
+        this.offsets = new int[attributes.length];
+        int offset = 0;
+        for (int i = 0; i < attributes.length; i++) {
+            offsets[i] = offset;
+            offset += align(attributes[i].getSize() * attributes[i].getFormat().getComponentBytes());
+        }
+        this.stride = offset;
+    }
+
+    public List<VertexAttribute> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return Byte offset of the i-th attribute from the start of each vertex.
+     */
+    public int getOffset(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * @return Bytes per vertex.
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Interleave per-attribute arrays into a buffer in this layout.
+     * @param attributeData One array per attribute, in the same order as the layout's attributes, holding
+     *                      size components per vertex.
+     * @param vertexCount Number of vertices.
+     * @param dest Buffer to write into, with at least vertexCount * stride bytes remaining. Its position is
+     *             advanced past the written data.
+     */
+    public void interleave(float[][] attributeData, int vertexCount, ByteBuffer dest) {
+        if (attributeData.length != attributes.size()) {
+            throw new IllegalArgumentException("Expected data for " + attributes.size() + " attributes, got "
+                    + attributeData.length);
+        }
+        int start = dest.position();
+        for (int i = 0; i < attributes.size(); i++) {
+            VertexAttribute attribute = attributes.get(i);
+            VertexFormat format = attribute.getFormat();
+            int size = attribute.getSize();
+            float[] data = attributeData[i];
+            if (data.length < vertexCount * size) {
+                throw new IllegalArgumentException("Attribute " + attribute.getIndex() + " has data for "
+                        + data.length / size + " vertices, expected " + vertexCount);
+            }
+            for (int vertex = 0; vertex < vertexCount; vertex++) {
+                dest.position(start + vertex * stride + offsets[i]);
+                for (int component = 0; component < size; component++) {
+                    format.put(dest, data[vertex * size + component]);
+                }
+            }
+        }
+        dest.position(start + vertexCount * stride);
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+}
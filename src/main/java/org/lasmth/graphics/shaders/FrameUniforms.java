@@ -0,0 +1,115 @@
+package org.lasmth.graphics.shaders;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lasmth.graphics.RenderDevice;
+import org.lasmth.graphics.StateCachingRenderDevice;
+import org.lasmth.graphics.memory.NativeMemory;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Uniform buffer holding the data every shader needs once per frame, so it is uploaded once rather than into
+ * each program separately. Shaders read it through this std140 block, which {@link ShaderProgram} connects to
+ * the buffer automatically:
+ * <pre>
+ * layout(std140) uniform FrameData {
+ *     mat4 projectionMatrix;
+ *     mat4 viewMatrix;
+ *     vec4 cameraPosition;
+ * };
+ * </pre>
+ */
+public class FrameUniforms {
+
+    public static final String BLOCK_NAME = "FrameData";
+    public static final int BINDING_POINT = 0;
+
+    // std140 offsets. Matrices are stored as four vec4 columns, and the vec3 position is padded to a vec4.
+    private static final int PROJECTION_MATRIX_OFFSET = 0;
+    private static final int VIEW_MATRIX_OFFSET = 64;
+    private static final int CAMERA_POSITION_OFFSET = 128;
+    private static final int SIZE = 144;
+
+    private final RenderDevice device;
+    private final int bufferId;
+    // Staging copy of the block, compared against before uploading so an unchanged frame uploads nothing.
+    private ByteBuffer data = NativeMemory.allocate(SIZE).order(ByteOrder.nativeOrder());
+    private final ByteBuffer previousData = ByteBuffer.allocate(SIZE).order(ByteOrder.nativeOrder());
+    private boolean uploaded;
+
+    private long uploads;
+    private long skips;
+
+    public FrameUniforms() {
+        this(StateCachingRenderDevice.getInstance());
+    }
+
+    /**
+     * Creates the buffer and binds it to {@link #BINDING_POINT}, where it stays.
+     * @param device Device all of the buffer's OpenGL calls are made through.
+     */
+    public FrameUniforms(RenderDevice device) {
+        this.device = device;
+        bufferId = device.genBuffers();
+        device.bindBuffer(GL31.GL_UNIFORM_BUFFER, bufferId);
+        device.bufferData(GL31.GL_UNIFORM_BUFFER, SIZE, GL15.GL_DYNAMIC_DRAW);
+        device.bindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+        device.bindBufferBase(GL31.GL_UNIFORM_BUFFER, BINDING_POINT, bufferId);
+    }
+
+    /**
+     * Upload this frame's data, unless it is the same as last frame's.
+     * @return True if anything was uploaded.
+     */
+    public boolean update(Matrix4f projectionMatrix, Matrix4f viewMatrix, Vector3f cameraPosition) {
+        projectionMatrix.get(PROJECTION_MATRIX_OFFSET, data);
+        viewMatrix.get(VIEW_MATRIX_OFFSET, data);
+        data.putFloat(CAMERA_POSITION_OFFSET, cameraPosition.x)
+                .putFloat(CAMERA_POSITION_OFFSET + 4, cameraPosition.y)
+                .putFloat(CAMERA_POSITION_OFFSET + 8, cameraPosition.z)
+                .putFloat(CAMERA_POSITION_OFFSET + 12, 1);
+
+        data.clear();
+        previousData.clear();
+        if (uploaded && data.equals(previousData)) {
+            skips++;
+            return false;
+        }
+        previousData.put(data);
+        data.clear();
+
+        device.bindBuffer(GL31.GL_UNIFORM_BUFFER, bufferId);
+        device.bufferSubData(GL31.GL_UNIFORM_BUFFER, 0, data);
+        device.bindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+        uploaded = true;
+        uploads++;
+        return true;
+    }
+
+    /**
+     * @return Calls to {@link #update} which uploaded the block.
+     */
+    public long getUploads() {
+        return uploads;
+    }
+
+    /**
+     * @return Calls to {@link #update} skipped because nothing had changed.
+     */
+    public long getSkips() {
+        return skips;
+    }
+
+    /**
+     * Free the staging memory. The buffer itself is deleted here too, so no shader may draw afterwards.
+     */
+    public void cleanUp() {
+        device.deleteBuffers(bufferId);
+        NativeMemory.free(data);
+        data = null;
+    }
+}
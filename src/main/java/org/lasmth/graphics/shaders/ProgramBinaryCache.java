@@ -0,0 +1,232 @@
+package org.lasmth.graphics.shaders;
+
+import org.lasmth.graphics.RenderDevice;
+import org.lasmth.graphics.memory.NativeMemory;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Stores linked shader programs on disk as driver binaries (glGetProgramBinary), so later launches can load
+ * them with glProgramBinary instead of compiling and linking the GLSL again.
+ * <p>
+ * Binaries are keyed by a hash of the program's sources and attribute bindings together with the driver's
+ * vendor, renderer and version strings, so editing a shader or updating the driver just misses the cache.
+ * Drivers may still reject a binary, in which case {@link #load} fails, the file is deleted and the program is
+ * expected to be built from source again.
+ * <p>
+ * -Dshader.cache=false turns the cache off and -Dshader.cache.dir picks the directory it lives in.
+ */
+public class ProgramBinaryCache {
+
+    private static final String ENABLED_PROPERTY = "shader.cache";
+    private static final String DIRECTORY_PROPERTY = "shader.cache.dir";
+    private static final String DEFAULT_DIRECTORY = "shader-cache";
+    // Binary format, followed by the binary itself.
+    private static final int FILE_HEADER_SIZE = Integer.BYTES;
+
+    private static ProgramBinaryCache instance = null;
+
+    private final Path directory;
+    private final boolean enabled;
+
+    private int hits;
+    private int misses;
+    private int rejected;
+
+    /**
+     * @return Shared instance, configured from the system properties.
+     */
+    public static ProgramBinaryCache getInstance() {
+        if (instance == null) {
+            instance = new ProgramBinaryCache(Path.of(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY)),
+                    !"false".equals(System.getProperty(ENABLED_PROPERTY)));
+        }
+        return instance;
+    }
+
+    /**
+     * @param directory Where to keep the binaries. Created when the first one is stored.
+     * @param enabled False to never load or store anything.
+     */
+    public ProgramBinaryCache(Path directory, boolean enabled) {
+        this.directory = directory;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return True if programs can be cached on this device: the cache is enabled and the driver supports at
+     * least one binary format.
+     */
+    public boolean isAvailable(RenderDevice device) {
+        return enabled && device.supportsOpenGL(4, 1)
+                && device.getInteger(GL41.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+    }
+
+    /**
+     * Work out the key a program is cached under.
+     * @param sources Everything which affects the linked program, e.g. shader sources and attribute bindings.
+     */
+    public String key(RenderDevice device, CharSequence... sources) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        update(digest, device.getString(GL11.GL_VENDOR));
+        update(digest, device.getString(GL11.GL_RENDERER));
+        update(digest, device.getString(GL11.GL_VERSION));
+        for (CharSequence source : sources) {
+            update(digest, source);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Try to give a program its cached binary.
+     * @param programId Program with nothing attached.
+     * @return True if the program is now linked. Otherwise it is left unlinked, ready to be built from source.
+     */
+    public boolean load(RenderDevice device, int programId, String key) {
+        if (!isAvailable(device)) {
+            return false;
+        }
+        Path file = fileFor(key);
+        if (!Files.exists(file)) {
+            misses++;
+            return false;
+        }
+
+        ByteBuffer binary = null;
+        try {
+            byte[] contents = Files.readAllBytes(file);
+            if (contents.length <= FILE_HEADER_SIZE) {
+                throw new IOException("Cached shader binary " + file + " is truncated");
+            }
+            // The driver needs the binary in native memory.
+            binary = NativeMemory.allocate(contents.length);
+            binary.put(contents).flip();
+            int binaryFormat = binary.order(ByteOrder.nativeOrder()).getInt(0);
+            binary.position(FILE_HEADER_SIZE);
+            device.programBinary(programId, binaryFormat, binary);
+        } catch (IOException e) {
+            System.err.println("Could not read cached shader binary: " + e.getMessage());
+            delete(file);
+            misses++;
+            return false;
+        } finally {
+            if (binary != null) {
+                NativeMemory.free(binary);
+            }
+        }
+
+        if (device.getProgrami(programId, GL20.GL_LINK_STATUS) == GL11.GL_FALSE) {
+            // Usually because the driver changed in a way its version string does not show.
+            delete(file);
+            rejected++;
+            return false;
+        }
+        hits++;
+        return true;
+    }
+
+    /**
+     * Call before linking a program which is to be stored, so the driver keeps its binary around.
+     */
+    public void prepare(RenderDevice device, int programId) {
+        if (isAvailable(device)) {
+            device.programParameteri(programId, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);
+        }
+    }
+
+    /**
+     * Store the binary of a linked program. Failing to write it is reported but otherwise ignored.
+     */
+    public void store(RenderDevice device, int programId, String key) {
+        if (!isAvailable(device)) {
+            return;
+        }
+        int length = device.getProgrami(programId, GL41.GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) {
+            return;
+        }
+
+        ByteBuffer binary = NativeMemory.allocate(FILE_HEADER_SIZE + length);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer writtenLength = stack.mallocInt(1);
+            IntBuffer binaryFormat = stack.mallocInt(1);
+            binary.position(FILE_HEADER_SIZE);
+            device.getProgramBinary(programId, writtenLength, binaryFormat, binary);
+            if (writtenLength.get(0) <= 0) {
+                return;
+            }
+            binary.order(ByteOrder.nativeOrder()).putInt(0, binaryFormat.get(0));
+            binary.position(0).limit(FILE_HEADER_SIZE + writtenLength.get(0));
+
+            byte[] contents = new byte[binary.remaining()];
+            binary.get(contents);
+            Files.createDirectories(directory);
+            // Written to the side then moved, so a crash mid write cannot leave a truncated binary behind.
+            Path temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, contents);
+            Files.move(temporary, fileFor(key), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Could not store shader binary: " + e.getMessage());
+        } finally {
+            NativeMemory.free(binary);
+        }
+    }
+
+    /**
+     * @return Programs loaded from the cache.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Programs which had no cached binary.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Cached binaries the driver refused to load.
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    private Path fileFor(String key) {
+        return directory.resolve(key + ".bin");
+    }
+
+    private static void update(MessageDigest digest, CharSequence value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        // Separator, so moving text from one value to the next changes the hash.
+        digest.update((byte) 0);
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Could not delete cached shader binary " + file + ": " + e.getMessage());
+        }
+    }
+}
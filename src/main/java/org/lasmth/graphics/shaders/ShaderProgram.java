@@ -2,30 +2,57 @@ package org.lasmth.graphics.shaders;
 
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.lasmth.graphics.RenderDevice;
+import org.lasmth.graphics.StateCachingRenderDevice;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
-import java.io.FileReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * Abstract class which creates an OpenGL shader program and stores it in memory. Allows us to
  * bind the shader for rendering.
+ * <p>
+ * The load methods remember the last value given to each uniform and skip the glUniform call when a value is
+ * loaded again unchanged. Programs declaring the {@link FrameUniforms#BLOCK_NAME} block are connected to the
+ * shared per-frame uniform buffer when created.
  */
 public abstract class ShaderProgram {
 
+    private final RenderDevice device;
     private int programId;
+    // 0 when the program was loaded from the binary cache, so no shaders were compiled.
     private int vertexShaderId;
     private int fragmentShaderId;
 
-    private String SHADERS_DIRECTORY_PATH = "src/main/java/org/lasmth/graphics/shaders";
+    // Shader sources are looked up on the classpath, under this directory.
+    private static final String SHADERS_DIRECTORY = "/shaders/";
 
     // Used when loading matrix uniform variables.
-    private static FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
+    private final FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
+
+    // Uniforms at locations past this are always uploaded, rather than growing the shadow to fit.
+    private static final int MAX_SHADOWED_LOCATION = 1024;
+    // Last value loaded into each uniform, indexed by location. Null until a uniform is first loaded. Ints are
+    // stored by their bits.
+    private float[][] uniformValues = new float[16][];
+    // Scratch space for values about to be compared against the shadow.
+    private final float[] scratchValues = new float[16];
+    private long uniformUploads;
+    private long uniformSkips;
+
+    // Attribute bindings made by bindAttributes, as they also end up in the linked binary.
+    private final StringBuilder attributeBindings = new StringBuilder();
+    private long linkNanos;
+    private boolean loadedFromCache;
 
     /**
      * Registers a shader program with OpenGL. The given vertex and fragment shaders are linked together
@@ -34,16 +61,55 @@ public abstract class ShaderProgram {
      * @param fragmentFile Relative path to the GLSL fragment shader. [shader package]/[shader file]
      */
     public ShaderProgram(String vertexFile, String fragmentFile) {
-        vertexShaderId = loadShader(vertexFile, GL20.GL_VERTEX_SHADER);
-        fragmentShaderId = loadShader(fragmentFile, GL20.GL_FRAGMENT_SHADER);
-        programId = GL20.glCreateProgram();
-        GL20.glAttachShader(programId, vertexShaderId);
-        GL20.glAttachShader(programId, fragmentShaderId);
+        this(StateCachingRenderDevice.getInstance(), vertexFile, fragmentFile);
+    }
 
+    /**
+     * @param device Device all of the program's OpenGL calls are made through.
+     */
+    public ShaderProgram(RenderDevice device, String vertexFile, String fragmentFile) {
+        this(device, ProgramBinaryCache.getInstance(), vertexFile, fragmentFile);
+    }
+
+    /**
+     * @param binaryCache Cache to load the linked program from, or store it in if it is not there yet.
+     */
+    public ShaderProgram(RenderDevice device, ProgramBinaryCache binaryCache, String vertexFile,
+                         String fragmentFile) {
+        this.device = device;
+        String vertexSource = readShader(vertexFile);
+        String fragmentSource = readShader(fragmentFile);
+
+        long start = System.nanoTime();
+        programId = device.createProgram();
         bindAttributes();
+        String cacheKey = binaryCache.key(device, getClass().getName(), vertexSource, fragmentSource,
+                attributeBindings);
+        loadedFromCache = binaryCache.load(device, programId, cacheKey);
+
+        if (!loadedFromCache) {
+            vertexShaderId = compileShader(vertexSource, vertexFile, GL20.GL_VERTEX_SHADER);
+            fragmentShaderId = compileShader(fragmentSource, fragmentFile, GL20.GL_FRAGMENT_SHADER);
+            device.attachShader(programId, vertexShaderId);
+            device.attachShader(programId, fragmentShaderId);
+
+            binaryCache.prepare(device, programId);
+            device.linkProgram(programId);
+            if (device.getProgrami(programId, GL20.GL_LINK_STATUS) == GL11.GL_FALSE) {
+                System.out.println(device.getProgramInfoLog(programId));
+                System.err.println("Could not link shader program.");
+                System.exit(-1);
+            }
+            binaryCache.store(device, programId, cacheKey);
+        }
+        linkNanos = System.nanoTime() - start;
+
+        device.validateProgram(programId);
 
-        GL20.glLinkProgram(programId);
-        GL20.glValidateProgram(programId);
+        int frameBlockIndex = device.getUniformBlockIndex(programId, FrameUniforms.BLOCK_NAME);
+        if (frameBlockIndex != GL31.GL_INVALID_INDEX) {
+            device.uniformBlockBinding(programId, frameBlockIndex, FrameUniforms.BINDING_POINT);
+        }
 
         getAllUniformLocations();
     }
@@ -61,21 +127,54 @@ public abstract class ShaderProgram {
      * @return Memory location of the variable.
      */
     protected int getUniformLocation(String uniformName) {
-        return GL20.glGetUniformLocation(programId, uniformName);
+        return device.getUniformLocation(programId, uniformName);
     }
 
     /**
      * Commands OpenGL to use this shader program for subsequent rendering.
      */
     public void start() {
-        GL20.glUseProgram(programId);
+        device.useProgram(programId);
     }
 
     /**
      * Commands OpenGL to disable this shader program for subsequent rendering.
      */
     public void stop() {
-        GL20.glUseProgram(0);
+        device.useProgram(0);
+    }
+
+    /**
+     * @return Time taken to compile and link the program, or to load it from the binary cache, in nanoseconds.
+     */
+    public long getLinkNanos() {
+        return linkNanos;
+    }
+
+    /**
+     * @return True if the program was loaded from the binary cache rather than built from source.
+     */
+    public boolean isLoadedFromCache() {
+        return loadedFromCache;
+    }
+
+    /**
+     * @return glUniform calls made since the last {@link #resetUniformStats()}.
+     */
+    public long getUniformUploads() {
+        return uniformUploads;
+    }
+
+    /**
+     * @return Uniform loads skipped since the last {@link #resetUniformStats()}, as the value was unchanged.
+     */
+    public long getUniformSkips() {
+        return uniformSkips;
+    }
+
+    public void resetUniformStats() {
+        uniformUploads = 0;
+        uniformSkips = 0;
     }
 
     /**
@@ -83,11 +182,13 @@ public abstract class ShaderProgram {
      */
     public void cleanUp() {
         stop();
-        GL20.glDetachShader(programId, vertexShaderId);
-        GL20.glDetachShader(programId, fragmentShaderId);
-        GL20.glDeleteShader(vertexShaderId);
-        GL20.glDeleteShader(fragmentShaderId);
-        GL20.glDeleteProgram(programId);
+        if (vertexShaderId != 0) {
+            device.detachShader(programId, vertexShaderId);
+            device.detachShader(programId, fragmentShaderId);
+            device.deleteShader(vertexShaderId);
+            device.deleteShader(fragmentShaderId);
+        }
+        device.deleteProgram(programId);
     }
 
     /**
@@ -101,15 +202,31 @@ public abstract class ShaderProgram {
      * @param variableName Variable name in the vertex shader.
      */
     protected void bindAttribute(int attribute, String variableName) {
-        GL20.glBindAttribLocation(programId, attribute, variableName);
+        device.bindAttribLocation(programId, attribute, variableName);
+        attributeBindings.append(attribute).append('=').append(variableName).append(';');
+    }
+
+    protected void loadInt(int uniformLocation, int value) {
+        scratchValues[0] = Float.intBitsToFloat(value);
+        if (changed(uniformLocation, 1)) {
+            device.uniform1i(uniformLocation, value);
+        }
     }
 
     protected void loadFloat(int uniformLocation, float value) {
-        GL20.glUniform1f(uniformLocation, value);
+        scratchValues[0] = value;
+        if (changed(uniformLocation, 1)) {
+            device.uniform1f(uniformLocation, value);
+        }
     }
 
     protected void loadVector(int uniformLocation, Vector3f vector) {
-        GL20.glUniform3f(uniformLocation, vector.x, vector.y, vector.z);
+        scratchValues[0] = vector.x;
+        scratchValues[1] = vector.y;
+        scratchValues[2] = vector.z;
+        if (changed(uniformLocation, 3)) {
+            device.uniform3f(uniformLocation, vector.x, vector.y, vector.z);
+        }
     }
 
     protected void loadBoolean(int uniformLocation, boolean value) {
@@ -117,28 +234,76 @@ public abstract class ShaderProgram {
         if (value) {
             toLoad = 1;
         }
-        GL20.glUniform1f(uniformLocation, toLoad);
+        loadFloat(uniformLocation, toLoad);
     }
 
     protected void loadMatrix(int uniformLocation, Matrix4f matrix) {
-        // Stores the matrix in the matrixBuffer.
-        matrix.get(matrixBuffer);
-        GL20.glUniformMatrix4fv(uniformLocation, false, matrixBuffer);
+        matrix.get(scratchValues);
+        if (changed(uniformLocation, 16)) {
+            // Stores the matrix in the matrixBuffer.
+            matrix.get(matrixBuffer);
+            device.uniformMatrix4fv(uniformLocation, false, matrixBuffer);
+        }
     }
 
     /**
-     * Loads a shader file from disk into memory.
-     * @param fileName Filename of form [filename].txt
-     * @param shaderType Integer either of value GL_VERTEX_SHADER or GL_FRAGMENT_SHADER.
-     * @return programId for the shader program now in memory.
+     * Compare the first count scratch values against the uniform's shadow, and record them as its value if
+     * they differ. Also counts the load as an upload or a skip.
+     * @return True if the uniform needs uploading.
+     */
+    private boolean changed(int uniformLocation, int count) {
+        if (uniformLocation < 0) {
+            // Not an active uniform, e.g. optimised out. OpenGL ignores these anyway.
+            uniformSkips++;
+            return false;
+        }
+        if (uniformLocation >= MAX_SHADOWED_LOCATION) {
+            uniformUploads++;
+            return true;
+        }
+        if (uniformLocation >= uniformValues.length) {
+            uniformValues = Arrays.copyOf(uniformValues, Math.max(uniformValues.length * 2, uniformLocation + 1));
+        }
+
+        float[] previous = uniformValues[uniformLocation];
+        if (previous != null && previous.length == count && sameBits(previous, count)) {
+            uniformSkips++;
+            return false;
+        }
+        if (previous == null || previous.length != count) {
+            previous = new float[count];
+            uniformValues[uniformLocation] = previous;
+        }
+        System.arraycopy(scratchValues, 0, previous, 0, count);
+        uniformUploads++;
+        return true;
+    }
+
+    /**
+     * Compares bits rather than values, so -0 and 0 count as different, and a NaN as equal to itself.
+     */
+    private boolean sameBits(float[] previous, int count) {
+        for (int i = 0; i < count; i++) {
+            if (Float.floatToRawIntBits(previous[i]) != Float.floatToRawIntBits(scratchValues[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a shader file from the classpath.
+     * @param fileName Filename of form [shader package]/[filename].txt
+     * @return The GLSL source.
      */
-    private int loadShader(String fileName, int shaderType) {
+    private String readShader(String fileName) {
         StringBuilder shaderSource = new StringBuilder();
-        try {
-            String relativeFilePath = SHADERS_DIRECTORY_PATH + "/" + fileName;
-            File file = new File(relativeFilePath);
-            FileReader fileReader = new FileReader(file.getAbsolutePath());
-            BufferedReader reader = new BufferedReader(fileReader);
+        InputStream stream = ShaderProgram.class.getResourceAsStream(SHADERS_DIRECTORY + fileName);
+        if (stream == null) {
+            System.err.println("Could not find shader " + fileName + " on the classpath!");
+            System.exit(-1);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 shaderSource.append(line).append("\n");
@@ -148,12 +313,23 @@ public abstract class ShaderProgram {
             e.printStackTrace();
             System.exit(-1);
         }
-        int shaderId = GL20.glCreateShader(shaderType);
-        GL20.glShaderSource(shaderId, shaderSource);
-        GL20.glCompileShader(shaderId);
-        if (GL20.glGetShaderi(shaderId, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE) {
-            System.out.println(GL20.glGetShaderInfoLog(shaderId, 500));
-            System.err.println("Could not compile shader.");
+        return shaderSource.toString();
+    }
+
+    /**
+     * Compiles a shader.
+     * @param shaderSource GLSL source of the shader.
+     * @param fileName File the source was read from, for error messages.
+     * @param shaderType Integer either of value GL_VERTEX_SHADER or GL_FRAGMENT_SHADER.
+     * @return ID of the compiled shader.
+     */
+    private int compileShader(String shaderSource, String fileName, int shaderType) {
+        int shaderId = device.createShader(shaderType);
+        device.shaderSource(shaderId, shaderSource);
+        device.compileShader(shaderId);
+        if (device.getShaderi(shaderId, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE) {
+            System.out.println(device.getShaderInfoLog(shaderId));
+            System.err.println("Could not compile shader " + fileName + ".");
             System.exit(-1);
         }
         return shaderId;
@@ -0,0 +1,33 @@
+package org.lasmth.graphics.shaders.staticshader;
+
+import org.lasmth.graphics.RenderDevice;
+import org.lasmth.graphics.StateCachingRenderDevice;
+
+/**
+ * Variant of the {@link StaticShader} for instanced rendering. The transformation matrix is read from a
+ * per-instance vertex attribute rather than a uniform, so one draw call can render every instance of a model.
+ */
+public class InstancedStaticShader extends StaticShader {
+
+    private static final String VERTEX_FILE = "staticshader/instanced_vertex.txt";
+
+    /**
+     * First attribute slot of the per-instance transformation matrix. The matrix uses this slot and the
+     * three following it.
+     */
+    public static final int TRANSFORMATION_MATRIX_ATTRIBUTE = 2;
+
+    public InstancedStaticShader() {
+        this(StateCachingRenderDevice.getInstance());
+    }
+
+    public InstancedStaticShader(RenderDevice device) {
+        super(device, VERTEX_FILE, FRAGMENT_FILE);
+    }
+
+    @Override
+    protected void bindAttributes() {
+        super.bindAttributes();
+        super.bindAttribute(TRANSFORMATION_MATRIX_ATTRIBUTE, "transformationMatrix");
+    }
+}
@@ -0,0 +1,44 @@
+package org.lasmth.graphics.shaders.staticshader;
+
+import org.lasmth.graphics.RenderDevice;
+import org.lasmth.graphics.StateCachingRenderDevice;
+
+/**
+ * Variant of the {@link StaticShader} for multi-draw indirect rendering. Each draw's transformation matrix is
+ * read from a shader storage buffer, indexed by gl_DrawIDARB, so a single glMultiDrawElementsIndirect call can
+ * draw many different models.
+ * <p>
+ * Needs OpenGL 4.5 and GL_ARB_shader_draw_parameters, see {@link org.lasmth.graphics.MultiDrawRenderer#isSupported}.
+ */
+public class MultiDrawStaticShader extends StaticShader {
+
+    private static final String VERTEX_FILE = "staticshader/multidraw_vertex.txt";
+
+    /**
+     * Shader storage binding point the transformation matrices are read from. Matches the vertex shader.
+     */
+    public static final int TRANSFORMS_BINDING = 1;
+
+    private int location_drawOffset;
+
+    public MultiDrawStaticShader() {
+        this(StateCachingRenderDevice.getInstance());
+    }
+
+    public MultiDrawStaticShader(RenderDevice device) {
+        super(device, VERTEX_FILE, FRAGMENT_FILE);
+    }
+
+    /**
+     * @param drawOffset Index in the transforms buffer of the first draw of the next multi-draw call.
+     */
+    public void loadDrawOffset(int drawOffset) {
+        super.loadInt(location_drawOffset, drawOffset);
+    }
+
+    @Override
+    protected void getAllUniformLocations() {
+        super.getAllUniformLocations();
+        location_drawOffset = super.getUniformLocation("drawOffset");
+    }
+}
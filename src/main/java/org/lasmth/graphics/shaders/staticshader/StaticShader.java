@@ -1,26 +1,50 @@
 package org.lasmth.graphics.shaders.staticshader;
 
 import org.joml.Matrix4f;
-import org.lasmth.graphics.entities.Camera;
+import org.lasmth.graphics.RenderDevice;
+import org.lasmth.graphics.shaders.FrameUniforms;
 import org.lasmth.graphics.shaders.ShaderProgram;
-import org.lasmth.tools.maths;
 
 /**
  * Static shader. No shadows or lighting, just basic colour interpolation.
+ * <p>
+ * The projection and view matrices are not loaded here, they come from the shared {@link FrameUniforms} block.
  */
 public class StaticShader extends ShaderProgram {
 
     private static final String VERTEX_FILE = "staticshader/vertex.txt";
-    private static final String FRAGMENT_FILE = "staticshader/fragment.txt";
+    protected static final String FRAGMENT_FILE = "staticshader/fragment.txt";
 
     private int location_transformationMatrix;
-    private int location_projectionMatrix;
-    private int location_viewMatrix;
+    private int location_textureSampler;
+    private int location_textureArraySampler;
+    private int location_textureLayer;
+
+    /**
+     * Texture unit plain 2D textures are bound to.
+     */
+    public static final int TEXTURE_UNIT = 0;
+    /**
+     * Texture unit texture arrays are bound to. Kept apart from the 2D textures since a unit can only be
+     * sampled as one type.
+     */
+    public static final int TEXTURE_ARRAY_UNIT = 1;
 
     public StaticShader() {
         super(VERTEX_FILE, FRAGMENT_FILE);
     }
 
+    public StaticShader(RenderDevice device) {
+        super(device, VERTEX_FILE, FRAGMENT_FILE);
+    }
+
+    /**
+     * Used by variants of the static shader which swap out one of the GLSL stages.
+     */
+    protected StaticShader(RenderDevice device, String vertexFile, String fragmentFile) {
+        super(device, vertexFile, fragmentFile);
+    }
+
     /**
      * Allows for 3D transformations of vertices.
      * @param matrix Transformation matrix.
@@ -30,27 +54,27 @@ public class StaticShader extends ShaderProgram {
     }
 
     /**
-     * Allows for 3D transformations which mimic the view from a movable camera.
-     * @param camera Camera with 3D position and roll, pitch and yaw.
+     * Point the samplers at their texture units. Only needs doing once, with the shader started.
      */
-    public void loadViewMatrix(Camera camera) {
-        Matrix4f viewMatrix = maths.createViewMatrix(camera);
-        super.loadMatrix(location_viewMatrix, viewMatrix);
+    public void connectTextureUnits() {
+        super.loadInt(location_textureSampler, TEXTURE_UNIT);
+        super.loadInt(location_textureArraySampler, TEXTURE_ARRAY_UNIT);
     }
 
     /**
-     * Allows for 3D projection transformations. Makes objects which are more distant appear smaller.
-     * @param projection Calculated projection matrix.
+     * Choose where the texture is sampled from.
+     * @param layer Layer of the texture array to sample, or negative to sample the plain 2D texture.
      */
-    public void loadProjectionMatrix(Matrix4f projection) {
-        super.loadMatrix(location_projectionMatrix, projection);
+    public void loadTextureLayer(int layer) {
+        super.loadInt(location_textureLayer, layer);
     }
 
     @Override
     protected void getAllUniformLocations() {
         location_transformationMatrix = super.getUniformLocation("transformationMatrix");
-        location_projectionMatrix = super.getUniformLocation("projectionMatrix");
-        location_viewMatrix = super.getUniformLocation("viewMatrix");
+        location_textureSampler = super.getUniformLocation("textureSampler");
+        location_textureArraySampler = super.getUniformLocation("textureArraySampler");
+        location_textureLayer = super.getUniformLocation("textureLayer");
     }
 
     @Override
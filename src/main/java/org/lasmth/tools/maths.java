@@ -7,13 +7,23 @@ import org.lasmth.graphics.entities.Camera;
 public class maths {
     public static Matrix4f createTransformationMatrix(Vector3f translation, float rx, float ry,
                                                       float rz, float scale) {
-		Matrix4f matrix = new Matrix4f();
-		matrix.translate(translation);
-		matrix.rotate((float)Math.toRadians(rx), new Vector3f(1,0,0));
-		matrix.rotate((float)Math.toRadians(ry), new Vector3f(0,1,0));
-		matrix.rotate((float)Math.toRadians(rz), new Vector3f(0,0,1));
-		matrix.scale(new Vector3f(scale, scale, scale));
-		return matrix;
+		return createTransformationMatrix(translation.x, translation.y, translation.z, rx, ry, rz, scale,
+				new Matrix4f());
+	}
+
+	/**
+	 * Allocation free version of {@link #createTransformationMatrix(Vector3f, float, float, float, float)}.
+	 * The result is written into the given matrix, overwriting whatever it held.
+	 * @param dest Matrix to store the result in.
+	 * @return dest
+	 */
+	public static Matrix4f createTransformationMatrix(float x, float y, float z, float rx, float ry, float rz,
+													  float scale, Matrix4f dest) {
+		return dest.translation(x, y, z)
+				.rotateX((float) Math.toRadians(rx))
+				.rotateY((float) Math.toRadians(ry))
+				.rotateZ((float) Math.toRadians(rz))
+				.scale(scale, scale, scale);
 	}
 
 	/**
@@ -22,12 +32,25 @@ public class maths {
 	 * @return
 	 */
 	public static Matrix4f createViewMatrix(Camera camera) {
-		Matrix4f viewMatrix = new Matrix4f();
-		viewMatrix.rotate((float) Math.toRadians(camera.getPitch()), new Vector3f(1,0,0));
-		viewMatrix.rotate((float) Math.toRadians(camera.getYaw()), new Vector3f(0,1,0));
-		Vector3f cameraPos = camera.getPosition();
-		Vector3f negativeCameraPos = new Vector3f(-cameraPos.x, -cameraPos.y, -cameraPos.z);
-		viewMatrix.translate(negativeCameraPos);
-		return viewMatrix;
+		return createViewMatrix(camera, new Matrix4f());
+	}
+
+	/**
+	 * Allocation free version of {@link #createViewMatrix(Camera)}.
+	 * @param dest Matrix to store the result in.
+	 * @return dest
+	 */
+	public static Matrix4f createViewMatrix(Camera camera, Matrix4f dest) {
+		return createViewMatrix(camera.getPosition(), camera.getPitch(), camera.getYaw(), dest);
+	}
+
+	/**
+	 * View matrix for a camera at the given position and orientation, written into dest.
+	 * @return dest
+	 */
+	public static Matrix4f createViewMatrix(Vector3f cameraPos, float pitch, float yaw, Matrix4f dest) {
+		return dest.rotationX((float) Math.toRadians(pitch))
+				.rotateY((float) Math.toRadians(yaw))
+				.translate(-cameraPos.x, -cameraPos.y, -cameraPos.z);
 	}
 }
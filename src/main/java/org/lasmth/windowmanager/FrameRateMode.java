@@ -0,0 +1,20 @@
+package org.lasmth.windowmanager;
+
+/**
+ * How the rate at which frames are presented is limited.
+ */
+public enum FrameRateMode {
+    /**
+     * Wait for the monitor's vertical refresh before swapping buffers. No tearing, frame rate is tied to the
+     * refresh rate.
+     */
+    VSYNC,
+    /**
+     * Swap immediately, but sleep between frames to hold a target frame rate.
+     */
+    CAPPED,
+    /**
+     * Swap immediately and render as fast as the machine allows.
+     */
+    UNCAPPED
+}
@@ -0,0 +1,87 @@
+package org.lasmth.windowmanager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.lwjgl.glfw.GLFW.GLFW_KEY_LAST;
+import static org.lwjgl.glfw.GLFW.GLFW_MOUSE_BUTTON_LAST;
+import static org.lwjgl.glfw.GLFW.GLFW_PRESS;
+import static org.lwjgl.glfw.GLFW.GLFW_RELEASE;
+
+/**
+ * Keyboard and mouse button state, handed from the thread polling GLFW events to the thread running the
+ * simulation.
+ * <p>
+ * GLFW only delivers events on the main thread, from {@link Window#updateDisplay()}. Its callbacks record them
+ * here in atomic bit sets, and the simulation takes a copy with {@link #poll()} at the start of each tick, so a
+ * tick sees one consistent state however the two threads interleave. A key pressed and released again between
+ * two polls still shows as pressed for one tick, so quick taps are not lost.
+ * <p>
+ * Events may be recorded from one thread while another polls, but only one thread should poll and query.
+ */
+public class Input {
+
+    private static final int KEY_COUNT = GLFW_KEY_LAST + 1;
+    private static final int BUTTON_COUNT = GLFW_MOUSE_BUTTON_LAST + 1;
+    // Keys and then mouse buttons, one bit each.
+    private static final int WORDS = (KEY_COUNT + BUTTON_COUNT + Long.SIZE - 1) / Long.SIZE;
+
+    // Written by the event callbacks. What is held down right now, and what went down since the last poll.
+    private final AtomicLongArray held = new AtomicLongArray(WORDS);
+    private final AtomicLongArray pressed = new AtomicLongArray(WORDS);
+    // Only touched by the polling thread.
+    private final long[] polled = new long[WORDS];
+
+    /**
+     * Take a copy of the current state for the queries to read until the next poll.
+     */
+    public void poll() {
+        for (int i = 0; i < WORDS; i++) {
+            polled[i] = held.get(i) | pressed.getAndSet(i, 0);
+        }
+    }
+
+    /**
+     * @param keyCode GLFW key code, e.g. GLFW_KEY_W.
+     * @return True if the key was down, or went down, before the last {@link #poll()}.
+     */
+    public boolean isKeyPressed(int keyCode) {
+        return keyCode >= 0 && keyCode < KEY_COUNT && isSet(keyCode);
+    }
+
+    /**
+     * @param buttonCode GLFW mouse button code, e.g. GLFW_MOUSE_BUTTON_LEFT.
+     * @return True if the button was down, or went down, before the last {@link #poll()}.
+     */
+    public boolean isMouseButtonPressed(int buttonCode) {
+        return buttonCode >= 0 && buttonCode < BUTTON_COUNT && isSet(KEY_COUNT + buttonCode);
+    }
+
+    void recordKey(int keyCode, int action) {
+        // Unknown keys come through as -1.
+        if (keyCode >= 0 && keyCode < KEY_COUNT) {
+            record(keyCode, action);
+        }
+    }
+
+    void recordMouseButton(int buttonCode, int action) {
+        if (buttonCode >= 0 && buttonCode < BUTTON_COUNT) {
+            record(KEY_COUNT + buttonCode, action);
+        }
+    }
+
+    private void record(int bit, int action) {
+        int word = bit / Long.SIZE;
+        long mask = 1L << (bit % Long.SIZE);
+        if (action == GLFW_PRESS) {
+            held.getAndUpdate(word, bits -> bits | mask);
+            pressed.getAndUpdate(word, bits -> bits | mask);
+        } else if (action == GLFW_RELEASE) {
+            held.getAndUpdate(word, bits -> bits & ~mask);
+        }
+        // GLFW_REPEAT changes nothing, the key is already held.
+    }
+
+    private boolean isSet(int bit) {
+        return (polled[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) != 0;
+    }
+}
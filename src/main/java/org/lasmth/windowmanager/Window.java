@@ -1,8 +1,17 @@
 package org.lasmth.windowmanager;
 
+import org.lasmth.graphics.Framebuffer;
+import org.lasmth.graphics.StateCachingRenderDevice;
+import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
+import org.lwjgl.stb.STBImageWrite;
+import org.lwjgl.system.Configuration;
+import org.lwjgl.system.Platform;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.*;
@@ -12,16 +21,33 @@ import static org.lwjgl.system.MemoryUtil.NULL;
 public class Window {
     private static Window instance = null;
 
-    private final int WIDTH = 1280;
-	private final int HEIGHT = 720;
-    private final boolean VSYNC = true;
+    private static final int DEFAULT_WIDTH = 1280;
+    private static final int DEFAULT_HEIGHT = 720;
+    // Settings for the instance created by the next call to getInstance().
+    private static int configuredWidth = DEFAULT_WIDTH;
+    private static int configuredHeight = DEFAULT_HEIGHT;
+    private static boolean configuredHeadless = false;
+
+    private final int width;
+	private final int height;
+    private final boolean headless;
+    private FrameRateMode frameRateMode = FrameRateMode.VSYNC;
+    // Only used in CAPPED mode.
+    private int targetFps = 60;
     private final String TITLE = "Tester Game";
 
     // Pointer for our window. Passed to wrapped native C functions
     private long windowId;
+    // Everything is drawn into this instead of the window when headless.
+    private Framebuffer framebuffer;
+    // Filled in by the key and mouse button callbacks.
+    private final Input input = new Input();
 
     // Private constructor used to create singleton
-    private Window() {
+    private Window(int width, int height, boolean headless) {
+        this.width = width;
+        this.height = height;
+        this.headless = headless;
         createWindowAndContext();
     }
 
@@ -30,12 +56,31 @@ public class Window {
      */
     public static Window getInstance() {
         if (instance == null) {
-            instance = new Window();
+            instance = new Window(configuredWidth, configuredHeight, configuredHeadless);
         }
 
         return instance;
     }
 
+    /**
+     * Choose the size and mode of the window. Must be called before the window is first created by
+     * {@link #getInstance()}.
+     * @param headless If true nothing is shown on screen. The window is never made visible and frames are
+     *                 drawn into an off-screen framebuffer which can be read back with {@link #readFrame}. This
+     *                 also works on Linux machines without a display, through OSMesa (e.g. Mesa's llvmpipe).
+     */
+    public static void configure(int width, int height, boolean headless) {
+        if (instance != null) {
+            throw new IllegalStateException("Window has already been created");
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Window size must be positive, got " + width + "x" + height);
+        }
+        configuredWidth = width;
+        configuredHeight = height;
+        configuredHeadless = headless;
+    }
+
     /**
      * Set up and configure the window and OpenGL canvas, ready for drawing.
      */
@@ -44,6 +89,16 @@ public class Window {
         // System.err
         GLFWErrorCallback.createPrint(System.err).set();
 
+        boolean offscreenContext = headless && !hasDisplay();
+        if (offscreenContext) {
+            // No display server to create a window on, so use GLFW's null platform with a software OSMesa
+            // context. LWJGL must then load its GL functions from OSMesa too.
+            glfwInitHint(GLFW_PLATFORM, GLFW_PLATFORM_NULL);
+            if (Configuration.OPENGL_LIBRARY_NAME.get() == null) {
+                Configuration.OPENGL_LIBRARY_NAME.set("libOSMesa.so.8");
+            }
+        }
+
         // Initialise GLFW. Most GLFW functions will not work before doing this
         if (!glfwInit()) {
             throw new IllegalStateException("Unable to initialize GLFW");
@@ -56,46 +111,64 @@ public class Window {
         // Minimum OpenGL context version to use. Version number of form <major>.<minor>
         glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 4);
         glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 5);
+        if (offscreenContext) {
+            glfwWindowHint(GLFW_CONTEXT_CREATION_API, GLFW_OSMESA_CONTEXT_API);
+        }
 
         // Create the window (and openGL context). Can fail if wrong drivers are
         // installed or openGL version not supported etc.
-        windowId = glfwCreateWindow(WIDTH, HEIGHT, TITLE, NULL, NULL);
+        windowId = glfwCreateWindow(width, height, TITLE, NULL, NULL);
         if (windowId == NULL) {
             throw new RuntimeException("Failed to create the GLFW window");
         }
 
         setWindowCloseCallback();
+        setMouseButtonCallback();
 
-        centreWindow();
+        if (!headless) {
+            centreWindow();
+        }
 
         // Set the OpenGL drawing context to this window
         glfwMakeContextCurrent(windowId);
 
-        // Enable v-sync
-        if (VSYNC) {
-            // How many frames to wait before swapping the OpenGL buffers.
-        	glfwSwapInterval(1);
-        }
-
-        // Make the window visible
-        glfwShowWindow(windowId);
+        applySwapInterval();
 
         // Set up the openGL drawing capabilities
         GL.createCapabilities();
+
+        if (headless) {
+            // Left bound for the lifetime of the window, so all drawing goes into it.
+            framebuffer = new Framebuffer(width, height);
+            framebuffer.bind();
+        } else {
+            // Make the window visible
+            glfwShowWindow(windowId);
+        }
         
         setClearColour(1.0f, 0.0f, 0.0f, 0.0f);
 	}
 
+    private void applySwapInterval() {
+        // How many frames to wait before swapping the OpenGL buffers. 1 enables v-sync.
+        glfwSwapInterval(frameRateMode == FrameRateMode.VSYNC ? 1 : 0);
+    }
+
     private void setWindowCloseCallback() {
         // Provided function set the windowShouldClose flag which can then be checked elsewhere
         // to handle closing the application.
         glfwSetKeyCallback(windowId, (windowId, key, _, action, _) -> {
+            input.recordKey(key, action);
             if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE) {
                 glfwSetWindowShouldClose(windowId, true);
             }
         });
     }
 
+    private void setMouseButtonCallback() {
+        glfwSetMouseButtonCallback(windowId, (windowId, button, action, _) -> input.recordMouseButton(button, action));
+    }
+
     private void centreWindow() {
         // Get the resolution of the primary monitor
         GLFWVidMode videoMode = glfwGetVideoMode(glfwGetPrimaryMonitor());
@@ -103,11 +176,21 @@ public class Window {
         assert videoMode != null;
         glfwSetWindowPos(
                 windowId,
-                (videoMode.width() - WIDTH) / 2,
-                (videoMode.height() - HEIGHT) / 2
+                (videoMode.width() - width) / 2,
+                (videoMode.height() - height) / 2
         );
     }
 
+    /**
+     * @return False on Linux when there is neither an X11 nor a Wayland display to open a window on.
+     */
+    private static boolean hasDisplay() {
+        if (Platform.get() != Platform.LINUX) {
+            return true;
+        }
+        return System.getenv("DISPLAY") != null || System.getenv("WAYLAND_DISPLAY") != null;
+    }
+
     /**
      * Set the colour openGL uses to 'clear' the screen.
      * @param r Red value. [0, 1]
@@ -116,13 +199,91 @@ public class Window {
      * @param alpha Transparency value. [0, 1]
      */
 	public void setClearColour(float r, float g, float b, float alpha) {
-        glClearColor(r, g, b, alpha);
+        StateCachingRenderDevice.getInstance().clearColor(r, g, b, alpha);
 	}
 
+    /**
+     * Choose how the frame rate is limited. Takes effect from the next buffer swap.
+     * @see FrameRateMode
+     */
+    public void setFrameRateMode(FrameRateMode frameRateMode) {
+        this.frameRateMode = frameRateMode;
+        applySwapInterval();
+    }
+
+    public FrameRateMode getFrameRateMode() {
+        return frameRateMode;
+    }
+
+    /**
+     * @param targetFps Frame rate to hold when in {@link FrameRateMode#CAPPED} mode.
+     */
+    public void setTargetFps(int targetFps) {
+        if (targetFps <= 0) {
+            throw new IllegalArgumentException("Target FPS must be positive, got " + targetFps);
+        }
+        this.targetFps = targetFps;
+    }
+
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getAspectRatio() {
+        return (float) width / height;
+    }
+
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Copy the frame drawn so far into dest as tightly packed RGBA bytes, bottom row first. When not headless
+     * this reads the back buffer, so must be called before {@link #updateDisplay()}.
+     * @param dest Buffer with room for at least width * height * 4 bytes.
+     */
+    public void readFrame(ByteBuffer dest) {
+        if (headless) {
+            framebuffer.readPixels(dest);
+            return;
+        }
+        if (dest.remaining() < width * height * 4) {
+            throw new IllegalArgumentException("Buffer too small for a " + width + "x" + height + " frame");
+        }
+        glReadBuffer(GL_BACK);
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, dest);
+    }
+
+    /**
+     * Write the frame drawn so far to a PNG file. See {@link #readFrame(ByteBuffer)}.
+     */
+    public void saveFrame(Path file) {
+        ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+        readFrame(pixels);
+        // OpenGL's rows start at the bottom, PNG's at the top.
+        STBImageWrite.stbi_flip_vertically_on_write(true);
+        if (!STBImageWrite.stbi_write_png(file.toString(), width, height, 4, pixels, width * 4)) {
+            System.err.println("Could not write frame to " + file);
+        }
+    }
+
     /**
      * Destroys the window as well as its associated event callbacks.
      */
 	public void destroyWindow() {
+        if (framebuffer != null) {
+            framebuffer.cleanUp();
+            framebuffer = null;
+        }
     	glfwFreeCallbacks(windowId);
         glfwDestroyWindow(windowId);
     }
@@ -138,25 +299,33 @@ public class Window {
     }
 
     /**
-     * Check whether the given mouse button is currently pressed.
+     * @return Key and mouse button state, safe to read from the simulation thread. See {@link Input}.
+     */
+    public Input getInput() {
+        return input;
+    }
+
+    /**
+     * Check whether the given key was pressed as of the last {@link Input#poll()}. Safe to call from any one
+     * thread, as it does not query GLFW directly.
      *
-     * @param keyCode Integer code for mouse button.
+     * @param keyCode Integer code for keyboard button.
      * @return True if button is pressed.
      * @see <a href="https://www.glfw.org/docs/3.3/group__keys.html#gaa06a712e6202661fc03da5bdb7b6e545">Button Codes</a>
      */
 	public boolean isKeyPressed(int keyCode) {
-    	return glfwGetKey(windowId, keyCode) == GLFW_PRESS;
+    	return input.isKeyPressed(keyCode);
     }
 
     /**
-     * Check whether the given mouse button is currently pressed.
+     * Check whether the given mouse button was pressed as of the last {@link Input#poll()}.
      *
-     * @param buttonCode Integer code for keyboard button
+     * @param buttonCode Integer code for mouse button
      * @return True if button is pressed
      * @see <a href="https://www.glfw.org/docs/3.3/group__buttons.html">Button codes</a>
      */
 	public boolean isMouseButtonPressed(int buttonCode) {
-		return glfwGetMouseButton(windowId, buttonCode) == GLFW_PRESS;
+		return input.isMouseButtonPressed(buttonCode);
 	}
 
     /**
@@ -168,6 +337,13 @@ public class Window {
     	return glfwWindowShouldClose(windowId);
     }
 
+    /**
+     * Set the windowShouldClose flag, e.g. to end a headless run which has no user to close the window.
+     */
+    public void close() {
+        glfwSetWindowShouldClose(windowId, true);
+    }
+
     /**
      * Swaps the two openGL drawing buffers and polls for window events.
      * <p>
@@ -176,8 +352,11 @@ public class Window {
      * swapping them for the next frame.
      */
 	public void updateDisplay() {
-        // Swaps 'draw' and 'display' buffers
-		glfwSwapBuffers(windowId);
+        // Swaps 'draw' and 'display' buffers. Nothing is displayed when headless, the framebuffer is simply
+        // drawn over next frame.
+        if (!headless) {
+		    glfwSwapBuffers(windowId);
+        }
         // Poll events e.g. key presses
 		glfwPollEvents();
 	}